@@ -0,0 +1,9 @@
+@rem Compile into a directory of its own, so the classes of the sources
+@rem it pulls in are not left next to them
+if exist bench-classes rmdir /s /q bench-classes
+mkdir bench-classes
+
+javac -source 1.6 -target 1.6 -bootclasspath "C:\Program Files (x86)\Java\jre6\lib\rt.jar" -d bench-classes cvosteen\sqltool\bench\BenchmarkRunner.java
+@if errorlevel 1 goto :eof
+
+java -cp bench-classes cvosteen.sqltool.bench.BenchmarkRunner --json bench-results.json %*
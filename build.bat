@@ -2,10 +2,16 @@ del SQLTool.jar
 
 cd cvosteen\sqltool
 del *.class
-cd database
+cd cli
+del *.class
+cd ..\database
+del *.class
+cd ..\export
 del *.class
 cd ..\memory
 del *.class
+cd ..\result
+del *.class
 cd ..\gui
 del *.class
 cd components
@@ -21,14 +27,20 @@ cd ..\..\..
 javac -source 1.6 -target 1.6 -bootclasspath "C:\Program Files (x86)\Java\jre6\lib\rt.jar" cvosteen\sqltool\SQLTool.java
 @if errorlevel 1 goto :eof
 
-jar cvfm SQLTool.jar manifest.mf cvosteen\sqltool\*.class cvosteen\sqltool\license.html cvosteen\sqltool\database\*.class cvosteen\sqltool\memory\*.class cvosteen\sqltool\gui\*.class cvosteen\sqltool\gui\components\*.class cvosteen\sqltool\gui\syntax\*.class cvosteen\sqltool\gui\icons\*.png cvosteen\sqltool\task\*.class cvosteen\sqltool\tasks\*.class
+jar cvfm SQLTool.jar manifest.mf cvosteen\sqltool\*.class cvosteen\sqltool\license.html cvosteen\sqltool\cli\*.class cvosteen\sqltool\database\*.class cvosteen\sqltool\export\*.class cvosteen\sqltool\memory\*.class cvosteen\sqltool\result\*.class cvosteen\sqltool\gui\*.class cvosteen\sqltool\gui\components\*.class cvosteen\sqltool\gui\syntax\*.class cvosteen\sqltool\gui\icons\*.png cvosteen\sqltool\task\*.class cvosteen\sqltool\tasks\*.class
 
 cd cvosteen\sqltool
 del *.class
-cd database
+cd cli
+del *.class
+cd ..\database
+del *.class
+cd ..\export
 del *.class
 cd ..\memory
 del *.class
+cd ..\result
+del *.class
 cd ..\gui
 del *.class
 cd components
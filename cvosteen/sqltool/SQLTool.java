@@ -1,8 +1,10 @@
 package cvosteen.sqltool;
 
+import cvosteen.sqltool.cli.*;
 import cvosteen.sqltool.database.*;
 import cvosteen.sqltool.gui.*;
 import cvosteen.sqltool.memory.*;
+import cvosteen.sqltool.task.*;
 import java.io.*;
 import javax.swing.*;
 import java.util.*;
@@ -10,10 +12,15 @@ import java.util.*;
 public class SQLTool {
 
 	public static final String DATA_FILE = "database.xml";
+	public static final String CACHE_DIRECTORY = "cache";
 	public static final String APP_NAME = "SQLTool";
 	public static final String APP_VERSION = "2.3.1";
 
 	public static void main(String[] args) {
+		// With arguments, run a query from the command line instead
+		if(args.length > 0)
+			System.exit(QueryRunner.run(args));
+
 		// Use native L&F if possible
 		try {
 			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -24,6 +31,11 @@ public class SQLTool {
 		LowMemoryMonitor monitor = LowMemoryMonitor.getInstance();
 		monitor.setMemoryThreshold(10000000);
 		
+		// Keep cached metadata and results next to the data file
+		File dataDirectory = new File(DATA_FILE).getAbsoluteFile().getParentFile();
+		MetadataCache.setSnapshotDirectory(new File(dataDirectory, CACHE_DIRECTORY));
+		ResultCache.setCacheDirectory(new File(dataDirectory, CACHE_DIRECTORY));
+
 		// Create the application
 		DatabaseManager databaseManager = new DatabaseManager(DATA_FILE);
 
@@ -44,6 +56,21 @@ public class SQLTool {
 				JOptionPane.WARNING_MESSAGE);
 		}
 
+		// Open connections in the background for any databases set to pre-warm
+		for(final Database database : databaseManager) {
+			if(Boolean.parseBoolean(database.getSettings().getProperty("poolPrewarm"))) {
+				TaskExecutor.execute(new Runnable() {
+						public void run() {
+							try {
+								ConnectionPool.getInstance(database).prewarm();
+							} catch(Exception e) {
+								// The error will be shown if the user connects
+							}
+						}
+					});
+			}
+		}
+
 		new DatabaseManagerFrame(databaseManager, APP_NAME, APP_VERSION);
 	}
 }
@@ -0,0 +1,66 @@
+/**
+ * One case of the benchmark suite.  BenchmarkRunner calls setUp()
+ * once, then run() over and over, timing each call, and finally
+ * tearDown().  Whatever run() returns is kept by the runner so the
+ * JIT cannot throw the work away.
+ *
+ * The parameters (e.g. the number of rows) go in the constructor and
+ * are described by getParams() so runs can be compared like for like.
+ * Anything measured besides time, e.g. memory, is given to setMetric().
+ */
+
+package cvosteen.sqltool.bench;
+
+import java.util.*;
+
+public abstract class Benchmark {
+
+	private final Map<String, String> params = new LinkedHashMap<String, String>();
+	private final Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+
+	/**
+	 * Returns the name results are recorded under, the class name by
+	 * default.
+	 */
+	public String getName() {
+		return getClass().getName();
+	}
+
+	/**
+	 * Returns the parameters of this case, by name.
+	 */
+	public Map<String, String> getParams() {
+		return params;
+	}
+
+	protected void setParam(String name, Object value) {
+		params.put(name, String.valueOf(value));
+	}
+
+	/**
+	 * Returns the measurements of this case other than time, by name
+	 * and unit, e.g. "heap bytes/row".
+	 */
+	public Map<String, Double> getMetrics() {
+		return metrics;
+	}
+
+	protected void setMetric(String name, double value) {
+		metrics.put(name, Double.valueOf(value));
+	}
+
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Does one operation.
+	 */
+	public abstract Object run() throws Exception;
+
+	public void tearDown() throws Exception {
+	}
+
+	public String toString() {
+		return getName() + (params.isEmpty() ? "" : " " + params);
+	}
+}
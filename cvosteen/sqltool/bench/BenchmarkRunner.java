@@ -0,0 +1,320 @@
+/**
+ * Runs the benchmark suite and records the results.
+ *
+ * Each case gets a number of warmup iterations, which are thrown away,
+ * and then measurement iterations.  An iteration calls the case over and
+ * over for about a second, timing every call.  The score is the mean
+ * time of a call, the error its 99.9% confidence interval over the
+ * iterations.  The percentiles are of the times of single calls, over
+ * all the measurement iterations.
+ *
+ * Every case runs in this JVM, one after another, so what one case
+ * leaves behind (compiled code, garbage, a bigger heap) can sway the
+ * next.  Compare runs of the same cases on the same machine, or run
+ * each case on its own by name.
+ *
+ * With --json the results are also written as JSON, so they can be
+ * compared over time.  This is not the JMH format: there are no forks
+ * or JMH settings to report.
+ *
+ * Usage: java cvosteen.sqltool.bench.BenchmarkRunner [--json file]
+ *        [--warmup iterations] [--iterations iterations]
+ *        [--time millis] [name...]
+ *
+ * Only the cases whose name contains one of the names are run.
+ */
+
+package cvosteen.sqltool.bench;
+
+import java.io.*;
+import java.util.*;
+
+public class BenchmarkRunner {
+
+	private int warmupIterations = 3;
+	private int measurementIterations = 5;
+	private long iterationMillis = 1000;
+	// Keeps the result of the last call of each case
+	private volatile Object sink;
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		String jsonFile = null;
+		List<String> filters = new ArrayList<String>();
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if(arg.equals("--json") && i + 1 < args.length)
+				jsonFile = args[++i];
+			else if(arg.equals("--warmup") && i + 1 < args.length)
+				runner.warmupIterations = Integer.parseInt(args[++i]);
+			else if(arg.equals("--iterations") && i + 1 < args.length)
+				runner.measurementIterations = Math.max(1, Integer.parseInt(args[++i]));
+			else if(arg.equals("--time") && i + 1 < args.length)
+				runner.iterationMillis = Long.parseLong(args[++i]);
+			else
+				filters.add(arg);
+		}
+
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		for(Benchmark benchmark : getSuite()) {
+			boolean selected = filters.isEmpty();
+			for(String filter : filters)
+				selected |= benchmark.getName().contains(filter);
+			if(selected)
+				benchmarks.add(benchmark);
+		}
+
+		List<Result> results = runner.run(benchmarks);
+		if(jsonFile != null) {
+			Writer out = new OutputStreamWriter(new FileOutputStream(jsonFile), "UTF-8");
+			try {
+				runner.writeJson(results, out);
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns every case of the suite.
+	 */
+	public static List<Benchmark> getSuite() {
+		List<Benchmark> suite = new ArrayList<Benchmark>();
+		for(int rows : new int[] { 10000, 100000 })
+			suite.add(new FetchBenchmark(rows));
+		for(int lines : new int[] { 100, 1000, 5000 })
+			suite.add(new HighlightBenchmark(lines));
+		for(int queries : new int[] { 100, 5000 }) {
+			suite.add(new XmlBenchmark(queries, false));
+			suite.add(new XmlBenchmark(queries, true));
+		}
+		for(int rows : new int[] { 1000, 10000 })
+			suite.add(new PrintBenchmark(rows));
+		for(int rows : new int[] { 1000, 100000 })
+			suite.add(new ColumnWidthBenchmark(rows));
+		suite.add(new RenderBenchmark("timestamp,decimal,date,timestamp,decimal,date"));
+		suite.add(new RenderBenchmark("int,varchar(30),double,bigint,varchar(80),int"));
+		for(String type : new String[] { "int", "double", "varchar(30)", "timestamp" })
+			suite.add(new SortBenchmark(1000000, type, null));
+		suite.add(new SortBenchmark(1000000, "varchar(30)", "123"));
+		suite.add(new MemoryBenchmark(100000, false));
+		suite.add(new MemoryBenchmark(100000, true));
+		suite.add(new DeliveryBenchmark(5000000, true));
+		suite.add(new DeliveryBenchmark(5000000, false));
+		return suite;
+	}
+
+	/**
+	 * Runs the cases one after another, printing each result as it
+	 * is known.
+	 */
+	public List<Result> run(List<Benchmark> benchmarks) throws Exception {
+		List<Result> results = new ArrayList<Result>();
+		System.out.println("benchmark\tparams\tmean ms\terror ms\tp99 ms");
+		for(Benchmark benchmark : benchmarks) {
+			Result result = run(benchmark);
+			results.add(result);
+			System.out.printf("%s\t%s\t%.3f\t%.3f\t%.3f%n",
+				benchmark.getName().substring(benchmark.getName().lastIndexOf('.') + 1),
+				benchmark.getParams(), result.getScore(), result.getError(),
+				result.getPercentile(0.99));
+			for(Map.Entry<String, Double> metric : benchmark.getMetrics().entrySet())
+				System.out.printf("\t%s: %.1f%n", metric.getKey(), metric.getValue());
+		}
+		return results;
+	}
+
+	private Result run(Benchmark benchmark) throws Exception {
+		benchmark.setUp();
+		try {
+			for(int i = 0; i < warmupIterations; i++)
+				iteration(benchmark);
+			Result result = new Result(benchmark);
+			for(int i = 0; i < measurementIterations; i++)
+				result.iterations.add(iteration(benchmark));
+			return result;
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	/**
+	 * Returns the time of each call, in nanoseconds.  At least one call
+	 * is made, however long it takes.
+	 */
+	private long[] iteration(Benchmark benchmark) throws Exception {
+		long[] times = new long[64];
+		int count = 0;
+		long end = System.nanoTime() + iterationMillis * 1000000;
+		do {
+			long start = System.nanoTime();
+			sink = benchmark.run();
+			long time = System.nanoTime() - start;
+			if(count == times.length)
+				times = Arrays.copyOf(times, count * 2);
+			times[count++] = time;
+		} while(System.nanoTime() < end);
+		return Arrays.copyOf(times, count);
+	}
+
+	/**
+	 * Writes the results as a JSON array, one object per case.
+	 */
+	public void writeJson(List<Result> results, Writer out) throws IOException {
+		out.write("[\n");
+		for(int r = 0; r < results.size(); r++) {
+			Result result = results.get(r);
+			Benchmark benchmark = result.benchmark;
+			out.write("    {\n");
+			out.write("        \"benchmark\" : " + quote(benchmark.getName()) + ",\n");
+			out.write("        \"params\" : {");
+			String separator = "\n";
+			for(Map.Entry<String, String> param : benchmark.getParams().entrySet()) {
+				out.write(separator + "            " + quote(param.getKey()) + " : " + quote(param.getValue()));
+				separator = ",\n";
+			}
+			out.write("\n        },\n");
+			out.write("        \"jvm\" : " + quote(System.getProperty("java.home")) + ",\n");
+			out.write("        \"vmVersion\" : " + quote(System.getProperty("java.vm.version")) + ",\n");
+			out.write("        \"warmupIterations\" : " + warmupIterations + ",\n");
+			out.write("        \"measurementIterations\" : " + measurementIterations + ",\n");
+			out.write("        \"iterationMillis\" : " + iterationMillis + ",\n");
+			out.write("        \"unit\" : \"ms/call\",\n");
+			out.write("        \"score\" : " + number(result.getScore()) + ",\n");
+			out.write("        \"scoreError\" : " + number(result.getError()) + ",\n");
+			out.write("        \"iterationScores\" : [");
+			for(int i = 0; i < result.iterations.size(); i++)
+				out.write((i > 0 ? ", " : "") + number(result.getIterationScore(i)));
+			out.write("],\n");
+			out.write("        \"calls\" : " + result.getCallCount() + ",\n");
+			out.write("        \"callPercentiles\" : {\n");
+			out.write("            \"50.0\" : " + number(result.getPercentile(0.5)) + ",\n");
+			out.write("            \"99.0\" : " + number(result.getPercentile(0.99)) + ",\n");
+			out.write("            \"100.0\" : " + number(result.getPercentile(1.0)) + "\n");
+			out.write("        }");
+			if(!benchmark.getMetrics().isEmpty()) {
+				out.write(",\n        \"metrics\" : {");
+				separator = "\n";
+				for(Map.Entry<String, Double> metric : benchmark.getMetrics().entrySet()) {
+					out.write(separator + "            " + quote(metric.getKey()) + " : " + number(metric.getValue()));
+					separator = ",\n";
+				}
+				out.write("\n        }");
+			}
+			out.write(r + 1 < results.size() ? "\n    },\n" : "\n    }\n");
+		}
+		out.write("]\n");
+	}
+
+	/**
+	 * Writes a JSON number.  JSON has no NaN or Infinity, so those are
+	 * written as strings, e.g. the error of a single iteration.
+	 */
+	private static String number(double value) {
+		if(Double.isNaN(value) || Double.isInfinite(value))
+			return quote(String.valueOf(value));
+		return String.valueOf(value);
+	}
+
+	private static String quote(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if(c == '"' || c == '\\')
+				sb.append('\\').append(c);
+			else if(c < ' ')
+				sb.append(String.format("\\u%04x", (int) c));
+			else
+				sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * The call times of the measurement iterations of one case.
+	 */
+	public static class Result {
+
+		// Two-sided 99.9% quantiles of Student's t distribution for
+		// 1 to 10 degrees of freedom, beyond that the normal one is used
+		private static final double[] T_999 = { 636.62, 31.599, 12.924, 8.610, 6.869,
+			5.959, 5.408, 5.041, 4.781, 4.587 };
+
+		private final Benchmark benchmark;
+		private final List<long[]> iterations = new ArrayList<long[]>();
+
+		private Result(Benchmark benchmark) {
+			this.benchmark = benchmark;
+		}
+
+		public Benchmark getBenchmark() {
+			return benchmark;
+		}
+
+		/**
+		 * Returns the mean time of a call in an iteration, in ms.
+		 */
+		public double getIterationScore(int iteration) {
+			long[] times = iterations.get(iteration);
+			long total = 0;
+			for(long time : times)
+				total += time;
+			return total / (double) times.length / 1e6;
+		}
+
+		/**
+		 * Returns the mean of the iteration scores, in ms.
+		 */
+		public double getScore() {
+			double total = 0;
+			for(int i = 0; i < iterations.size(); i++)
+				total += getIterationScore(i);
+			return total / iterations.size();
+		}
+
+		/**
+		 * Returns the half width of the 99.9% confidence interval of the
+		 * score, or NaN with a single iteration.
+		 */
+		public double getError() {
+			int n = iterations.size();
+			if(n < 2)
+				return Double.NaN;
+			double mean = getScore();
+			double squares = 0;
+			for(int i = 0; i < n; i++) {
+				double d = getIterationScore(i) - mean;
+				squares += d * d;
+			}
+			double t = n - 1 <= T_999.length ? T_999[n - 2] : 3.291;
+			return t * Math.sqrt(squares / (n - 1)) / Math.sqrt(n);
+		}
+
+		/**
+		 * Returns the number of calls over all measurement iterations.
+		 */
+		public int getCallCount() {
+			int count = 0;
+			for(long[] times : iterations)
+				count += times.length;
+			return count;
+		}
+
+		/**
+		 * Returns the time below which the fraction of all calls took,
+		 * in ms.  This is over single calls, not iteration scores.
+		 */
+		public double getPercentile(double fraction) {
+			int count = getCallCount();
+			long[] all = new long[count];
+			int pos = 0;
+			for(long[] times : iterations) {
+				System.arraycopy(times, 0, all, pos, times.length);
+				pos += times.length;
+			}
+			Arrays.sort(all);
+			int index = (int) Math.ceil(fraction * count) - 1;
+			return all[Math.max(0, Math.min(count - 1, index))] / 1e6;
+		}
+	}
+}
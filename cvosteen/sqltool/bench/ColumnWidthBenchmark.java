@@ -0,0 +1,58 @@
+/**
+ * Measures sizing the columns of a results table to their contents,
+ * as is done on the event dispatch thread whenever a query finishes.
+ * The results are read from the SyntheticDriver once, up front.
+ */
+
+package cvosteen.sqltool.bench;
+
+import cvosteen.sqltool.database.*;
+import cvosteen.sqltool.gui.*;
+import cvosteen.sqltool.gui.components.*;
+import cvosteen.sqltool.result.*;
+import cvosteen.sqltool.tasks.*;
+import java.sql.*;
+import javax.swing.*;
+
+public class ColumnWidthBenchmark extends Benchmark {
+
+	private final int rows;
+	private ResultStore store;
+	private JTable table;
+
+	public ColumnWidthBenchmark(int rows) {
+		this.rows = rows;
+		setParam("rows", rows);
+	}
+
+	public void setUp() throws Exception {
+		Connection connection = new Database("Benchmark", SyntheticDriver.class.getName(),
+			SyntheticDriver.URL_PREFIX + "rows=" + rows +
+			";columns=int,varchar(30),double,bigint,decimal,timestamp,varchar(80),date;nulls=0.1").connect();
+		try {
+			Statement statement = connection.createStatement();
+			ResultSetTask task = new ResultSetTask(statement.executeQuery("SELECT * FROM SYNTH"));
+			task.run();
+			if(task.hasError())
+				throw task.getError();
+			store = (ResultStore) task.getStatus();
+			statement.close();
+		} finally {
+			connection.close();
+		}
+		NonEditableTableModel model = new NonEditableTableModel(store);
+		model.rowsAppended();
+		table = new JTable(model);
+		table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+		ResultCellRenderer.install(table, store);
+	}
+
+	public Object run() {
+		ConcreteDatabasePanel.adjustTableColumns(table);
+		return table;
+	}
+
+	public void tearDown() {
+		store.close();
+	}
+}
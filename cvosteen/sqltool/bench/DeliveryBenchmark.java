@@ -0,0 +1,184 @@
+/**
+ * Measures the rows per second a query's results reach a results table,
+ * with the rows read on one thread and shown on the event dispatch
+ * thread as ConcreteDatabasePanel's QueryTaskListener does.
+ *
+ * Coalesced delivery queues each report of the task and has a timer
+ * pick them all up every 100 ms, so the fetch never waits for the event
+ * dispatch thread.  Otherwise each report is handed over with
+ * invokeAndWait(), which blocks the fetch until the table has been
+ * told of the new rows, as was done before.
+ *
+ * The table is never shown, so nothing is painted and this measures
+ * the hand-off itself rather than a busy event dispatch thread.  The
+ * rows per second are over every call, warmup included.
+ */
+
+package cvosteen.sqltool.bench;
+
+import cvosteen.sqltool.database.*;
+import cvosteen.sqltool.gui.components.*;
+import cvosteen.sqltool.result.*;
+import cvosteen.sqltool.task.*;
+import cvosteen.sqltool.tasks.*;
+import java.awt.event.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.swing.*;
+
+public class DeliveryBenchmark extends Benchmark {
+
+	private static final int DRAIN_INTERVAL = 100;
+
+	private final int rows;
+	private final boolean coalesced;
+	private Connection connection;
+	private JTable table;
+	private long totalRows = 0;
+	private long totalNanos = 0;
+
+	public DeliveryBenchmark(int rows, boolean coalesced) {
+		this.rows = rows;
+		this.coalesced = coalesced;
+		setParam("rows", rows);
+		setParam("delivery", coalesced ? "coalesced" : "invokeAndWait");
+	}
+
+	public void setUp() throws Exception {
+		connection = new Database("Benchmark", SyntheticDriver.class.getName(),
+			SyntheticDriver.URL_PREFIX + "rows=" + rows +
+			";columns=int,varchar(20),double,bigint,decimal,timestamp;nulls=0.1").connect();
+		SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					table = new JTable();
+					table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+				}
+			});
+	}
+
+	public Object run() throws Exception {
+		long start = System.nanoTime();
+		Statement statement = connection.createStatement();
+		try {
+			ResultSetTask task = new ResultSetTask(statement.executeQuery("SELECT * FROM SYNTH"));
+			task.addTaskListener(coalesced ? new CoalescingListener() : new BlockingListener());
+			// This thread stands in for the task's
+			task.run();
+			if(task.hasError())
+				throw task.getError();
+			ResultStore store = (ResultStore) task.getStatus();
+			totalRows += store.getRowCount();
+			totalNanos += System.nanoTime() - start;
+			setMetric("rows/s", totalRows * 1e9 / totalNanos);
+			return store;
+		} finally {
+			statement.close();
+		}
+	}
+
+	public void tearDown() throws Exception {
+		SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					showRows(null);
+				}
+			});
+		connection.close();
+	}
+
+	/**
+	 * Called on the event dispatch thread to show the rows appended to
+	 * the store so far, or with null to take the last store off the
+	 * table.
+	 */
+	private void showRows(ResultStore store) {
+		NonEditableTableModel model = table.getModel() instanceof NonEditableTableModel ?
+			(NonEditableTableModel) table.getModel() : null;
+		if(model == null || model.getResultStore() != store) {
+			if(table.getRowSorter() instanceof ResultRowSorter)
+				((ResultRowSorter) table.getRowSorter()).dispose();
+			if(model != null && model.getResultStore() != null)
+				model.getResultStore().close();
+			if(store == null) {
+				table.setRowSorter(null);
+				table.setModel(new NonEditableTableModel());
+				return;
+			}
+			model = new NonEditableTableModel(store);
+			table.setModel(model);
+			ResultCellRenderer.install(table, store);
+			table.setRowSorter(new ResultRowSorter(model));
+		}
+		model.rowsAppended();
+	}
+
+	/**
+	 * Hands each report over with invokeAndWait().
+	 */
+	private class BlockingListener implements TaskListener {
+		public void taskStatus(final Object obj) {
+			try {
+				SwingUtilities.invokeAndWait(new Runnable() {
+					public void run() {
+						showRows((ResultStore) obj);
+					}
+				});
+			} catch(Exception e) { }
+		}
+
+		public void taskFinished() {
+		}
+
+		public void taskResult(Object obj) {
+		}
+
+		public void taskError(Exception e) {
+		}
+	}
+
+	/**
+	 * Queues each report for a timer to pick up.
+	 */
+	private class CoalescingListener implements TaskListener {
+		private final Queue<Object> pendingStatus = new ConcurrentLinkedQueue<Object>();
+		private final javax.swing.Timer drainTimer = new javax.swing.Timer(DRAIN_INTERVAL, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					drainStatus();
+				}
+			});
+
+		CoalescingListener() {
+			drainTimer.start();
+		}
+
+		public void taskStatus(Object obj) {
+			pendingStatus.offer(obj);
+		}
+
+		private void drainStatus() {
+			ResultStore store = null;
+			Object obj;
+			while((obj = pendingStatus.poll()) != null)
+				store = (ResultStore) obj;
+			if(store != null)
+				showRows(store);
+		}
+
+		public void taskFinished() {
+			try {
+				SwingUtilities.invokeAndWait(new Runnable() {
+					public void run() {
+						drainTimer.stop();
+						drainStatus();
+					}
+				});
+			} catch(Exception e) { }
+		}
+
+		public void taskResult(Object obj) {
+		}
+
+		public void taskError(Exception e) {
+		}
+	}
+}
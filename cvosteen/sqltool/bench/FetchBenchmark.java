@@ -0,0 +1,49 @@
+/**
+ * Measures reading rows into a ResultStore with ResultSetTask, i.e.
+ * the boxing and copying done for every row of a query's results.
+ * The rows come from the SyntheticDriver, so there is no database or
+ * network in the way.
+ */
+
+package cvosteen.sqltool.bench;
+
+import cvosteen.sqltool.database.*;
+import cvosteen.sqltool.result.*;
+import cvosteen.sqltool.tasks.*;
+import java.sql.*;
+
+public class FetchBenchmark extends Benchmark {
+
+	private final int rows;
+	private Connection connection;
+
+	public FetchBenchmark(int rows) {
+		this.rows = rows;
+		setParam("rows", rows);
+	}
+
+	public void setUp() throws Exception {
+		connection = new Database("Benchmark", SyntheticDriver.class.getName(),
+			SyntheticDriver.URL_PREFIX + "rows=" + rows +
+			";columns=int,varchar(20),double,bigint,decimal,timestamp;nulls=0.1").connect();
+	}
+
+	public Object run() throws Exception {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSetTask task = new ResultSetTask(statement.executeQuery("SELECT * FROM SYNTH"));
+			task.run();
+			if(task.hasError())
+				throw task.getError();
+			ResultStore store = (ResultStore) task.getStatus();
+			store.close();
+			return store;
+		} finally {
+			statement.close();
+		}
+	}
+
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * Measures how long a keystroke takes in a SyntaxHighlightedDocument
+ * as the document grows.  Each keystroke inserts and then removes one
+ * character in the middle of a generated SQL script.
+ *
+ * Usage: java cvosteen.sqltool.bench.HighlightBenchmark [lines...]
+ *
+ * It is also part of the suite run by BenchmarkRunner.
+ */
+
+package cvosteen.sqltool.bench;
+
+import cvosteen.sqltool.gui.syntax.*;
+import java.util.*;
+import javax.swing.text.BadLocationException;
+
+public class HighlightBenchmark extends Benchmark {
+
+	private static final String[] LINES = new String[] {
+		"SELECT c.id, c.name, SUM(o.total) AS total",
+		"FROM customers c INNER JOIN orders o ON o.customer_id = c.id",
+		"WHERE o.created > '2010-01-01' AND o.status <> 'void' -- recent",
+		"GROUP BY c.id, c.name HAVING COUNT(*) > 10;",
+		"/* Backfill the archive table",
+		"   before the old rows are deleted */",
+		"INSERT INTO archive (id, amount) VALUES (@id, 12.50);",
+		"UPDATE orders SET status = \"closed\" WHERE id = 42;",
+	};
+
+	private final int lines;
+	private SyntaxHighlightedDocument doc;
+	private int offs;
+
+	public HighlightBenchmark(int lines) {
+		this.lines = lines;
+		setParam("lines", lines);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = new int[] { 100, 1000, 5000 };
+		if(args.length > 0) {
+			sizes = new int[args.length];
+			for(int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		for(int lines : sizes)
+			benchmarks.add(new HighlightBenchmark(lines));
+		new BenchmarkRunner().run(benchmarks);
+	}
+
+	public void setUp() throws BadLocationException {
+		doc = new SyntaxHighlightedDocument();
+		doc.setSyntax(new SqlSyntax());
+		doc.setColorScheme(new StandardColorScheme());
+		doc.insertString(0, script(lines), null);
+		offs = doc.getLength() / 2;
+	}
+
+	public Object run() throws BadLocationException {
+		keystroke(doc, offs);
+		return doc;
+	}
+
+	private static void keystroke(SyntaxHighlightedDocument doc, int offs) throws BadLocationException {
+		doc.insertString(offs, "x", null);
+		doc.remove(offs, 1);
+	}
+
+	private static String script(int lines) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < lines; i++)
+			sb.append(LINES[i % LINES.length]).append('\n');
+		return sb.toString();
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * Measures laying out and drawing every page of a printout of a
+ * results table with JTablePrintable.  The pages are drawn into an
+ * image the size of a letter page instead of going to a printer.
+ */
+
+package cvosteen.sqltool.bench;
+
+import cvosteen.sqltool.gui.components.*;
+import java.awt.*;
+import java.awt.image.*;
+import java.awt.print.*;
+import javax.swing.*;
+import javax.swing.table.*;
+
+public class PrintBenchmark extends Benchmark {
+
+	private static final int COLUMNS = 12;
+
+	private final int rows;
+	private JTable table;
+	private PageFormat pageFormat;
+	private BufferedImage image;
+
+	public PrintBenchmark(int rows) {
+		this.rows = rows;
+		setParam("rows", rows);
+	}
+
+	public void setUp() {
+		DefaultTableModel model = new DefaultTableModel(0, COLUMNS);
+		for(int row = 0; row < rows; row++) {
+			Object[] data = new Object[COLUMNS];
+			for(int col = 0; col < COLUMNS; col++)
+				data[col] = col % 2 == 0 ? (Object) Integer.valueOf(row * col) : "Value " + row + "/" + col;
+			model.addRow(data);
+		}
+		table = new JTable(model);
+		pageFormat = new PageFormat();
+		image = new BufferedImage((int) pageFormat.getWidth(), (int) pageFormat.getHeight(),
+			BufferedImage.TYPE_INT_RGB);
+	}
+
+	/**
+	 * Prints every page and returns how many there were.
+	 */
+	public Object run() throws PrinterException {
+		JTablePrintable printable = new JTablePrintable(table);
+		printable.setTitle("Benchmark");
+		int page = 0;
+		while(true) {
+			Graphics g = image.createGraphics();
+			try {
+				if(printable.print(g, pageFormat, page) == Printable.NO_SUCH_PAGE)
+					return Integer.valueOf(page);
+			} finally {
+				g.dispose();
+			}
+			page++;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * Measures preparing the cell renderers for a screenful of a results
+ * table, as a JTable does on every repaint while scrolling.  Each call
+ * scrolls one row further down and back up every so often, so some
+ * cells are shown again and some are new.
+ */
+
+package cvosteen.sqltool.bench;
+
+import cvosteen.sqltool.database.*;
+import cvosteen.sqltool.gui.components.*;
+import cvosteen.sqltool.result.*;
+import cvosteen.sqltool.tasks.*;
+import java.sql.*;
+import javax.swing.*;
+
+public class RenderBenchmark extends Benchmark {
+
+	private static final int ROWS = 100000;
+	private static final int VISIBLE_ROWS = 40;
+	private static final int SCROLL_RANGE = 500;
+
+	private final String columns;
+	private ResultStore store;
+	private JTable table;
+	private int top = 0;
+
+	/**
+	 * Creates a case for the column types, as the SyntheticDriver
+	 * takes them.
+	 */
+	public RenderBenchmark(String columns) {
+		this.columns = columns;
+		setParam("columns", columns);
+	}
+
+	public void setUp() throws Exception {
+		Connection connection = new Database("Benchmark", SyntheticDriver.class.getName(),
+			SyntheticDriver.URL_PREFIX + "rows=" + ROWS + ";columns=" + columns + ";nulls=0.1").connect();
+		try {
+			Statement statement = connection.createStatement();
+			ResultSetTask task = new ResultSetTask(statement.executeQuery("SELECT * FROM SYNTH"));
+			task.run();
+			if(task.hasError())
+				throw task.getError();
+			store = (ResultStore) task.getStatus();
+			statement.close();
+		} finally {
+			connection.close();
+		}
+		NonEditableTableModel model = new NonEditableTableModel(store);
+		model.rowsAppended();
+		table = new JTable(model);
+		ResultCellRenderer.install(table, store);
+	}
+
+	public Object run() {
+		Object component = null;
+		for(int row = top; row < top + VISIBLE_ROWS; row++) {
+			for(int col = 0; col < table.getColumnCount(); col++)
+				component = table.prepareRenderer(table.getCellRenderer(row, col), row, col);
+		}
+		top = (top + 1) % SCROLL_RANGE;
+		return component;
+	}
+
+	public void tearDown() {
+		store.close();
+	}
+}
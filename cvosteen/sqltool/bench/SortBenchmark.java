@@ -0,0 +1,56 @@
+/**
+ * Measures sorting results by one column, as is done in the background
+ * when a column header is clicked, and optionally filtering them first.
+ * The results are read from the SyntheticDriver once, up front.
+ */
+
+package cvosteen.sqltool.bench;
+
+import cvosteen.sqltool.database.*;
+import cvosteen.sqltool.result.*;
+import cvosteen.sqltool.tasks.*;
+import java.sql.*;
+
+public class SortBenchmark extends Benchmark {
+
+	private final int rows;
+	private final String type;
+	private final String filter;
+	private ResultStore store;
+
+	public SortBenchmark(int rows, String type, String filter) {
+		this.rows = rows;
+		this.type = type;
+		this.filter = filter;
+		setParam("rows", rows);
+		setParam("type", type);
+		setParam("filter", filter == null ? "" : filter);
+	}
+
+	public void setUp() throws Exception {
+		Connection connection = new Database("Benchmark", SyntheticDriver.class.getName(),
+			SyntheticDriver.URL_PREFIX + "rows=" + rows + ";columns=" + type + ",int;nulls=0.1").connect();
+		try {
+			Statement statement = connection.createStatement();
+			ResultSetTask task = new ResultSetTask(statement.executeQuery("SELECT * FROM SYNTH"));
+			task.run();
+			if(task.hasError())
+				throw task.getError();
+			store = (ResultStore) task.getStatus();
+			statement.close();
+		} finally {
+			connection.close();
+		}
+	}
+
+	public Object run() throws Exception {
+		ResultSorter sorter = new ResultSorter(store, store.getRowCount());
+		sorter.setSortColumn(0, false);
+		sorter.setFilter(filter);
+		return sorter.sort();
+	}
+
+	public void tearDown() {
+		store.close();
+	}
+}
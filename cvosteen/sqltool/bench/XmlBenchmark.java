@@ -0,0 +1,64 @@
+/**
+ * Measures saving and loading a large database.xml with the
+ * DatabaseXMLEncoder.  The file has 10 databases sharing the
+ * specified number of saved queries between them.
+ */
+
+package cvosteen.sqltool.bench;
+
+import cvosteen.sqltool.database.*;
+import java.io.*;
+import java.util.*;
+
+public class XmlBenchmark extends Benchmark {
+
+	private static final int DATABASES = 10;
+
+	private final int queries;
+	private final boolean load;
+	private File file;
+	private List<Database> databases;
+
+	/**
+	 * Creates a case which loads the file if load is true, or saves it
+	 * otherwise.
+	 */
+	public XmlBenchmark(int queries, boolean load) {
+		this.queries = queries;
+		this.load = load;
+		setParam("queries", queries);
+		setParam("operation", load ? "load" : "save");
+	}
+
+	public void setUp() throws IOException {
+		databases = new ArrayList<Database>();
+		for(int d = 0; d < DATABASES; d++) {
+			Database database = new Database("Database " + d, "org.example.Driver",
+				"jdbc:example://host" + d + "/db");
+			Properties settings = new Properties();
+			settings.setProperty("fetchSize", "500");
+			database.setSettings(settings);
+			for(int q = d; q < queries; q += DATABASES) {
+				database.saveQuery("Query " + q, "SELECT c.id, c.name, SUM(o.total) AS total\n" +
+					"FROM customers c INNER JOIN orders o ON o.customer_id = c.id\n" +
+					"WHERE o.created > '2010-01-01' AND c.region = " + q + "\n" +
+					"GROUP BY c.id, c.name HAVING COUNT(*) > 10 & SUM(o.total) < 1000");
+			}
+			databases.add(database);
+		}
+		file = File.createTempFile("sqltool-bench", ".xml");
+		new DatabaseXMLEncoder(file.getPath()).writeXMLFile(databases);
+	}
+
+	public Object run() throws IOException {
+		DatabaseXMLEncoder encoder = new DatabaseXMLEncoder(file.getPath());
+		if(load)
+			return encoder.readXMLFile();
+		encoder.writeXMLFile(databases);
+		return encoder;
+	}
+
+	public void tearDown() {
+		file.delete();
+	}
+}
@@ -0,0 +1,552 @@
+/**
+ * Runs a saved query (or some SQL) against one of the databases in
+ * the data file without the GUI, streaming the rows to standard
+ * output or a file.  The rows go through a RowSink rather than a
+ * ResultStore, so any number of rows can be exported in constant
+ * memory.  Timings are written to standard error.
+ *
+ * Usage:
+ *   SQLTool -d database (-q query | -e sql) [-p name=value ...] [-o file]
+ *           [--format csv|tsv|arrow] [--encoding charset]
+ *           [--row-group-size rows] [--dictionary]
+ *           [--compression lz4|none] [--data database.xml]
+ *           [--partition-key column [--partitions n] [--ordered]]
+ *   SQLTool -d database --import file --table table [--no-header]
+ *           [--format csv|tsv] [--encoding charset] [--batch-size rows]
+ *           [--commit-interval rows] [--writers n] [--data database.xml]
+ *
+ * Each -p gives the value of a named parameter (:name) of the query.
+ * A saved query's parameters default to the values saved with it.
+ * Only a saved query with parameters, or a query given -p, has any,
+ * otherwise :name is left for the database.
+ *
+ * The --row-group-size (rows per record batch), --dictionary and
+ * --compression options only apply to the Arrow IPC stream format
+ * (see ArrowRowSink).
+ *
+ * With --partition-key the query is split into ranges of a numeric or
+ * date column which are run at once on pooled connections, see
+ * PartitionedQueryTask.  --ordered keeps the rows in key order.
+ *
+ * With --import a CSV or TSV file (going by its extension, unless
+ * --format is given) is inserted into the table in batches instead,
+ * see ImportTask.  --writers inserts on that many connections at once,
+ * which takes a --commit-interval.
+ *
+ * The exit code is one of the EXIT_ constants below.
+ */
+
+package cvosteen.sqltool.cli;
+
+import cvosteen.sqltool.SQLTool;
+import cvosteen.sqltool.database.*;
+import cvosteen.sqltool.export.*;
+import cvosteen.sqltool.task.*;
+import cvosteen.sqltool.tasks.*;
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.sql.*;
+import java.util.*;
+
+public class QueryRunner {
+
+	public static final int EXIT_OK = 0;
+	public static final int EXIT_USAGE = 1;
+	public static final int EXIT_NOT_FOUND = 2;
+	public static final int EXIT_CONNECT_FAILED = 3;
+	public static final int EXIT_QUERY_FAILED = 4;
+	public static final int EXIT_OUTPUT_FAILED = 5;
+	public static final int EXIT_INPUT_FAILED = 6;
+	public static final int EXIT_CANCELLED = 130;
+
+	// How long to wait for a cancelled query when interrupted
+	private static final long CANCEL_TIMEOUT = 5000;
+
+	private String dataFile = SQLTool.DATA_FILE;
+	private String databaseName = null;
+	private String queryName = null;
+	private String sql = null;
+	private Map<String, String> parameterTexts = new HashMap<String, String>();
+	private List<Object> parameters = null;
+	private String outputFile = null;
+	private String format = null;
+	private String encoding = "UTF-8";
+	private int rowGroupSize = ArrowRowSink.DEFAULT_ROW_GROUP_SIZE;
+	private boolean dictionaryEncoding = false;
+	private boolean compression = false;
+	private String partitionKey = null;
+	private int partitions = 4;
+	private boolean ordered = false;
+	private String importFile = null;
+	private String table = null;
+	private boolean header = true;
+	private int batchSize = ImportTask.DEFAULT_BATCH_SIZE;
+	private int commitInterval = 0;
+	private int writers = 1;
+	private boolean help = false;
+
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+
+	/**
+	 * Runs the command line and returns the exit code.
+	 */
+	public static int run(String[] args) {
+		QueryRunner runner = new QueryRunner();
+		try {
+			runner.parseArguments(args);
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			return EXIT_USAGE;
+		}
+		if(runner.help) {
+			printUsage();
+			return EXIT_OK;
+		}
+		return runner.run();
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: " + SQLTool.APP_NAME
+			+ " -d database (-q query | -e sql) [-p name=value ...] [-o file]");
+		System.err.println("       [--format csv|tsv|arrow] [--encoding charset]");
+		System.err.println("       [--row-group-size rows] [--dictionary]");
+		System.err.println("       [--compression lz4|none] [--data database.xml]");
+		System.err.println("       [--partition-key column [--partitions n] [--ordered]]");
+		System.err.println("   or: " + SQLTool.APP_NAME
+			+ " -d database --import file --table table [--no-header]");
+		System.err.println("       [--format csv|tsv] [--encoding charset] [--batch-size rows]");
+		System.err.println("       [--commit-interval rows] [--writers n] [--data database.xml]");
+	}
+
+	private void parseArguments(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if(arg.equals("-h") || arg.equals("--help")) {
+				help = true;
+				return;
+			} else if(arg.equals("--dictionary")) {
+				dictionaryEncoding = true;
+				continue;
+			} else if(arg.equals("--ordered")) {
+				ordered = true;
+				continue;
+			} else if(arg.equals("--no-header")) {
+				header = false;
+				continue;
+			}
+			if(i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = args[++i];
+			if(arg.equals("-d") || arg.equals("--database")) {
+				databaseName = value;
+			} else if(arg.equals("-q") || arg.equals("--query")) {
+				queryName = value;
+			} else if(arg.equals("-e") || arg.equals("--execute")) {
+				sql = value;
+			} else if(arg.equals("-p") || arg.equals("--param")) {
+				int equals = value.indexOf('=');
+				if(equals <= 0)
+					throw new IllegalArgumentException("Parameters must be given as name=value: " + value);
+				String name = value.substring(0, equals);
+				if(name.startsWith(":"))
+					name = name.substring(1);
+				parameterTexts.put(name, value.substring(equals + 1));
+			} else if(arg.equals("-o") || arg.equals("--output")) {
+				outputFile = value;
+			} else if(arg.equals("--format")) {
+				format = value.toLowerCase();
+				if(!format.equals("csv") && !format.equals("tsv") && !format.equals("arrow"))
+					throw new IllegalArgumentException("Unknown format: " + value);
+			} else if(arg.equals("--compression")) {
+				if(value.equalsIgnoreCase("lz4"))
+					compression = true;
+				else if(value.equalsIgnoreCase("none"))
+					compression = false;
+				else
+					throw new IllegalArgumentException("Unknown compression: " + value);
+			} else if(arg.equals("--row-group-size")) {
+				try {
+					rowGroupSize = Integer.parseInt(value);
+				} catch(NumberFormatException e) {
+					throw new IllegalArgumentException("Invalid row group size: " + value);
+				}
+			} else if(arg.equals("--partition-key")) {
+				partitionKey = value;
+			} else if(arg.equals("--partitions")) {
+				try {
+					partitions = Integer.parseInt(value);
+				} catch(NumberFormatException e) {
+					partitions = 0;
+				}
+				if(partitions < 1)
+					throw new IllegalArgumentException("Invalid number of partitions: " + value);
+			} else if(arg.equals("--import")) {
+				importFile = value;
+			} else if(arg.equals("--table")) {
+				table = value;
+			} else if(arg.equals("--batch-size")) {
+				batchSize = parseCount(value, 1, "batch size");
+			} else if(arg.equals("--commit-interval")) {
+				commitInterval = parseCount(value, 0, "commit interval");
+			} else if(arg.equals("--writers")) {
+				writers = parseCount(value, 1, "number of writers");
+			} else if(arg.equals("--encoding")) {
+				encoding = value;
+			} else if(arg.equals("--data")) {
+				dataFile = value;
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+
+		if(databaseName == null)
+			throw new IllegalArgumentException("No database specified");
+		if(importFile != null) {
+			if(table == null)
+				throw new IllegalArgumentException("Specify the table to import into");
+			if(queryName != null || sql != null)
+				throw new IllegalArgumentException("Cannot run a query and import at once");
+			if(format == null) {
+				String name = importFile.toLowerCase();
+				format = name.endsWith(".tsv") || name.endsWith(".txt") ? "tsv" : "csv";
+			} else if(format.equals("arrow")) {
+				throw new IllegalArgumentException("Only csv and tsv files can be imported");
+			}
+			return;
+		}
+		if((queryName == null) == (sql == null))
+			throw new IllegalArgumentException("Specify either a saved query or some SQL");
+		if(format == null)
+			format = "tsv";
+	}
+
+	private static int parseCount(String value, int minimum, String name) {
+		int count;
+		try {
+			count = Integer.parseInt(value);
+		} catch(NumberFormatException e) {
+			count = minimum - 1;
+		}
+		if(count < minimum)
+			throw new IllegalArgumentException("Invalid " + name + ": " + value);
+		return count;
+	}
+
+	private int run() {
+		// Find the database and the query
+		DatabaseManager databaseManager = new DatabaseManager(dataFile);
+		try {
+			databaseManager.load();
+		} catch(IOException e) {
+			System.err.println("Cannot read " + dataFile + ": " + e.getMessage());
+			return EXIT_NOT_FOUND;
+		}
+
+		Database database = null;
+		for(Database d : databaseManager) {
+			if(d.getName().equals(databaseName))
+				database = d;
+		}
+		if(database == null) {
+			System.err.println("No database named " + databaseName);
+			return EXIT_NOT_FOUND;
+		}
+		if(importFile != null)
+			return runImport(database);
+		if(queryName != null) {
+			sql = database.getQuerySql(queryName);
+			if(sql == null) {
+				System.err.println("No query named " + queryName + " in " + databaseName);
+				return EXIT_NOT_FOUND;
+			}
+		}
+
+		// Bind any named parameters, if the saved query has them or
+		// they are given, since :name means other things too
+		ParameterizedSql parameterized = null;
+		if(!parameterTexts.isEmpty() || !database.getQueryParameters(queryName).isEmpty())
+			parameterized = ParameterizedSql.parse(sql);
+		if(parameterized != null && parameterized.hasParameters()) {
+			if(partitionKey != null) {
+				System.err.println("A query with parameters cannot be run partitioned");
+				return EXIT_USAGE;
+			}
+			Map<String, Object> values = new HashMap<String, Object>();
+			for(String name : parameterized.getNames()) {
+				QueryParameter parameter = database.getQueryParameter(queryName, name);
+				if(parameter == null)
+					parameter = new QueryParameter(name, QueryParameter.STRING, null);
+				String text = parameterTexts.containsKey(name) ?
+					parameterTexts.get(name) : parameter.getDefaultValue();
+				if(text == null) {
+					System.err.println("No value given for :" + name);
+					return EXIT_USAGE;
+				}
+				try {
+					values.put(name, parameter.parse(text));
+				} catch(IllegalArgumentException e) {
+					System.err.println(e.getMessage());
+					return EXIT_USAGE;
+				}
+			}
+			sql = parameterized.getSql();
+			parameters = parameterized.getValues(values);
+		}
+
+		// Connect.  A partitioned query borrows its connections from
+		// the pool, so the first one is just handed back for reuse.
+		long start = System.currentTimeMillis();
+		Connection connection;
+		ConnectionPool pool = ConnectionPool.getInstance(database);
+		try {
+			if(partitionKey != null) {
+				pool.release(pool.borrow());
+				connection = null;
+			} else {
+				connection = database.connect();
+			}
+		} catch(Exception e) {
+			System.err.println("Cannot connect to " + databaseName + ": " + e.getMessage());
+			pool.close();
+			return EXIT_CONNECT_FAILED;
+		}
+		long connected = System.currentTimeMillis();
+		System.err.println("Connected in " + (connected - start) + " ms");
+
+		try {
+			return runQuery(database, connection, connected);
+		} finally {
+			if(connection != null) {
+				try {
+					connection.close();
+				} catch(SQLException e) { }
+			}
+			pool.close();
+		}
+	}
+
+	/**
+	 * Runs the query on the connection, or partitioned on pooled
+	 * connections if the connection is null.
+	 */
+	private int runQuery(Database database, Connection connection, long start) {
+		Charset charset;
+		try {
+			charset = Charset.forName(encoding);
+		} catch(IllegalArgumentException e) {
+			System.err.println("Unknown encoding: " + encoding);
+			return EXIT_USAGE;
+		}
+
+		FileChannel channel;
+		try {
+			if(outputFile != null)
+				channel = new FileOutputStream(outputFile).getChannel();
+			else
+				channel = new FileOutputStream(FileDescriptor.out).getChannel();
+		} catch(IOException e) {
+			System.err.println("Cannot write " + outputFile + ": " + e.getMessage());
+			return EXIT_OUTPUT_FAILED;
+		}
+
+		try {
+			final Task task;
+			if(connection != null) {
+				QueryTask query;
+				try {
+					query = new QueryTask(connection, sql);
+				} catch(SQLException e) {
+					System.err.println(e.getMessage());
+					return EXIT_QUERY_FAILED;
+				}
+				query.setFetchSizeController(new FetchSizeController(
+					database.getIntSetting("fetchSize", 0),
+					database.getIntSetting("reportBatchSize", 0)));
+				query.setParameters(parameters);
+				query.setRowSink(createRowSink(channel, charset));
+				task = query;
+			} else {
+				PartitionedQueryTask query = new PartitionedQueryTask(
+					ConnectionPool.getInstance(database), sql, partitionKey, partitions);
+				query.setOrdered(ordered);
+				query.setFetchSizes(database.getIntSetting("fetchSize", 0),
+					database.getIntSetting("reportBatchSize", 0));
+				query.setRowSink(createRowSink(channel, charset));
+				task = query;
+			}
+
+			// Cancel the query if we are interrupted (e.g. Ctrl-C)
+			Thread cancelHook = new Thread() {
+					public void run() {
+						task.cancel();
+						long deadline = System.currentTimeMillis() + CANCEL_TIMEOUT;
+						while(!task.isFinished() && System.currentTimeMillis() < deadline) {
+							try {
+								Thread.sleep(10);
+							} catch(InterruptedException e) {
+								return;
+							}
+						}
+					}
+				};
+			Runtime.getRuntime().addShutdownHook(cancelHook);
+
+			// Run the query on this thread
+			task.run();
+
+			try {
+				Runtime.getRuntime().removeShutdownHook(cancelHook);
+			} catch(IllegalStateException e) {
+				// Already shutting down
+			}
+
+			long elapsed = System.currentTimeMillis() - start;
+			if(task.isCancelled()) {
+				rollback(connection);
+				System.err.println("Cancelled after " + elapsed + " ms");
+				return EXIT_CANCELLED;
+			}
+			if(task.hasError()) {
+				rollback(connection);
+				Exception e = task.getError();
+				System.err.println(e.getMessage());
+				return e instanceof IOException ? EXIT_OUTPUT_FAILED : EXIT_QUERY_FAILED;
+			}
+
+			if(connection != null) {
+				try {
+					connection.commit();
+				} catch(SQLException e) {
+					System.err.println(e.getMessage());
+					return EXIT_QUERY_FAILED;
+				}
+			}
+
+			if(task.hasResult()) {
+				// An update count
+				System.err.println(task.getResult() + " rows affected in " + elapsed + " ms");
+			} else {
+				long rows = task.getStatus() instanceof Long ? (Long) task.getStatus() : 0;
+				System.err.println(rows + " rows in " + elapsed + " ms"
+					+ (elapsed > 0 ? " (" + (rows * 1000 / elapsed) + " rows/s)" : ""));
+			}
+			if(task instanceof QueryTask)
+				System.err.println("Query " + ((QueryTask) task).getMetrics());
+			return EXIT_OK;
+
+		} finally {
+			try {
+				channel.close();
+			} catch(IOException e) { }
+		}
+	}
+
+	/**
+	 * Imports the file into the table on pooled connections.
+	 */
+	private int runImport(Database database) {
+		Charset charset;
+		try {
+			charset = Charset.forName(encoding);
+		} catch(IllegalArgumentException e) {
+			System.err.println("Unknown encoding: " + encoding);
+			return EXIT_USAGE;
+		}
+		File file = new File(importFile);
+		if(!file.isFile()) {
+			System.err.println("Cannot read " + importFile);
+			return EXIT_INPUT_FAILED;
+		}
+
+		// Connect.  The first connection is handed back for the
+		// import to borrow.
+		long start = System.currentTimeMillis();
+		ConnectionPool pool = ConnectionPool.getInstance(database);
+		try {
+			pool.release(pool.borrow());
+		} catch(Exception e) {
+			System.err.println("Cannot connect to " + databaseName + ": " + e.getMessage());
+			pool.close();
+			return EXIT_CONNECT_FAILED;
+		}
+		long connected = System.currentTimeMillis();
+		System.err.println("Connected in " + (connected - start) + " ms");
+
+		try {
+			final ImportTask task = new ImportTask(pool, file, table);
+			task.setCharset(charset);
+			task.setDelimiter(format.equals("csv") ? DelimitedReader.CSV : DelimitedReader.TSV);
+			task.setHeader(header);
+			task.setBatchSize(batchSize);
+			task.setCommitInterval(commitInterval);
+			task.setWriterCount(writers);
+
+			// Cancel the import if we are interrupted (e.g. Ctrl-C)
+			Thread cancelHook = new Thread() {
+					public void run() {
+						task.cancel();
+						long deadline = System.currentTimeMillis() + CANCEL_TIMEOUT;
+						while(!task.isFinished() && System.currentTimeMillis() < deadline) {
+							try {
+								Thread.sleep(10);
+							} catch(InterruptedException e) {
+								return;
+							}
+						}
+					}
+				};
+			Runtime.getRuntime().addShutdownHook(cancelHook);
+
+			task.run();
+
+			try {
+				Runtime.getRuntime().removeShutdownHook(cancelHook);
+			} catch(IllegalStateException e) {
+				// Already shutting down
+			}
+
+			long elapsed = System.currentTimeMillis() - connected;
+			if(task.isCancelled()) {
+				System.err.println("Cancelled after " + elapsed + " ms");
+				if(task.getCommittedRows() != null)
+					System.err.println("Rows " + task.getCommittedRows() + " of the file remain in " + table);
+				return EXIT_CANCELLED;
+			}
+			if(task.hasError()) {
+				Exception e = task.getError();
+				System.err.println(e.getMessage());
+				return e instanceof IOException ? EXIT_INPUT_FAILED : EXIT_QUERY_FAILED;
+			}
+			long rows = task.getStatus() instanceof Long ? (Long) task.getStatus() : 0;
+			System.err.println(rows + " rows imported in " + elapsed + " ms"
+				+ (elapsed > 0 ? " (" + (rows * 1000 / elapsed) + " rows/s)" : ""));
+			return EXIT_OK;
+		} finally {
+			pool.close();
+		}
+	}
+
+	private RowSink createRowSink(FileChannel channel, Charset charset) {
+		if(format.equals("arrow")) {
+			ArrowRowSink sink = new ArrowRowSink(channel);
+			sink.setRowGroupSize(rowGroupSize);
+			sink.setDictionaryEncoding(dictionaryEncoding);
+			sink.setCompression(compression);
+			return sink;
+		}
+		char delimiter = format.equals("csv") ? DelimitedRowSink.CSV : DelimitedRowSink.TSV;
+		return new DelimitedRowSink(channel, charset, delimiter);
+	}
+
+	private static void rollback(Connection connection) {
+		if(connection == null)
+			return;
+		try {
+			connection.rollback();
+		} catch(SQLException e) { }
+	}
+}
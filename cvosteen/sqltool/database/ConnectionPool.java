@@ -0,0 +1,500 @@
+/**
+ * A small pool of open Connections for a single Database.
+ *
+ * Opening a connection to a remote server can take seconds, so
+ * connections are kept open once they are no longer needed and
+ * handed out again on the next request.  Idle connections are
+ * validated before they are handed out and closed after they have
+ * been idle for a while.
+ *
+ * The pool is configured with these Database settings:
+ *   poolMinSize      connections to keep open even when idle (0)
+ *   poolMaxSize      maximum connections open at once (16), not
+ *                    counting those borrowed with borrowForSession()
+ *   poolIdleTimeout  seconds before an idle connection is closed (300)
+ *   poolWaitTimeout  seconds to wait for a connection when the pool
+ *                    is at its maximum size (5)
+ *   poolPrewarm      "true" to open poolMinSize connections at startup
+ *
+ * Connections are given back with the autocommit, read only, transaction
+ * isolation, catalog and schema they were opened with, or closed if
+ * these cannot be restored, so that one borrower's settings never leak
+ * into the next.
+ *
+ * When the connection settings of a Database are changed, reset() must
+ * be called so that no connection made with the old settings is handed
+ * out again.
+ *
+ * The methods of this class may block while connections are opened
+ * or closed, so they should not be called on the GUI thread if it can
+ * be helped.
+ */
+package cvosteen.sqltool.database;
+
+import java.sql.*;
+import java.util.*;
+
+public class ConnectionPool {
+
+	private static final int VALIDATION_TIMEOUT = 5;
+	private static final long EVICTION_INTERVAL = 30000;
+
+	private static final Map<Database, ConnectionPool> pools = new IdentityHashMap<Database, ConnectionPool>();
+	private static final Timer evictionTimer = new Timer("SQLTool Connection Pool", true);
+
+	static {
+		evictionTimer.schedule(new TimerTask() {
+				public void run() {
+					for(ConnectionPool pool : getAllPools())
+						pool.evictIdleConnections();
+				}
+			}, EVICTION_INTERVAL, EVICTION_INTERVAL);
+	}
+
+	private final Database database;
+	private final LinkedList<IdleConnection> idle = new LinkedList<IdleConnection>();
+	private final Set<Connection> borrowed = Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>());
+	// Borrowed for a session, and not counted against poolMaxSize
+	private final Set<Connection> sessions = Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>());
+	// The state each connection was opened with, restored on release
+	private final Map<Connection, SessionState> openStates = new IdentityHashMap<Connection, SessionState>();
+	// Borrowed connections made before the last reset, to be closed
+	// rather than pooled when they are released
+	private final Set<Connection> expired = Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>());
+	private int opening = 0;
+	private int generation = 0;
+	private boolean closed = false;
+
+	/**
+	 * Returns the pool for the specified Database, creating it if needed.
+	 */
+	public static ConnectionPool getInstance(Database database) {
+		synchronized(pools) {
+			ConnectionPool pool = pools.get(database);
+			if(pool == null) {
+				pool = new ConnectionPool(database);
+				pools.put(database, pool);
+			}
+			return pool;
+		}
+	}
+
+	/**
+	 * Closes every pool.  Called when the application is exiting.
+	 */
+	public static void closeAll() {
+		for(ConnectionPool pool : getAllPools())
+			pool.close();
+		synchronized(pools) {
+			pools.clear();
+		}
+	}
+
+	/**
+	 * Closes the connections of the pool for the specified Database, if
+	 * there is one.  Called when the connection settings of the Database
+	 * have been changed.  Idle connections are closed at once, borrowed
+	 * ones when they are released, and new connections are made with
+	 * the new settings.
+	 */
+	public static void reset(Database database) {
+		ConnectionPool pool;
+		synchronized(pools) {
+			pool = pools.get(database);
+		}
+		if(pool != null)
+			pool.expireConnections();
+	}
+
+	/**
+	 * Closes and forgets the pool for the specified Database, if there
+	 * is one.  Called when the Database has been deleted.
+	 */
+	public static void remove(Database database) {
+		ConnectionPool pool;
+		synchronized(pools) {
+			pool = pools.remove(database);
+		}
+		if(pool != null)
+			pool.close();
+	}
+
+	private static List<ConnectionPool> getAllPools() {
+		synchronized(pools) {
+			return new ArrayList<ConnectionPool>(pools.values());
+		}
+	}
+
+	private ConnectionPool(Database database) {
+		this.database = database;
+	}
+
+	public Database getDatabase() {
+		return database;
+	}
+
+	/**
+	 * Returns an open Connection, either an idle one from the pool or a
+	 * newly opened one.  The Connection must be given back with release().
+	 */
+	public Connection borrow() throws SQLException, ClassNotFoundException {
+		return borrow(false);
+	}
+
+	/**
+	 * Returns an open Connection to be held for as long as a session
+	 * lasts, e.g. by an open database tab.  These are not counted
+	 * against poolMaxSize, so that opening many tabs neither blocks on
+	 * the pool nor leaves no connections for the tasks run from them.
+	 * The Connection must be given back with release().
+	 */
+	public Connection borrowForSession() throws SQLException, ClassNotFoundException {
+		return borrow(true);
+	}
+
+	private Connection borrow(boolean session) throws SQLException, ClassNotFoundException {
+		long deadline = System.currentTimeMillis() + 1000L * database.getIntSetting("poolWaitTimeout", 5);
+		while(true) {
+			IdleConnection candidate = null;
+			int openingGeneration;
+			synchronized(this) {
+				openingGeneration = generation;
+				if(closed)
+					throw new SQLException("The connection pool has been closed.");
+				if(!idle.isEmpty()) {
+					candidate = idle.removeLast();
+				} else if(session || getOpenCount() < getMaxSize()) {
+					// Connections for a session are not counted
+					if(!session)
+						opening++;
+				} else {
+					long wait = deadline - System.currentTimeMillis();
+					if(wait <= 0)
+						throw new SQLException("All " + getMaxSize() + " connections to " + database.getName() + " are in use.");
+					try {
+						wait(wait);
+					} catch(InterruptedException e) {
+						throw new SQLException("Interrupted waiting for a connection.", e);
+					}
+					continue;
+				}
+			}
+
+			if(candidate != null) {
+				// Idle connections may have been dropped by the server
+				if(isValid(candidate.connection)) {
+					synchronized(this) {
+						(session ? sessions : borrowed).add(candidate.connection);
+					}
+					return candidate.connection;
+				}
+				synchronized(this) {
+					openStates.remove(candidate.connection);
+				}
+				closeQuietly(candidate.connection);
+				continue;
+			}
+
+			// Open a new connection outside the lock, it may take a while
+			Connection connection = null;
+			SessionState state = null;
+			try {
+				connection = database.connect();
+				state = SessionState.read(connection);
+			} finally {
+				synchronized(this) {
+					if(!session)
+						opening--;
+					if(connection != null) {
+						(session ? sessions : borrowed).add(connection);
+						if(state != null)
+							openStates.put(connection, state);
+						// Made with the settings from before a reset
+						if(openingGeneration != generation)
+							expired.add(connection);
+					}
+					notifyAll();
+				}
+			}
+			return connection;
+		}
+	}
+
+	/**
+	 * Gives a borrowed Connection back to the pool.
+	 * Any uncommitted changes are rolled back, as they would be if the
+	 * Connection were closed, and the settings it was opened with are
+	 * restored.  If they cannot be, the Connection is closed instead.
+	 */
+	public void release(Connection connection) {
+		boolean wasExpired;
+		SessionState state;
+		synchronized(this) {
+			if(!borrowed.remove(connection) && !sessions.remove(connection))
+				return;
+			wasExpired = expired.remove(connection);
+			state = openStates.get(connection);
+		}
+
+		boolean reusable = false;
+		try {
+			if(!connection.isClosed() && state != null && !wasExpired) {
+				if(!connection.getAutoCommit())
+					connection.rollback();
+				reusable = state.restore(connection);
+			}
+		} catch(SQLException e) { }
+
+		synchronized(this) {
+			// Connections borrowed for a session are only kept if there
+			// is room for them under poolMaxSize
+			if(reusable && !closed && getOpenCount() < getMaxSize()) {
+				idle.addLast(new IdleConnection(connection));
+				notifyAll();
+				return;
+			}
+			openStates.remove(connection);
+			notifyAll();
+		}
+		closeQuietly(connection);
+	}
+
+	/**
+	 * Closes a borrowed Connection instead of giving it back to the pool,
+	 * e.g. because it is known to be broken.
+	 */
+	public void discard(Connection connection) {
+		synchronized(this) {
+			if(!borrowed.remove(connection) && !sessions.remove(connection))
+				return;
+			expired.remove(connection);
+			openStates.remove(connection);
+			notifyAll();
+		}
+		closeQuietly(connection);
+	}
+
+	/**
+	 * Opens connections until there are at least poolMinSize of them.
+	 */
+	public void prewarm() throws SQLException, ClassNotFoundException {
+		int needed;
+		synchronized(this) {
+			needed = getMinSize() - getOpenCount();
+		}
+		List<Connection> connections = new ArrayList<Connection>();
+		try {
+			for(int i = 0; i < needed; i++)
+				connections.add(borrow());
+		} finally {
+			for(Connection connection : connections)
+				release(connection);
+		}
+	}
+
+	/**
+	 * Closes connections which have been idle longer than poolIdleTimeout,
+	 * leaving at least poolMinSize connections open.
+	 */
+	public void evictIdleConnections() {
+		long cutoff = System.currentTimeMillis() - 1000L * database.getIntSetting("poolIdleTimeout", 300);
+		List<Connection> evicted = new ArrayList<Connection>();
+		synchronized(this) {
+			// The least recently released connections are at the front
+			Iterator<IdleConnection> iterator = idle.iterator();
+			while(iterator.hasNext() && getOpenCount() > getMinSize()) {
+				IdleConnection candidate = iterator.next();
+				if(candidate.idleSince >= cutoff)
+					break;
+				iterator.remove();
+				openStates.remove(candidate.connection);
+				evicted.add(candidate.connection);
+			}
+		}
+		for(Connection connection : evicted)
+			closeQuietly(connection);
+	}
+
+	/**
+	 * Closes all idle connections and marks the borrowed ones to be
+	 * closed when they are released, leaving the pool open.
+	 */
+	private void expireConnections() {
+		List<IdleConnection> connections;
+		synchronized(this) {
+			generation++;
+			expired.addAll(borrowed);
+			expired.addAll(sessions);
+			connections = new ArrayList<IdleConnection>(idle);
+			for(IdleConnection candidate : idle)
+				openStates.remove(candidate.connection);
+			idle.clear();
+			notifyAll();
+		}
+		for(IdleConnection candidate : connections)
+			closeQuietly(candidate.connection);
+	}
+
+	/**
+	 * Closes all idle connections.  Borrowed connections will be closed
+	 * when they are released.
+	 */
+	public void close() {
+		List<IdleConnection> connections;
+		synchronized(this) {
+			closed = true;
+			connections = new ArrayList<IdleConnection>(idle);
+			for(IdleConnection candidate : idle)
+				openStates.remove(candidate.connection);
+			idle.clear();
+			notifyAll();
+		}
+		for(IdleConnection candidate : connections)
+			closeQuietly(candidate.connection);
+	}
+
+	/**
+	 * Returns the number of connections open or being opened, not
+	 * counting those borrowed for a session.
+	 */
+	public synchronized int getOpenCount() {
+		return idle.size() + borrowed.size() + opening;
+	}
+
+	public synchronized int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * Returns the number of connections which could be borrowed right
+	 * now without waiting: the idle ones and those which could still
+	 * be opened.
+	 */
+	public synchronized int getAvailableCount() {
+		return idle.size() + Math.max(0, getMaxSize() - getOpenCount());
+	}
+
+	private int getMinSize() {
+		return Math.max(0, database.getIntSetting("poolMinSize", 0));
+	}
+
+	/**
+	 * Returns the most connections this pool will have open at once.
+	 */
+	public int getMaxSize() {
+		return Math.max(1, database.getIntSetting("poolMaxSize", 16));
+	}
+
+	private static boolean isValid(Connection connection) {
+		try {
+			return connection.isValid(VALIDATION_TIMEOUT);
+		} catch(AbstractMethodError e) {
+			// Pre JDBC 4 driver
+		} catch(SQLException e) {
+			// Not supported by this driver
+		}
+		try {
+			return !connection.isClosed();
+		} catch(SQLException e) {
+			return false;
+		}
+	}
+
+	private static void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch(SQLException e) { }
+	}
+
+	/**
+	 * The settings a connection was opened with.  The schema is only
+	 * known to JDBC 4.1 drivers, and is looked up by reflection so that
+	 * older Java versions can still run SQLTool.
+	 */
+	private static class SessionState {
+		boolean autoCommit;
+		boolean readOnly;
+		int isolation;
+		String catalog;
+		String schema;
+
+		static SessionState read(Connection connection) {
+			try {
+				SessionState state = new SessionState();
+				state.autoCommit = connection.getAutoCommit();
+				state.readOnly = connection.isReadOnly();
+				state.isolation = connection.getTransactionIsolation();
+				state.catalog = connection.getCatalog();
+				state.schema = getSchema(connection);
+				return state;
+			} catch(SQLException e) {
+				// Without it the connection cannot be reused
+				return null;
+			}
+		}
+
+		/**
+		 * Puts back any settings which have been changed, returning
+		 * whether they all now match.
+		 */
+		boolean restore(Connection connection) throws SQLException {
+			if(connection.getTransactionIsolation() != isolation)
+				connection.setTransactionIsolation(isolation);
+			if(connection.isReadOnly() != readOnly)
+				connection.setReadOnly(readOnly);
+			if(catalog != null && !catalog.equals(connection.getCatalog()))
+				connection.setCatalog(catalog);
+			if(schema != null && !schema.equals(getSchema(connection)))
+				setSchema(connection, schema);
+			if(connection.getAutoCommit() != autoCommit)
+				connection.setAutoCommit(autoCommit);
+			SessionState restored = read(connection);
+			return restored != null && restored.autoCommit == autoCommit
+					&& restored.readOnly == readOnly && restored.isolation == isolation
+					&& equal(restored.catalog, catalog) && equal(restored.schema, schema);
+		}
+
+		private static boolean equal(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+
+		private static String getSchema(Connection connection) throws SQLException {
+			try {
+				return (String) Connection.class.getMethod("getSchema").invoke(connection);
+			} catch(java.lang.reflect.InvocationTargetException e) {
+				// Not supported by this driver, or a pre JDBC 4.1
+				// driver throwing AbstractMethodError
+				if(e.getCause() instanceof SQLException && !(e.getCause() instanceof SQLFeatureNotSupportedException))
+					throw (SQLException) e.getCause();
+				return null;
+			} catch(Exception e) {
+				// Before Java 7
+				return null;
+			}
+		}
+
+		private static void setSchema(Connection connection, String schema) throws SQLException {
+			try {
+				Connection.class.getMethod("setSchema", String.class).invoke(connection, schema);
+			} catch(java.lang.reflect.InvocationTargetException e) {
+				if(e.getCause() instanceof SQLException)
+					throw (SQLException) e.getCause();
+				throw new SQLException("Could not restore the schema.", e.getCause());
+			} catch(Exception e) {
+				throw new SQLException("Could not restore the schema.", e);
+			}
+		}
+	}
+
+	/**
+	 * An idle connection and the time it was given back to the pool.
+	 */
+	private static class IdleConnection {
+		final Connection connection;
+		final long idleSince = System.currentTimeMillis();
+
+		IdleConnection(Connection connection) {
+			this.connection = connection;
+		}
+	}
+}
@@ -3,7 +3,10 @@
  * It merely holds database connection information, like
  * the connection url and the Driver.  It also holds
  * a collection of queries that are to be used with
- * the database.
+ * the database, and settings which tune how SQLTool
+ * itself works with the database.  Each query may have
+ * a time to live, for how long its results are cached,
+ * and named parameters (see ParameterizedSql).
  */
 package cvosteen.sqltool.database;
 
@@ -17,14 +20,20 @@ public class Database implements Serializable, Comparable<Database> {
 	private String driver;
 	private String connectionUrl;
 	private Properties properties;
+	private Properties settings;
 	private Map<String, String> queries;
+	private Map<String, Integer> queryTtls;
+	private Map<String, List<QueryParameter>> queryParameters;
 
 	public Database(String name, String driver, String connectionUrl) {
 		setName(name);
 		setDriver(driver);
 		setConnectionUrl(connectionUrl);
 		properties = new Properties();
+		settings = new Properties();
 		queries = new Hashtable<String, String>();
+		queryTtls = new Hashtable<String, Integer>();
+		queryParameters = new Hashtable<String, List<QueryParameter>>();
 	}
 
 	public String getName() {
@@ -67,6 +76,33 @@ public class Database implements Serializable, Comparable<Database> {
 	public Properties getProperties() {
 		return properties;
 	}
+
+	/**
+	 * Sets SQLTool settings for this database.
+	 * Unlike the properties, these are never passed to the driver.
+	 */
+	public void setSettings(Properties settings) {
+		this.settings = settings;
+	}
+
+	public Properties getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Returns the specified setting as an int, or the default value
+	 * if it is not set or not a number.
+	 */
+	public int getIntSetting(String key, int defaultValue) {
+		String value = settings.getProperty(key);
+		if(value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch(NumberFormatException e) {
+			return defaultValue;
+		}
+	}
 	
 	/**
 	 * Returns a list of tables in the from the database connection.
@@ -92,6 +128,26 @@ public class Database implements Serializable, Comparable<Database> {
 		return columnList;
 	}
 
+	/**
+	 * Returns the columns of every table in the database, keyed by table.
+	 * This takes a single metadata call rather than one per table.
+	 */
+	public static Map<String, List<String>> getAllColumns(Connection connection) throws SQLException {
+		Map<String, List<String>> columnMap = new HashMap<String, List<String>>();
+		ResultSet columns = connection.getMetaData().getColumns(null,null,"%",null);
+		while(columns.next()) {
+			String table = columns.getString(3);
+			List<String> columnList = columnMap.get(table);
+			if(columnList == null) {
+				columnList = new ArrayList<String>();
+				columnMap.put(table, columnList);
+			}
+			columnList.add(columns.getString(4));
+		}
+		columns.close();
+		return columnMap;
+	}
+
 	/**
 	 * Connects to the database.
 	 * Attempts to load the driver and connect to this instance's
@@ -132,6 +188,64 @@ public class Database implements Serializable, Comparable<Database> {
 	 */
 	public void deleteQuery(String name) {
 		queries.remove(name);
+		queryTtls.remove(name);
+		queryParameters.remove(name);
+	}
+
+	/**
+	 * Sets for how many seconds the results of the specified query
+	 * may be served from the ResultCache, or 0 to not cache them.
+	 */
+	public void setQueryTtl(String name, int seconds) {
+		if(seconds > 0)
+			queryTtls.put(name, seconds);
+		else
+			queryTtls.remove(name);
+	}
+
+	/**
+	 * Returns for how many seconds the results of the specified query
+	 * may be cached, or 0 if they are not cached.
+	 */
+	public int getQueryTtl(String name) {
+		if(name == null)
+			return 0;
+		Integer seconds = queryTtls.get(name);
+		return seconds == null ? 0 : seconds.intValue();
+	}
+
+	/**
+	 * Sets the types and default values of the named parameters of
+	 * the specified query.
+	 */
+	public void setQueryParameters(String name, List<QueryParameter> parameters) {
+		if(parameters == null || parameters.isEmpty())
+			queryParameters.remove(name);
+		else
+			queryParameters.put(name, new ArrayList<QueryParameter>(parameters));
+	}
+
+	/**
+	 * Returns the named parameters of the specified query, which may
+	 * be empty.
+	 */
+	public List<QueryParameter> getQueryParameters(String name) {
+		List<QueryParameter> parameters = name == null ? null : queryParameters.get(name);
+		if(parameters == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(parameters);
+	}
+
+	/**
+	 * Returns the specified parameter of the specified query, or null
+	 * if it has not been given a type.
+	 */
+	public QueryParameter getQueryParameter(String name, String parameterName) {
+		for(QueryParameter parameter : getQueryParameters(name)) {
+			if(parameter.getName().equals(parameterName))
+				return parameter;
+		}
+		return null;
 	}
 
 	/**
@@ -78,10 +78,18 @@ public class DatabaseXMLEncoder {
 	 *   <url>foo:bar:connection_string</url>
 	 *   <property name="user">foo</property>
 	 *   <property name="password">hunter2</property>
+	 *   <setting name="fetchSize">500</setting>
 	 *   <query name="Query One">SELECT * FROM Foo</query>
-	 *   <query name="Query Two">SELECT * FROM Bar</query>
+	 *   <query name="Query Two" ttl="600">SELECT * FROM Bar</query>
+	 *   <query name="Query Three">
+	 *     <sql>SELECT * FROM Baz WHERE id = :id</sql>
+	 *     <parameter name="id" type="integer">42</parameter>
+	 *   </query>
 	 *   ...
 	 * </database>
+	 * The ttl of a query is for how many seconds its results may be
+	 * cached, and is left out if they are not.  Only a query with
+	 * parameters has its SQL in a <sql> element.
 	 */
 	private Database readDatabase(Element elem) {
 		String name = elem.getAttribute("name");
@@ -107,15 +115,47 @@ public class DatabaseXMLEncoder {
 		}
 		d.setProperties(properties);
 
+		Properties settings = new Properties();
+		nl = elem.getElementsByTagName("setting");
+		for(int i = 0; i < nl.getLength(); i++) {
+			Element e = (Element) nl.item(i);
+			String key = e.getAttribute("name");
+			Node node = e.getFirstChild();
+			String value = "";
+			if(node != null)
+				value = e.getFirstChild().getNodeValue();
+			settings.setProperty(key, value);
+		}
+		d.setSettings(settings);
+
 		nl = elem.getElementsByTagName("query");
 		for(int i = 0; i < nl.getLength(); i++) {
 			Element e = (Element) nl.item(i);
 			String qname = e.getAttribute("name");
-			Node node = e.getFirstChild();
+			NodeList sqlList = e.getElementsByTagName("sql");
+			Node node = sqlList.getLength() > 0 ? sqlList.item(0).getFirstChild() : e.getFirstChild();
 			String qsql = "";
 			if(node != null)
-				qsql = e.getFirstChild().getNodeValue();
+				qsql = node.getNodeValue();
 			d.saveQuery(qname, qsql);
+
+			List<QueryParameter> parameters = new ArrayList<QueryParameter>();
+			NodeList pl = e.getElementsByTagName("parameter");
+			for(int j = 0; j < pl.getLength(); j++) {
+				Element p = (Element) pl.item(j);
+				String pname = p.getAttribute("name");
+				if(pname.length() == 0)
+					continue;
+				String pdefault = p.getFirstChild() == null ? null : p.getFirstChild().getNodeValue();
+				parameters.add(new QueryParameter(pname,
+					QueryParameter.getType(p.getAttribute("type")), pdefault));
+			}
+			d.setQueryParameters(qname, parameters);
+			try {
+				d.setQueryTtl(qname, Integer.parseInt(e.getAttribute("ttl")));
+			} catch(NumberFormatException ex) {
+				// No ttl, the results are not cached
+			}
 		}
 		return d;
 	}
@@ -180,9 +220,34 @@ public class DatabaseXMLEncoder {
 					((Element) e.getLastChild()).setAttribute("name", key);
 				}
 
+				Properties settings = db.getSettings();
+				for(String key : settings.stringPropertyNames()) {
+					setTextChild(e, "setting", settings.getProperty(key));
+					((Element) e.getLastChild()).setAttribute("name", key);
+				}
+
 				for(String query : db.getAllQueries()) {
-					setTextChild(e, "query", db.getQuerySql(query));
-					((Element) e.getLastChild()).setAttribute("name", query);
+					List<QueryParameter> parameters = db.getQueryParameters(query);
+					Element q;
+					if(parameters.isEmpty()) {
+						setTextChild(e, "query", db.getQuerySql(query));
+						q = (Element) e.getLastChild();
+					} else {
+						q = e.getOwnerDocument().createElement("query");
+						setTextChild(q, "sql", db.getQuerySql(query));
+						for(QueryParameter parameter : parameters) {
+							Element p = e.getOwnerDocument().createElement("parameter");
+							p.setAttribute("name", parameter.getName());
+							p.setAttribute("type", parameter.getTypeName());
+							if(parameter.getDefaultValue() != null)
+								p.appendChild(e.getOwnerDocument().createTextNode(parameter.getDefaultValue()));
+							q.appendChild(p);
+						}
+						e.appendChild(q);
+					}
+					q.setAttribute("name", query);
+					if(db.getQueryTtl(query) > 0)
+						q.setAttribute("ttl", "" + db.getQueryTtl(query));
 				}
 
 				elem.appendChild(e);
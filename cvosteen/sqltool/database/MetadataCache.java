@@ -0,0 +1,215 @@
+/**
+ * Caches the table and column names of a Database.
+ *
+ * Looking up metadata on a large schema can take a long time, so the
+ * names are kept here once they have been read.  They are considered
+ * stale after the number of seconds in the metadataTtl setting of the
+ * Database (one hour by default), or when invalidate() is called.
+ * Stale names are still returned until they are replaced, so the GUI
+ * always has something to show.
+ *
+ * If a snapshot directory has been set, the cache is saved there and
+ * read back the next time the application is started.
+ */
+package cvosteen.sqltool.database;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+
+public class MetadataCache {
+
+	private static final int SNAPSHOT_VERSION = 1;
+
+	private static final Map<Database, MetadataCache> caches = new IdentityHashMap<Database, MetadataCache>();
+	private static File snapshotDirectory = null;
+
+	private final Database database;
+	private List<String> tables = null;
+	private long tablesLoaded = 0;
+	private Map<String, List<String>> columns = new HashMap<String, List<String>>();
+
+	/**
+	 * Sets the directory snapshots are saved to, or null for no snapshots.
+	 */
+	public static void setSnapshotDirectory(File directory) {
+		snapshotDirectory = directory;
+	}
+
+	/**
+	 * Returns the cache for the specified Database, creating it (and
+	 * reading its snapshot, if any) if needed.
+	 */
+	public static MetadataCache getInstance(Database database) {
+		synchronized(caches) {
+			MetadataCache cache = caches.get(database);
+			if(cache == null) {
+				cache = new MetadataCache(database);
+				cache.loadSnapshot();
+				caches.put(database, cache);
+			}
+			return cache;
+		}
+	}
+
+	private MetadataCache(Database database) {
+		this.database = database;
+	}
+
+	/**
+	 * Returns the table names, or null if they have not been loaded.
+	 */
+	public synchronized List<String> getTables() {
+		return tables;
+	}
+
+	/**
+	 * Returns the column names of the specified table, or null if they
+	 * have not been loaded.
+	 */
+	public synchronized List<String> getColumns(String table) {
+		return columns.get(table);
+	}
+
+	/**
+	 * Returns wether or not the table names need to be (re)loaded.
+	 */
+	public synchronized boolean isStale() {
+		long ttl = 1000L * database.getIntSetting("metadataTtl", 3600);
+		return tables == null || System.currentTimeMillis() - tablesLoaded > ttl;
+	}
+
+	/**
+	 * Marks the cache as stale so that it will be reloaded.
+	 */
+	public synchronized void invalidate() {
+		tablesLoaded = 0;
+	}
+
+	/**
+	 * Reads the table names from the connection into this cache.
+	 */
+	public void loadTables(Connection connection) throws SQLException {
+		List<String> newTables = Collections.unmodifiableList(Database.getTables(connection));
+		synchronized(this) {
+			tables = newTables;
+			tablesLoaded = System.currentTimeMillis();
+			// Tables that have gone away don't need their columns any more
+			columns.keySet().retainAll(new HashSet<String>(newTables));
+		}
+	}
+
+	/**
+	 * Reads the column names of one table from the connection into this cache.
+	 */
+	public void loadColumns(Connection connection, String table) throws SQLException {
+		List<String> newColumns = Collections.unmodifiableList(Database.getColumns(connection, table));
+		synchronized(this) {
+			columns.put(table, newColumns);
+		}
+	}
+
+	/**
+	 * Reads the column names of every table from the connection into this cache.
+	 */
+	public void loadAllColumns(Connection connection) throws SQLException {
+		Map<String, List<String>> allColumns = Database.getAllColumns(connection);
+		Map<String, List<String>> newColumns = new HashMap<String, List<String>>();
+		for(Map.Entry<String, List<String>> entry : allColumns.entrySet())
+			newColumns.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+		synchronized(this) {
+			columns = newColumns;
+		}
+	}
+
+	/**
+	 * Saves this cache to the snapshot directory, if there is one.
+	 */
+	public void saveSnapshot() throws IOException {
+		File file = getSnapshotFile();
+		if(file == null)
+			return;
+		file.getParentFile().mkdirs();
+
+		List<String> snapshotTables;
+		Map<String, List<String>> snapshotColumns;
+		long snapshotLoaded;
+		synchronized(this) {
+			if(tables == null)
+				return;
+			snapshotTables = tables;
+			snapshotColumns = columns;
+			snapshotLoaded = tablesLoaded;
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeLong(snapshotLoaded);
+			out.writeInt(snapshotTables.size());
+			for(String table : snapshotTables) {
+				out.writeUTF(table);
+				List<String> tableColumns = snapshotColumns.get(table);
+				if(tableColumns == null) {
+					out.writeInt(-1);
+				} else {
+					out.writeInt(tableColumns.size());
+					for(String column : tableColumns)
+						out.writeUTF(column);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads this cache from the snapshot directory, if there is a snapshot.
+	 * A missing or unreadable snapshot just leaves the cache empty.
+	 */
+	private void loadSnapshot() {
+		File file = getSnapshotFile();
+		if(file == null || !file.exists())
+			return;
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if(in.readInt() != SNAPSHOT_VERSION)
+					return;
+				long snapshotLoaded = in.readLong();
+				int tableCount = in.readInt();
+				List<String> snapshotTables = new ArrayList<String>(tableCount);
+				Map<String, List<String>> snapshotColumns = new HashMap<String, List<String>>();
+				for(int i = 0; i < tableCount; i++) {
+					String table = in.readUTF();
+					snapshotTables.add(table);
+					int columnCount = in.readInt();
+					if(columnCount >= 0) {
+						List<String> tableColumns = new ArrayList<String>(columnCount);
+						for(int j = 0; j < columnCount; j++)
+							tableColumns.add(in.readUTF());
+						snapshotColumns.put(table, Collections.unmodifiableList(tableColumns));
+					}
+				}
+				synchronized(this) {
+					tables = Collections.unmodifiableList(snapshotTables);
+					tablesLoaded = snapshotLoaded;
+					columns = snapshotColumns;
+				}
+			} finally {
+				in.close();
+			}
+		} catch(IOException e) {
+			// Ignore it, the metadata will just be read from the database
+		}
+	}
+
+	private File getSnapshotFile() {
+		if(snapshotDirectory == null)
+			return null;
+		// Database names can contain anything, keep the file name safe
+		String name = database.getName().replaceAll("[^A-Za-z0-9_\\-]", "_");
+		return new File(snapshotDirectory, "metadata-" + name + ".dat");
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * SQL with named parameters, e.g.
+ *   SELECT * FROM Orders WHERE customer = :customer AND placed >= :since
+ *
+ * Each :name outside of quotes and comments is replaced by a JDBC ?
+ * placeholder.  The same name may be used more than once, and is then
+ * bound to each of its placeholders.  Casts (::) and assignments (:=)
+ * are left alone, as are array slices and bracketed identifiers
+ * ([1:n]) and references to a record such as Oracle's :new.column.
+ *
+ * Other SQL uses :name for itself too, e.g. PL/SQL bind variables, so
+ * callers only look for parameters where the user has asked for them:
+ * in saved queries which declare parameters, or when turned on.
+ *
+ * Binding values rather than pasting them into the SQL means every run
+ * of the query is the same statement, so the server can reuse its plan
+ * and the StatementCache can reuse the PreparedStatement.
+ */
+package cvosteen.sqltool.database;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+
+public class ParameterizedSql {
+
+	private final String sql;
+	// The name bound to each placeholder, in order
+	private final List<String> placeholders;
+
+	private ParameterizedSql(String sql, List<String> placeholders) {
+		this.sql = sql;
+		this.placeholders = placeholders;
+	}
+
+	/**
+	 * Finds the named parameters in the SQL.
+	 */
+	public static ParameterizedSql parse(String text) {
+		StringBuilder sql = new StringBuilder(text.length());
+		List<String> placeholders = new ArrayList<String>();
+		int length = text.length();
+		int i = 0;
+		while(i < length) {
+			char c = text.charAt(i);
+			int end = i + 1;
+			if(c == '\'' || c == '"' || c == '`' || c == '[') {
+				// Quoted, a doubled quote just ends and restarts it
+				end = text.indexOf(c == '[' ? ']' : c, i + 1);
+				end = end < 0 ? length : end + 1;
+			} else if(c == '-' && i + 1 < length && text.charAt(i + 1) == '-') {
+				end = text.indexOf('\n', i);
+				end = end < 0 ? length : end;
+			} else if(c == '/' && i + 1 < length && text.charAt(i + 1) == '*') {
+				end = text.indexOf("*/", i + 2);
+				end = end < 0 ? length : end + 2;
+			} else if(c == ':' && i + 1 < length && isNameStart(text.charAt(i + 1)) &&
+					(i == 0 || text.charAt(i - 1) != ':')) {
+				end = i + 2;
+				while(end < length && isNamePart(text.charAt(end)))
+					end++;
+				if(end < length && text.charAt(end) == '.') {
+					sql.append(text, i, end);
+					i = end;
+					continue;
+				}
+				placeholders.add(text.substring(i + 1, end));
+				sql.append('?');
+				i = end;
+				continue;
+			}
+			sql.append(text, i, end);
+			i = end;
+		}
+		return new ParameterizedSql(sql.toString(), Collections.unmodifiableList(placeholders));
+	}
+
+	private static boolean isNameStart(char c) {
+		return Character.isLetter(c) || c == '_';
+	}
+
+	private static boolean isNamePart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	/**
+	 * Returns the SQL with ? placeholders, ready to be prepared.
+	 */
+	public String getSql() {
+		return sql;
+	}
+
+	public boolean hasParameters() {
+		return !placeholders.isEmpty();
+	}
+
+	/**
+	 * Returns the names of the parameters, each once, in the order
+	 * they first appear.
+	 */
+	public List<String> getNames() {
+		return new ArrayList<String>(new LinkedHashSet<String>(placeholders));
+	}
+
+	/**
+	 * Returns the value to bind to each placeholder, in order, given
+	 * the value of each parameter by name.
+	 */
+	public List<Object> getValues(Map<String, ?> values) {
+		List<Object> list = new ArrayList<Object>(placeholders.size());
+		for(String name : placeholders)
+			list.add(values.get(name));
+		return list;
+	}
+
+	/**
+	 * Binds the values to the placeholders of the statement, in order,
+	 * using the setter for the type of each value.
+	 */
+	public static void bind(PreparedStatement statement, List<?> values) throws SQLException {
+		for(int i = 0; i < values.size(); i++) {
+			int index = i + 1;
+			Object value = values.get(i);
+			if(value == null) {
+				statement.setNull(index, getParameterType(statement, index));
+			} else if(value instanceof String) {
+				statement.setString(index, (String) value);
+			} else if(value instanceof Long) {
+				statement.setLong(index, ((Long) value).longValue());
+			} else if(value instanceof Integer) {
+				statement.setInt(index, ((Integer) value).intValue());
+			} else if(value instanceof BigDecimal) {
+				statement.setBigDecimal(index, (BigDecimal) value);
+			} else if(value instanceof Double) {
+				statement.setDouble(index, ((Double) value).doubleValue());
+			} else if(value instanceof Boolean) {
+				statement.setBoolean(index, ((Boolean) value).booleanValue());
+			} else if(value instanceof java.sql.Date) {
+				statement.setDate(index, (java.sql.Date) value);
+			} else if(value instanceof Timestamp) {
+				statement.setTimestamp(index, (Timestamp) value);
+			} else if(value instanceof Time) {
+				statement.setTime(index, (Time) value);
+			} else {
+				statement.setObject(index, value);
+			}
+		}
+	}
+
+	/**
+	 * Returns the SQL type of a placeholder, for binding NULL to it.
+	 * Not every driver knows, so VARCHAR is assumed.
+	 */
+	private static int getParameterType(PreparedStatement statement, int index) {
+		try {
+			return statement.getParameterMetaData().getParameterType(index);
+		} catch(Exception e) {
+			// Includes SQLFeatureNotSupportedException
+			return Types.VARCHAR;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * A named parameter of a saved query, e.g. :customer_id, with the type
+ * its value is bound as and the value it defaults to.
+ */
+package cvosteen.sqltool.database;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.sql.*;
+
+public class QueryParameter implements Serializable {
+
+	// Parameter types
+	public static final int STRING = 0;
+	public static final int INTEGER = 1;
+	public static final int DECIMAL = 2;
+	public static final int DATE = 3;
+	public static final int TIMESTAMP = 4;
+	public static final int BOOLEAN = 5;
+
+	// The names of the types, as saved in the XML file
+	public static final String[] TYPE_NAMES = { "string", "integer", "decimal", "date", "timestamp", "boolean" };
+
+	private final String name;
+	private final int type;
+	private final String defaultValue;
+
+	/**
+	 * Creates a parameter.  The default value may be null.
+	 */
+	public QueryParameter(String name, int type, String defaultValue) {
+		if(name == null || name.length() == 0)
+			throw new NullPointerException("You must specify a name!");
+		if(type < 0 || type >= TYPE_NAMES.length)
+			throw new IllegalArgumentException("Unknown parameter type: " + type);
+		this.name = name;
+		this.type = type;
+		this.defaultValue = defaultValue;
+	}
+
+	/**
+	 * Returns the type with the specified name, or STRING if there is
+	 * no such type.
+	 */
+	public static int getType(String typeName) {
+		for(int i = 0; i < TYPE_NAMES.length; i++) {
+			if(TYPE_NAMES[i].equalsIgnoreCase(typeName))
+				return i;
+		}
+		return STRING;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public String getTypeName() {
+		return TYPE_NAMES[type];
+	}
+
+	public String getDefaultValue() {
+		return defaultValue;
+	}
+
+	/**
+	 * Converts text entered by the user to a value of this parameter's
+	 * type.  Null, or blank text for anything but a string, is NULL.
+	 * Dates are yyyy-mm-dd and timestamps yyyy-mm-dd hh:mm:ss.
+	 */
+	public Object parse(String text) {
+		if(text == null)
+			return null;
+		if(type == STRING)
+			return text;
+		String trimmed = text.trim();
+		if(trimmed.length() == 0)
+			return null;
+		try {
+			switch(type) {
+				case INTEGER:
+					return Long.valueOf(trimmed);
+				case DECIMAL:
+					return new BigDecimal(trimmed);
+				case DATE:
+					return Date.valueOf(trimmed);
+				case TIMESTAMP:
+					// A date alone is midnight
+					if(trimmed.indexOf(' ') < 0)
+						return new Timestamp(Date.valueOf(trimmed).getTime());
+					return Timestamp.valueOf(trimmed);
+				case BOOLEAN:
+					if(trimmed.equalsIgnoreCase("true") || trimmed.equalsIgnoreCase("yes") || trimmed.equals("1"))
+						return Boolean.TRUE;
+					if(trimmed.equalsIgnoreCase("false") || trimmed.equalsIgnoreCase("no") || trimmed.equals("0"))
+						return Boolean.FALSE;
+					break;
+			}
+		} catch(IllegalArgumentException e) {
+			// Includes NumberFormatException
+		}
+		throw new IllegalArgumentException("\"" + text + "\" is not a valid " +
+			getTypeName() + " for :" + name + ".");
+	}
+
+	/**
+	 * Allows this object to print a human-friendly name when needed.
+	 */
+	public String toString() {
+		return ":" + name;
+	}
+}
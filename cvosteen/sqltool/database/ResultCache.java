@@ -0,0 +1,417 @@
+/**
+ * Caches the results of queries run against a Database.
+ *
+ * Results are keyed by the name of the Database, the SQL with its
+ * whitespace normalized and any parameters bound to it.  Whether the
+ * results of a query are cached at all, and for how long, is up to
+ * the caller, normally going by the ttl saved with the query.
+ *
+ * The most recently used results are kept in memory, up to the number
+ * of megabytes in the resultCacheMemory setting of the Database (32
+ * by default).  Each is charged the heap of its pages in memory and
+ * SPILLED_PAGE_BYTES for each page spilled to disk.  If the resultCacheDisk setting is true, results are
+ * also written to the cache directory, up to resultCacheDiskSize
+ * megabytes (256 by default), so they survive a restart.
+ *
+ * The cached ResultStores are shared with whoever gets them, see
+ * ResultStore.retain().
+ */
+package cvosteen.sqltool.database;
+
+import cvosteen.sqltool.result.*;
+import cvosteen.sqltool.task.*;
+import java.io.*;
+import java.security.*;
+import java.util.*;
+
+public class ResultCache {
+
+	private static final int FILE_VERSION = 2;
+	private static final long MEGABYTE = 1024 * 1024;
+	// A spilled page takes no heap until it is read back in, but it
+	// holds on to a temporary file and its mapping
+	private static final long SPILLED_PAGE_BYTES = 64 * 1024;
+
+	private static final Map<Database, ResultCache> caches = new IdentityHashMap<Database, ResultCache>();
+	private static File cacheDirectory = null;
+
+	private final Database database;
+	// Results in memory, least recently used first
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long bytes = 0;
+
+	/**
+	 * Sets the directory results are written to, or null for no
+	 * on-disk cache.
+	 */
+	public static void setCacheDirectory(File directory) {
+		cacheDirectory = directory;
+	}
+
+	/**
+	 * Returns the cache for the specified Database, creating it if needed.
+	 */
+	public static ResultCache getInstance(Database database) {
+		synchronized(caches) {
+			ResultCache cache = caches.get(database);
+			if(cache == null) {
+				cache = new ResultCache(database);
+				caches.put(database, cache);
+			}
+			return cache;
+		}
+	}
+
+	private ResultCache(Database database) {
+		this.database = database;
+	}
+
+	/**
+	 * Forgets every cached result in memory, closing their stores so
+	 * their spill files are deleted.  Called when the application is
+	 * exiting.
+	 */
+	public static void closeAll() {
+		List<ResultCache> all;
+		synchronized(caches) {
+			all = new ArrayList<ResultCache>(caches.values());
+			caches.clear();
+		}
+		for(ResultCache cache : all)
+			cache.clear();
+	}
+
+	/**
+	 * Returns the cached results of the SQL with the specified
+	 * parameters, or null if there are none younger than maxAge
+	 * milliseconds.  The caller must close() the store of the returned
+	 * Entry when it is done with it.
+	 *
+	 * This may read the results from disk, so should not be called on
+	 * the event dispatch thread.
+	 */
+	public Entry get(String sql, List<?> parameters, long maxAge) {
+		String key = createKey(sql, parameters);
+		synchronized(this) {
+			Entry entry = entries.get(key);
+			if(entry != null) {
+				if(entry.getAge() <= maxAge) {
+					entry.getStore().retain();
+					return entry;
+				}
+				remove(key);
+			}
+		}
+
+		Entry entry = readEntry(key, maxAge);
+		if(entry == null)
+			return null;
+		entry.getStore().retain();
+		synchronized(this) {
+			add(key, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Caches the results of the SQL with the specified parameters.
+	 * The store must be complete, nothing may be appended to it after
+	 * this.
+	 */
+	public void put(String sql, List<?> parameters, ResultStore store) {
+		final String key = createKey(sql, parameters);
+		final Entry entry = new Entry(store, System.currentTimeMillis());
+		boolean disk = isDiskEnabled();
+		store.retain();
+		if(disk)
+			store.retain();
+		synchronized(this) {
+			remove(key);
+			add(key, entry);
+		}
+
+		if(disk) {
+			// Write it out in the background, the results can be used
+			// in the meantime
+			TaskExecutor.execute(new Runnable() {
+					public void run() {
+						try {
+							writeEntry(key, entry);
+						} catch(IOException e) {
+							// It just won't be cached on disk
+						} finally {
+							entry.getStore().close();
+						}
+					}
+				});
+		}
+	}
+
+	/**
+	 * Forgets the cached results of the SQL with the specified
+	 * parameters, if there are any.
+	 */
+	public void invalidate(String sql, List<?> parameters) {
+		String key = createKey(sql, parameters);
+		synchronized(this) {
+			remove(key);
+		}
+		File file = getFile(key);
+		if(file != null)
+			file.delete();
+	}
+
+	/**
+	 * Forgets every cached result in memory.  Results on disk are kept.
+	 */
+	public synchronized void clear() {
+		for(Entry entry : entries.values())
+			entry.getStore().close();
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Returns the SQL with runs of whitespace outside of quotes made
+	 * into a single space, and without a trailing semicolon, so that
+	 * reformatting a query does not miss the cache.
+	 */
+	public static String normalize(String sql) {
+		StringBuilder normalized = new StringBuilder(sql.length());
+		char quote = 0;
+		boolean space = false;
+		for(int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if(quote != 0) {
+				normalized.append(c);
+				if(c == quote)
+					quote = 0;
+			} else if(Character.isWhitespace(c)) {
+				space = true;
+			} else {
+				if(space && normalized.length() > 0)
+					normalized.append(' ');
+				space = false;
+				normalized.append(c);
+				if(c == '\'' || c == '"' || c == '`')
+					quote = c;
+			}
+		}
+		while(quote == 0 && normalized.length() > 0 && normalized.charAt(normalized.length() - 1) == ';')
+			normalized.setLength(normalized.length() - 1);
+		return normalized.toString().trim();
+	}
+
+	private String createKey(String sql, List<?> parameters) {
+		StringBuilder key = new StringBuilder();
+		key.append(database.getName()).append('\n').append(normalize(sql));
+		if(parameters != null) {
+			for(Object parameter : parameters) {
+				key.append('\n');
+				if(parameter == null)
+					key.append("NULL");
+				else
+					key.append(parameter.getClass().getName()).append(':').append(parameter);
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Adds an entry to memory, dropping the least recently used
+	 * entries until it fits.  An entry too big to fit at all is not
+	 * kept in memory.
+	 */
+	private void add(String key, Entry entry) {
+		long limit = MEGABYTE * database.getIntSetting("resultCacheMemory", 32);
+		if(entry.getBytes() > limit) {
+			entry.getStore().close();
+			return;
+		}
+		entries.put(key, entry);
+		bytes += entry.getBytes();
+		Iterator<Entry> iterator = entries.values().iterator();
+		while(bytes > limit && iterator.hasNext()) {
+			Entry oldest = iterator.next();
+			bytes -= oldest.getBytes();
+			oldest.getStore().close();
+			iterator.remove();
+		}
+	}
+
+	private void remove(String key) {
+		Entry entry = entries.remove(key);
+		if(entry != null) {
+			bytes -= entry.getBytes();
+			entry.getStore().close();
+		}
+	}
+
+	private boolean isDiskEnabled() {
+		return cacheDirectory != null &&
+			Boolean.parseBoolean(database.getSettings().getProperty("resultCacheDisk"));
+	}
+
+	/**
+	 * Returns the file the results with the specified key are written
+	 * to, or null if there is no on-disk cache.
+	 */
+	private File getFile(String key) {
+		if(!isDiskEnabled())
+			return null;
+		StringBuilder name = new StringBuilder();
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+			for(byte b : digest)
+				name.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+		} catch(Exception e) {
+			// Every JVM has SHA-1 and UTF-8
+			throw new IllegalStateException(e);
+		}
+		return new File(getDirectory(), name + ".dat");
+	}
+
+	private File getDirectory() {
+		// Database names can contain anything, keep the file name safe
+		String name = database.getName().replaceAll("[^A-Za-z0-9_\\-]", "_");
+		return new File(cacheDirectory, "results-" + name);
+	}
+
+	/**
+	 * Reads the results with the specified key from disk, or returns
+	 * null if they are not there, are too old, or cannot be read.
+	 */
+	private Entry readEntry(String key, long maxAge) {
+		File file = getFile(key);
+		if(file == null || !file.exists())
+			return null;
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if(in.readInt() != FILE_VERSION || !readString(in).equals(key))
+					return null;
+				long created = in.readLong();
+				if(System.currentTimeMillis() - created > maxAge) {
+					in.close();
+					file.delete();
+					return null;
+				}
+				Entry entry = new Entry(ResultStore.read(in), created);
+				// Keep the most recently used files when trimming
+				file.setLastModified(System.currentTimeMillis());
+				return entry;
+			} finally {
+				in.close();
+			}
+		} catch(IOException e) {
+			// Ignore it, the query will just be run
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the results to disk, then deletes the least recently used
+	 * files until the cache is back under its size.
+	 */
+	private void writeEntry(String key, Entry entry) throws IOException {
+		File file = getFile(key);
+		if(file == null)
+			return;
+		File directory = file.getParentFile();
+		directory.mkdirs();
+
+		// Write to a temporary file first so that a half written file
+		// is never read
+		File temp = new File(directory, file.getName() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeInt(FILE_VERSION);
+			writeString(out, key);
+			out.writeLong(entry.getCreated());
+			entry.getStore().write(out);
+		} finally {
+			out.close();
+		}
+		file.delete();
+		if(!temp.renameTo(file)) {
+			temp.delete();
+			return;
+		}
+
+		File[] files = directory.listFiles(new FilenameFilter() {
+				public boolean accept(File dir, String name) {
+					return name.endsWith(".dat");
+				}
+			});
+		if(files == null)
+			return;
+		Arrays.sort(files, new Comparator<File>() {
+				public int compare(File f1, File f2) {
+					return f1.lastModified() < f2.lastModified() ? 1 :
+						f1.lastModified() > f2.lastModified() ? -1 : 0;
+				}
+			});
+		long limit = MEGABYTE * database.getIntSetting("resultCacheDiskSize", 256);
+		long total = 0;
+		for(File f : files) {
+			total += f.length();
+			if(total > limit)
+				f.delete();
+		}
+	}
+
+	// SQL can be longer than writeUTF() allows
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		out.writeInt(s.length());
+		out.writeChars(s);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if(length < 0 || length > 16 * MEGABYTE)
+			throw new IOException("Not a cache file.");
+		char[] chars = new char[length];
+		for(int i = 0; i < length; i++)
+			chars[i] = in.readChar();
+		return new String(chars);
+	}
+
+	/**
+	 * Cached results and when they were read from the database.
+	 */
+	public static class Entry {
+		private final ResultStore store;
+		private final long created;
+		private final long bytes;
+
+		private Entry(ResultStore store, long created) {
+			this.store = store;
+			this.created = created;
+			this.bytes = store.estimateBytes() + SPILLED_PAGE_BYTES * store.getSpilledPageCount();
+		}
+
+		public ResultStore getStore() {
+			return store;
+		}
+
+		/**
+		 * Returns when the results were read from the database.
+		 */
+		public long getCreated() {
+			return created;
+		}
+
+		/**
+		 * Returns how many milliseconds ago the results were read from
+		 * the database.
+		 */
+		public long getAge() {
+			return System.currentTimeMillis() - created;
+		}
+
+		private long getBytes() {
+			return bytes;
+		}
+	}
+}
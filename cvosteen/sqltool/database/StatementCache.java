@@ -0,0 +1,140 @@
+/**
+ * Keeps the PreparedStatements of a Connection open for reuse.
+ *
+ * Preparing a statement can mean a round trip to the server to parse
+ * and plan it, so a statement that has been run is kept here, keyed by
+ * its SQL, instead of being closed.  Running the same SQL again then
+ * reuses it.  At most maxSize idle statements are kept, the least
+ * recently used are closed first.
+ *
+ * A statement is taken out of the cache while it is in use, so two
+ * tasks never share one.  Statements which were cancelled or failed
+ * should be discarded rather than released, since the driver may have
+ * left them in any state.
+ */
+package cvosteen.sqltool.database;
+
+import java.sql.*;
+import java.util.*;
+
+public class StatementCache {
+
+	private final Connection connection;
+	private final int maxSize;
+	// Idle statements, least recently used first
+	private final LinkedHashMap<String, PreparedStatement> idle =
+			new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+	// The SQL of the statements in use
+	private final Map<PreparedStatement, String> inUse =
+			new IdentityHashMap<PreparedStatement, String>();
+	private long hits = 0;
+	private long misses = 0;
+	private boolean closed = false;
+
+	public StatementCache(Connection connection, int maxSize) {
+		this.connection = connection;
+		this.maxSize = Math.max(0, maxSize);
+	}
+
+	/**
+	 * Returns a statement for the SQL, reusing an idle one if there is
+	 * one.  It must be given back with release() or discard().
+	 */
+	public synchronized PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement statement = idle.remove(sql);
+		if(statement != null && isClosed(statement))
+			statement = null;
+		if(statement != null) {
+			hits++;
+		} else {
+			misses++;
+			statement = connection.prepareStatement(sql);
+		}
+		inUse.put(statement, sql);
+		return statement;
+	}
+
+	/**
+	 * Gives a statement back to be reused.  Statements that cannot be
+	 * reset, or that do not fit, are closed.
+	 */
+	public synchronized void release(PreparedStatement statement) {
+		String sql = inUse.remove(statement);
+		if(sql == null || closed || maxSize == 0) {
+			close(statement);
+			return;
+		}
+		try {
+			statement.clearParameters();
+		} catch(SQLException e) {
+			close(statement);
+			return;
+		}
+
+		PreparedStatement previous = idle.put(sql, statement);
+		if(previous != null)
+			close(previous);
+		Iterator<PreparedStatement> iterator = idle.values().iterator();
+		while(idle.size() > maxSize && iterator.hasNext()) {
+			close(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Closes a statement instead of giving it back.
+	 */
+	public synchronized void discard(PreparedStatement statement) {
+		inUse.remove(statement);
+		close(statement);
+	}
+
+	/**
+	 * Returns the number of times an idle statement was reused.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of times a statement had to be prepared.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of idle statements.
+	 */
+	public synchronized int getSize() {
+		return idle.size();
+	}
+
+	/**
+	 * Closes every idle statement.  Statements in use are closed when
+	 * they are given back.  The connection itself is left open.
+	 */
+	public synchronized void close() {
+		closed = true;
+		for(PreparedStatement statement : idle.values())
+			close(statement);
+		idle.clear();
+	}
+
+	private static boolean isClosed(PreparedStatement statement) {
+		try {
+			return statement.isClosed();
+		} catch(SQLException e) {
+			return true;
+		} catch(AbstractMethodError e) {
+			// A JDBC 3 driver, assume it is still open
+			return false;
+		}
+	}
+
+	private static void close(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch(SQLException e) { }
+	}
+}
@@ -0,0 +1,446 @@
+/**
+ * A JDBC driver which makes up its results, for load testing SQLTool
+ * itself without a database server.  Use the driver class
+ * cvosteen.sqltool.database.SyntheticDriver with a URL like
+ *   jdbc:sqltool-synth:rows=10000000;columns=int,varchar(200),double;latency=5
+ *
+ * The settings, separated by semicolons, are:
+ *   rows           rows in every result set (1000)
+ *   columns        the column types, any of int, bigint, double, decimal,
+ *                  varchar(width), char(width), date, timestamp and boolean
+ *                  (int,varchar(20),double,timestamp)
+ *   nulls          the fraction of values which are NULL (0)
+ *   latency        microseconds it takes to produce each row (0)
+ *   roundTrip      milliseconds each fetch of fetchSize rows waits, as
+ *                  over a slow link (0)
+ *   executeLatency milliseconds a statement takes to execute (0)
+ *   cancel         what Statement.cancel does: normal, ignore or
+ *                  unsupported (normal)
+ *   cancelDelay    milliseconds before a cancel takes effect (0)
+ *   updateCount    the update count of anything but a query (1)
+ * Settings can also be given as connection properties, those in the
+ * URL win.
+ *
+ * Every statement starting with SELECT or WITH returns the same rows,
+ * anything else only an update count.  The values depend only on the
+ * row and column, so runs can be compared.  The connection has a
+ * single table, SYNTH, with the columns of the result sets.
+ */
+package cvosteen.sqltool.database;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import java.util.logging.Logger;
+
+public class SyntheticDriver implements Driver {
+
+	public static final String URL_PREFIX = "jdbc:sqltool-synth:";
+
+	static {
+		try {
+			DriverManager.registerDriver(new SyntheticDriver());
+		} catch(SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public boolean acceptsURL(String url) {
+		return url != null && url.startsWith(URL_PREFIX);
+	}
+
+	public Connection connect(String url, Properties info) throws SQLException {
+		if(!acceptsURL(url))
+			return null;
+		Properties settings = new Properties();
+		if(info != null) {
+			for(String name : info.stringPropertyNames())
+				settings.setProperty(name.toLowerCase(), info.getProperty(name));
+		}
+		for(String setting : url.substring(URL_PREFIX.length()).split(";")) {
+			int equals = setting.indexOf('=');
+			if(equals > 0)
+				settings.setProperty(setting.substring(0, equals).trim().toLowerCase(),
+					setting.substring(equals + 1).trim());
+			else if(setting.trim().length() > 0)
+				throw new SQLException("Invalid setting \"" + setting + "\" in " + url);
+		}
+		return (Connection) proxy(Connection.class, new ConnectionHandler(new Settings(settings)));
+	}
+
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	public Logger getParentLogger() {
+		return Logger.getLogger(getClass().getName());
+	}
+
+	/**
+	 * The settings of a connection.
+	 */
+	static class Settings {
+		static final int CANCEL_NORMAL = 0;
+		static final int CANCEL_IGNORE = 1;
+		static final int CANCEL_UNSUPPORTED = 2;
+
+		final long rows;
+		final String[] columnNames;
+		final int[] columnTypes;
+		final int[] columnWidths;
+		final double nulls;
+		final long rowLatencyNanos;
+		final long roundTripMillis;
+		final long executeLatencyMillis;
+		final int cancel;
+		final long cancelDelayMillis;
+		final int updateCount;
+
+		Settings(Properties settings) throws SQLException {
+			try {
+				rows = Long.parseLong(settings.getProperty("rows", "1000"));
+				nulls = Double.parseDouble(settings.getProperty("nulls", "0"));
+				rowLatencyNanos = 1000L * Long.parseLong(settings.getProperty("latency", "0"));
+				roundTripMillis = Long.parseLong(settings.getProperty("roundtrip", "0"));
+				executeLatencyMillis = Long.parseLong(settings.getProperty("executelatency", "0"));
+				cancelDelayMillis = Long.parseLong(settings.getProperty("canceldelay", "0"));
+				updateCount = Integer.parseInt(settings.getProperty("updatecount", "1"));
+			} catch(NumberFormatException e) {
+				throw new SQLException("Invalid number: " + e.getMessage());
+			}
+
+			String cancelName = settings.getProperty("cancel", "normal");
+			if(cancelName.equalsIgnoreCase("normal"))
+				cancel = CANCEL_NORMAL;
+			else if(cancelName.equalsIgnoreCase("ignore"))
+				cancel = CANCEL_IGNORE;
+			else if(cancelName.equalsIgnoreCase("unsupported"))
+				cancel = CANCEL_UNSUPPORTED;
+			else
+				throw new SQLException("Unknown cancel behavior: " + cancelName);
+
+			String[] columns = settings.getProperty("columns", "int,varchar(20),double,timestamp").split(",");
+			columnNames = new String[columns.length];
+			columnTypes = new int[columns.length];
+			columnWidths = new int[columns.length];
+			for(int i = 0; i < columns.length; i++) {
+				String column = columns[i].trim().toLowerCase();
+				int width = 20;
+				int paren = column.indexOf('(');
+				if(paren > 0 && column.endsWith(")")) {
+					try {
+						width = Integer.parseInt(column.substring(paren + 1, column.length() - 1).trim());
+					} catch(NumberFormatException e) {
+						throw new SQLException("Invalid column width: " + columns[i]);
+					}
+					column = column.substring(0, paren).trim();
+				}
+				columnTypes[i] = getType(column);
+				columnWidths[i] = width;
+				columnNames[i] = column.toUpperCase() + "_" + (i + 1);
+			}
+		}
+
+		private static int getType(String name) throws SQLException {
+			if(name.equals("int") || name.equals("integer"))
+				return Types.INTEGER;
+			if(name.equals("bigint"))
+				return Types.BIGINT;
+			if(name.equals("double"))
+				return Types.DOUBLE;
+			if(name.equals("decimal"))
+				return Types.DECIMAL;
+			if(name.equals("varchar"))
+				return Types.VARCHAR;
+			if(name.equals("char"))
+				return Types.CHAR;
+			if(name.equals("date"))
+				return Types.DATE;
+			if(name.equals("timestamp"))
+				return Types.TIMESTAMP;
+			if(name.equals("boolean"))
+				return Types.BOOLEAN;
+			throw new SQLException("Unknown column type: " + name);
+		}
+	}
+
+	private static class ConnectionHandler implements InvocationHandler {
+		private final Settings settings;
+		private boolean closed = false;
+		private boolean autoCommit = true;
+
+		ConnectionHandler(Settings settings) {
+			this.settings = settings;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if(name.equals("close")) {
+				closed = true;
+				return null;
+			}
+			if(name.equals("isClosed"))
+				return closed;
+			if(name.equals("isValid"))
+				return !closed;
+			if(name.equals("setAutoCommit")) {
+				autoCommit = (Boolean) args[0];
+				return null;
+			}
+			if(name.equals("getAutoCommit"))
+				return autoCommit;
+			if(closed && !name.equals("toString") && !name.equals("hashCode") && !name.equals("equals"))
+				throw new SQLException("Connection is closed");
+			if(name.equals("createStatement"))
+				return proxy(Statement.class, new StatementHandler(settings, null));
+			if(name.equals("prepareStatement"))
+				return proxy(PreparedStatement.class, new StatementHandler(settings, (String) args[0]));
+			if(name.equals("getMetaData"))
+				return proxy(DatabaseMetaData.class, new MetaDataHandler(settings));
+			return defaultValue(proxy, method, args);
+		}
+	}
+
+	/**
+	 * Handles both Statements and PreparedStatements.  A cancel is
+	 * passed on to the result set being read.
+	 */
+	static class StatementHandler implements InvocationHandler {
+		private final Settings settings;
+		private final String preparedSql;
+		private volatile SyntheticResultSet resultSet = null;
+		private volatile long cancelTime = Long.MAX_VALUE;
+		private int updateCount = -1;
+		private int fetchSize = 0;
+		private int batchSize = 0;
+		private boolean closed = false;
+
+		StatementHandler(Settings settings, String preparedSql) {
+			this.settings = settings;
+			this.preparedSql = preparedSql;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if(name.equals("cancel")) {
+				cancel();
+				return null;
+			}
+			if(name.equals("close")) {
+				closed = true;
+				resultSet = null;
+				return null;
+			}
+			if(name.equals("isClosed"))
+				return closed;
+			if(closed && !name.equals("toString") && !name.equals("hashCode") && !name.equals("equals"))
+				throw new SQLException("Statement is closed");
+			if(name.equals("setFetchSize")) {
+				fetchSize = (Integer) args[0];
+				return null;
+			}
+			if(name.equals("getFetchSize"))
+				return fetchSize;
+			if(name.equals("execute"))
+				return execute(args == null ? preparedSql : (String) args[0]);
+			if(name.equals("executeQuery")) {
+				if(!execute(args == null ? preparedSql : (String) args[0]))
+					throw new SQLException("Not a query");
+				return getResultSet();
+			}
+			if(name.equals("executeUpdate")) {
+				if(execute(args == null ? preparedSql : (String) args[0]))
+					throw new SQLException("A query returns no update count");
+				return updateCount;
+			}
+			if(name.equals("getResultSet"))
+				return getResultSet();
+			if(name.equals("getUpdateCount"))
+				return updateCount;
+			if(name.equals("getMoreResults")) {
+				resultSet = null;
+				updateCount = -1;
+				return false;
+			}
+			if(name.equals("addBatch")) {
+				batchSize++;
+				return null;
+			}
+			if(name.equals("clearBatch")) {
+				batchSize = 0;
+				return null;
+			}
+			if(name.equals("executeBatch")) {
+				int[] counts = new int[batchSize];
+				Arrays.fill(counts, settings.updateCount);
+				batchSize = 0;
+				return counts;
+			}
+			if(name.equals("getParameterMetaData"))
+				throw new SQLFeatureNotSupportedException("No parameter metadata");
+			return defaultValue(proxy, method, args);
+		}
+
+		/**
+		 * Returns true if the statement is a query.
+		 */
+		private boolean execute(String sql) throws SQLException {
+			cancelTime = Long.MAX_VALUE;
+			resultSet = null;
+			updateCount = -1;
+			long end = System.currentTimeMillis() + settings.executeLatencyMillis;
+			long now;
+			while((now = System.currentTimeMillis()) < end) {
+				checkCancelled();
+				pause(Math.min(10, end - now) * 1000000);
+			}
+			checkCancelled();
+
+			String start = sql.trim().toUpperCase();
+			if(start.startsWith("SELECT") || start.startsWith("WITH") || start.startsWith("(")) {
+				resultSet = new SyntheticResultSet(settings, this);
+				return true;
+			}
+			updateCount = settings.updateCount;
+			return false;
+		}
+
+		private ResultSet getResultSet() {
+			SyntheticResultSet current = resultSet;
+			return current == null ? null : current.getResultSet();
+		}
+
+		private void cancel() throws SQLException {
+			if(settings.cancel == Settings.CANCEL_UNSUPPORTED)
+				throw new SQLFeatureNotSupportedException("Cancel is not supported");
+			if(settings.cancel == Settings.CANCEL_NORMAL)
+				cancelTime = System.currentTimeMillis() + settings.cancelDelayMillis;
+		}
+
+		/**
+		 * Throws the exception a driver throws once a statement has been
+		 * cancelled.
+		 */
+		void checkCancelled() throws SQLException {
+			if(System.currentTimeMillis() >= cancelTime)
+				throw new SQLException("Statement was cancelled", "HY008");
+		}
+
+		int getFetchSize() {
+			return fetchSize;
+		}
+	}
+
+	/**
+	 * Describes the single table, SYNTH.
+	 */
+	private static class MetaDataHandler implements InvocationHandler {
+		private final Settings settings;
+
+		MetaDataHandler(Settings settings) {
+			this.settings = settings;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			List<String[]> rows = new ArrayList<String[]>();
+			if(name.equals("getTables")) {
+				rows.add(new String[] { null, null, "SYNTH", "TABLE" });
+			} else if(name.equals("getColumns")) {
+				String table = (String) args[2];
+				if(table == null || table.equals("%") || table.equalsIgnoreCase("SYNTH")) {
+					for(String column : settings.columnNames)
+						rows.add(new String[] { null, null, "SYNTH", column });
+				}
+			} else if(name.equals("getDatabaseProductName")) {
+				return "SQLTool Synthetic";
+			} else if(method.getReturnType() != ResultSet.class) {
+				return defaultValue(proxy, method, args);
+			}
+			return proxy(ResultSet.class, new ListHandler(rows));
+		}
+	}
+
+	/**
+	 * A result set of a few strings, for the metadata.
+	 */
+	private static class ListHandler implements InvocationHandler {
+		private final List<String[]> rows;
+		private int row = -1;
+
+		ListHandler(List<String[]> rows) {
+			this.rows = rows;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if(name.equals("next"))
+				return ++row < rows.size();
+			if(name.equals("getString") && args[0] instanceof Integer) {
+				String[] values = rows.get(row);
+				int column = (Integer) args[0];
+				return column <= values.length ? values[column - 1] : null;
+			}
+			return defaultValue(proxy, method, args);
+		}
+	}
+
+	static Object proxy(Class<?> type, InvocationHandler handler) {
+		return Proxy.newProxyInstance(SyntheticDriver.class.getClassLoader(),
+			new Class<?>[] { type }, handler);
+	}
+
+	/**
+	 * Sleeps for the specified nanoseconds, keeping the interrupt.
+	 */
+	static void pause(long nanos) {
+		try {
+			Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * What any method not implemented returns: nothing, zero or false.
+	 */
+	static Object defaultValue(Object proxy, Method method, Object[] args) throws SQLException {
+		String name = method.getName();
+		if(name.equals("toString"))
+			return "Synthetic " + method.getDeclaringClass().getSimpleName();
+		if(name.equals("hashCode"))
+			return System.identityHashCode(proxy);
+		if(name.equals("equals"))
+			return proxy == args[0];
+		if(name.equals("unwrap"))
+			throw new SQLException("Not a wrapper");
+		Class<?> type = method.getReturnType();
+		if(type == boolean.class)
+			return Boolean.FALSE;
+		if(type == int.class)
+			return 0;
+		if(type == long.class)
+			return 0L;
+		if(type == short.class)
+			return (short) 0;
+		if(type == byte.class)
+			return (byte) 0;
+		if(type == float.class)
+			return 0f;
+		if(type == double.class)
+			return 0.0;
+		return null;
+	}
+}
@@ -0,0 +1,240 @@
+/**
+ * The rows of a query run through the SyntheticDriver.  Rows are made
+ * up as they are read, so a result set of millions of rows takes no
+ * memory of its own, and the latency settings are applied as they are.
+ */
+package cvosteen.sqltool.database;
+
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.sql.*;
+
+class SyntheticResultSet implements InvocationHandler {
+
+	// Midnight, 1 January 2010, UTC
+	private static final long BASE_TIME = 1262304000000L;
+
+	private final SyntheticDriver.Settings settings;
+	private final SyntheticDriver.StatementHandler statement;
+	private final ResultSet resultSet;
+	private final ResultSetMetaData metaData;
+	// Filler text for strings, as long as the widest string column
+	private final String filler;
+	private long row = 0;
+	private boolean wasNull = false;
+	private boolean closed = false;
+	private int fetchSize;
+	// Row latency not yet slept off, so latencies under a millisecond
+	// still add up
+	private long owedNanos = 0;
+
+	SyntheticResultSet(SyntheticDriver.Settings settings, SyntheticDriver.StatementHandler statement) {
+		this.settings = settings;
+		this.statement = statement;
+		this.fetchSize = statement.getFetchSize();
+		resultSet = (ResultSet) SyntheticDriver.proxy(ResultSet.class, this);
+		metaData = (ResultSetMetaData) SyntheticDriver.proxy(ResultSetMetaData.class, new MetaDataHandler());
+
+		int width = 0;
+		for(int i = 0; i < settings.columnTypes.length; i++) {
+			if(settings.columnTypes[i] == Types.VARCHAR || settings.columnTypes[i] == Types.CHAR)
+				width = Math.max(width, settings.columnWidths[i]);
+		}
+		StringBuilder sb = new StringBuilder(width);
+		while(sb.length() < width)
+			sb.append("abcdefghijklmnopqrstuvwxyz ");
+		filler = sb.substring(0, width);
+	}
+
+	ResultSet getResultSet() {
+		return resultSet;
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		if(name.equals("close")) {
+			closed = true;
+			return null;
+		}
+		if(name.equals("isClosed"))
+			return closed;
+		if(name.equals("getMetaData"))
+			return metaData;
+		if(name.equals("setFetchSize")) {
+			fetchSize = (Integer) args[0];
+			return null;
+		}
+		if(name.equals("getFetchSize"))
+			return fetchSize;
+		if(name.equals("next"))
+			return next();
+		if(name.equals("wasNull"))
+			return wasNull;
+		if(name.startsWith("get") && args != null && args.length == 1 && args[0] instanceof Integer) {
+			if(row < 1 || row > settings.rows)
+				throw new SQLException("Not on a row");
+			int column = (Integer) args[0];
+			if(column < 1 || column > settings.columnTypes.length)
+				throw new SQLException("No column " + column);
+			Object value = getValue(column - 1);
+			wasNull = value == null;
+			return convert(value, method.getReturnType());
+		}
+		return SyntheticDriver.defaultValue(proxy, method, args);
+	}
+
+	private boolean next() throws SQLException {
+		if(closed)
+			throw new SQLException("Result set is closed");
+		statement.checkCancelled();
+		if(row >= settings.rows) {
+			row = settings.rows + 1;
+			return false;
+		}
+
+		// Each fetch of fetchSize rows is a round trip
+		int rowsPerFetch = fetchSize > 0 ? fetchSize : 10;
+		if(settings.roundTripMillis > 0 && row % rowsPerFetch == 0)
+			delay(settings.roundTripMillis * 1000000);
+		owedNanos += settings.rowLatencyNanos;
+		if(owedNanos >= 1000000) {
+			delay(owedNanos);
+			owedNanos = 0;
+		}
+		row++;
+		return true;
+	}
+
+	/**
+	 * Waits, noticing a cancel at least every 10 ms.
+	 */
+	private void delay(long nanos) throws SQLException {
+		long end = System.nanoTime() + nanos;
+		long left;
+		while((left = end - System.nanoTime()) > 0) {
+			SyntheticDriver.pause(Math.min(left, 10000000));
+			statement.checkCancelled();
+		}
+	}
+
+	/**
+	 * Returns the value in the current row, which depends only on the
+	 * row and column.
+	 */
+	private Object getValue(int column) {
+		if(settings.nulls > 0 && fraction(row, column) < settings.nulls)
+			return null;
+		switch(settings.columnTypes[column]) {
+			case Types.INTEGER:
+				return Integer.valueOf((int) row);
+			case Types.BIGINT:
+				return Long.valueOf(row * 1000003L);
+			case Types.DOUBLE:
+				return Double.valueOf(row * 1.25);
+			case Types.DECIMAL:
+				return BigDecimal.valueOf(row * 199L, 2);
+			case Types.DATE:
+				return new Date(BASE_TIME + (row % 3650) * 86400000L);
+			case Types.TIMESTAMP:
+				return new Timestamp(BASE_TIME + row * 1000L);
+			case Types.BOOLEAN:
+				return Boolean.valueOf(row % 2 == 0);
+			default:
+				// VARCHAR and CHAR: the row number padded to the width
+				String number = Long.toString(row);
+				int width = settings.columnWidths[column];
+				if(number.length() >= width)
+					return number.substring(0, width);
+				return number + filler.substring(number.length(), width);
+		}
+	}
+
+	/**
+	 * Returns a fraction in [0, 1) which looks random, but is always the
+	 * same for a row and column.
+	 */
+	private static double fraction(long row, int column) {
+		long h = row * 0x9E3779B97F4A7C15L + column * 0xC2B2AE3D27D4EB4FL;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return (h >>> 11) / (double) (1L << 53);
+	}
+
+	/**
+	 * Converts a value to what a getter returns, as a driver would.
+	 */
+	private static Object convert(Object value, Class<?> type) throws SQLException {
+		if(type == Object.class)
+			return value;
+		if(type == String.class)
+			return value == null ? null : value.toString();
+		if(value == null) {
+			if(type == boolean.class)
+				return Boolean.FALSE;
+			if(type.isPrimitive())
+				return convert(Integer.valueOf(0), type);
+			return null;
+		}
+		if(type.isInstance(value))
+			return value;
+		if(value instanceof Number) {
+			Number number = (Number) value;
+			if(type == int.class)
+				return number.intValue();
+			if(type == long.class)
+				return number.longValue();
+			if(type == double.class)
+				return number.doubleValue();
+			if(type == float.class)
+				return number.floatValue();
+			if(type == short.class)
+				return number.shortValue();
+			if(type == byte.class)
+				return number.byteValue();
+			if(type == boolean.class)
+				return number.intValue() != 0;
+			if(type == BigDecimal.class)
+				return new BigDecimal(number.toString());
+		}
+		if(value instanceof Boolean && type == boolean.class)
+			return value;
+		if(value instanceof java.util.Date) {
+			long time = ((java.util.Date) value).getTime();
+			if(type == Timestamp.class)
+				return new Timestamp(time);
+			if(type == Date.class)
+				return new Date(time);
+			if(type == Time.class)
+				return new Time(time);
+		}
+		throw new SQLException("Cannot convert " + value.getClass().getSimpleName() +
+			" to " + type.getSimpleName());
+	}
+
+	private class MetaDataHandler implements InvocationHandler {
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if(name.equals("getColumnCount"))
+				return settings.columnTypes.length;
+			if(args != null && args.length == 1 && args[0] instanceof Integer) {
+				int column = (Integer) args[0] - 1;
+				if(column < 0 || column >= settings.columnTypes.length)
+					throw new SQLException("No column " + args[0]);
+				if(name.equals("getColumnName") || name.equals("getColumnLabel"))
+					return settings.columnNames[column];
+				if(name.equals("getColumnType"))
+					return settings.columnTypes[column];
+				if(name.equals("getColumnTypeName"))
+					return settings.columnNames[column].substring(0, settings.columnNames[column].lastIndexOf('_'));
+				if(name.equals("getColumnDisplaySize") || name.equals("getPrecision"))
+					return settings.columnWidths[column];
+				if(name.equals("getScale"))
+					return settings.columnTypes[column] == Types.DECIMAL ? 2 : 0;
+				if(name.equals("isNullable"))
+					return settings.nulls > 0 ? ResultSetMetaData.columnNullable : ResultSetMetaData.columnNoNulls;
+			}
+			return SyntheticDriver.defaultValue(proxy, method, args);
+		}
+	}
+}
@@ -0,0 +1,651 @@
+/**
+ * A RowSink which writes rows as an Apache Arrow IPC stream, which
+ * pyarrow, pandas, Polars, DuckDB, Spark and the other Arrow readers
+ * can load directly (e.g. pyarrow.ipc.open_stream).
+ *
+ * Rows are buffered a record batch at a time (65536 rows by default),
+ * then written column by column, so memory use is bounded by the batch
+ * size however many rows there are.  The stream is a Schema message,
+ * then a RecordBatch message per batch, then the end of stream marker,
+ * as described in the Arrow columnar format specification.  The
+ * FlatBuffer metadata is written by FlatBuffer.
+ *
+ * Columns are typed by their java.sql.Types:
+ *
+ *   TINYINT, SMALLINT, INTEGER    Int32
+ *   BIGINT                        Int64
+ *   REAL                          Float32
+ *   FLOAT, DOUBLE                 Float64
+ *   BIT, BOOLEAN                  Bool
+ *   DATE                          Date32 (days)
+ *   TIME                          Time32 (milliseconds)
+ *   TIMESTAMP                     Timestamp (microseconds, no time zone)
+ *   DECIMAL, NUMERIC              Decimal128, if the precision is 1-38
+ *   BINARY, VARBINARY, BLOB...    Binary
+ *   anything else                 Utf8
+ *
+ * Dates and times are the local wall clock times given by the driver.
+ * Optionally, string columns with few distinct values in the first
+ * batch are dictionary encoded (with delta dictionaries for values
+ * first seen in later batches), and buffers are compressed with the
+ * LZ4_FRAME codec where that makes them smaller.  Both are off by
+ * default, as not every Arrow reader supports them.
+ */
+package cvosteen.sqltool.export;
+import cvosteen.sqltool.tasks.*;
+import java.io.*;
+import java.math.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.sql.*;
+import java.util.*;
+
+public class ArrowRowSink implements RowSink {
+
+	public static final int DEFAULT_ROW_GROUP_SIZE = 65536;
+
+	// MetadataVersion V5
+	private static final int METADATA_VERSION = 4;
+
+	// MessageHeader
+	private static final int SCHEMA = 1;
+	private static final int DICTIONARY_BATCH = 2;
+	private static final int RECORD_BATCH = 3;
+
+	// Type
+	private static final int INT = 2;
+	private static final int FLOATING_POINT = 3;
+	private static final int BINARY = 4;
+	private static final int UTF8 = 5;
+	private static final int BOOL = 6;
+	private static final int DECIMAL = 7;
+	private static final int DATE = 8;
+	private static final int TIME = 9;
+	private static final int TIMESTAMP = 10;
+
+	// Beyond this many distinct strings a dictionary rarely pays off
+	private static final int MAX_DICTIONARY_SIZE = 65536;
+	private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+	private final WritableByteChannel channel;
+	private int rowGroupSize = DEFAULT_ROW_GROUP_SIZE;
+	private boolean dictionaryEncoding = false;
+	private boolean compression = false;
+
+	private Column[] columns;
+	private boolean schemaWritten = false;
+	private int batchRows = 0;
+	private long totalRows = 0;
+	private long position = 0;
+	private final TimeZone timeZone = TimeZone.getDefault();
+	private Lz4 lz4;
+
+	public ArrowRowSink(WritableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Sets the number of rows buffered and written together as a
+	 * record batch.  Must be called before the first row.
+	 */
+	public void setRowGroupSize(int rowGroupSize) {
+		this.rowGroupSize = Math.max(1, rowGroupSize);
+	}
+
+	public void setDictionaryEncoding(boolean dictionaryEncoding) {
+		this.dictionaryEncoding = dictionaryEncoding;
+	}
+
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
+	public void start(ResultSetMetaData metaData) throws SQLException, IOException {
+		columns = new Column[metaData.getColumnCount()];
+		for(int i = 0; i < columns.length; i++)
+			columns[i] = new Column(metaData, i + 1);
+		if(compression)
+			lz4 = new Lz4();
+	}
+
+	public void writeRow(ResultSet resultSet) throws SQLException, IOException {
+		for(int i = 0; i < columns.length; i++)
+			columns[i].append(resultSet, i + 1, batchRows);
+		batchRows++;
+		totalRows++;
+		if(batchRows == rowGroupSize)
+			writeBatch();
+	}
+
+	public void finish() throws IOException {
+		if(batchRows > 0)
+			writeBatch();
+		if(!schemaWritten)
+			writeSchema();
+		// End of stream
+		ByteBuffer end = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		end.putInt(-1).putInt(0);
+		write(end.array(), 8);
+	}
+
+	public long estimateBytesPerRow() {
+		return totalRows == 0 ? 0 : position / totalRows + 8L * columns.length;
+	}
+
+	private void writeSchema() throws IOException {
+		List<FlatBuffer.Table> fields = new ArrayList<FlatBuffer.Table>();
+		for(int i = 0; i < columns.length; i++)
+			fields.add(columns[i].field(i));
+		FlatBuffer.Table schema = new FlatBuffer.Table()
+			.addShort(0, 0) // Little endian
+			.addOffset(1, FlatBuffer.tables(fields));
+		writeMessage(SCHEMA, schema, null);
+		schemaWritten = true;
+	}
+
+	private void writeBatch() throws IOException {
+		if(!schemaWritten) {
+			// Whether to use dictionaries is decided by the first batch
+			for(Column column : columns)
+				column.chooseEncoding(batchRows);
+			writeSchema();
+		}
+
+		Body body = new Body();
+		for(int i = 0; i < columns.length; i++) {
+			Body dictionary = columns[i].writeValues(body, batchRows);
+			if(dictionary != null) {
+				FlatBuffer.Table batch = new FlatBuffer.Table()
+					.addLong(0, i)
+					.addOffset(1, dictionary.recordBatch(dictionary.rows))
+					.addBool(2, dictionary.delta);
+				writeMessage(DICTIONARY_BATCH, batch, dictionary);
+			}
+		}
+		writeMessage(RECORD_BATCH, body.recordBatch(batchRows), body);
+
+		for(Column column : columns)
+			column.clear();
+		batchRows = 0;
+	}
+
+	/**
+	 * Writes an encapsulated message: a continuation marker, the length
+	 * of the metadata, the metadata padded to 8 bytes and the body.
+	 */
+	private void writeMessage(int headerType, FlatBuffer.Table header, Body body) throws IOException {
+		FlatBuffer.Table message = new FlatBuffer.Table()
+			.addShort(0, METADATA_VERSION)
+			.addByte(1, headerType)
+			.addOffset(2, header)
+			.addLong(3, body == null ? 0 : body.bytes.size());
+		byte[] metadata = FlatBuffer.finish(message);
+
+		ByteBuffer prefix = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		prefix.putInt(-1).putInt(metadata.length);
+		write(prefix.array(), 8);
+		write(metadata, metadata.length);
+		if(body != null)
+			write(body.bytes.array(), body.bytes.size());
+	}
+
+	private void write(byte[] bytes, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+		position += length;
+	}
+
+	private static int arrowType(int sqlType, int precision, int scale) {
+		switch(sqlType) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+			case Types.BIGINT:
+				return INT;
+			case Types.REAL:
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				return FLOATING_POINT;
+			case Types.BIT:
+			case Types.BOOLEAN:
+				return BOOL;
+			case Types.BINARY:
+			case Types.VARBINARY:
+			case Types.LONGVARBINARY:
+			case Types.BLOB:
+				return BINARY;
+			case Types.DATE:
+				return DATE;
+			case Types.TIME:
+				return TIME;
+			case Types.TIMESTAMP:
+				return TIMESTAMP;
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+				// e.g. Oracle's NUMBER without a precision has none
+				if(precision > 0 && precision <= 38 && scale >= 0 && scale <= precision)
+					return DECIMAL;
+				return UTF8;
+			default:
+				return UTF8;
+		}
+	}
+
+	/**
+	 * Some drivers throw for columns where precision means nothing.
+	 */
+	private static int precision(ResultSetMetaData metaData, int column) {
+		try {
+			return metaData.getPrecision(column);
+		} catch(Exception e) {
+			return 0;
+		}
+	}
+
+	private static int scale(ResultSetMetaData metaData, int column) {
+		try {
+			return metaData.getScale(column);
+		} catch(Exception e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Rounds towards negative infinity, unlike division.
+	 */
+	private static long floorDiv(long value, long divisor) {
+		long quotient = value / divisor;
+		return quotient * divisor > value ? quotient - 1 : quotient;
+	}
+
+	private static void setBit(byte[] bits, int index) {
+		bits[index >>> 3] |= 1 << (index & 7);
+	}
+
+	/**
+	 * The body of a message being built: its buffers, each compressed
+	 * if that is on and makes it smaller, and padded to 8 bytes, with
+	 * the length and null count of each column.
+	 */
+	private class Body {
+		private final GrowableBytes bytes = new GrowableBytes();
+		private final List<Long> nodes = new ArrayList<Long>();
+		private final List<Long> buffers = new ArrayList<Long>();
+		private int rows;
+		private boolean delta;
+
+		public void addNode(int length, int nullCount) {
+			nodes.add(Long.valueOf(length));
+			nodes.add(Long.valueOf(nullCount));
+		}
+
+		public void addBuffer(byte[] data, int length) {
+			int offset = bytes.size();
+			if(compression && length > 0) {
+				byte[] compressed = lz4.compressFrame(data, length);
+				if(compressed.length < length) {
+					bytes.writeLong(length);
+					bytes.write(compressed, compressed.length);
+				} else {
+					// -1 means stored uncompressed
+					bytes.writeLong(-1);
+					bytes.write(data, length);
+				}
+			} else {
+				bytes.write(data, length);
+			}
+			buffers.add(Long.valueOf(offset));
+			buffers.add(Long.valueOf(bytes.size() - offset));
+			while(bytes.size() % 8 != 0)
+				bytes.write(new byte[1], 1);
+		}
+
+		public FlatBuffer.Table recordBatch(int length) {
+			FlatBuffer.Table batch = new FlatBuffer.Table()
+				.addLong(0, length)
+				.addOffset(1, FlatBuffer.structs(toArray(nodes), 2))
+				.addOffset(2, FlatBuffer.structs(toArray(buffers), 2));
+			if(compression) {
+				// LZ4_FRAME, each buffer compressed separately
+				batch.addOffset(3, new FlatBuffer.Table()
+					.addByte(0, 0)
+					.addByte(1, 0));
+			}
+			return batch;
+		}
+
+		private long[] toArray(List<Long> values) {
+			long[] array = new long[values.size()];
+			for(int i = 0; i < array.length; i++)
+				array[i] = values.get(i).longValue();
+			return array;
+		}
+	}
+
+	/**
+	 * The values of one column of the current batch.
+	 */
+	private class Column {
+		private final String name;
+		private final int type;
+		private final int width;
+		private final int precision;
+		private final int scale;
+		private byte[] validity;
+		private int nullCount = 0;
+		// Fixed width values, little-endian, or bits for Bool
+		private ByteBuffer values;
+		// Strings or byte arrays
+		private Object[] objects;
+		private final GrowableBytes data = new GrowableBytes();
+
+		// The dictionary of a dictionary encoded string column
+		private boolean dictionary = false;
+		private Map<String, Integer> lookup;
+		private List<String> entries;
+		private boolean dictionarySent = false;
+
+		public Column(ResultSetMetaData metaData, int index) throws SQLException {
+			name = metaData.getColumnName(index);
+			int sqlType = metaData.getColumnType(index);
+			precision = precision(metaData, index);
+			scale = scale(metaData, index);
+			type = arrowType(sqlType, precision, scale);
+			switch(type) {
+				case INT:
+					width = sqlType == Types.BIGINT ? 8 : 4;
+					break;
+				case FLOATING_POINT:
+					width = sqlType == Types.REAL ? 4 : 8;
+					break;
+				case TIMESTAMP:
+					width = 8;
+					break;
+				case DATE:
+				case TIME:
+					width = 4;
+					break;
+				case DECIMAL:
+					width = 16;
+					break;
+				default:
+					width = 0;
+			}
+
+			validity = new byte[(rowGroupSize + 7) / 8];
+			if(type == BOOL)
+				values = ByteBuffer.allocate((rowGroupSize + 7) / 8);
+			else if(width > 0)
+				values = ByteBuffer.allocate(rowGroupSize * width).order(ByteOrder.LITTLE_ENDIAN);
+			else
+				objects = new Object[rowGroupSize];
+		}
+
+		public void append(ResultSet resultSet, int index, int row) throws SQLException, IOException {
+			Object object = null;
+			boolean valid = true;
+			switch(type) {
+				case INT:
+					if(width == 8)
+						values.putLong(row * 8, resultSet.getLong(index));
+					else
+						values.putInt(row * 4, resultSet.getInt(index));
+					break;
+				case FLOATING_POINT:
+					if(width == 4)
+						values.putFloat(row * 4, resultSet.getFloat(index));
+					else
+						values.putDouble(row * 8, resultSet.getDouble(index));
+					break;
+				case BOOL:
+					if(resultSet.getBoolean(index))
+						setBit(values.array(), row);
+					break;
+				case DATE:
+					java.sql.Date date = resultSet.getDate(index);
+					valid = date != null;
+					if(valid)
+						values.putInt(row * 4, (int) floorDiv(localTime(date.getTime()), MILLIS_PER_DAY));
+					break;
+				case TIME:
+					Time time = resultSet.getTime(index);
+					valid = time != null;
+					if(valid) {
+						long local = localTime(time.getTime());
+						values.putInt(row * 4, (int) (local - floorDiv(local, MILLIS_PER_DAY) * MILLIS_PER_DAY));
+					}
+					break;
+				case TIMESTAMP:
+					Timestamp timestamp = resultSet.getTimestamp(index);
+					valid = timestamp != null;
+					if(valid) {
+						long seconds = floorDiv(localTime(timestamp.getTime()), 1000);
+						values.putLong(row * 8, seconds * 1000000 + timestamp.getNanos() / 1000);
+					}
+					break;
+				case DECIMAL:
+					BigDecimal decimal = resultSet.getBigDecimal(index);
+					valid = decimal != null;
+					if(valid)
+						putDecimal(decimal, row);
+					break;
+				case BINARY:
+					object = resultSet.getBytes(index);
+					valid = object != null;
+					break;
+				default:
+					object = resultSet.getString(index);
+					valid = object != null;
+			}
+			if(objects != null)
+				objects[row] = object;
+			// Some drivers only report a null object, not wasNull()
+			if(valid && !resultSet.wasNull()) {
+				setBit(validity, row);
+			} else {
+				nullCount++;
+				if(objects != null)
+					objects[row] = null;
+			}
+		}
+
+		private long localTime(long time) {
+			return time + timeZone.getOffset(time);
+		}
+
+		/**
+		 * Stores a decimal as a 128 bit two's complement integer of
+		 * its unscaled value at the column's scale.
+		 */
+		private void putDecimal(BigDecimal decimal, int row) throws IOException {
+			BigInteger unscaled = decimal.setScale(scale, RoundingMode.HALF_UP).unscaledValue();
+			if(unscaled.bitLength() > 127)
+				throw new IOException("Value " + decimal + " of " + name +
+					" does not fit in DECIMAL(" + precision + ", " + scale + ")");
+			byte[] bytes = unscaled.toByteArray();
+			byte sign = unscaled.signum() < 0 ? (byte) -1 : 0;
+			for(int i = 0; i < 16; i++)
+				values.put(row * 16 + i, i < bytes.length ? bytes[bytes.length - 1 - i] : sign);
+		}
+
+		/**
+		 * Decides from the first batch whether a string column is
+		 * dictionary encoded: only if at most half its values are
+		 * distinct.
+		 */
+		public void chooseEncoding(int rows) {
+			if(!dictionaryEncoding || type != UTF8)
+				return;
+			Set<Object> distinct = new HashSet<Object>();
+			for(int row = 0; row < rows; row++) {
+				if(objects[row] != null && distinct.add(objects[row]) && distinct.size() > MAX_DICTIONARY_SIZE)
+					return;
+			}
+			int values = rows - nullCount;
+			if(values > 0 && distinct.size() <= values / 2) {
+				dictionary = true;
+				lookup = new HashMap<String, Integer>();
+				entries = new ArrayList<String>();
+			}
+		}
+
+		/**
+		 * Field metadata for the schema.
+		 */
+		public FlatBuffer.Table field(int id) {
+			FlatBuffer.Table typeTable = new FlatBuffer.Table();
+			switch(type) {
+				case INT:
+					typeTable.addInt(0, width * 8).addBool(1, true);
+					break;
+				case FLOATING_POINT:
+					typeTable.addShort(0, width == 4 ? 1 : 2); // SINGLE or DOUBLE
+					break;
+				case DECIMAL:
+					typeTable.addInt(0, precision).addInt(1, scale).addInt(2, 128);
+					break;
+				case DATE:
+					typeTable.addShort(0, 0); // DAY
+					break;
+				case TIME:
+					typeTable.addShort(0, 1).addInt(1, 32); // MILLISECOND
+					break;
+				case TIMESTAMP:
+					typeTable.addShort(0, 2); // MICROSECOND
+					break;
+			}
+			FlatBuffer.Table field = new FlatBuffer.Table()
+				.addOffset(0, FlatBuffer.string(name))
+				.addBool(1, true)
+				.addByte(2, type)
+				.addOffset(3, typeTable)
+				.addOffset(5, FlatBuffer.tables(new ArrayList<FlatBuffer.Table>()));
+			if(dictionary) {
+				// Indexes are signed 32 bit ints, the dictionary id is
+				// the column index
+				field.addOffset(4, new FlatBuffer.Table()
+					.addLong(0, id)
+					.addOffset(1, new FlatBuffer.Table().addInt(0, 32).addBool(1, true))
+					.addBool(2, false));
+			}
+			return field;
+		}
+
+		/**
+		 * Adds the buffers of the column to the body.  Returns the body
+		 * of a dictionary batch to be written first if the column is
+		 * dictionary encoded and has new strings, otherwise null.
+		 */
+		public Body writeValues(Body body, int rows) throws IOException {
+			body.addNode(rows, nullCount);
+			body.addBuffer(validity, nullCount == 0 ? 0 : (rows + 7) / 8);
+			if(type == BOOL) {
+				body.addBuffer(values.array(), (rows + 7) / 8);
+			} else if(width > 0) {
+				body.addBuffer(values.array(), rows * width);
+			} else if(dictionary) {
+				int first = entries.size();
+				ByteBuffer codes = ByteBuffer.allocate(rows * 4).order(ByteOrder.LITTLE_ENDIAN);
+				for(int row = 0; row < rows; row++) {
+					if(objects[row] == null)
+						continue;
+					Integer code = lookup.get(objects[row]);
+					if(code == null) {
+						code = Integer.valueOf(entries.size());
+						lookup.put((String) objects[row], code);
+						entries.add((String) objects[row]);
+					}
+					codes.putInt(row * 4, code.intValue());
+				}
+				body.addBuffer(codes.array(), rows * 4);
+				// The first dictionary is sent even if empty
+				if(entries.size() > first || !dictionarySent)
+					return writeDictionary(first);
+			} else {
+				writeVariable(body, objects, rows);
+			}
+			return null;
+		}
+
+		/**
+		 * Returns the body of a dictionary batch holding the entries
+		 * from first on, a delta unless it is the first one.
+		 */
+		private Body writeDictionary(int first) throws IOException {
+			Body batch = new Body();
+			batch.rows = entries.size() - first;
+			batch.delta = dictionarySent;
+			batch.addNode(batch.rows, 0);
+			batch.addBuffer(new byte[0], 0);
+			writeVariable(batch, entries.subList(first, entries.size()).toArray(), batch.rows);
+			dictionarySent = true;
+			return batch;
+		}
+
+		/**
+		 * Adds the offsets and data buffers of strings or binary values.
+		 */
+		private void writeVariable(Body body, Object[] objects, int rows) throws IOException {
+			ByteBuffer offsets = ByteBuffer.allocate((rows + 1) * 4).order(ByteOrder.LITTLE_ENDIAN);
+			data.reset();
+			offsets.putInt(0);
+			for(int row = 0; row < rows; row++) {
+				Object object = objects[row];
+				if(object instanceof String) {
+					byte[] bytes = ((String) object).getBytes("UTF-8");
+					data.write(bytes, bytes.length);
+				} else if(object != null) {
+					data.write((byte[]) object, ((byte[]) object).length);
+				}
+				offsets.putInt(data.size());
+			}
+			body.addBuffer(offsets.array(), offsets.position());
+			body.addBuffer(data.array(), data.size());
+		}
+
+		public void clear() {
+			Arrays.fill(validity, (byte) 0);
+			nullCount = 0;
+			if(type == BOOL)
+				Arrays.fill(values.array(), (byte) 0);
+			if(objects != null)
+				Arrays.fill(objects, null);
+		}
+	}
+
+	/**
+	 * A byte array which grows as it is written, like a
+	 * ByteArrayOutputStream but without copying to read it.
+	 */
+	private static class GrowableBytes {
+		private byte[] bytes = new byte[256];
+		private int size = 0;
+
+		public void write(byte[] data, int length) {
+			if(size + length > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + length));
+			System.arraycopy(data, 0, bytes, size, length);
+			size += length;
+		}
+
+		public void writeLong(long value) {
+			byte[] data = new byte[8];
+			for(int i = 0; i < 8; i++)
+				data[i] = (byte) (value >>> (8 * i));
+			write(data, 8);
+		}
+
+		public void reset() {
+			size = 0;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public byte[] array() {
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * Reads delimited text, one record at a time, in the format written
+ * by DelimitedRowSink.
+ *
+ * With a comma delimiter the input is CSV: fields may be quoted, with
+ * quotes doubled, and may then contain delimiters and line breaks.
+ * An empty unquoted field is NULL, and "" an empty string.
+ * Any other delimiter (e.g. a tab) has no quoting, instead backslash
+ * escapes are read back.  A field of just \N is NULL, and an empty
+ * field an empty string.
+ *
+ * Blank lines are skipped, unless the first record has a single field,
+ * when they are records with an empty field.
+ *
+ * The text is read into one large char buffer and each record is
+ * split into fields in place, just noting where each field starts and
+ * ends.  Nothing is copied until a field is asked for, and numbers can
+ * be read straight from the buffer without making a String at all.
+ * The fields of a record are only valid until next() is called again.
+ */
+package cvosteen.sqltool.export;
+import java.io.*;
+import java.math.BigDecimal;
+import java.util.*;
+
+public class DelimitedReader {
+
+	public static final char CSV = ',';
+	public static final char TSV = '\t';
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Reader reader;
+	private final char delimiter;
+	private char[] buffer = new char[BUFFER_SIZE];
+	private int start = 0;
+	private int limit = 0;
+	private boolean endOfInput = false;
+	private int fieldCount = 0;
+	private int[] fieldStarts = new int[16];
+	private int[] fieldEnds = new int[16];
+	private boolean[] fieldQuoted = new boolean[16];
+	private long lineNumber = 0;
+	private long nextLineNumber = 1;
+	// The field count of the first record, or -1 before it is read
+	private int firstFieldCount = -1;
+
+	public DelimitedReader(Reader reader, char delimiter) {
+		this.reader = reader;
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Reads the next record, returning false at the end of the input.
+	 */
+	public boolean next() throws IOException {
+		while(true) {
+			if(start >= limit) {
+				if(endOfInput)
+					return false;
+				fill();
+				continue;
+			}
+
+			int end = scanRecord();
+			if(end < 0) {
+				// The record runs past the end of the buffer
+				fill();
+				continue;
+			}
+
+			lineNumber = nextLineNumber;
+			for(int i = start; i < end; i++) {
+				if(buffer[i] == '\n')
+					nextLineNumber++;
+			}
+			start = end;
+			if(fieldCount == 1 && !fieldQuoted[0] && fieldStarts[0] == fieldEnds[0] && firstFieldCount != 1)
+				continue;
+			if(firstFieldCount < 0)
+				firstFieldCount = fieldCount;
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the line the current record starts on, counting from 1.
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * Returns wether the field is NULL: empty and not quoted in CSV,
+	 * \N otherwise.
+	 */
+	public boolean isNull(int field) {
+		int from = fieldStarts[field];
+		int to = fieldEnds[field];
+		if(delimiter == CSV)
+			return !fieldQuoted[field] && from == to;
+		return to - from == 2 && buffer[from] == '\\' && buffer[from + 1] == 'N';
+	}
+
+	/**
+	 * Returns whether the field is empty, as NULL in CSV or as an empty
+	 * string.
+	 */
+	public boolean isEmpty(int field) {
+		return fieldStarts[field] == fieldEnds[field];
+	}
+
+	/**
+	 * Returns the field as a String, or null if it is NULL.
+	 */
+	public String getString(int field) {
+		if(isNull(field))
+			return null;
+		int from = fieldStarts[field];
+		int to = fieldEnds[field];
+		if(fieldQuoted[field]) {
+			// Undouble any quotes
+			StringBuilder value = new StringBuilder(to - from);
+			for(int i = from; i < to; i++) {
+				value.append(buffer[i]);
+				if(buffer[i] == '"')
+					i++;
+			}
+			return value.toString();
+		}
+		if(delimiter != CSV) {
+			for(int i = from; i < to; i++) {
+				if(buffer[i] == '\\')
+					return unescape(from, to);
+			}
+		}
+		return new String(buffer, from, to - from);
+	}
+
+	/**
+	 * Reads the field as a whole number straight from the buffer.
+	 * Surrounding spaces are ignored.
+	 */
+	public long getLong(int field) {
+		int from = fieldStarts[field];
+		int to = fieldEnds[field];
+		while(from < to && buffer[from] == ' ')
+			from++;
+		while(to > from && buffer[to - 1] == ' ')
+			to--;
+		boolean negative = false;
+		if(from < to && (buffer[from] == '-' || buffer[from] == '+')) {
+			negative = buffer[from] == '-';
+			from++;
+		}
+		if(from == to || to - from > 18) {
+			// Empty, or too long to be sure it won't overflow
+			String value = getString(field);
+			return Long.parseLong(value == null ? "" : value.trim());
+		}
+		long value = 0;
+		for(int i = from; i < to; i++) {
+			int digit = buffer[i] - '0';
+			if(digit < 0 || digit > 9)
+				throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Reads the field as a decimal number straight from the buffer.
+	 */
+	public BigDecimal getBigDecimal(int field) {
+		if(fieldQuoted[field])
+			return new BigDecimal(getString(field).trim());
+		int from = fieldStarts[field];
+		int to = fieldEnds[field];
+		while(from < to && buffer[from] == ' ')
+			from++;
+		while(to > from && buffer[to - 1] == ' ')
+			to--;
+		return new BigDecimal(buffer, from, to - from);
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Finds the fields of the record at the start of the buffer,
+	 * returning the index just past its line break, or -1 if more
+	 * input is needed to find the end of the record.
+	 */
+	private int scanRecord() {
+		fieldCount = 0;
+		int pos = start;
+		while(true) {
+			int from = pos;
+			int to = pos;
+			boolean quoted = false;
+			if(delimiter == CSV && pos < limit && buffer[pos] == '"') {
+				quoted = true;
+				from = ++pos;
+				while(true) {
+					if(pos >= limit) {
+						if(!endOfInput)
+							return -1;
+						break;
+					}
+					if(buffer[pos] == '"') {
+						if(pos + 1 >= limit && !endOfInput)
+							return -1;
+						if(pos + 1 < limit && buffer[pos + 1] == '"') {
+							pos += 2;
+							continue;
+						}
+						break;
+					}
+					pos++;
+				}
+				to = pos;
+				if(pos < limit)
+					pos++;
+			}
+
+			// Anything after a closing quote is ignored
+			while(pos < limit && buffer[pos] != delimiter && buffer[pos] != '\n' && buffer[pos] != '\r')
+				pos++;
+			if(pos >= limit && !endOfInput)
+				return -1;
+			if(!quoted)
+				to = pos;
+			addField(from, to, quoted);
+
+			if(pos >= limit)
+				return pos;
+			char c = buffer[pos];
+			if(c == delimiter) {
+				pos++;
+				continue;
+			}
+			if(c == '\r') {
+				if(pos + 1 >= limit && !endOfInput)
+					return -1;
+				if(pos + 1 < limit && buffer[pos + 1] == '\n')
+					pos++;
+			}
+			return pos + 1;
+		}
+	}
+
+	private void addField(int from, int to, boolean quoted) {
+		if(fieldCount == fieldStarts.length) {
+			fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+			fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+			fieldQuoted = Arrays.copyOf(fieldQuoted, fieldCount * 2);
+		}
+		fieldStarts[fieldCount] = from;
+		fieldEnds[fieldCount] = to;
+		fieldQuoted[fieldCount] = quoted;
+		fieldCount++;
+	}
+
+	/**
+	 * Moves the unread input to the front of the buffer and reads more
+	 * after it, growing the buffer if a single record fills all of it.
+	 */
+	private void fill() throws IOException {
+		if(start > 0) {
+			System.arraycopy(buffer, start, buffer, 0, limit - start);
+			limit -= start;
+			start = 0;
+		}
+		if(limit == buffer.length)
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		int read = reader.read(buffer, limit, buffer.length - limit);
+		if(read < 0) {
+			endOfInput = true;
+			return;
+		}
+		// Skip a byte order mark at the very start
+		if(limit == 0 && nextLineNumber == 1 && read > 0 && buffer[0] == '\uFEFF')
+			start = 1;
+		limit += read;
+	}
+
+	private String unescape(int from, int to) {
+		StringBuilder value = new StringBuilder(to - from);
+		for(int i = from; i < to; i++) {
+			char c = buffer[i];
+			if(c == '\\' && i + 1 < to) {
+				c = buffer[++i];
+				if(c == 't')
+					c = '\t';
+				else if(c == 'n')
+					c = '\n';
+				else if(c == 'r')
+					c = '\r';
+			}
+			value.append(c);
+		}
+		return value.toString();
+	}
+}
@@ -0,0 +1,248 @@
+/**
+ * A RowSink which writes rows as delimited text, with a header
+ * line of column names.
+ *
+ * With a comma delimiter the output is CSV: values containing the
+ * delimiter, quotes or line breaks are quoted, with quotes doubled, and
+ * so are empty strings, as "".  NULL is written as an empty value.
+ * Any other delimiter (e.g. a tab) writes such characters as
+ * backslash escapes instead, since TSV has no quoting, and NULL as \N
+ * so that it is not mistaken for an empty string.
+ *
+ * Values are copied into one reusable CharBuffer, which is encoded
+ * into a reusable ByteBuffer and written to the channel whenever it
+ * fills up.  Integer columns are read with getLong() and formatted
+ * straight into the buffer, so they make no Strings at all.
+ */
+package cvosteen.sqltool.export;
+import cvosteen.sqltool.tasks.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.sql.*;
+
+public class DelimitedRowSink implements RowSink {
+
+	public static final char CSV = ',';
+	public static final char TSV = '\t';
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final WritableByteChannel channel;
+	private final char delimiter;
+	private final CharsetEncoder encoder;
+	private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+	private final ByteBuffer bytes;
+	private final char[] digits = new char[20];
+	private boolean[] integerColumns;
+	private long rows = 0;
+	private long charCount = 0;
+
+	public DelimitedRowSink(WritableByteChannel channel, Charset charset, char delimiter) {
+		this.channel = channel;
+		this.delimiter = delimiter;
+		this.encoder = charset.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.bytes = ByteBuffer.allocateDirect((int) (BUFFER_SIZE * encoder.maxBytesPerChar()));
+	}
+
+	public void start(ResultSetMetaData metaData) throws SQLException, IOException {
+		int columnCount = metaData.getColumnCount();
+		integerColumns = new boolean[columnCount];
+		for(int i = 1; i <= columnCount; i++) {
+			switch(metaData.getColumnType(i)) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+			case Types.BIGINT:
+				integerColumns[i - 1] = true;
+				break;
+			}
+			if(i > 1)
+				put(delimiter);
+			putValue(metaData.getColumnName(i));
+		}
+		putLineEnd();
+	}
+
+	public void writeRow(ResultSet resultSet) throws SQLException, IOException {
+		for(int i = 1; i <= integerColumns.length; i++) {
+			if(i > 1)
+				put(delimiter);
+			if(integerColumns[i - 1]) {
+				long value = resultSet.getLong(i);
+				if(!resultSet.wasNull())
+					putLong(value);
+				else
+					putNull();
+			} else {
+				String value = resultSet.getString(i);
+				if(value != null)
+					putValue(value);
+				else
+					putNull();
+			}
+		}
+		putLineEnd();
+		rows++;
+	}
+
+	public void finish() throws IOException {
+		chars.flip();
+		encode(chars, true);
+		while(encoder.flush(bytes) == CoderResult.OVERFLOW)
+			drainBytes();
+		drainBytes();
+		chars.clear();
+		encoder.reset();
+	}
+
+	public long estimateBytesPerRow() {
+		return rows == 0 ? 0 : charCount / rows;
+	}
+
+	private void putValue(String value) throws IOException {
+		if(delimiter == CSV) {
+			if(!needsQuotes(value)) {
+				putString(value);
+				return;
+			}
+			put('"');
+			for(int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if(c == '"')
+					put('"');
+				put(c);
+			}
+			put('"');
+		} else {
+			if(!needsEscapes(value)) {
+				putString(value);
+				return;
+			}
+			for(int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if(c == delimiter) {
+					put('\\');
+					put(c == '\t' ? 't' : c);
+				} else if(c == '\n') {
+					put('\\');
+					put('n');
+				} else if(c == '\r') {
+					put('\\');
+					put('r');
+				} else if(c == '\\') {
+					put('\\');
+					put('\\');
+				} else {
+					put(c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes NULL: nothing in CSV, \N otherwise.
+	 */
+	private void putNull() throws IOException {
+		if(delimiter != CSV) {
+			put('\\');
+			put('N');
+		}
+	}
+
+	private boolean needsQuotes(String value) {
+		// An empty value unquoted is NULL
+		if(value.length() == 0)
+			return true;
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c == delimiter || c == '"' || c == '\n' || c == '\r')
+				return true;
+		}
+		return false;
+	}
+
+	private boolean needsEscapes(String value) {
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c == delimiter || c == '\\' || c == '\n' || c == '\r')
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Formats a long without going through Long.toString().
+	 */
+	private void putLong(long value) throws IOException {
+		if(value == Long.MIN_VALUE) {
+			putString(Long.toString(value));
+			return;
+		}
+		if(value < 0) {
+			put('-');
+			value = -value;
+		}
+		int pos = digits.length;
+		do {
+			digits[--pos] = (char) ('0' + (value % 10));
+			value /= 10;
+		} while(value != 0);
+		for(; pos < digits.length; pos++)
+			put(digits[pos]);
+	}
+
+	private void putLineEnd() throws IOException {
+		put('\r');
+		put('\n');
+	}
+
+	private void putString(String value) throws IOException {
+		int length = value.length();
+		if(chars.remaining() >= length) {
+			chars.put(value);
+			charCount += length;
+		} else {
+			for(int i = 0; i < length; i++)
+				put(value.charAt(i));
+		}
+	}
+
+	private void put(char c) throws IOException {
+		if(!chars.hasRemaining())
+			flushChars();
+		chars.put(c);
+		charCount++;
+	}
+
+	/**
+	 * Encodes the buffered characters, writing the bytes to the channel
+	 * as the byte buffer fills up.
+	 */
+	private void flushChars() throws IOException {
+		chars.flip();
+		encode(chars, false);
+		// Keep any half of a surrogate pair for next time
+		chars.compact();
+	}
+
+	private void encode(CharBuffer in, boolean endOfInput) throws IOException {
+		while(true) {
+			CoderResult result = encoder.encode(in, bytes, endOfInput);
+			if(result.isOverflow())
+				drainBytes();
+			else
+				break;
+		}
+	}
+
+	private void drainBytes() throws IOException {
+		bytes.flip();
+		while(bytes.hasRemaining())
+			channel.write(bytes);
+		bytes.clear();
+	}
+}
@@ -0,0 +1,236 @@
+/**
+ * Writes FlatBuffers, the binary format of the metadata of Arrow IPC
+ * messages (see ArrowRowSink), without the FlatBuffers library.
+ *
+ * Only what Arrow needs is supported: tables of scalars and offsets,
+ * strings, vectors of tables and vectors of structs of longs.  The
+ * root offset comes first and every object is written after whatever
+ * refers to it, so every offset points forward.  Each table is
+ * preceded by its vtable and starts 8 byte aligned, with its fields
+ * laid out largest first so each one is naturally aligned.
+ * Everything is little-endian.
+ */
+package cvosteen.sqltool.export;
+import java.nio.*;
+import java.util.*;
+
+class FlatBuffer {
+
+	private ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+
+	private FlatBuffer() { }
+
+	/**
+	 * Returns the bytes of a FlatBuffer with the specified root table,
+	 * padded to a multiple of 8 bytes.
+	 */
+	static byte[] finish(Table root) {
+		FlatBuffer out = new FlatBuffer();
+		out.putInt(0);
+		int rootPosition = root.write(out);
+		out.buffer.putInt(0, rootPosition);
+		out.align(8);
+		byte[] bytes = new byte[out.buffer.position()];
+		out.buffer.flip();
+		out.buffer.get(bytes);
+		return bytes;
+	}
+
+	static Node string(String value) {
+		final byte[] bytes;
+		try {
+			bytes = value.getBytes("UTF-8");
+		} catch(java.io.UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		return new Node() {
+				int write(FlatBuffer out) {
+					out.align(4);
+					int position = out.buffer.position();
+					out.putInt(bytes.length);
+					out.ensureCapacity(bytes.length + 1);
+					out.buffer.put(bytes);
+					out.buffer.put((byte) 0);
+					return position;
+				}
+			};
+	}
+
+	static Node tables(final List<Table> tables) {
+		return new Node() {
+				int write(FlatBuffer out) {
+					out.align(4);
+					int position = out.buffer.position();
+					out.putInt(tables.size());
+					int first = out.buffer.position();
+					for(int i = 0; i < tables.size(); i++)
+						out.putInt(0);
+					for(int i = 0; i < tables.size(); i++) {
+						int element = first + 4 * i;
+						// Written first, as it may replace the buffer
+						int child = tables.get(i).write(out);
+						out.buffer.putInt(element, child - element);
+					}
+					return position;
+				}
+			};
+	}
+
+	/**
+	 * A vector of structs made of longs only, e.g. Arrow's FieldNode
+	 * and Buffer, given as the longs of each struct in turn.
+	 */
+	static Node structs(final long[] values, final int longsPerStruct) {
+		return new Node() {
+				int write(FlatBuffer out) {
+					// The elements must be 8 byte aligned
+					out.align(4);
+					if(out.buffer.position() % 8 == 0)
+						out.putInt(0);
+					int position = out.buffer.position();
+					out.putInt(values.length / longsPerStruct);
+					for(long value : values)
+						out.putLong(value);
+					return position;
+				}
+			};
+	}
+
+	private void align(int alignment) {
+		while(buffer.position() % alignment != 0)
+			put((byte) 0);
+	}
+
+	private void ensureCapacity(int bytes) {
+		if(buffer.remaining() >= bytes)
+			return;
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes))
+			.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.flip();
+		larger.put(buffer);
+		buffer = larger;
+	}
+
+	private void put(byte value) {
+		ensureCapacity(1);
+		buffer.put(value);
+	}
+
+	private void putShort(short value) {
+		ensureCapacity(2);
+		buffer.putShort(value);
+	}
+
+	private void putInt(int value) {
+		ensureCapacity(4);
+		buffer.putInt(value);
+	}
+
+	private void putLong(long value) {
+		ensureCapacity(8);
+		buffer.putLong(value);
+	}
+
+	/**
+	 * Anything an offset can refer to.
+	 */
+	abstract static class Node {
+		/**
+		 * Writes this at the end of the buffer and returns its position.
+		 */
+		abstract int write(FlatBuffer out);
+	}
+
+	/**
+	 * A table, with its fields given by their ids in the schema.
+	 * Fields left out take their default values.
+	 */
+	static class Table extends Node {
+		private final TreeMap<Integer, Object> fields = new TreeMap<Integer, Object>();
+		private final Map<Integer, Integer> sizes = new TreeMap<Integer, Integer>();
+
+		Table addBool(int id, boolean value) {
+			return add(id, Byte.valueOf(value ? (byte) 1 : (byte) 0), 1);
+		}
+
+		Table addByte(int id, int value) {
+			return add(id, Byte.valueOf((byte) value), 1);
+		}
+
+		Table addShort(int id, int value) {
+			return add(id, Short.valueOf((short) value), 2);
+		}
+
+		Table addInt(int id, int value) {
+			return add(id, Integer.valueOf(value), 4);
+		}
+
+		Table addLong(int id, long value) {
+			return add(id, Long.valueOf(value), 8);
+		}
+
+		Table addOffset(int id, Node value) {
+			return add(id, value, 4);
+		}
+
+		private Table add(int id, Object value, int size) {
+			fields.put(id, value);
+			sizes.put(id, size);
+			return this;
+		}
+
+		int write(FlatBuffer out) {
+			// Lay out the fields after the vtable offset, largest first
+			int fieldCount = fields.isEmpty() ? 0 : fields.lastKey() + 1;
+			int[] offsets = new int[fieldCount];
+			int size = 4;
+			for(int fieldSize = 8; fieldSize >= 1; fieldSize /= 2) {
+				for(Map.Entry<Integer, Integer> entry : sizes.entrySet()) {
+					if(entry.getValue() != fieldSize)
+						continue;
+					size = (size + fieldSize - 1) / fieldSize * fieldSize;
+					offsets[entry.getKey()] = size;
+					size += fieldSize;
+				}
+			}
+
+			out.align(2);
+			int vtable = out.buffer.position();
+			out.putShort((short) (4 + 2 * fieldCount));
+			out.putShort((short) size);
+			for(int offset : offsets)
+				out.putShort((short) offset);
+
+			out.align(8);
+			int table = out.buffer.position();
+			out.ensureCapacity(size);
+			out.putInt(table - vtable);
+			for(int i = 4; i < size; i++)
+				out.put((byte) 0);
+
+			List<Integer> children = new ArrayList<Integer>();
+			for(Map.Entry<Integer, Object> entry : fields.entrySet()) {
+				int position = table + offsets[entry.getKey()];
+				Object value = entry.getValue();
+				if(value instanceof Byte)
+					out.buffer.put(position, ((Byte) value).byteValue());
+				else if(value instanceof Short)
+					out.buffer.putShort(position, ((Short) value).shortValue());
+				else if(value instanceof Integer)
+					out.buffer.putInt(position, ((Integer) value).intValue());
+				else if(value instanceof Long)
+					out.buffer.putLong(position, ((Long) value).longValue());
+				else
+					children.add(entry.getKey());
+			}
+
+			// Then whatever the offsets refer to
+			for(int id : children) {
+				int position = table + offsets[id];
+				int child = ((Node) fields.get(id)).write(out);
+				out.buffer.putInt(position, child - position);
+			}
+			return table;
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/**
+ * Compresses data in the LZ4 frame format, the codec Arrow IPC calls
+ * LZ4_FRAME, without the LZ4 library.
+ *
+ * The compressor is the simple greedy one: each position is looked up
+ * in a hash table of the last position with the same 4 bytes, and a
+ * match is taken if there is one.  It compresses less than the real
+ * library but just as fast, and any LZ4 decoder can read its output.
+ * Blocks which do not get smaller are stored uncompressed.
+ */
+package cvosteen.sqltool.export;
+import java.io.*;
+
+class Lz4 {
+
+	private static final int MAGIC = 0x184D2204;
+	// Version 01, independent blocks, no checksums or content size
+	private static final int FRAME_FLAGS = 0x60;
+	// Blocks of up to 4 MB
+	private static final int BLOCK_FLAGS = 0x70;
+	private static final int MAX_BLOCK_SIZE = 4 * 1024 * 1024;
+
+	private static final int MIN_MATCH = 4;
+	// The last 5 bytes are always literals, and a match cannot start
+	// in the last 12
+	private static final int LAST_LITERALS = 5;
+	private static final int MATCH_LIMIT = 12;
+	private static final int MAX_OFFSET = 65535;
+	private static final int HASH_BITS = 16;
+
+	private static final int PRIME32_1 = 0x9E3779B1;
+	private static final int PRIME32_2 = 0x85EBCA77;
+	private static final int PRIME32_3 = 0xC2B2AE3D;
+	private static final int PRIME32_5 = 0x165667B1;
+
+	private final int[] hashTable = new int[1 << HASH_BITS];
+	private byte[] block = new byte[0];
+
+	/**
+	 * Returns the first length bytes of data as an LZ4 frame.
+	 */
+	byte[] compressFrame(byte[] data, int length) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+		writeIntLE(out, MAGIC);
+		out.write(FRAME_FLAGS);
+		out.write(BLOCK_FLAGS);
+		out.write((xxHash32(new byte[] { (byte) FRAME_FLAGS, (byte) BLOCK_FLAGS }, 2, 0) >> 8) & 0xFF);
+
+		for(int start = 0; start < length; start += MAX_BLOCK_SIZE) {
+			int blockLength = Math.min(MAX_BLOCK_SIZE, length - start);
+			int compressed = compressBlock(data, start, blockLength);
+			if(compressed < blockLength) {
+				writeIntLE(out, compressed);
+				out.write(block, 0, compressed);
+			} else {
+				writeIntLE(out, blockLength | 0x80000000);
+				out.write(data, start, blockLength);
+			}
+		}
+		// End mark
+		writeIntLE(out, 0);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Compresses a block into block, returning its length, or at least
+	 * the length of the input if it would not get any smaller.
+	 */
+	private int compressBlock(byte[] data, int start, int length) {
+		if(block.length < length)
+			block = new byte[length];
+		java.util.Arrays.fill(hashTable, -1);
+		int end = start + length;
+		int matchLimit = end - MATCH_LIMIT;
+		int literalStart = start;
+		int out = 0;
+
+		int position = start;
+		while(position < matchLimit) {
+			int sequence = readIntLE(data, position);
+			int hash = (sequence * PRIME32_1) >>> (32 - HASH_BITS);
+			int candidate = hashTable[hash];
+			hashTable[hash] = position;
+			if(candidate < 0 || position - candidate > MAX_OFFSET || readIntLE(data, candidate) != sequence) {
+				position++;
+				continue;
+			}
+
+			// Extend the match, stopping short of the last literals
+			int matchLength = MIN_MATCH;
+			while(position + matchLength < end - LAST_LITERALS
+					&& data[candidate + matchLength] == data[position + matchLength])
+				matchLength++;
+
+			out = writeSequence(data, literalStart, position - literalStart,
+				position - candidate, matchLength, out, length);
+			if(out < 0)
+				return length;
+			position += matchLength;
+			literalStart = position;
+		}
+
+		// The rest are literals
+		int literals = end - literalStart;
+		if(out + literals + literals / 255 + 2 >= length)
+			return length;
+		out = writeLength(block, out, literals, 0);
+		System.arraycopy(data, literalStart, block, out, literals);
+		return out + literals;
+	}
+
+	/**
+	 * Writes literals followed by a match, returning the new length of
+	 * the block or -1 if it would be no smaller than limit.
+	 */
+	private int writeSequence(byte[] data, int literalStart, int literals,
+			int offset, int matchLength, int out, int limit) {
+		if(out + literals + literals / 255 + 8 + (matchLength - MIN_MATCH) / 255 >= limit)
+			return -1;
+		int token = out;
+		out = writeLength(block, out, literals, 0);
+		System.arraycopy(data, literalStart, block, out, literals);
+		out += literals;
+		block[out++] = (byte) offset;
+		block[out++] = (byte) (offset >>> 8);
+
+		int extra = matchLength - MIN_MATCH;
+		if(extra >= 15) {
+			block[token] |= 15;
+			extra -= 15;
+			while(extra >= 255) {
+				block[out++] = (byte) 255;
+				extra -= 255;
+			}
+			block[out++] = (byte) extra;
+		} else {
+			block[token] |= extra;
+		}
+		return out;
+	}
+
+	/**
+	 * Writes a token with the literal length in its high bits, and any
+	 * extra length bytes.  Returns the position after them.
+	 */
+	private static int writeLength(byte[] block, int out, int literals, int matchBits) {
+		if(literals >= 15) {
+			block[out++] = (byte) (0xF0 | matchBits);
+			int extra = literals - 15;
+			while(extra >= 255) {
+				block[out++] = (byte) 255;
+				extra -= 255;
+			}
+			block[out++] = (byte) extra;
+		} else {
+			block[out++] = (byte) ((literals << 4) | matchBits);
+		}
+		return out;
+	}
+
+	private static int readIntLE(byte[] data, int position) {
+		return (data[position] & 0xFF) | (data[position + 1] & 0xFF) << 8
+			| (data[position + 2] & 0xFF) << 16 | (data[position + 3] & 0xFF) << 24;
+	}
+
+	private static void writeIntLE(OutputStream out, int value) {
+		try {
+			out.write(value);
+			out.write(value >>> 8);
+			out.write(value >>> 16);
+			out.write(value >>> 24);
+		} catch(IOException e) {
+			// Not thrown by a ByteArrayOutputStream
+		}
+	}
+
+	/**
+	 * The 32 bit xxHash of the first length bytes of data, as used for
+	 * the checksum of the frame descriptor.
+	 */
+	static int xxHash32(byte[] data, int length, int seed) {
+		int position = 0;
+		int hash;
+		if(length >= 16) {
+			int v1 = seed + PRIME32_1 + PRIME32_2;
+			int v2 = seed + PRIME32_2;
+			int v3 = seed;
+			int v4 = seed - PRIME32_1;
+			while(position <= length - 16) {
+				v1 = Integer.rotateLeft(v1 + readIntLE(data, position) * PRIME32_2, 13) * PRIME32_1;
+				v2 = Integer.rotateLeft(v2 + readIntLE(data, position + 4) * PRIME32_2, 13) * PRIME32_1;
+				v3 = Integer.rotateLeft(v3 + readIntLE(data, position + 8) * PRIME32_2, 13) * PRIME32_1;
+				v4 = Integer.rotateLeft(v4 + readIntLE(data, position + 12) * PRIME32_2, 13) * PRIME32_1;
+				position += 16;
+			}
+			hash = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7)
+				+ Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+		} else {
+			hash = seed + PRIME32_5;
+		}
+		hash += length;
+		while(position <= length - 4) {
+			hash = Integer.rotateLeft(hash + readIntLE(data, position) * PRIME32_3, 17) * 0x27D4EB2F;
+			position += 4;
+		}
+		while(position < length) {
+			hash = Integer.rotateLeft(hash + (data[position] & 0xFF) * PRIME32_5, 11) * PRIME32_1;
+			position++;
+		}
+		hash ^= hash >>> 15;
+		hash *= PRIME32_2;
+		hash ^= hash >>> 13;
+		hash *= PRIME32_3;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+}
@@ -4,13 +4,15 @@
  * It provides a table and column list on the left via a JTreeView.
  * On the top is a query editor (JTextArea) and pull-down menu of
  * saved queries.  The bottom panel shows the results of any SELECT
- * queries.
+ * queries, with a tab for each result and the messages of a script.
  */
 
 package cvosteen.sqltool.gui;
 
 import cvosteen.sqltool.database.*;
+import cvosteen.sqltool.export.*;
 import cvosteen.sqltool.memory.*;
+import cvosteen.sqltool.result.*;
 import cvosteen.sqltool.task.*;
 import cvosteen.sqltool.tasks.*;
 import cvosteen.sqltool.gui.components.*;
@@ -21,8 +23,10 @@ import java.awt.print.*;
 import java.io.*;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.swing.*;
 import javax.swing.event.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.*;
 import javax.swing.tree.*;
 
@@ -30,18 +34,46 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 
 	private DatabasePanelParent parent;
 	private Database database;
+	private ConnectionPool connectionPool;
+	// The connection queries are run on.  Metadata is looked up on
+	// separate connections borrowed from the pool as needed.
 	private Connection connection;
+	// Keeps the statements of queries run on the connection prepared
+	private StatementCache statementCache;
 	private JTree tree;
+	private MetadataCache metadataCache;
+	private MetadataTask metadataCrawlTask = null;
+	// Tree nodes showing "Loading..." until their metadata arrives,
+	// and the tables whose columns are being read for them.
+	private final Set<DefaultMutableTreeNode> pendingTreeNodes = new HashSet<DefaultMutableTreeNode>();
+	private final Set<String> loadingTables = new HashSet<String>();
 	private JComboBox queryCombo;
 	private JTextPane sqlField;
 	protected JTable table;
 	protected String executedQueryName = "";
+	private String executedSql = null;
+	// The values bound to the executed SQL, if it had named parameters
+	private java.util.List<Object> executedParameters = null;
+	// The text last entered for each named parameter
+	private final Map<String, String> lastParameterValues = new HashMap<String, String>();
+	// The timings of the queries run, oldest first
+	private static final int QUERY_HISTORY_SIZE = 100;
+	private final java.util.List<QueryMetrics> queryHistory = new ArrayList<QueryMetrics>();
 	private JPopupMenu popup;
+	private JCheckBoxMenuItem batchUpdatesMenuItem;
+	private JCheckBoxMenuItem parametersMenuItem;
+	// The results table is the first tab, any further results of a
+	// script get tabs of their own
+	private JTabbedPane resultTabs;
+	private final java.util.List<JTable> scriptResultTables = new ArrayList<JTable>();
+	private DefaultTableModel messagesModel = null;
 	protected JButton runButton;
 	protected JButton saveButton;
 	protected JLabel queryStatusLabel;
 
-	private Task queryTask;
+	// The running query, cleared on the event dispatch thread once it
+	// has finished.  Also read by the task and low memory threads.
+	private volatile Task queryTask;
 
 	// Create one listener each for running and stopping the query.
 	// That way new Actionlisteners do not have to be created each time,
@@ -60,10 +92,19 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 	};
 
 	// Low memory listener in case a really large memory-hog query uses all
-	// memory, it will be cancelled.
+	// memory.  The results are moved to disk so the query can keep going.
+	// If that is not possible, it will be cancelled.
 	private LowMemoryListener lowMemoryListener = new LowMemoryListener() {
 			public void memoryLow() {
 				if(queryTask != null) {
+					java.util.List<ResultStore> stores = getAllResultStores();
+					if(!stores.isEmpty()) {
+						try {
+							for(ResultStore store : stores)
+								store.spillAll();
+							return;
+						} catch(IOException e) { }
+					}
 					stopQuery();
 					JOptionPane.showMessageDialog(null,
 						"Not enough memory.  Query aborted.", "Error",
@@ -88,9 +129,17 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 			throw new NullPointerException("Cannot open database, none specified!");
 		this.database = database;
 		
-		connection = database.connect();
+		connectionPool = ConnectionPool.getInstance(database);
+		connection = connectionPool.borrowForSession();
+		statementCache = new StatementCache(connection, database.getIntSetting("statementCacheSize", 20));
 
 		createComponents();
+
+		// Prefetch the table and column names so the tree is ready
+		// by the time the user expands it.
+		metadataCache = MetadataCache.getInstance(database);
+		if(metadataCache.isStale())
+			crawlMetadata();
 	}
 	
 	private void createComponents() {
@@ -111,6 +160,42 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 						expandTableTree((DefaultMutableTreeNode) event.getPath().getLastPathComponent());
 				}
 			});
+		final JPopupMenu treePopup = new JPopupMenu();
+		JMenuItem refreshMenuItem = new JMenuItem("Refresh");
+		refreshMenuItem.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					refreshTree();
+				}
+			});
+		treePopup.add(refreshMenuItem);
+		final JMenuItem importMenuItem = new JMenuItem("Import CSV...");
+		importMenuItem.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					importIntoTable();
+				}
+			});
+		treePopup.add(importMenuItem);
+		tree.addMouseListener(new MouseAdapter() {
+				// A right click will bring up the context menu
+				public void mousePressed(MouseEvent e) {
+					if(e.isPopupTrigger())
+						showTreePopup(e);
+				}
+
+				public void mouseReleased(MouseEvent e) {
+					if(e.isPopupTrigger())
+						showTreePopup(e);
+				}
+
+				private void showTreePopup(MouseEvent e) {
+					// Select what was clicked on, so it can be imported into
+					TreePath path = tree.getPathForLocation(e.getX(), e.getY());
+					if(path != null)
+						tree.setSelectionPath(path);
+					importMenuItem.setEnabled(getSelectedTable() != null);
+					treePopup.show(e.getComponent(), e.getX(), e.getY());
+				}
+			});
 		JScrollPane treeScroll = new JScrollPane(tree);
 		setLeftComponent(treeScroll);
 		setDividerLocation(0.25);
@@ -240,6 +325,55 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 						saveButton.setEnabled(true);
 					}
 			});
+		JPopupMenu sqlPopup = new JPopupMenu();
+		JMenuItem partitionedMenuItem = new JMenuItem("Run Partitioned...");
+		partitionedMenuItem.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					runPartitionedQuery();
+				}
+			});
+		sqlPopup.add(partitionedMenuItem);
+		JMenuItem scriptMenuItem = new JMenuItem("Run as Script");
+		scriptMenuItem.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					runScript();
+				}
+			});
+		sqlPopup.add(scriptMenuItem);
+		batchUpdatesMenuItem = new JCheckBoxMenuItem("Batch Consecutive Updates");
+		batchUpdatesMenuItem.setToolTipText("Send consecutive INSERT, UPDATE and DELETE statements of a script together.");
+		sqlPopup.add(batchUpdatesMenuItem);
+		parametersMenuItem = new JCheckBoxMenuItem("Named Parameters");
+		parametersMenuItem.setToolTipText("Ask for the values of :name parameters. Saved queries with parameters always do.");
+		sqlPopup.add(parametersMenuItem);
+		sqlPopup.addSeparator();
+		JMenuItem refreshResultsMenuItem = new JMenuItem("Refresh Cached Results");
+		refreshResultsMenuItem.setToolTipText("Run the current query even if its results are cached.");
+		refreshResultsMenuItem.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					if(queryTask == null)
+						runQuery(true);
+				}
+			});
+		sqlPopup.add(refreshResultsMenuItem);
+		JMenuItem cacheMenuItem = new JMenuItem("Cache Results...");
+		cacheMenuItem.setToolTipText("Set how long the results of the current saved query are cached.");
+		cacheMenuItem.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					setQueryTtl();
+				}
+			});
+		sqlPopup.add(cacheMenuItem);
+		JMenuItem historyMenuItem = new JMenuItem("Query History...");
+		historyMenuItem.setToolTipText("Show where the time went in the queries run so far.");
+		historyMenuItem.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					new QueryHistoryDialog(SwingUtilities.getWindowAncestor(ConcreteDatabasePanel.this),
+						new ArrayList<QueryMetrics>(queryHistory));
+				}
+			});
+		sqlPopup.add(historyMenuItem);
+		sqlField.setComponentPopupMenu(sqlPopup);
 		JScrollPane sqlScroll = new JScrollPane(sqlField);
 		sqlScroll.setMinimumSize(new Dimension(sqlScroll.getPreferredSize()));
 		gridbag.setConstraints(sqlScroll, c);
@@ -292,6 +426,32 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 				}
 			});
 		popup.add(printMenuItem);
+		final JMenuItem exportMenuItem = new JMenuItem("Export...");
+		exportMenuItem.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					exportResults();
+				}
+			});
+		popup.add(exportMenuItem);
+		popup.addSeparator();
+		JMenuItem filterMenuItem = new JMenuItem("Filter Rows...");
+		filterMenuItem.setToolTipText("Show only the rows containing some text.  Click a column heading to sort.");
+		filterMenuItem.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					filterResults();
+				}
+			});
+		popup.add(filterMenuItem);
+		popup.addPopupMenuListener(new PopupMenuListener() {
+				// Only rows of a ResultSet can be exported
+				public void popupMenuWillBecomeVisible(PopupMenuEvent e) {
+					exportMenuItem.setEnabled(getResultStore() != null);
+				}
+
+				public void popupMenuWillBecomeInvisible(PopupMenuEvent e) { }
+
+				public void popupMenuCanceled(PopupMenuEvent e) { }
+			});
 		table.addMouseListener(new MouseAdapter() {
 				// A right click will bring up the context menu
 				public void mousePressed(MouseEvent e) {
@@ -311,8 +471,10 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 				}
 			});
 		JScrollPane tableScroll = new JScrollPane(table);	
-		gridbag.setConstraints(tableScroll, c);
-		bottomPanel.add(tableScroll);
+		resultTabs = new JTabbedPane();
+		resultTabs.addTab("Results", tableScroll);
+		gridbag.setConstraints(resultTabs, c);
+		bottomPanel.add(resultTabs);
 
 		setRightComponent(panel);
 	}
@@ -363,8 +525,12 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 				JOptionPane.WARNING_MESSAGE) ==	JOptionPane.YES_OPTION;
 
 		if(newQuery != null && okay) {
+				int ttl = database.getQueryTtl(oldQuery);
+				java.util.List<QueryParameter> parameters = database.getQueryParameters(oldQuery);
 				database.saveQuery(newQuery, database.getQuerySql(oldQuery));
 				database.deleteQuery(oldQuery);
+				database.setQueryTtl(newQuery, ttl);
+				database.setQueryParameters(newQuery, parameters);
 				// This will cause any unsaved changes in the editor to be overwritten
 				// Let's leave the unsaved changes.
 				String currentSql = sqlField.getText();
@@ -405,16 +571,48 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 	 * reset the results table.
 	 */
 	private void runQuery() {
-		makeStopButton();
-		queryStatusLabel.setText("Working...");
-		// Store the name of this executed query
-		executedQueryName = (String) queryCombo.getSelectedItem();
-		if(executedQueryName == null)
-			executedQueryName = "";
-		table.setModel(new NonEditableTableModel());
+		runQuery(false);
+	}
+
+	/**
+	 * Runs the current query.  If it is a saved query whose results are
+	 * cached, they may be served from the ResultCache instead, unless
+	 * refresh is true.
+	 */
+	private void runQuery(boolean refresh) {
+		// Ask for the values of any named parameters first
+		String sql = sqlField.getText();
+		java.util.List<Object> parameters = null;
+		ParameterizedSql parameterized = parseParameters(sql);
+		if(parameterized != null && parameterized.hasParameters()) {
+			Map<String, Object> values = askParameters(parameterized.getNames());
+			if(values == null)
+				return;
+			sql = parameterized.getSql();
+			parameters = parameterized.getValues(values);
+		}
+
+		startQuery();
+		executedSql = sql;
+		executedParameters = parameters;
+		FetchSizeController fetchSizeController = new FetchSizeController(
+				database.getIntSetting("fetchSize", 0),
+				database.getIntSetting("reportBatchSize", 0));
+		int ttl = database.getQueryTtl(executedQueryName);
 		try {
-			queryTask = new QueryTask(connection, sqlField.getText());
-			queryTask.addTaskListener(new QueryTaskListener());
+			if(ttl > 0) {
+				CachedQueryTask task = new CachedQueryTask(ResultCache.getInstance(database),
+						statementCache, executedSql, executedParameters, 1000L * ttl);
+				task.setFetchSizeController(fetchSizeController);
+				task.setRefresh(refresh);
+				queryTask = task;
+			} else {
+				QueryTask task = new QueryTask(statementCache, executedSql);
+				task.setFetchSizeController(fetchSizeController);
+				task.setParameters(executedParameters);
+				queryTask = task;
+			}
+			queryTask.addTaskListener(new QueryTaskListener(queryTask));
 			queryTask.start();
 		} catch(SQLException e) {
 			queryStatusLabel.setText("Error");
@@ -425,6 +623,225 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 		}
 	}
 
+	/**
+	 * Returns the named parameters of the SQL, or null if it is not to
+	 * have any.  :name means other things too, e.g. PL/SQL bind
+	 * variables, so only saved queries with parameters have them, and
+	 * other SQL when "Named Parameters" is turned on.
+	 */
+	private ParameterizedSql parseParameters(String sql) {
+		String query = (String) queryCombo.getSelectedItem();
+		if(!parametersMenuItem.isSelected() && database.getQueryParameters(query).isEmpty())
+			return null;
+		return ParameterizedSql.parse(sql);
+	}
+
+	/**
+	 * Asks for the values of the named parameters of the current query,
+	 * offering the defaults saved with it.  Returns the value of each
+	 * parameter by name, or null if the user cancelled.
+	 */
+	private Map<String, Object> askParameters(java.util.List<String> names) {
+		String query = (String) queryCombo.getSelectedItem();
+		ParameterDialog dialog = new ParameterDialog(SwingUtilities.getWindowAncestor(this),
+				names, database.getQueryParameters(query), lastParameterValues, query != null);
+		Map<String, Object> values = dialog.getResponse();
+		if(values != null) {
+			lastParameterValues.putAll(dialog.getValueTexts());
+			if(dialog.isSaveDefaults()) {
+				database.setQueryParameters(query, dialog.getParameters());
+				if(parent != null)
+					parent.saveRequested(this);
+			}
+		}
+		dialog.dispose();
+		return values;
+	}
+
+	/**
+	 * Called when "Filter Rows..." from the results' context menu is
+	 * selected.  The rows are filtered in the background, an empty text
+	 * shows every row again.
+	 */
+	private void filterResults() {
+		if(!(table.getRowSorter() instanceof ResultRowSorter))
+			return;
+		ResultRowSorter sorter = (ResultRowSorter) table.getRowSorter();
+		String text = (String) JOptionPane.showInputDialog(this,
+				"Show only the rows containing:  (blank for every row)",
+				"Filter Rows", JOptionPane.PLAIN_MESSAGE,
+				null, null, sorter.getFilterText());
+		if(text == null)
+			return;
+		sorter.setFilterText(text);
+		if(sorter.getFilterText() == null)
+			showRecordCount();
+		else
+			queryStatusLabel.setText("Filtering...");
+	}
+
+	/**
+	 * Shows how many rows are in the results table, and how many of
+	 * them are shown if they are filtered.
+	 */
+	private void showRecordCount() {
+		int rowsReceived = table.getModel().getRowCount();
+		String text = rowsReceived == 1 ? "1 record" : "" + rowsReceived + " records";
+		if(table.getRowSorter() instanceof ResultRowSorter &&
+				((ResultRowSorter) table.getRowSorter()).getFilterText() != null)
+			text = table.getRowCount() + " of " + text;
+		queryStatusLabel.setText(text);
+	}
+
+	/**
+	 * Called when "Cache Results..." from the SQL editor's context menu is
+	 * executed.  Asks for how many minutes the results of the current
+	 * saved query may be served from the ResultCache.
+	 */
+	private void setQueryTtl() {
+		String query = (String) queryCombo.getSelectedItem();
+		if(query == null) {
+			JOptionPane.showMessageDialog(this,
+				"Only the results of saved queries can be cached.", "Cache Results",
+				JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		String minutes = (String) JOptionPane.showInputDialog(this,
+				"Cache the results of " + query + " for how many minutes?  (0 for never)",
+				"Cache Results", JOptionPane.PLAIN_MESSAGE,
+				null, null, "" + database.getQueryTtl(query) / 60);
+		if(minutes == null)
+			return;
+		int ttl;
+		try {
+			ttl = Integer.parseInt(minutes.trim()) * 60;
+		} catch(NumberFormatException e) {
+			ttl = -1;
+		}
+		if(ttl < 0) {
+			JOptionPane.showMessageDialog(this,
+				minutes + " is not a number of minutes.", "Cache Results",
+				JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		database.setQueryTtl(query, ttl);
+		if(ttl == 0)
+			ResultCache.getInstance(database).invalidate(database.getQuerySql(query), null);
+		if(parent != null)
+			parent.saveRequested(this);
+	}
+
+	/**
+	 * Called when "Run Partitioned..." from the SQL editor's context menu
+	 * is executed.  Asks how to split up the current query and runs it
+	 * as a PartitionedQueryTask, with the rows merged into the results table.
+	 */
+	private void runPartitionedQuery() {
+		if(queryTask != null)
+			return;
+		ParameterizedSql parameterized = parseParameters(sqlField.getText());
+		if(parameterized != null && parameterized.hasParameters()) {
+			JOptionPane.showMessageDialog(this,
+				"A query with parameters cannot be run partitioned.", "Run Partitioned",
+				JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+
+		// Offer the numeric and date columns of the query as keys,
+		// described by the database in the background
+		final String sql = sqlField.getText();
+		TaskExecutor.execute(new Runnable() {
+				public void run() {
+					String[] columns;
+					try {
+						columns = PartitionedQueryTask.getKeyColumns(connectionPool, sql);
+					} catch(Exception e) {
+						// Any column may still be typed in
+						columns = new String[0];
+					}
+					final String[] keyColumns = columns;
+					SwingUtilities.invokeLater(new Runnable() {
+							public void run() {
+								runPartitionedQuery(sql, keyColumns);
+							}
+						});
+				}
+			});
+	}
+
+	/**
+	 * Asks how to split up the query, offering the key columns given,
+	 * and runs it unless the editor has been changed in the meantime.
+	 */
+	private void runPartitionedQuery(String sql, String[] keyColumns) {
+		if(queryTask != null || !sql.equals(sqlField.getText()))
+			return;
+		PartitionDialog dialog = new PartitionDialog(SwingUtilities.getWindowAncestor(this),
+				keyColumns, database.getIntSetting("partitions", 4));
+		String keyColumn = dialog.getResponse();
+		dialog.dispose();
+		if(keyColumn == null)
+			return;
+
+		startQuery();
+		PartitionedQueryTask task = new PartitionedQueryTask(connectionPool,
+				executedSql, keyColumn, dialog.getPartitionCount());
+		task.setOrdered(dialog.isOrdered());
+		task.setFetchSizes(database.getIntSetting("fetchSize", 0),
+				database.getIntSetting("reportBatchSize", 0));
+		queryTask = task;
+		queryTask.addTaskListener(new QueryTaskListener(task));
+		queryTask.start();
+	}
+
+	/**
+	 * Called when "Run as Script" from the SQL editor's context menu is
+	 * executed.  Runs each statement of the editor text in turn, with
+	 * their timings and update counts listed on a "Messages" tab.
+	 */
+	private void runScript() {
+		if(queryTask != null)
+			return;
+
+		startQuery();
+		messagesModel = new DefaultTableModel(new String[] { "#", "Statement", "Result", "Time (ms)" }, 0) {
+				public boolean isCellEditable(int row, int column) {
+					return false;
+				}
+			};
+		JTable messagesTable = new JTable(messagesModel);
+		messagesTable.getColumnModel().getColumn(0).setPreferredWidth(30);
+		messagesTable.getColumnModel().getColumn(1).setPreferredWidth(400);
+		messagesTable.getColumnModel().getColumn(2).setPreferredWidth(250);
+		resultTabs.addTab("Messages", new JScrollPane(messagesTable));
+
+		ScriptTask task = new ScriptTask(connection, sqlField.getText());
+		task.setBatchUpdates(batchUpdatesMenuItem.isSelected());
+		task.setFetchSizeController(new FetchSizeController(
+				database.getIntSetting("fetchSize", 0),
+				database.getIntSetting("reportBatchSize", 0)));
+		queryTask = task;
+		queryTask.addTaskListener(new QueryTaskListener(task));
+		queryTask.start();
+	}
+
+	/**
+	 * Resets the results table for a query about to be run.
+	 */
+	private void startQuery() {
+		makeStopButton();
+		queryStatusLabel.setText("Working...");
+		// Store the name of this executed query
+		executedQueryName = (String) queryCombo.getSelectedItem();
+		if(executedQueryName == null)
+			executedQueryName = "";
+		executedSql = sqlField.getText();
+		executedParameters = null;
+		closeResults();
+		detachRowSorter(table);
+		table.setModel(new NonEditableTableModel());
+	}
+
 	/**
 	 * Change the "Stop Button" into a "Run Button".
 	 * Presumably after a query completes or the Stop Button is pressed.
@@ -454,11 +871,79 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 	 * This will request that the running query task cancel.
 	 */
 	public void stopQuery() {
-		if(queryTask != null) {
-			queryTask.cancel();
+		Task task = queryTask;
+		if(task != null) {
+			task.cancel();
+		}
+	}
+
+	/**
+	 * Releases the results of the previous query, including any
+	 * pages that were spilled to disk.
+	 */
+	private void closeResults() {
+		// Stop any sorts before their stores are closed
+		detachRowSorter(table);
+		for(JTable scriptTable : scriptResultTables)
+			detachRowSorter(scriptTable);
+		for(ResultStore store : getAllResultStores())
+			store.close();
+
+		// Remove the tabs of the last script
+		scriptResultTables.clear();
+		messagesModel = null;
+		while(resultTabs.getTabCount() > 1)
+			resultTabs.removeTabAt(1);
+		resultTabs.setSelectedIndex(0);
+	}
+
+	/**
+	 * Takes the row sorter off a table, cancelling any sort it has in
+	 * progress.
+	 */
+	private static void detachRowSorter(JTable theTable) {
+		if(theTable.getRowSorter() instanceof ResultRowSorter)
+			((ResultRowSorter) theTable.getRowSorter()).dispose();
+		theTable.setRowSorter(null);
+	}
+
+	/**
+	 * Sorts in the rows appended to each table since its last sort,
+	 * once all of the rows have arrived.
+	 */
+	private void sortAppendedRows() {
+		if(table.getRowSorter() instanceof ResultRowSorter)
+			((ResultRowSorter) table.getRowSorter()).sortAppendedRows();
+		for(JTable scriptTable : scriptResultTables) {
+			if(scriptTable.getRowSorter() instanceof ResultRowSorter)
+				((ResultRowSorter) scriptTable.getRowSorter()).sortAppendedRows();
 		}
 	}
 
+	/**
+	 * Returns the ResultStores of the results table and of any
+	 * further results of a script.
+	 */
+	private java.util.List<ResultStore> getAllResultStores() {
+		java.util.List<ResultStore> stores = new ArrayList<ResultStore>();
+		ResultStore store = getResultStore();
+		if(store != null)
+			stores.add(store);
+		for(JTable scriptTable : scriptResultTables)
+			stores.add(((NonEditableTableModel) scriptTable.getModel()).getResultStore());
+		return stores;
+	}
+
+	/**
+	 * Returns the ResultStore of the results table, or null if there are no results.
+	 */
+	private ResultStore getResultStore() {
+		TableModel model = table.getModel();
+		if(model instanceof NonEditableTableModel)
+			return ((NonEditableTableModel) model).getResultStore();
+		return null;
+	}
+
 	/**
 	 * Called when either Ctrl+P or "Print..." from the context menu are executed.
 	 * This will inform the parent that a print has been requested by the user.
@@ -468,15 +953,145 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 			parent.printRequested(this);
 	}
 
+	/**
+	 * Formats an age in milliseconds for the user, e.g. "3m".
+	 */
+	private static String formatAge(long millis) {
+		long seconds = millis / 1000;
+		if(seconds < 60)
+			return seconds + "s";
+		if(seconds < 3600)
+			return seconds / 60 + "m";
+		if(seconds < 86400)
+			return seconds / 3600 + "h";
+		return seconds / 86400 + "d";
+	}
+
+	/**
+	 * Called when "Export..." from the context menu is executed.
+	 * Asks for a file and writes the rows of the results table to it in
+	 * the background, as CSV, TSV or Arrow, in the order they are
+	 * shown.  The query is not run again.
+	 */
+	private void exportResults() {
+		ResultStore store = getResultStore();
+		if(store == null || store.getColumnCount() == 0) {
+			JOptionPane.showMessageDialog(this,
+				"Run a query which returns rows before exporting them.", "Export",
+				JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+
+		JFileChooser chooser = new JFileChooser();
+		FileNameExtensionFilter csvFilter = new FileNameExtensionFilter("CSV (Comma delimited)", "csv");
+		FileNameExtensionFilter tsvFilter = new FileNameExtensionFilter("TSV (Tab delimited)", "tsv", "txt");
+		FileNameExtensionFilter arrowFilter = new FileNameExtensionFilter("Arrow IPC stream", "arrows");
+		chooser.addChoosableFileFilter(csvFilter);
+		chooser.addChoosableFileFilter(tsvFilter);
+		chooser.addChoosableFileFilter(arrowFilter);
+		chooser.setFileFilter(csvFilter);
+		if(executedQueryName.length() > 0)
+			chooser.setSelectedFile(new File(executedQueryName + ".csv"));
+		if(chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+			return;
+
+		// Use the extension typed, otherwise the chosen filter
+		File file = chooser.getSelectedFile();
+		int format;
+		if(tsvFilter.accept(file)) {
+			format = ExportTask.TSV;
+		} else if(csvFilter.accept(file)) {
+			format = ExportTask.CSV;
+		} else if(arrowFilter.accept(file)) {
+			format = ExportTask.ARROW;
+		} else if(chooser.getFileFilter() == tsvFilter) {
+			format = ExportTask.TSV;
+			file = new File(file.getPath() + ".tsv");
+		} else if(chooser.getFileFilter() == arrowFilter) {
+			format = ExportTask.ARROW;
+			file = new File(file.getPath() + ".arrows");
+		} else {
+			format = ExportTask.CSV;
+			file = new File(file.getPath() + ".csv");
+		}
+		if(file.exists()) {
+			int answer = JOptionPane.showConfirmDialog(this,
+				file.getName() + " already exists.  Replace it?", "Export",
+				JOptionPane.YES_NO_OPTION);
+			if(answer != JOptionPane.YES_OPTION)
+				return;
+		}
+
+		// Export the rows shown right now, a query may still be adding
+		// to them.  The store is kept open until the export is done.
+		int[] rows = new int[table.getRowCount()];
+		for(int row = 0; row < rows.length; row++)
+			rows[row] = table.convertRowIndexToModel(row);
+		store.retain();
+		ExportTask task = new ExportTask(store, rows, file, format);
+		task.setRowGroupSize(database.getIntSetting("rowGroupSize", ArrowRowSink.DEFAULT_ROW_GROUP_SIZE));
+		TaskProgressDialog dialog = new TaskProgressDialog(
+			SwingUtilities.getWindowAncestor(this), "Export",
+			"Exporting to " + file.getName() + "...", task);
+		task.addTaskListener(new ExportTaskListener(task, dialog));
+		task.start();
+	}
+
+	/**
+	 * Returns the name of the table selected in the tree, or null
+	 * if no table is selected.
+	 */
+	private String getSelectedTable() {
+		TreePath path = tree.getSelectionPath();
+		if(path == null || path.getPathCount() != 3)
+			return null;
+		return path.getLastPathComponent().toString();
+	}
+
+	/**
+	 * Asks for a CSV or TSV file and loads it into the table selected
+	 * in the tree.
+	 */
+	private void importIntoTable() {
+		String table = getSelectedTable();
+		if(table == null)
+			return;
+		ImportDialog importDialog = new ImportDialog(
+			SwingUtilities.getWindowAncestor(this), table,
+			connectionPool.getMaxSize());
+		File file = importDialog.getResponse();
+		importDialog.dispose();
+		if(file == null)
+			return;
+
+		ImportTask task = new ImportTask(connectionPool, file, table);
+		task.setDelimiter(importDialog.isTabDelimited() ? DelimitedReader.TSV : DelimitedReader.CSV);
+		task.setHeader(importDialog.hasHeader());
+		task.setBatchSize(importDialog.getBatchSize());
+		task.setCommitInterval(importDialog.getCommitInterval());
+		task.setWriterCount(importDialog.getWriterCount());
+		TaskProgressDialog dialog = new TaskProgressDialog(
+			SwingUtilities.getWindowAncestor(this), "Import",
+			"Importing " + file.getName() + "...", task);
+		task.addTaskListener(new ImportTaskListener(task, dialog));
+		task.start();
+	}
+
 	/**
 	 * Manually adjust the columns in the JTable.
 	 * Since the JTable is set NOT to auto-adjust. This method should be called
-	 * at the end of a query to make all of the columns fit nicely.  The size
-	 * of the strings in each column will be used to determine the correct
-	 * width of each column.
+	 * at the end of a query to make all of the columns fit nicely.  The
+	 * longest text in each column will be used to determine the correct
+	 * width of each column.  For results the text is taken from the sample
+	 * the ResultStore kept while the rows were read, otherwise from at most
+	 * ColumnWidthSampler.RESERVOIR_SIZE evenly spaced rows, so this takes
+	 * the same time however many rows there are.  It is static so the
+	 * benchmarks can call it without a connection.
 	 */
-	protected void adjustTableColumns(JTable theTable) {
+	public static void adjustTableColumns(JTable theTable) {
 		TableModel model = theTable.getModel();
+		ResultStore store = model instanceof NonEditableTableModel ?
+				((NonEditableTableModel) model).getResultStore() : null;
 		TableCellRenderer headerRenderer =
 				theTable.getTableHeader().getDefaultRenderer();
 
@@ -489,29 +1104,48 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 					false, false, 0, 0);
 			int headerWidth = comp.getPreferredSize().width;
 
-			// Find the longest cell
-			int sampleSize = model.getRowCount();
-			String longString = "";
-			for(int row = 0; row < sampleSize; row++) {
-				Object sampleObject = model.getValueAt(row, col);
-				String sampleString = null;
-				if(sampleObject != null)
-					sampleString = sampleObject.toString();
-				if(sampleString != null && sampleString.length() > longString.length())
-					longString = sampleString;
+			// Find the widest cell, formatted as it is shown
+			int modelColumn = column.getModelIndex();
+			java.util.List<Object> values = store != null ? store.getSampledValues(modelColumn) : null;
+			if(values == null)
+				values = sampleValues(model, modelColumn);
+			int cellWidth;
+			if(column.getCellRenderer() instanceof ResultCellRenderer) {
+				cellWidth = ((ResultCellRenderer) column.getCellRenderer()).
+						getPreferredWidth(theTable, values, col);
+			} else {
+				String longString = "";
+				for(Object value : values) {
+					if(value.toString().length() > longString.length())
+						longString = value.toString();
+				}
+				comp = theTable.getDefaultRenderer(String.class).
+						getTableCellRendererComponent(
+						theTable, longString,
+						false, false, 0, col);
+				cellWidth = comp.getPreferredSize().width;
 			}
-				
-			// Find the cell size
-			comp = theTable.getDefaultRenderer(String.class).
-					getTableCellRendererComponent(
-					theTable, longString,
-					false, false, 0, col);
-			int cellWidth = comp.getPreferredSize().width;
 
 			column.setPreferredWidth(Math.max(headerWidth, cellWidth) + 10);
 		}
 	}
 
+	/**
+	 * Returns the values of evenly spaced rows of the column, leaving
+	 * out NULLs.
+	 */
+	private static java.util.List<Object> sampleValues(TableModel model, int column) {
+		int rowCount = model.getRowCount();
+		int step = Math.max(1, rowCount / ColumnWidthSampler.RESERVOIR_SIZE);
+		java.util.List<Object> values = new ArrayList<Object>();
+		for(int row = 0; row < rowCount; row += step) {
+			Object sampleObject = model.getValueAt(row, column);
+			if(sampleObject != null)
+				values.add(sampleObject);
+		}
+		return values;
+	}
+
 	/**
 	 * Called when the "Save Query" button is pressed.
 	 * This will save the changes to an existing query, and prompt
@@ -532,45 +1166,147 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 
 	/**
 	 * Called by the JTreeView listener when the user expands the "Database"
-	 * section.  This method will lookup a list of tables from the database
-	 * and use that to populate the JTreeView.
+	 * section.  This method will lookup a list of tables from the metadata
+	 * cache and use that to populate the JTreeView.  If the tables have
+	 * not been read yet, they are read in the background.
 	 */
 	private void expandDatabaseTree(DefaultMutableTreeNode dbNode) {
-		try {
-			dbNode.removeAllChildren();
-			java.util.List<String> tables = database.getTables(connection);
-			for(String table : tables) {
-				DefaultMutableTreeNode tableNode = new DefaultMutableTreeNode(table);
-				tableNode.add(new DefaultMutableTreeNode("Placeholder"));
-				dbNode.add(tableNode);
-			}
-		} catch(SQLException e) {
-			JOptionPane.showMessageDialog(this,
-				e.getMessage(), "Error",
-				JOptionPane.ERROR_MESSAGE);
+		java.util.List<String> tables = metadataCache.getTables();
+		if(tables == null) {
+			waitForMetadata(dbNode);
+			crawlMetadata();
+			return;
 		}
+		fillDatabaseNode(dbNode, tables);
+		// Show what we have now, but bring it up to date for next time
+		if(metadataCache.isStale())
+			crawlMetadata();
 	}
 
 	/**
 	 * Called by the JTreeView listener when the user expands the "Table"
 	 * section.  This method will lookup a list of columns from the specified
-	 * table from the database and use that to populate the JTreeView.
+	 * table from the metadata cache and use that to populate the JTreeView.
+	 * If the columns have not been read yet, they are read in the background.
 	 */
 	private void expandTableTree(DefaultMutableTreeNode tableNode) {
-		try {
-			tableNode.removeAllChildren();
-			java.util.List<String> columns = database.getColumns(connection, (String)tableNode.getUserObject());
-			for(String column : columns) {
-				DefaultMutableTreeNode columnNode = new DefaultMutableTreeNode(column);
-				tableNode.add(columnNode);
+		String table = (String) tableNode.getUserObject();
+		java.util.List<String> columns = metadataCache.getColumns(table);
+		if(columns == null) {
+			waitForMetadata(tableNode);
+			// A running crawl will read these columns anyway
+			if(metadataCrawlTask == null)
+				loadTableMetadata(table);
+			return;
+		}
+		fillTableNode(tableNode, columns);
+	}
+
+	private void fillDatabaseNode(DefaultMutableTreeNode dbNode, java.util.List<String> tables) {
+		dbNode.removeAllChildren();
+		for(String table : tables) {
+			DefaultMutableTreeNode tableNode = new DefaultMutableTreeNode(table);
+			tableNode.add(new DefaultMutableTreeNode("Placeholder"));
+			dbNode.add(tableNode);
+		}
+	}
+
+	private void fillTableNode(DefaultMutableTreeNode tableNode, java.util.List<String> columns) {
+		tableNode.removeAllChildren();
+		for(String column : columns) {
+			DefaultMutableTreeNode columnNode = new DefaultMutableTreeNode(column);
+			tableNode.add(columnNode);
+		}
+	}
+
+	/**
+	 * Shows a "Loading..." node under the specified node until
+	 * its metadata has been read.
+	 */
+	private void waitForMetadata(DefaultMutableTreeNode node) {
+		node.removeAllChildren();
+		node.add(new DefaultMutableTreeNode("Loading..."));
+		pendingTreeNodes.add(node);
+	}
+
+	/**
+	 * Starts reading all of the metadata in the background, unless
+	 * that is already happening.
+	 */
+	private void crawlMetadata() {
+		if(metadataCrawlTask != null)
+			return;
+		metadataCrawlTask = new MetadataTask(metadataCache, connectionPool);
+		metadataCrawlTask.addTaskListener(new MetadataTaskListener(metadataCrawlTask));
+		metadataCrawlTask.start();
+	}
+
+	/**
+	 * Starts reading the columns of one table in the background, unless
+	 * that is already happening.
+	 */
+	private void loadTableMetadata(String table) {
+		if(!loadingTables.add(table))
+			return;
+		MetadataTask task = new MetadataTask(metadataCache, connectionPool, table);
+		task.addTaskListener(new MetadataTaskListener(task));
+		task.start();
+	}
+
+	/**
+	 * Called on the event dispatch thread when a MetadataTask finishes.
+	 * Fills in any "Loading..." nodes whose metadata is now available.
+	 */
+	private void fillPendingTreeNodes(boolean failed) {
+		DefaultTreeModel model = (DefaultTreeModel) tree.getModel();
+		for(DefaultMutableTreeNode node : new ArrayList<DefaultMutableTreeNode>(pendingTreeNodes)) {
+			if(node.getLevel() == 1) {
+				// A database node
+				java.util.List<String> tables = metadataCache.getTables();
+				if(tables != null) {
+					fillDatabaseNode(node, tables);
+				} else if(failed) {
+					node.removeAllChildren();
+				} else {
+					continue;
+				}
+			} else {
+				// A table node
+				String table = (String) node.getUserObject();
+				java.util.List<String> columns = metadataCache.getColumns(table);
+				if(columns != null) {
+					fillTableNode(node, columns);
+				} else if(metadataCrawlTask == null && !loadingTables.contains(table) && !failed) {
+					// The crawl could not read these, ask for just this table
+					loadTableMetadata(table);
+					continue;
+				} else if(failed) {
+					node.removeAllChildren();
+				} else {
+					continue;
+				}
 			}
-		} catch(SQLException e) {
-			JOptionPane.showMessageDialog(this,
-				e.getMessage(), "Error",
-				JOptionPane.ERROR_MESSAGE);
+			pendingTreeNodes.remove(node);
+			model.nodeStructureChanged(node);
 		}
 	}
 
+	/**
+	 * Forgets the cached metadata, collapses the tree and reads
+	 * the metadata again.
+	 */
+	private void refreshTree() {
+		metadataCache.invalidate();
+		DefaultTreeModel model = (DefaultTreeModel) tree.getModel();
+		DefaultMutableTreeNode rootNode = (DefaultMutableTreeNode) model.getRoot();
+		DefaultMutableTreeNode dbNode = (DefaultMutableTreeNode) rootNode.getFirstChild();
+		tree.collapsePath(new TreePath(dbNode.getPath()));
+		pendingTreeNodes.clear();
+		dbNode.removeAllChildren();
+		dbNode.add(new DefaultMutableTreeNode("Placeholder"));
+		model.nodeStructureChanged(dbNode);
+		crawlMetadata();
+	}
 
 	/**
 	 * Implementing the DatabasePanel interface.
@@ -607,10 +1343,13 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 			// BEFORE the connection is closed, the data in the
 			// table can be GCed.  But the other way around and
 			// it is stuck! D:
+			closeResults();
+			detachRowSorter(table);
 			table.setModel(new DefaultTableModel());
-			// Let the close operation run in the background, it's possible
+			// Let the release operation run in the background, it's possible
 			// for it to take a long time.
-			CloseConnectionTask cct = new CloseConnectionTask(connection);
+			CloseConnectionTask cct = new CloseConnectionTask(connectionPool, connection);
+			cct.setStatementCache(statementCache);
 			cct.start();
 			LowMemoryMonitor monitor = LowMemoryMonitor.getInstance();
 			monitor.removeListener(lowMemoryListener);
@@ -656,69 +1395,336 @@ public class ConcreteDatabasePanel extends JSplitPane implements DatabasePanel {
 		}
 	}
 
+	/**
+	 * A task listener for MetadataTasks.  Updates the tree once
+	 * the metadata has been read and shows any errors.
+	 */
+	private class MetadataTaskListener extends TaskAdapter {
+		private final MetadataTask task;
+
+		public MetadataTaskListener(MetadataTask task) {
+			this.task = task;
+		}
+
+		public void taskError(final Exception e) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					JOptionPane.showMessageDialog(ConcreteDatabasePanel.this,
+						e.getMessage(), "Error",
+						JOptionPane.ERROR_MESSAGE);
+				}
+			});
+		}
+
+		public void taskFinished() {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					if(task == metadataCrawlTask)
+						metadataCrawlTask = null;
+					if(task.getTable() != null)
+						loadingTables.remove(task.getTable());
+					fillPendingTreeNodes(task.hasError());
+				}
+			});
+		}
+	}
+
+	/**
+	 * A task listener for ExportTasks.  Shows the number of rows
+	 * written so far in the progress dialog, and any errors.
+	 */
+	private class ExportTaskListener extends TaskAdapter {
+		private final ExportTask task;
+		private final TaskProgressDialog dialog;
+
+		public ExportTaskListener(ExportTask task, TaskProgressDialog dialog) {
+			this.task = task;
+			this.dialog = dialog;
+		}
+
+		public void taskStatus(final Object obj) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					dialog.setMessage("Exported " + obj + " rows to " + task.getFile().getName());
+				}
+			});
+		}
+
+		public void taskFinished() {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					dialog.dispose();
+					if(task.hasError()) {
+						JOptionPane.showMessageDialog(ConcreteDatabasePanel.this,
+							task.getError().getMessage(), "Error",
+							JOptionPane.ERROR_MESSAGE);
+					} else if(!task.isCancelled()) {
+						queryStatusLabel.setText("Exported " + task.getStatus()
+							+ " rows to " + task.getFile().getName());
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * A task listener for ImportTasks.  Shows the number of rows
+	 * imported so far and the rate in the progress dialog, and any
+	 * errors.
+	 */
+	private class ImportTaskListener extends TaskAdapter {
+		private final ImportTask task;
+		private final TaskProgressDialog dialog;
+		private final long start = System.currentTimeMillis();
+
+		public ImportTaskListener(ImportTask task, TaskProgressDialog dialog) {
+			this.task = task;
+			this.dialog = dialog;
+		}
+
+		public void taskStatus(final Object obj) {
+			final long elapsed = System.currentTimeMillis() - start;
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					long rows = ((Long) obj).longValue();
+					dialog.setMessage("Imported " + rows + " rows into " + task.getTable()
+						+ " (" + (elapsed > 0 ? rows * 1000 / elapsed : rows) + " rows/s)");
+				}
+			});
+		}
+
+		public void taskFinished() {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					dialog.dispose();
+					if(task.hasError()) {
+						JOptionPane.showMessageDialog(ConcreteDatabasePanel.this,
+							task.getError().getMessage(), "Error",
+							JOptionPane.ERROR_MESSAGE);
+					} else if(!task.isCancelled()) {
+						queryStatusLabel.setText("Imported " + task.getStatus()
+							+ " rows into " + task.getTable());
+					} else if(task.getCommittedRows() != null) {
+						queryStatusLabel.setText("Import cancelled, rows " + task.getCommittedRows()
+							+ " of the file remain in " + task.getTable());
+					}
+				}
+			});
+		}
+	}
+
 	/**
 	 * A task listener designed to listen to a running QueryTask.
 	 * It will correctly update the UI depending on the status
 	 * of the QueryTask.
 	 */
 	private class QueryTaskListener implements TaskListener {
-		private int rowsReceived = 0;
+
+		// How often the event dispatch thread picks up new rows
+		private static final int DRAIN_INTERVAL = 100;
+
+		// Status reported by the task waiting to be shown.  The task
+		// thread only ever adds to this queue, it never waits for the
+		// event dispatch thread.
+		private final Queue<Object> pendingStatus = new ConcurrentLinkedQueue<Object>();
+
+		private final Task task;
+
+		// Time spent on the event dispatch thread showing the rows,
+		// including painting them
+		private long renderNanos = 0;
+
+		private final javax.swing.Timer drainTimer = new javax.swing.Timer(DRAIN_INTERVAL, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					drainStatus();
+				}
+			});
+
+		public QueryTaskListener(Task task) {
+			this.task = task;
+			drainTimer.start();
+		}
 
 		/**
 		 * When the task has finished, the table will be adjusted
 		 * and the "Stop Button" will return to a "Run Button"
 		 */
 		public void taskFinished() {
-			queryTask = null;
 			try {
 				SwingUtilities.invokeAndWait(new Runnable() {
 					public void run() {
+						drainTimer.stop();
+						drainStatus();
+						sortAppendedRows();
+						if(task.isCancelled()) {
+							queryStatusLabel.setText(queryStatusLabel.getText() +
+								" (cancelled in " + task.getCancelLatency() + " ms)");
+						} else if(task instanceof CachedQueryTask &&
+								((CachedQueryTask) task).getCachedAge() >= 0) {
+							queryStatusLabel.setText(queryStatusLabel.getText() +
+								", served from cache (age " +
+								formatAge(((CachedQueryTask) task).getCachedAge()) + ")");
+						}
+						long start = System.nanoTime();
 						adjustTableColumns(table);
+						for(JTable scriptTable : scriptResultTables)
+							adjustTableColumns(scriptTable);
+						// Only now can another query be started, unless
+						// one already has been
+						if(queryTask == task)
+							queryTask = null;
 						makeRunButton();
 						runButton.setEnabled(true);
+
+						// Record the timings once the rows have been painted
+						addRenderNanosAfterPaint(start);
+						SwingUtilities.invokeLater(new Runnable() {
+								public void run() {
+									recordMetrics();
+								}
+							});
 					}
 				});
 			} catch(Exception f) { }
 		}
 
+		private void recordMetrics() {
+			String tip = "Prepared statements: " + statementCache.getHits() +
+				" reused, " + statementCache.getMisses() + " prepared";
+			QueryMetrics metrics = getMetrics();
+			if(metrics != null) {
+				metrics.addRenderNanos(renderNanos);
+				QueryStatistics.getInstance().record(metrics);
+				queryHistory.add(metrics);
+				if(queryHistory.size() > QUERY_HISTORY_SIZE)
+					queryHistory.remove(0);
+				tip = "<html>" + tip + "<br>Query " + metrics + "</html>";
+			}
+			queryStatusLabel.setToolTipText(tip);
+		}
+
 		/**
-		 * If the task reports status, results are being returned.
-		 * The table should be updated to reflect the data.
+		 * Adds the time from start until the event dispatch thread has
+		 * got through the events queued so far to the render time.
+		 * Changing a table queues its repaint, so this includes painting
+		 * what was changed.
 		 */
-		public void taskStatus(final Object obj) {
-			try {
-				SwingUtilities.invokeAndWait(new Runnable() {
+		private void addRenderNanosAfterPaint(final long start) {
+			SwingUtilities.invokeLater(new Runnable() {
 					public void run() {
-						DefaultTableModel model = (DefaultTableModel) table.getModel();
-						// Make sure this object is a non-empty Vector
-						if(obj instanceof Vector && ((Vector) obj).size() > 0) {
-							Vector vector = (Vector) obj;
-							if(vector.get(0) instanceof String) {
-								// We have column names
-								for(Object column : vector) {
-									model.addColumn(column);
-								}
-								queryStatusLabel.setText("0 records");
-							} else {
-								// We have rows of data
-								for(Object row : vector) {
-									if(row instanceof Vector) {
-										rowsReceived += 1;
-										model.addRow((Vector) row);
-									}
-								}
+						renderNanos += System.nanoTime() - start;
+					}
+				});
+		}
 
-								if(rowsReceived == 1) {
-									queryStatusLabel.setText("1 record");
-								} else {
-									queryStatusLabel.setText("" + rowsReceived + " records");
-								}
+		/**
+		 * If the task reports status, results are being returned.
+		 * The status is queued for the event dispatch thread.
+		 */
+		public void taskStatus(Object obj) {
+			pendingStatus.offer(obj);
+		}
+
+		/**
+		 * Called on the event dispatch thread to show all queued status.
+		 * All of the rows received since the last call are announced to
+		 * each table in one event.
+		 */
+		private void drainStatus() {
+			Set<ResultStore> stores = new LinkedHashSet<ResultStore>();
+			Object obj;
+			while((obj = pendingStatus.poll()) != null) {
+				if(obj instanceof ResultStore)
+					stores.add((ResultStore) obj);
+				else if(obj instanceof StatementResult)
+					showStatementResult((StatementResult) obj);
+			}
+			if(stores.isEmpty())
+				return;
+			long start = System.nanoTime();
+			for(ResultStore store : stores)
+				showRows(store);
+			addRenderNanosAfterPaint(start);
+		}
+
+		/**
+		 * Returns the timings of the task, if it ran a single query.
+		 */
+		private QueryMetrics getMetrics() {
+			if(task instanceof QueryTask)
+				return ((QueryTask) task).getMetrics();
+			if(task instanceof CachedQueryTask)
+				return ((CachedQueryTask) task).getMetrics();
+			return null;
+		}
+
+		/**
+		 * Shows any rows of data added to the store since the last report.
+		 * The first store goes in the results table, any further stores
+		 * of a script get a new tab.
+		 */
+		private void showRows(ResultStore store) {
+			JTable resultTable = null;
+			if(getResultStore() == store || getResultStore() == null) {
+				resultTable = table;
+			} else {
+				for(JTable scriptTable : scriptResultTables) {
+					if(((NonEditableTableModel) scriptTable.getModel()).getResultStore() == store)
+						resultTable = scriptTable;
+				}
+			}
+			if(resultTable == null) {
+				resultTable = new JTable();
+				resultTable.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+				scriptResultTables.add(resultTable);
+				// Keep the messages last
+				resultTabs.insertTab("Results " + (scriptResultTables.size() + 1), null,
+					new JScrollPane(resultTable), null, resultTabs.getTabCount() - 1);
+			}
+
+			NonEditableTableModel model = (NonEditableTableModel) resultTable.getModel();
+			if(model.getResultStore() != store) {
+				// We have column names
+				model = new NonEditableTableModel(store);
+				detachRowSorter(resultTable);
+				resultTable.setModel(model);
+				ResultCellRenderer.install(resultTable, store);
+				final ResultRowSorter sorter = new ResultRowSorter(model);
+				if(resultTable == table) {
+					sorter.addRowSorterListener(new RowSorterListener() {
+							public void sorterChanged(RowSorterEvent e) {
+								if(e.getType() == RowSorterEvent.Type.SORTED && sorter.getFilterText() != null)
+									showRecordCount();
 							}
-						}
+						});
+				}
+				resultTable.setRowSorter(sorter);
+			}
 
-					}
-				});
-			} catch(Exception f) { }
+			model.rowsAppended();
+			// A script shows the last statement's outcome instead
+			if(resultTable != table || messagesModel != null)
+				return;
+			showRecordCount();
+		}
+
+		/**
+		 * Adds the outcome of a statement of a script to the messages.
+		 */
+		private void showStatementResult(StatementResult result) {
+			if(messagesModel == null)
+				return;
+
+			// The first line of the statement is enough to recognize it
+			String sql = result.getSql();
+			int lineEnd = sql.indexOf('\n');
+			if(lineEnd >= 0)
+				sql = sql.substring(0, lineEnd).trim() + " ...";
+			messagesModel.addRow(new Object[] { Integer.valueOf(result.getNumber()), sql,
+				result.toString(), Long.valueOf(result.getElapsedMillis()) });
+			queryStatusLabel.setText("Statement " + result.getNumber() + ": " + result);
+			if(result.hasError())
+				resultTabs.setSelectedIndex(resultTabs.getTabCount() - 1);
 		}
 
 		/**
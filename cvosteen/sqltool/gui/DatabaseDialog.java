@@ -22,6 +22,7 @@ public class DatabaseDialog extends JDialog implements ResponseGetter<Database>
 	private final JTextField driverField = new JTextField(20);
 	private final JTextField urlField = new JTextField(20);
 	private final PropertiesEditor propEditor = new PropertiesEditor();
+	private final PropertiesEditor settingsEditor = new PropertiesEditor();
 
 	/**
 	 * Creates a DatabaseDialog that will return a new
@@ -52,6 +53,7 @@ public class DatabaseDialog extends JDialog implements ResponseGetter<Database>
 		driverField.setText(database.getDriver());
 		urlField.setText(database.getConnectionUrl());
 		propEditor.setProperties(database.getProperties());
+		settingsEditor.setProperties(database.getSettings());
 		setVisible(true);
 	}
 
@@ -126,10 +128,29 @@ public class DatabaseDialog extends JDialog implements ResponseGetter<Database>
 		panel.add(propEditor);
 		propEditor.setPreferredSize(new Dimension(100, 100));
 
+		// SQLTool settings table (fetchSize, etc.)
+		c.weightx = 0.0;
+		c.weighty = 0.0;
+		c.gridy = 5;
+		c.gridx = 0;
+		c.gridwidth = 1;
+		c.gridheight = 1;
+		label = new JLabel("SQLTool Settings:");
+		gridbag.setConstraints(label, c);
+		panel.add(label);
+		c.weightx = 1.0;
+		c.weighty = 1.0;
+		c.gridx = 1;
+		c.gridwidth = 2;
+		c.gridheight = 2;
+		gridbag.setConstraints(settingsEditor, c);
+		panel.add(settingsEditor);
+		settingsEditor.setPreferredSize(new Dimension(100, 100));
+
 		// Save and Cancel buttons on bottom right
 		c.weightx = 1.0;
 		c.weighty = 0.0;
-		c.gridy = 5;
+		c.gridy = 7;
 		c.gridx = 1;
 		c.gridwidth = 1;
 		c.fill = GridBagConstraints.NONE;
@@ -181,6 +202,7 @@ public class DatabaseDialog extends JDialog implements ResponseGetter<Database>
 		try {
 			database = new Database(nameField.getText(), driverField.getText(), urlField.getText());
 			database.setProperties(propEditor.getProperties());
+			database.setSettings(settingsEditor.getProperties());
 			setVisible(false);
 		} catch(NullPointerException f) {
 			// Databases throw NullPointerException if any of the fields are nulls (e.g. User Error)
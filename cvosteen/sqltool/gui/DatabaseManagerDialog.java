@@ -10,6 +10,7 @@
 package cvosteen.sqltool.gui;
 
 import cvosteen.sqltool.database.*;
+import cvosteen.sqltool.task.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
@@ -182,6 +183,8 @@ public class DatabaseManagerDialog extends JDialog implements ResponseGetter<Dat
 				selection.setDriver(newDatabase.getDriver());
 				selection.setConnectionUrl(newDatabase.getConnectionUrl());
 				selection.setProperties(newDatabase.getProperties());
+				selection.setSettings(newDatabase.getSettings());
+				resetConnections(selection);
 				try {
 					databaseManager.save();
 				} catch(IOException e) {
@@ -206,6 +209,12 @@ public class DatabaseManagerDialog extends JDialog implements ResponseGetter<Dat
 				"Delete Database", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE)
 				== JOptionPane.YES_OPTION) {
 			databaseManager.remove((Database) list.getSelectedValue());
+			final Database deleted = selection;
+			TaskExecutor.execute(new Runnable() {
+					public void run() {
+						ConnectionPool.remove(deleted);
+					}
+				});
 			try {
 				databaseManager.save();
 			} catch(IOException e) {
@@ -217,6 +226,18 @@ public class DatabaseManagerDialog extends JDialog implements ResponseGetter<Dat
 		}
 	}
 
+	/**
+	 * Closes the pooled connections to an edited Database in the
+	 * background, so that new ones are made with its new settings.
+	 */
+	private void resetConnections(final Database database) {
+		TaskExecutor.execute(new Runnable() {
+				public void run() {
+					ConnectionPool.reset(database);
+				}
+			});
+	}
+
 	/**
 	 * Called by parent window or other client to get the
 	 * user's choice or response from this dialog.
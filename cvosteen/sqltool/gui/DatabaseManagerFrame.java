@@ -239,6 +239,8 @@ public class DatabaseManagerFrame extends JFrame implements DatabasePanelParent
 	private void shutdown() {
 		for(int i = 0; i < tabbedPane.getTabCount(); i++)
 			((DatabasePanel) tabbedPane.getComponentAt(i)).shutdown();
+		ConnectionPool.closeAll();
+		ResultCache.closeAll();
 		dispose();
 	}
 
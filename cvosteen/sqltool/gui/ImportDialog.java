@@ -0,0 +1,192 @@
+/**
+ * A dialog that asks for a CSV or TSV file to load into a table,
+ * and how to load it: wether the file has a header line, how many
+ * rows to send at once, how often to commit and how many connections
+ * to insert on.
+ */
+
+package cvosteen.sqltool.gui;
+
+import cvosteen.sqltool.tasks.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.*;
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+public class ImportDialog extends JDialog implements ResponseGetter<File> {
+
+	private File file = null;
+	private final JTextField fileField = new JTextField(30);
+	private final JCheckBox headerCheck = new JCheckBox("The first line has column names", true);
+	private final JSpinner batchSizeSpinner = new JSpinner(new SpinnerNumberModel(ImportTask.DEFAULT_BATCH_SIZE, 1, 100000, 100));
+	private final JSpinner commitIntervalSpinner = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 10000));
+	private final JSpinner writersSpinner;
+
+	/**
+	 * Creates an ImportDialog for the specified table, allowing up to
+	 * maxWriters connections.
+	 */
+	public ImportDialog(Window owner, String table, int maxWriters) {
+		super(owner, "Import into " + table, Dialog.ModalityType.APPLICATION_MODAL);
+		writersSpinner = new JSpinner(new SpinnerNumberModel(1, 1, Math.max(1, maxWriters), 1));
+		createComponents();
+		setVisible(true);
+	}
+
+	private void createComponents() {
+		setDefaultCloseOperation(JDialog.HIDE_ON_CLOSE);
+
+		// Set the layout (GridBag)
+		JPanel panel = new JPanel();
+		GridBagLayout gridbag = new GridBagLayout();
+		GridBagConstraints c = new GridBagConstraints();
+		panel.setBorder(BorderFactory.createEmptyBorder(10,10,10,10));
+		panel.setLayout(gridbag);
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.insets = new Insets(5,5,5,5);
+
+		// File and a Browse button
+		c.weightx = 0.0;
+		c.gridwidth = 1;
+		JLabel label = new JLabel("File:");
+		gridbag.setConstraints(label, c);
+		panel.add(label);
+		c.weightx = 1.0;
+		gridbag.setConstraints(fileField, c);
+		panel.add(fileField);
+		c.weightx = 0.0;
+		c.gridwidth = GridBagConstraints.REMAINDER;
+		JButton browseButton = new JButton("Browse...");
+		browseButton.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					browse();
+				}
+			});
+		gridbag.setConstraints(browseButton, c);
+		panel.add(browseButton);
+
+		// Header line
+		c.gridx = 1;
+		gridbag.setConstraints(headerCheck, c);
+		panel.add(headerCheck);
+		c.gridx = GridBagConstraints.RELATIVE;
+
+		// Batch size, commit interval and writers
+		addSpinner(panel, gridbag, c, "Batch size:", batchSizeSpinner,
+			"The number of rows sent to the server at once.");
+		addSpinner(panel, gridbag, c, "Commit every:", commitIntervalSpinner,
+			"The number of rows between commits, or 0 to commit once at the end.");
+		addSpinner(panel, gridbag, c, "Connections:", writersSpinner,
+			"The number of connections inserting rows at once, if rows are committed as they go.");
+
+		// Import and Cancel buttons on bottom right
+		c.weighty = 1.0;
+		c.gridx = 1;
+		c.gridwidth = 1;
+		c.fill = GridBagConstraints.NONE;
+		c.anchor = GridBagConstraints.SOUTHEAST;
+		JButton importButton = new JButton("Import");
+		importButton.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					importFile();
+				}
+			});
+		gridbag.setConstraints(importButton, c);
+		panel.add(importButton);
+		c.gridx = GridBagConstraints.RELATIVE;
+		c.gridwidth = GridBagConstraints.REMAINDER;
+		JButton cancelButton = new JButton("Cancel");
+		cancelButton.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "doCancel");
+		cancelButton.getActionMap().put("doCancel", new AbstractAction() {
+				public void actionPerformed(ActionEvent e) {
+					setVisible(false);
+				}
+			});
+		cancelButton.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					setVisible(false);
+				}
+			});
+		gridbag.setConstraints(cancelButton, c);
+		panel.add(cancelButton);
+
+		getContentPane().add(panel);
+		pack();
+		getRootPane().setDefaultButton(importButton);
+		setLocationRelativeTo(getOwner());
+	}
+
+	private void addSpinner(JPanel panel, GridBagLayout gridbag, GridBagConstraints c,
+			String text, JSpinner spinner, String toolTip) {
+		c.weightx = 0.0;
+		c.gridwidth = 1;
+		JLabel label = new JLabel(text);
+		gridbag.setConstraints(label, c);
+		panel.add(label);
+		c.weightx = 1.0;
+		spinner.setToolTipText(toolTip);
+		gridbag.setConstraints(spinner, c);
+		panel.add(spinner);
+		c.gridwidth = GridBagConstraints.REMAINDER;
+		JLabel filler = new JLabel();
+		gridbag.setConstraints(filler, c);
+		panel.add(filler);
+	}
+
+	private void browse() {
+		JFileChooser chooser = new JFileChooser();
+		FileNameExtensionFilter csvFilter = new FileNameExtensionFilter("CSV (Comma delimited)", "csv");
+		chooser.addChoosableFileFilter(csvFilter);
+		chooser.addChoosableFileFilter(new FileNameExtensionFilter("TSV (Tab delimited)", "tsv", "txt"));
+		chooser.setFileFilter(csvFilter);
+		if(chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+			fileField.setText(chooser.getSelectedFile().getPath());
+	}
+
+	/**
+	 * Called when the user presses 'Enter' or clicks 'Import'
+	 */
+	private void importFile() {
+		File selected = new File(fileField.getText().trim());
+		if(!selected.isFile()) {
+			JOptionPane.showMessageDialog(this,
+				"Choose a file to import.", getTitle(),
+				JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		file = selected;
+		setVisible(false);
+	}
+
+	/**
+	 * Returns the file to import, or null if the dialog was cancelled.
+	 */
+	public File getResponse() {
+		return file;
+	}
+
+	/**
+	 * Returns wether the file is tab delimited, going by its extension.
+	 */
+	public boolean isTabDelimited() {
+		String name = file.getName().toLowerCase();
+		return name.endsWith(".tsv") || name.endsWith(".txt");
+	}
+
+	public boolean hasHeader() {
+		return headerCheck.isSelected();
+	}
+
+	public int getBatchSize() {
+		return ((Integer) batchSizeSpinner.getValue()).intValue();
+	}
+
+	public int getCommitInterval() {
+		return ((Integer) commitIntervalSpinner.getValue()).intValue();
+	}
+
+	public int getWriterCount() {
+		return ((Integer) writersSpinner.getValue()).intValue();
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * A dialog that asks for the values of the named parameters of a
+ * query before it is run, and the type each one is bound as.
+ */
+
+package cvosteen.sqltool.gui;
+
+import cvosteen.sqltool.database.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.util.*;
+import java.util.List;
+import javax.swing.*;
+
+public class ParameterDialog extends JDialog implements ResponseGetter<Map<String, Object>> {
+
+	private Map<String, Object> values = null;
+	private final List<String> names;
+	private final List<JComboBox> typeCombos = new ArrayList<JComboBox>();
+	private final List<JTextField> valueFields = new ArrayList<JTextField>();
+	private final JCheckBox saveCheck = new JCheckBox("Save as the defaults of the query");
+
+	/**
+	 * Creates a ParameterDialog for the named parameters.  Each starts
+	 * out with the type and default of the matching saved parameter,
+	 * if there is one, and with the value last entered for it, if any.
+	 * The defaults can only be saved if canSave is true.
+	 */
+	public ParameterDialog(Window owner, List<String> names, List<QueryParameter> saved,
+			Map<String, String> lastValues, boolean canSave) {
+		super(owner, "Query Parameters", Dialog.ModalityType.APPLICATION_MODAL);
+		this.names = names;
+		for(String name : names) {
+			JComboBox typeCombo = new JComboBox(QueryParameter.TYPE_NAMES);
+			JTextField valueField = new JTextField(20);
+			for(QueryParameter parameter : saved) {
+				if(parameter.getName().equals(name)) {
+					typeCombo.setSelectedIndex(parameter.getType());
+					if(parameter.getDefaultValue() != null)
+						valueField.setText(parameter.getDefaultValue());
+				}
+			}
+			if(lastValues.containsKey(name))
+				valueField.setText(lastValues.get(name));
+			typeCombos.add(typeCombo);
+			valueFields.add(valueField);
+		}
+		saveCheck.setEnabled(canSave);
+		createComponents();
+		setVisible(true);
+	}
+
+	private void createComponents() {
+		setDefaultCloseOperation(JDialog.HIDE_ON_CLOSE);
+
+		// Set the layout (GridBag)
+		JPanel panel = new JPanel();
+		GridBagLayout gridbag = new GridBagLayout();
+		GridBagConstraints c = new GridBagConstraints();
+		panel.setBorder(BorderFactory.createEmptyBorder(10,10,10,10));
+		panel.setLayout(gridbag);
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.insets = new Insets(5,5,5,5);
+
+		// One line for each parameter: name, type and value
+		for(int i = 0; i < names.size(); i++) {
+			c.weightx = 0.0;
+			c.gridwidth = 1;
+			JLabel label = new JLabel(":" + names.get(i));
+			gridbag.setConstraints(label, c);
+			panel.add(label);
+			gridbag.setConstraints(typeCombos.get(i), c);
+			panel.add(typeCombos.get(i));
+			c.weightx = 1.0;
+			c.gridwidth = GridBagConstraints.REMAINDER;
+			gridbag.setConstraints(valueFields.get(i), c);
+			panel.add(valueFields.get(i));
+		}
+
+		c.gridx = 1;
+		saveCheck.setToolTipText("Remember the types and values with the saved query.");
+		gridbag.setConstraints(saveCheck, c);
+		panel.add(saveCheck);
+
+		// OK and Cancel buttons on bottom right
+		c.weighty = 1.0;
+		c.weightx = 0.0;
+		c.gridx = 1;
+		c.gridwidth = 1;
+		c.fill = GridBagConstraints.NONE;
+		c.anchor = GridBagConstraints.SOUTHEAST;
+		JButton okButton = new JButton("OK");
+		okButton.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					ok();
+				}
+			});
+		gridbag.setConstraints(okButton, c);
+		panel.add(okButton);
+		c.gridx = GridBagConstraints.RELATIVE;
+		c.gridwidth = GridBagConstraints.REMAINDER;
+		c.anchor = GridBagConstraints.SOUTHWEST;
+		JButton cancelButton = new JButton("Cancel");
+		cancelButton.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "doCancel");
+		cancelButton.getActionMap().put("doCancel", new AbstractAction() {
+				public void actionPerformed(ActionEvent e) {
+					setVisible(false);
+				}
+			});
+		cancelButton.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					setVisible(false);
+				}
+			});
+		gridbag.setConstraints(cancelButton, c);
+		panel.add(cancelButton);
+
+		getContentPane().add(panel);
+		pack();
+		getRootPane().setDefaultButton(okButton);
+		setLocationRelativeTo(getOwner());
+	}
+
+	/**
+	 * Called when the user presses 'Enter' or clicks 'OK'
+	 */
+	private void ok() {
+		Map<String, Object> newValues = new HashMap<String, Object>();
+		List<QueryParameter> parameters = getParameters();
+		for(int i = 0; i < parameters.size(); i++) {
+			try {
+				newValues.put(names.get(i), parameters.get(i).parse(valueFields.get(i).getText()));
+			} catch(IllegalArgumentException e) {
+				JOptionPane.showMessageDialog(this,
+					e.getMessage(), getTitle(),
+					JOptionPane.ERROR_MESSAGE);
+				valueFields.get(i).requestFocusInWindow();
+				return;
+			}
+		}
+		values = newValues;
+		setVisible(false);
+	}
+
+	/**
+	 * Returns the value of each parameter by name, or null if the
+	 * dialog was cancelled.
+	 */
+	public Map<String, Object> getResponse() {
+		return values;
+	}
+
+	/**
+	 * Returns the parameters with the types chosen and the values
+	 * entered as their defaults.
+	 */
+	public List<QueryParameter> getParameters() {
+		List<QueryParameter> parameters = new ArrayList<QueryParameter>();
+		for(int i = 0; i < names.size(); i++) {
+			parameters.add(new QueryParameter(names.get(i),
+				typeCombos.get(i).getSelectedIndex(), valueFields.get(i).getText()));
+		}
+		return parameters;
+	}
+
+	/**
+	 * Returns the text entered for each parameter by name.
+	 */
+	public Map<String, String> getValueTexts() {
+		Map<String, String> texts = new HashMap<String, String>();
+		for(int i = 0; i < names.size(); i++)
+			texts.put(names.get(i), valueFields.get(i).getText());
+		return texts;
+	}
+
+	/**
+	 * Returns wether the types and values should be saved with the query.
+	 */
+	public boolean isSaveDefaults() {
+		return saveCheck.isEnabled() && saveCheck.isSelected();
+	}
+}
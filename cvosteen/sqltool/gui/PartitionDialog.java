@@ -0,0 +1,143 @@
+/**
+ * A dialog that asks how a query should be split up to run as
+ * several partitions at once: the key column to split on, the
+ * number of partitions and whether the rows must stay in key order.
+ */
+
+package cvosteen.sqltool.gui;
+
+import java.awt.*;
+import java.awt.event.*;
+import javax.swing.*;
+
+public class PartitionDialog extends JDialog implements ResponseGetter<String> {
+
+	private String keyColumn = null;
+	private final JComboBox keyCombo = new JComboBox();
+	private final JSpinner partitionsSpinner = new JSpinner(new SpinnerNumberModel(4, 1, 64, 1));
+	private final JCheckBox orderedCheck = new JCheckBox("Keep the rows in key order");
+
+	/**
+	 * Creates a PartitionDialog offering the specified column names
+	 * as keys.  Any other column name may be typed in.
+	 */
+	public PartitionDialog(Window owner, String[] columnNames, int partitions) {
+		super(owner, "Run Partitioned", Dialog.ModalityType.APPLICATION_MODAL);
+		for(String name : columnNames)
+			keyCombo.addItem(name);
+		partitionsSpinner.setValue(Integer.valueOf(Math.max(1, Math.min(64, partitions))));
+		createComponents();
+		setVisible(true);
+	}
+
+	private void createComponents() {
+		setDefaultCloseOperation(JDialog.HIDE_ON_CLOSE);
+
+		// Set the layout (GridBag)
+		JPanel panel = new JPanel();
+		GridBagLayout gridbag = new GridBagLayout();
+		GridBagConstraints c = new GridBagConstraints();
+		panel.setBorder(BorderFactory.createEmptyBorder(10,10,10,10));
+		panel.setLayout(gridbag);
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.insets = new Insets(5,5,5,5);
+
+		// Key column, numeric or date
+		c.weightx = 0.0;
+		c.gridwidth = 1;
+		JLabel label = new JLabel("Key column:");
+		gridbag.setConstraints(label, c);
+		panel.add(label);
+		c.weightx = 1.0;
+		c.gridwidth = GridBagConstraints.REMAINDER;
+		keyCombo.setEditable(true);
+		keyCombo.setToolTipText("A numeric or date column to split the rows on.");
+		gridbag.setConstraints(keyCombo, c);
+		panel.add(keyCombo);
+
+		// Number of partitions
+		c.weightx = 0.0;
+		c.gridwidth = 1;
+		label = new JLabel("Partitions:");
+		gridbag.setConstraints(label, c);
+		panel.add(label);
+		c.weightx = 1.0;
+		c.gridwidth = GridBagConstraints.REMAINDER;
+		partitionsSpinner.setToolTipText("The number of queries to run at once.");
+		gridbag.setConstraints(partitionsSpinner, c);
+		panel.add(partitionsSpinner);
+
+		// Ordered
+		c.gridx = 1;
+		gridbag.setConstraints(orderedCheck, c);
+		panel.add(orderedCheck);
+
+		// Run and Cancel buttons on bottom right
+		c.weighty = 1.0;
+		c.gridwidth = 1;
+		c.fill = GridBagConstraints.NONE;
+		c.anchor = GridBagConstraints.SOUTHEAST;
+		JButton runButton = new JButton("Run");
+		runButton.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					run();
+				}
+			});
+		gridbag.setConstraints(runButton, c);
+		panel.add(runButton);
+		c.gridx = GridBagConstraints.RELATIVE;
+		c.weightx = 0.0;
+		c.gridwidth = GridBagConstraints.REMAINDER;
+		JButton cancelButton = new JButton("Cancel");
+		cancelButton.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "doCancel");
+		cancelButton.getActionMap().put("doCancel", new AbstractAction() {
+				public void actionPerformed(ActionEvent e) {
+					setVisible(false);
+				}
+			});
+		cancelButton.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					setVisible(false);
+				}
+			});
+		gridbag.setConstraints(cancelButton, c);
+		panel.add(cancelButton);
+
+		getContentPane().add(panel);
+		setMinimumSize(new Dimension(300,0));
+		pack();
+		keyCombo.requestFocusInWindow();
+		getRootPane().setDefaultButton(runButton);
+		setLocationRelativeTo(getOwner());
+	}
+
+	/**
+	 * Called when the user presses 'Enter' or clicks 'Run'
+	 */
+	private void run() {
+		Object key = keyCombo.getEditor().getItem();
+		if(key == null || key.toString().trim().length() == 0) {
+			JOptionPane.showMessageDialog(this,
+				"Enter the column to split the rows on.", "Run Partitioned",
+				JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		keyColumn = key.toString().trim();
+		setVisible(false);
+	}
+
+	/**
+	 * Returns the key column, or null if the dialog was cancelled.
+	 */
+	public String getResponse() {
+		return keyColumn;
+	}
+
+	public int getPartitionCount() {
+		return ((Integer) partitionsSpinner.getValue()).intValue();
+	}
+
+	public boolean isOrdered() {
+		return orderedCheck.isSelected();
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * A dialog listing the queries run in a database panel, most recent
+ * first, with where the time went in each: executing on the server,
+ * fetching the rows and showing them.  See QueryMetrics.
+ */
+
+package cvosteen.sqltool.gui;
+
+import cvosteen.sqltool.tasks.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.text.*;
+import java.util.*;
+import java.util.List;
+import javax.swing.*;
+import javax.swing.table.*;
+
+public class QueryHistoryDialog extends JDialog {
+
+	private static final String[] COLUMN_NAMES = { "Started", "Query", "Outcome", "Rows",
+		"Execute (ms)", "First Row (ms)", "Fetch (ms)", "Render (ms)", "Size (KB)", "Peak Heap (MB)" };
+
+	/**
+	 * Creates and shows a QueryHistoryDialog for the metrics, which are
+	 * in the order the queries were run.
+	 */
+	public QueryHistoryDialog(Window owner, List<QueryMetrics> history) {
+		super(owner, "Query History", Dialog.ModalityType.APPLICATION_MODAL);
+		createComponents(history);
+		setVisible(true);
+	}
+
+	private void createComponents(List<QueryMetrics> history) {
+		setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+
+		DefaultTableModel model = new DefaultTableModel(COLUMN_NAMES, 0) {
+				public boolean isCellEditable(int row, int column) {
+					return false;
+				}
+			};
+		DateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+		for(int i = history.size() - 1; i >= 0; i--) {
+			QueryMetrics metrics = history.get(i);
+			// The first line of the query is enough to recognize it
+			String sql = metrics.getSql() == null ? "" : metrics.getSql().trim();
+			int lineEnd = sql.indexOf('\n');
+			if(lineEnd >= 0)
+				sql = sql.substring(0, lineEnd).trim() + " ...";
+			model.addRow(new Object[] {
+				timeFormat.format(new Date(metrics.getStartTime())), sql, metrics.getOutcome(),
+				Long.valueOf(metrics.getRows()), formatMillis(metrics.getExecuteMillis()),
+				formatMillis(metrics.getFirstRowMillis()), formatMillis(metrics.getFetchMillis()),
+				Long.valueOf(metrics.getRenderMillis()), Long.valueOf(metrics.getBytes() / 1024),
+				Long.valueOf(metrics.getPeakHeap() / (1024 * 1024)) });
+		}
+		JTable table = new JTable(model);
+		table.getColumnModel().getColumn(1).setPreferredWidth(300);
+		JScrollPane scroll = new JScrollPane(table);
+		scroll.setPreferredSize(new Dimension(900, 300));
+
+		JPanel panel = new JPanel(new BorderLayout(5, 5));
+		panel.setBorder(BorderFactory.createEmptyBorder(10,10,10,10));
+		panel.add(scroll, BorderLayout.CENTER);
+
+		// Close button on bottom right
+		JButton closeButton = new JButton("Close");
+		closeButton.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "doClose");
+		closeButton.getActionMap().put("doClose", new AbstractAction() {
+				public void actionPerformed(ActionEvent e) {
+					dispose();
+				}
+			});
+		closeButton.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					dispose();
+				}
+			});
+		JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+		buttonPanel.add(closeButton);
+		panel.add(buttonPanel, BorderLayout.SOUTH);
+
+		getContentPane().add(panel);
+		pack();
+		getRootPane().setDefaultButton(closeButton);
+		setLocationRelativeTo(getOwner());
+	}
+
+	/**
+	 * Shows a time that was never reached (-1) as blank.
+	 */
+	private static Object formatMillis(long millis) {
+		return millis < 0 ? "" : (Object) Long.valueOf(millis);
+	}
+}
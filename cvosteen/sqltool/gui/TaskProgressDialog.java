@@ -0,0 +1,82 @@
+/**
+ * A small, non-modal dialog which shows the progress of a Task
+ * and lets the user cancel it.  The owner is responsible for
+ * updating the message and disposing of the dialog when the task
+ * has finished.
+ */
+
+package cvosteen.sqltool.gui;
+import cvosteen.sqltool.task.*;
+import java.awt.*;
+import java.awt.event.*;
+import javax.swing.*;
+
+public class TaskProgressDialog extends JDialog {
+
+	private Task task;
+	private JLabel messageLabel;
+
+	public TaskProgressDialog(Window owner, String title, String message, final Task task) {
+		super(owner, title, Dialog.ModalityType.MODELESS);
+		this.task = task;
+
+		// Closing the window cancels the task
+		setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+		addWindowListener(new WindowAdapter() {
+				public void windowClosing(WindowEvent e) {
+					task.cancel();
+				}
+			});
+
+		// Set the layout (GridBag)
+		JPanel panel = new JPanel();
+		GridBagLayout gridbag = new GridBagLayout();
+		GridBagConstraints c = new GridBagConstraints();
+		panel.setBorder(BorderFactory.createEmptyBorder(10,10,10,10));
+		panel.setLayout(gridbag);
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.insets = new Insets(5,5,5,5);
+		c.gridwidth = GridBagConstraints.REMAINDER;
+
+		// Add the message and a progress bar
+		c.weightx = 1.0;
+		messageLabel = new JLabel(message);
+		gridbag.setConstraints(messageLabel, c);
+		panel.add(messageLabel);
+
+		JProgressBar progressBar = new JProgressBar();
+		progressBar.setIndeterminate(true);
+		gridbag.setConstraints(progressBar, c);
+		panel.add(progressBar);
+
+		// Add a Cancel button
+		c.fill = GridBagConstraints.NONE;
+		c.anchor = GridBagConstraints.EAST;
+		final JButton button = new JButton("Cancel");
+		button.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					button.setEnabled(false);
+					messageLabel.setText("Cancelling...");
+					task.cancel();
+				}
+			});
+		gridbag.setConstraints(button, c);
+		panel.add(button);
+
+		getContentPane().add(panel);
+		setMinimumSize(new Dimension(300,0));
+		pack();
+		setLocationRelativeTo(owner);
+		setVisible(true);
+	}
+
+	/**
+	 * Updates the message shown above the progress bar.
+	 * Must be called on the event dispatch thread.
+	 */
+	public void setMessage(String message) {
+		// Keep showing that the task is being cancelled
+		if(!task.isCancelled())
+			messageLabel.setText(message);
+	}
+}
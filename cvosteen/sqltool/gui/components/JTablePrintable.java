@@ -41,10 +41,8 @@ public class JTablePrintable implements Printable {
 
 	
 	public JTablePrintable(JTable table) {
-		// Make a shallow copy of all of the data in this JTable
-		// right here!  If we do it later, the data could be GC'ed by
-		// the time the print is actually performed,
-		// especially if the user jumps to another query in the GUI.
+		// Take the number of rows right here, the model may still be
+		// growing while the print dialog is open.
 		extractFromJTable(table);
 	}
 
@@ -164,34 +162,48 @@ public class JTablePrintable implements Printable {
 
 
 	/**
-	 * Extracts data from a JTable as a list of lists
-	 * and saves the data as well as the dimensions in this
-	 * instance's private variables.
+	 * Captures the column names and current row count of a JTable.
+	 * The cells themselves are read from the TableModel as each page is
+	 * printed, rather than being copied up front, so that printing a
+	 * large (possibly disk-backed) result does not need to hold every
+	 * cell as a String at once.
 	 */
 	private void extractFromJTable(JTable jtable) {
 		TableModel model = jtable.getModel();
 
+		// Print the rows in the order they are shown, if sorted or filtered
+		if(jtable.getRowSorter() != null) {
+			final TableModel unsorted = model;
+			final int[] modelRows = new int[jtable.getRowCount()];
+			for(int row = 0; row < modelRows.length; row++)
+				modelRows[row] = jtable.convertRowIndexToModel(row);
+			model = new AbstractTableModel() {
+					public int getRowCount() {
+						return modelRows.length;
+					}
+
+					public int getColumnCount() {
+						return unsorted.getColumnCount();
+					}
+
+					public String getColumnName(int column) {
+						return unsorted.getColumnName(column);
+					}
+
+					public Object getValueAt(int row, int column) {
+						return unsorted.getValueAt(modelRows[row], column);
+					}
+				};
+		}
+
 		int numColumns = model.getColumnCount();
-		int numRows = model.getRowCount();
 		java.util.List<String> columns = new ArrayList<String>();
-		java.util.List<java.util.List<String>> data = new ArrayList<java.util.List<String>>();
 
 		for(int col = 0; col < numColumns; col++) {
 			columns.add(model.getColumnName(col));
 		}
 
-		for(int row = 0; row < numRows; row++) {
-			java.util.List<String> dataRow = new ArrayList<String>();
-			for(int col = 0; col < numColumns; col++) {
-				Object value = model.getValueAt(row, col);
-				if(value == null)
-					value = "";
-				dataRow.add(value.toString());
-			}
-			data.add(dataRow);
-		}
-
-		table = new GraphicalTable(columns, data);
+		table = new GraphicalTable(columns, model, model.getRowCount());
 	}
 	
 
@@ -243,7 +255,8 @@ public class JTablePrintable implements Printable {
 	public class GraphicalTable {
 		// The data in this table
 		private java.util.List<String> columns;
-		private java.util.List<java.util.List<String>> data;
+		private TableModel data;
+		private int rowCount;
 
 		// Extra parameters needed to calculate size and pages
 		private double zoom = 1.0; // Default zoom of 100%
@@ -266,11 +279,12 @@ public class JTablePrintable implements Printable {
 
 		/**
 		 * Creates a GraphicalTable instance with the specified column headings
-		 * and data.
+		 * and the first rowCount rows of data.
 		 */		
-		public GraphicalTable(java.util.List<String> columns, java.util.List<java.util.List<String>> data) {
+		public GraphicalTable(java.util.List<String> columns, TableModel data, int rowCount) {
 			this.columns = columns;
 			this.data = data;
+			this.rowCount = rowCount;
 		}
 
 		/**
@@ -303,34 +317,27 @@ public class JTablePrintable implements Printable {
 			this.graphics = graphics;
 			// Calculate column widths and row height at 100% zoom
 			int numColumns = getColumnCount();
-			columnWidths = new int[columns.size()];
-			for(int c = 0; c < numColumns; c++) {
-				columnWidths[c] = getColumnWidth(graphics, c) + (2 * xPadding);
+			columnWidths = new int[numColumns];
+			FontMetrics headingMetrics = graphics.getFontMetrics(boldFont);
+			FontMetrics cellMetrics = graphics.getFontMetrics(plainFont);
+			for(int c = 0; c < numColumns; c++)
+				columnWidths[c] = headingMetrics.stringWidth(columns.get(c));
+
+			// Measure the widest cell of every column in a single pass
+			// row by row, so a disk-backed result reads each of its
+			// pages once rather than once per column
+			for(int row = 0; row < rowCount; row++) {
+				for(int c = 0; c < numColumns; c++) {
+					int width = cellMetrics.stringWidth(get(row, c));
+					if(width > columnWidths[c])
+						columnWidths[c] = width;
+				}
 			}
+			for(int c = 0; c < numColumns; c++)
+				columnWidths[c] += 2 * xPadding;
 			rowHeight = graphics.getFontMetrics().getHeight() + (2 * yPadding);
 		}
 
-		/**
-		 * For a specified graphics object, calculates the width of a column
-		 * by using the width of the widest cell in the column
-		 */
-		private int getColumnWidth(Graphics g, int column) {
-			int maxWidth = 0;
-			// First get the column heading width
-			String thisString = columns.get(column);
-			int thisWidth = g.getFontMetrics(boldFont).stringWidth(thisString);
-			maxWidth = thisWidth;
-
-			// Go row by row measuring each item's width
-			for(int row = 0; row < data.size(); row++) {
-				thisString = data.get(row).get(column);
-				thisWidth = g.getFontMetrics(plainFont).stringWidth(thisString);
-				if(thisWidth > maxWidth)
-					maxWidth = thisWidth;
-			}
-			return maxWidth;
-		}
-
 		/**
 		 * Returns the number of columns in this table.
 		 */
@@ -342,7 +349,7 @@ public class JTablePrintable implements Printable {
 		 * Returns the number of rows in this table.
 		 */
 		public int getRowCount() {
-			return data.size();
+			return rowCount;
 		}
 
 		/**
@@ -356,7 +363,10 @@ public class JTablePrintable implements Printable {
 		 * Returns the contents of the cell at the specified row and column.
 		 */
 		public String get(int row, int column) {
-			return data.get(row).get(column);
+			Object value = data.getValueAt(row, column);
+			if(value == null)
+				return "";
+			return value.toString();
 		}
 
 		/**
@@ -419,7 +429,7 @@ public class JTablePrintable implements Printable {
 		 */
 		public int getPagesHigh() {
 			int rowsPerPage = pageArea.height / (int)(rowHeight * zoom);
-			return ((data.size() + 1) / rowsPerPage) + 1;
+			return ((rowCount + 1) / rowsPerPage) + 1;
 		}
 
 		/**
@@ -1,17 +1,80 @@
 /**
- * NonEditableTableModel is a subclass of DefaultTableModel
- * which always returns false for isCellEditable.
+ * NonEditableTableModel is a read-only TableModel which reads
+ * directly from a ResultStore.
+ *
+ * The ResultStore may still be growing while it is displayed.  The
+ * model only exposes the rows it has announced to its listeners, so
+ * rowsAppended() should be called on the event dispatch thread to
+ * pick up newly appended rows.
  */
 
 package cvosteen.sqltool.gui.components;
 
+import cvosteen.sqltool.result.*;
 import javax.swing.*;
 import javax.swing.table.*;
 
-public class NonEditableTableModel extends DefaultTableModel {
+public class NonEditableTableModel extends AbstractTableModel {
+
+	private final ResultStore store;
+	private int rowCount = 0;
+
+	/**
+	 * Creates an empty model with no columns.
+	 */
+	public NonEditableTableModel() {
+		this(null);
+	}
+
+	public NonEditableTableModel(ResultStore store) {
+		this.store = store;
+	}
+
+	public ResultStore getResultStore() {
+		return store;
+	}
+
+	/**
+	 * Announces any rows appended to the ResultStore since the last call.
+	 */
+	public void rowsAppended() {
+		if(store == null)
+			return;
+		int newRowCount = store.getRowCount();
+		if(newRowCount > rowCount) {
+			int firstRow = rowCount;
+			rowCount = newRowCount;
+			fireTableRowsInserted(firstRow, newRowCount - 1);
+		}
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public int getColumnCount() {
+		if(store == null)
+			return 0;
+		return store.getColumnCount();
+	}
+
+	public String getColumnName(int column) {
+		return store.getColumnName(column);
+	}
+
+	/**
+	 * Returns the class of the values of the column, from its SQL type,
+	 * so renderers and sorters can treat numbers as numbers.
+	 */
+	public Class<?> getColumnClass(int column) {
+		return store.getColumnClass(column);
+	}
+
+	public Object getValueAt(int row, int column) {
+		return store.getValueAt(row, column);
+	}
 
 	public boolean isCellEditable(int row, int column) {
 		return false;
 	}
 }
-	
@@ -0,0 +1,164 @@
+/**
+ * Renders the cells of one column of a results table.
+ *
+ * A JTable asks the renderer for every visible cell on every repaint,
+ * and the default renderer calls toString() on the value each time.
+ * This renderer is chosen for the SQL type of its column: numbers are
+ * right aligned, dates and times are formatted with a DateFormat kept
+ * by the renderer, decimals are shown without an exponent and binary
+ * values as hex.  The text of the most recently shown rows is kept in
+ * a small direct-mapped cache, so scrolling back and forth formats
+ * each cell only once.  The cache is bounded, it costs the same however
+ * many rows there are.
+ *
+ * The rows of a ResultStore never change once appended, so the cache
+ * is never out of date.  A renderer is only used on the event dispatch
+ * thread and is not thread safe.
+ */
+
+package cvosteen.sqltool.gui.components;
+
+import cvosteen.sqltool.result.*;
+import java.awt.*;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.text.*;
+import java.util.*;
+import javax.swing.*;
+import javax.swing.table.*;
+
+public class ResultCellRenderer extends DefaultTableCellRenderer {
+
+	// Must be a power of two
+	private static final int CACHE_SIZE = 1024;
+	// Binary values are cut off after this many bytes
+	private static final int MAX_BINARY_BYTES = 64;
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private final int[] cachedRows = new int[CACHE_SIZE];
+	private final String[] cachedText = new String[CACHE_SIZE];
+	private final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+	private final DateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
+	private final DateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+	/**
+	 * Creates a renderer for a column of the specified java.sql.Types.
+	 */
+	public ResultCellRenderer(int sqlType) {
+		Arrays.fill(cachedRows, -1);
+		if(isNumeric(sqlType))
+			setHorizontalAlignment(SwingConstants.RIGHT);
+	}
+
+	/**
+	 * Gives each column of the table, which must show the store, a
+	 * renderer for its type.
+	 */
+	public static void install(JTable table, ResultStore store) {
+		TableColumnModel columns = table.getColumnModel();
+		for(int i = 0; i < columns.getColumnCount(); i++) {
+			TableColumn column = columns.getColumn(i);
+			column.setCellRenderer(new ResultCellRenderer(store.getColumnType(column.getModelIndex())));
+		}
+	}
+
+	public Component getTableCellRendererComponent(JTable table, Object value,
+			boolean isSelected, boolean hasFocus, int row, int column) {
+		// The cache is by model row, which stays the same when sorted
+		int modelRow = table == null ? -1 : table.convertRowIndexToModel(row);
+		String text = null;
+		if(modelRow >= 0 && cachedRows[modelRow & (CACHE_SIZE - 1)] == modelRow)
+			text = cachedText[modelRow & (CACHE_SIZE - 1)];
+		if(text == null) {
+			text = format(value);
+			if(modelRow >= 0) {
+				cachedRows[modelRow & (CACHE_SIZE - 1)] = modelRow;
+				cachedText[modelRow & (CACHE_SIZE - 1)] = text;
+			}
+		}
+		return super.getTableCellRendererComponent(table, text, isSelected, hasFocus, row, column);
+	}
+
+	/**
+	 * Returns the width needed to show the widest of the values, as
+	 * this renderer formats them.  Only the longest text is measured.
+	 */
+	public int getPreferredWidth(JTable table, Collection<?> values, int column) {
+		String longest = "";
+		for(Object value : values) {
+			String text = format(value);
+			if(text.length() > longest.length())
+				longest = text;
+		}
+		// Straight to the superclass, the text of a sample is not cached
+		super.getTableCellRendererComponent(table, longest, false, false, 0, column);
+		return getPreferredSize().width;
+	}
+
+	/**
+	 * Forgets the text of every row, e.g. if the rows have changed.
+	 */
+	public void clearCache() {
+		Arrays.fill(cachedRows, -1);
+		Arrays.fill(cachedText, null);
+	}
+
+	/**
+	 * Returns the text shown for a value.
+	 */
+	protected String format(Object value) {
+		if(value == null)
+			return "";
+		if(value instanceof String)
+			return (String) value;
+		if(value instanceof Timestamp) {
+			Timestamp timestamp = (Timestamp) value;
+			String text = timestampFormat.format(timestamp);
+			if(timestamp.getNanos() == 0)
+				return text;
+			// Fractions of a second, without the trailing zeros
+			String nanos = Integer.toString(1000000000 + timestamp.getNanos()).substring(1);
+			int end = nanos.length();
+			while(nanos.charAt(end - 1) == '0')
+				end--;
+			return text + "." + nanos.substring(0, end);
+		}
+		if(value instanceof Time)
+			return timeFormat.format((Time) value);
+		if(value instanceof java.util.Date)
+			return dateFormat.format((java.util.Date) value);
+		if(value instanceof BigDecimal)
+			return ((BigDecimal) value).toPlainString();
+		if(value instanceof byte[])
+			return toHex((byte[]) value);
+		return value.toString();
+	}
+
+	private static String toHex(byte[] bytes) {
+		int length = Math.min(bytes.length, MAX_BINARY_BYTES);
+		StringBuilder sb = new StringBuilder(2 + 2 * length + 3);
+		sb.append("0x");
+		for(int i = 0; i < length; i++)
+			sb.append(HEX[(bytes[i] >> 4) & 0xF]).append(HEX[bytes[i] & 0xF]);
+		if(bytes.length > length)
+			sb.append("...");
+		return sb.toString();
+	}
+
+	private static boolean isNumeric(int sqlType) {
+		switch(sqlType) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+			case Types.BIGINT:
+			case Types.REAL:
+			case Types.FLOAT:
+			case Types.DOUBLE:
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+				return true;
+			default:
+				return false;
+		}
+	}
+}
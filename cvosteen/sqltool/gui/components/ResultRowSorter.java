@@ -0,0 +1,329 @@
+/**
+ * A RowSorter for a NonEditableTableModel which sorts and filters on a
+ * background thread, so the event dispatch thread never waits for it.
+ *
+ * Clicking a column header sorts by that column, ascending, then
+ * descending, then back to the order the rows arrived in.  The table
+ * keeps showing the previous order until the new one is ready, and then
+ * switches to it in one go.  The rows are never moved, the view is an
+ * array of the model row to show at each position (see ResultSorter).
+ *
+ * Rows appended while the view is sorted or filtered are shown at the
+ * end until the next sort.  Sorting again on every batch of rows would
+ * sort a growing result over and over, so appended rows are sorted in
+ * at most once every RESORT_INTERVAL milliseconds, or four times as
+ * long as the last sort took if that is longer, and at once when
+ * sortAppendedRows() is called after the last rows have arrived.
+ *
+ * dispose() must be called when the sorter is taken off its table, to
+ * stop any sort in progress before the store is closed.
+ *
+ * Like everything else in Swing, it must only be used on the event
+ * dispatch thread.
+ */
+
+package cvosteen.sqltool.gui.components;
+
+import cvosteen.sqltool.result.*;
+import cvosteen.sqltool.task.*;
+import java.awt.event.*;
+import java.io.IOException;
+import java.util.*;
+import javax.swing.*;
+
+public class ResultRowSorter extends RowSorter<NonEditableTableModel> {
+
+	public static final int RESORT_INTERVAL = 1000;
+
+	private final NonEditableTableModel model;
+	private List<SortKey> sortKeys = Collections.emptyList();
+	private String filter = null;
+	// The model row of each view row, or null if the view is the model
+	private int[] viewToModel = null;
+	// The inverse of viewToModel, made when first needed
+	private int[] modelToView = null;
+	private ResultSorter running = null;
+	// Set if rows were appended since the last sort started
+	private boolean stale = false;
+	// Set if appended rows are to be sorted as soon as possible
+	private boolean sortAppendedNow = false;
+	private long lastSortMillis = 0;
+	private boolean disposed = false;
+	private final javax.swing.Timer resortTimer = new javax.swing.Timer(RESORT_INTERVAL, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if(running == null && stale && !disposed)
+					start();
+			}
+		});
+
+	public ResultRowSorter(NonEditableTableModel model) {
+		this.model = model;
+		resortTimer.setRepeats(false);
+	}
+
+	public NonEditableTableModel getModel() {
+		return model;
+	}
+
+	/**
+	 * Sorts ascending by the column, or descending if it is already
+	 * sorted ascending, or unsorts if it is sorted descending.
+	 */
+	public void toggleSortOrder(int column) {
+		SortOrder order = SortOrder.ASCENDING;
+		if(!sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column) {
+			if(sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING)
+				order = SortOrder.DESCENDING;
+			else
+				order = SortOrder.UNSORTED;
+		}
+		if(order == SortOrder.UNSORTED)
+			setSortKeys(null);
+		else
+			setSortKeys(Collections.singletonList(new SortKey(column, order)));
+	}
+
+	/**
+	 * Sorts by the first key, any further keys are ignored.
+	 */
+	public void setSortKeys(List<? extends SortKey> keys) {
+		List<SortKey> newKeys = Collections.emptyList();
+		if(keys != null && !keys.isEmpty() && keys.get(0).getSortOrder() != SortOrder.UNSORTED)
+			newKeys = Collections.singletonList((SortKey) keys.get(0));
+		if(newKeys.equals(sortKeys))
+			return;
+		sortKeys = newKeys;
+		fireSortOrderChanged();
+		restart();
+	}
+
+	public List<? extends SortKey> getSortKeys() {
+		return sortKeys;
+	}
+
+	/**
+	 * Shows only the rows containing the text in any column, ignoring
+	 * case, or every row if the text is null or empty.
+	 */
+	public void setFilterText(String text) {
+		String newFilter = text == null || text.length() == 0 ? null : text;
+		if(newFilter == null ? filter == null : newFilter.equals(filter))
+			return;
+		filter = newFilter;
+		restart();
+	}
+
+	public String getFilterText() {
+		return filter;
+	}
+
+	/**
+	 * Sorts the rows appended since the last sort now, rather than
+	 * waiting for the next interval.  Called when the last rows have
+	 * arrived.
+	 */
+	public void sortAppendedRows() {
+		if(disposed || !stale)
+			return;
+		if(running != null) {
+			sortAppendedNow = true;
+		} else {
+			resortTimer.stop();
+			start();
+		}
+	}
+
+	/**
+	 * Cancels any sort in progress and stops sorting appended rows.
+	 * The sorter can no longer be used.
+	 */
+	public void dispose() {
+		disposed = true;
+		resortTimer.stop();
+		if(running != null) {
+			running.cancel();
+			running = null;
+		}
+	}
+
+	/**
+	 * Returns wether a new view is being worked out.
+	 */
+	public boolean isSorting() {
+		return running != null;
+	}
+
+	public int convertRowIndexToModel(int index) {
+		if(index < 0 || index >= getViewRowCount())
+			throw new IndexOutOfBoundsException("Invalid view row " + index);
+		return viewToModel == null ? index : viewToModel[index];
+	}
+
+	public int convertRowIndexToView(int index) {
+		if(index < 0 || index >= getModelRowCount())
+			throw new IndexOutOfBoundsException("Invalid model row " + index);
+		if(viewToModel == null)
+			return index;
+		if(modelToView == null || modelToView.length < getModelRowCount()) {
+			modelToView = new int[getModelRowCount()];
+			Arrays.fill(modelToView, -1);
+			for(int i = 0; i < viewToModel.length; i++)
+				modelToView[viewToModel[i]] = i;
+		}
+		return modelToView[index];
+	}
+
+	public int getViewRowCount() {
+		return viewToModel == null ? model.getRowCount() : viewToModel.length;
+	}
+
+	public int getModelRowCount() {
+		return model.getRowCount();
+	}
+
+	public void modelStructureChanged() {
+		restart();
+	}
+
+	public void allRowsChanged() {
+		restart();
+	}
+
+	public void rowsInserted(int firstRow, int endRow) {
+		if(viewToModel == null)
+			return;
+		appendRows(firstRow, endRow + 1);
+		stale = true;
+		if(running == null)
+			scheduleResort();
+	}
+
+	public void rowsDeleted(int firstRow, int endRow) {
+		// Rows are never deleted from a ResultStore
+		restart();
+	}
+
+	public void rowsUpdated(int firstRow, int endRow) {
+		// Rows never change once appended
+	}
+
+	public void rowsUpdated(int firstRow, int endRow, int column) {
+	}
+
+	/**
+	 * Adds model rows to the end of the view.
+	 */
+	private void appendRows(int fromRow, int toRow) {
+		int oldLength = viewToModel.length;
+		viewToModel = Arrays.copyOf(viewToModel, oldLength + toRow - fromRow);
+		for(int row = fromRow; row < toRow; row++)
+			viewToModel[oldLength + row - fromRow] = row;
+		modelToView = null;
+	}
+
+	/**
+	 * Sorts the appended rows in once the interval since the last sort
+	 * has passed.
+	 */
+	private void scheduleResort() {
+		if(disposed || resortTimer.isRunning())
+			return;
+		resortTimer.setInitialDelay((int) Math.min(Integer.MAX_VALUE, Math.max(RESORT_INTERVAL, 4 * lastSortMillis)));
+		resortTimer.start();
+	}
+
+	/**
+	 * Drops any sort in progress and starts over.
+	 */
+	private void restart() {
+		if(disposed)
+			return;
+		if(running != null) {
+			running.cancel();
+			running = null;
+		}
+		resortTimer.stop();
+		stale = false;
+		if(sortKeys.isEmpty() && filter == null) {
+			if(viewToModel != null)
+				setView(null);
+			return;
+		}
+		start();
+	}
+
+	private void start() {
+		stale = false;
+		sortAppendedNow = false;
+		final long started = System.currentTimeMillis();
+		final ResultSorter sorter = new ResultSorter(model.getResultStore(), model.getRowCount());
+		if(!sortKeys.isEmpty()) {
+			SortKey key = sortKeys.get(0);
+			sorter.setSortColumn(key.getColumn(), key.getSortOrder() == SortOrder.ASCENDING);
+		}
+		sorter.setFilter(filter);
+		running = sorter;
+		TaskExecutor.execute(new Runnable() {
+				public void run() {
+					int[] rows = null;
+					try {
+						rows = sorter.sort();
+					} catch(IOException e) {
+						// The rows could not be read back from disk,
+						// keep the view as it is
+					} catch(RuntimeException e) {
+						// Likewise if the store was closed under the
+						// sort, the sorter will have been disposed
+					}
+					final int[] newView = rows;
+					SwingUtilities.invokeLater(new Runnable() {
+							public void run() {
+								if(running != sorter)
+									return;
+								running = null;
+								lastSortMillis = System.currentTimeMillis() - started;
+								if(newView == null)
+									return;
+								setView(newView, sorter.getRowCount());
+								if(stale && sortAppendedNow)
+									start();
+								else if(stale)
+									scheduleResort();
+							}
+						});
+				}
+			});
+	}
+
+	private void setView(int[] rows, int sortedRowCount) {
+		int[] oldView = getView();
+		viewToModel = rows;
+		// Rows appended since the sort started go at the end
+		if(model.getRowCount() > sortedRowCount) {
+			appendRows(sortedRowCount, model.getRowCount());
+			stale = true;
+		}
+		modelToView = null;
+		fireRowSorterChanged(oldView);
+	}
+
+	private void setView(int[] rows) {
+		int[] oldView = getView();
+		viewToModel = rows;
+		modelToView = null;
+		fireRowSorterChanged(oldView);
+	}
+
+	/**
+	 * Returns the model row of each view row, for the table to keep the
+	 * same rows selected when the view changes.
+	 */
+	private int[] getView() {
+		if(viewToModel != null)
+			return viewToModel;
+		int[] rows = new int[model.getRowCount()];
+		for(int i = 0; i < rows.length; i++)
+			rows[i] = i;
+		return rows;
+	}
+}
@@ -1,16 +1,24 @@
 /**
  * Implements the Syntax interface with
- * common SQL keywords.
+ * common SQL keywords.  The text is split into
+ * tokens in a single pass, looking each word up
+ * in a table of keywords.
  */
 
 package cvosteen.sqltool.gui.syntax;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.LinkedHashMap;
-import java.util.regex.Pattern;
 
 public class SqlSyntax implements Syntax {
-	private Map<Pattern, String> syntax = new LinkedHashMap<Pattern, String>();
+	// Lexer states carried from one line to the next
+	private static final int NORMAL = 0;
+	private static final int COMMENT = 1;
+	private static final int SINGLE_QUOTED = 2;
+	private static final int DOUBLE_QUOTED = 3;
+
+	private Map<String, String> words = new HashMap<String, String>();
 	private String[] statements = new String[] {
 		"alter",
 		"analyze",
@@ -278,31 +286,144 @@ public class SqlSyntax implements Syntax {
 
 		for(String type: types)
 			addKeyword(type, "type");
+	}
 
-		syntax.put(Pattern.compile("@\\w+\\b"), "variable");
-		syntax.put(Pattern.compile("^@\\w+\\b"), "variable");
+	private void addKeyword(String keyword, String type) {
+		// Later types take priority, e.g. a word which
+		// is both a keyword and a type is a type.
+		words.put(keyword, type);
+	}
 
-		syntax.put(Pattern.compile("\\b\\d++\\b"), "number");
-		syntax.put(Pattern.compile("\\b\\d++\\.\\d++\\b"), "number");
-		syntax.put(Pattern.compile("\\.\\d++\\b"), "number");
-		syntax.put(Pattern.compile("\\b\\d++\\."), "number");
+	public int getInitialState() {
+		return NORMAL;
+	}
 
-		syntax.put(Pattern.compile("'(\\\\'|[^'])*'"), "string");
-		syntax.put(Pattern.compile("\"(\\\\\"|[^\"])*\""), "string");
+	public int tokenize(CharSequence text, int state, List<Token> tokens) {
+		int length = text.length();
+		int pos = 0;
 
-		// FIXME:
-		// Overlapping comment groups can cause a problem.
-		// However, this should work well for most cases.
-		syntax.put(Pattern.compile("--.*$"), "comment");
-		syntax.put(Pattern.compile("(?s)/\\*.*?\\*/"), "comment");
+		// Finish a comment or string carried over from before
+		if(state != NORMAL) {
+			int end;
+			if(state == COMMENT)
+				end = commentEnd(text, 0);
+			else
+				end = quoteEnd(text, 0, state == SINGLE_QUOTED ? '\'' : '"');
+			if(end < 0) {
+				tokens.add(new Token(state == COMMENT ? "comment" : "string", 0, length));
+				return state;
+			}
+			tokens.add(new Token(state == COMMENT ? "comment" : "string", 0, end));
+			pos = end;
+		}
+
+		while(pos < length) {
+			char c = text.charAt(pos);
+			char next = pos + 1 < length ? text.charAt(pos + 1) : '\0';
+			int start = pos;
+
+			if(c == '-' && next == '-') {
+				// Comment to the end of the line
+				while(pos < length && text.charAt(pos) != '\n')
+					pos++;
+				tokens.add(new Token("comment", start, pos - start));
+			} else if(c == '/' && next == '*') {
+				pos = commentEnd(text, pos + 2);
+				if(pos < 0) {
+					tokens.add(new Token("comment", start, length - start));
+					return COMMENT;
+				}
+				tokens.add(new Token("comment", start, pos - start));
+			} else if(c == '\'' || c == '"') {
+				pos = quoteEnd(text, pos + 1, c);
+				if(pos < 0) {
+					tokens.add(new Token("string", start, length - start));
+					return c == '\'' ? SINGLE_QUOTED : DOUBLE_QUOTED;
+				}
+				tokens.add(new Token("string", start, pos - start));
+			} else if(c == '@' && isWordPart(next)) {
+				pos = wordEnd(text, pos + 1);
+				tokens.add(new Token("variable", start, pos - start));
+			} else if(Character.isDigit(c) || (c == '.' && Character.isDigit(next))) {
+				pos = numberEnd(text, pos);
+				// Digits run into letters are a name, not a number
+				if(pos < length && isWordPart(text.charAt(pos)))
+					pos = wordEnd(text, pos);
+				else
+					tokens.add(new Token("number", start, pos - start));
+			} else if(isWordPart(c)) {
+				pos = wordEnd(text, pos);
+				String type = words.get(text.subSequence(start, pos).toString().toLowerCase());
+				if(type != null)
+					tokens.add(new Token(type, start, pos - start));
+			} else {
+				pos++;
+			}
+		}
+		return NORMAL;
 	}
 
-	private void addKeyword(String keyword, String type) {
-		syntax.put(Pattern.compile("(?i)\\b" + keyword + "\\b"), type);
+	/**
+	 * Returns the position just after the closing "*" + "/",
+	 * or -1 if the comment does not end in this text.
+	 */
+	private static int commentEnd(CharSequence text, int pos) {
+		int length = text.length();
+		for(; pos + 1 < length; pos++) {
+			if(text.charAt(pos) == '*' && text.charAt(pos + 1) == '/')
+				return pos + 2;
+		}
+		return -1;
 	}
 
-	public Map<Pattern, String> getSyntax() {
-		return syntax;
+	/**
+	 * Returns the position just after the closing quote,
+	 * or -1 if the string does not end in this text.
+	 * A doubled quote stands for the quote itself.
+	 */
+	private static int quoteEnd(CharSequence text, int pos, char quote) {
+		int length = text.length();
+		while(pos < length) {
+			if(text.charAt(pos) == quote) {
+				if(pos + 1 < length && text.charAt(pos + 1) == quote)
+					pos += 2;
+				else
+					return pos + 1;
+			} else {
+				pos++;
+			}
+		}
+		return -1;
 	}
-}
 
+	private static int numberEnd(CharSequence text, int pos) {
+		int length = text.length();
+		pos = digitsEnd(text, pos);
+		if(pos < length && text.charAt(pos) == '.')
+			pos = digitsEnd(text, pos + 1);
+		if(pos < length && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+			int exponent = pos + 1;
+			if(exponent < length && (text.charAt(exponent) == '+' || text.charAt(exponent) == '-'))
+				exponent++;
+			if(exponent < length && Character.isDigit(text.charAt(exponent)))
+				pos = digitsEnd(text, exponent);
+		}
+		return pos;
+	}
+
+	private static int digitsEnd(CharSequence text, int pos) {
+		while(pos < text.length() && Character.isDigit(text.charAt(pos)))
+			pos++;
+		return pos;
+	}
+
+	private static int wordEnd(CharSequence text, int pos) {
+		while(pos < text.length() && isWordPart(text.charAt(pos)))
+			pos++;
+		return pos;
+	}
+
+	private static boolean isWordPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+}
@@ -1,14 +1,26 @@
 /**
- * An interface which should provide all
- * of the syntax keywords and their types.
+ * An interface which splits text into tokens
+ * of each syntax type.  The text is tokenized a
+ * line at a time, so a state is passed from the
+ * end of one line to the start of the next
+ * (e.g. inside a comment which spans lines).
  */
 
 package cvosteen.sqltool.gui.syntax;
 
-import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.List;
 
 public interface Syntax {
-	public Map<Pattern, String> getSyntax();
+	/**
+	 * Returns the state at the start of a document.
+	 */
+	public int getInitialState();
+
+	/**
+	 * Adds the tokens found in the text to the list, with offsets
+	 * relative to the start of the text, starting in the given state.
+	 * Returns the state at the end of the text.
+	 */
+	public int tokenize(CharSequence text, int state, List<Token> tokens);
 }
 
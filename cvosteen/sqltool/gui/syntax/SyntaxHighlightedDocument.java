@@ -4,6 +4,11 @@
  * syntax highlighting.  If no Syntax or ColorScheme
  * are specified, this document acts like a Plain Text
  * Document.
+ *
+ * Only the lines touched by an edit are tokenized again, and
+ * the lines after them until the Syntax reaches the same state
+ * as before (e.g. when a comment is opened or closed).  Only
+ * characters whose style actually changes are updated.
  */
 
 package cvosteen.sqltool.gui.syntax;
@@ -11,13 +16,17 @@ package cvosteen.sqltool.gui.syntax;
 import java.awt.Font;
 import javax.swing.text.*;
 import java.util.*;
-import java.util.regex.*;
 
 public class SyntaxHighlightedDocument extends DefaultStyledDocument {
 
 	private Syntax syntax = null;
 	private ColorScheme colorScheme = null;
 	private SimpleAttributeSet baseAttributeSet = new SimpleAttributeSet();
+	// The Syntax state at the start of each line
+	private int[] lineStates = new int[] { 0 };
+	private int lineCount = 1;
+	private List<Token> tokens = new ArrayList<Token>();
+	private Segment segment = new Segment();
 
 	public SyntaxHighlightedDocument() {
 		StyleConstants.setFontFamily(baseAttributeSet, "Courier");
@@ -26,6 +35,7 @@ public class SyntaxHighlightedDocument extends DefaultStyledDocument {
 
 	public void setSyntax(Syntax syntax) {
 		this.syntax = syntax;
+		rehighlightAll();
 	}
 
 	public Syntax getSyntax() {
@@ -34,6 +44,7 @@ public class SyntaxHighlightedDocument extends DefaultStyledDocument {
 
 	public void setColorScheme(ColorScheme colorScheme) {
 		this.colorScheme = colorScheme;
+		rehighlightAll();
 	}
 
 	public ColorScheme getColorScheme() {
@@ -42,14 +53,16 @@ public class SyntaxHighlightedDocument extends DefaultStyledDocument {
 
 	public void setFontFamily(String fontFamily) {
 		StyleConstants.setFontFamily(baseAttributeSet, fontFamily);
+		rehighlightAll();
 	}
 
 	public String getFontFamily() {
 		return StyleConstants.getFontFamily(baseAttributeSet);
 	}
-	
+
 	public void setFontSize(int size) {
 		StyleConstants.setFontSize(baseAttributeSet, size);
+		rehighlightAll();
 	}
 
 	public int getFontSize() {
@@ -58,49 +71,138 @@ public class SyntaxHighlightedDocument extends DefaultStyledDocument {
 
 	/**
 	 * This method is called by DefaultStyledDocument when text is inserted.
-	 * Since regexes are very flexible, the entire document must be re-examined.
+	 * Only the damaged lines are highlighted again.
 	 */
 	public void insertString(int offs, String str, AttributeSet a) throws BadLocationException {
 		super.insertString(offs, str, a);
-		rehighlight();
+		if(str == null || str.length() == 0)
+			return;
+
+		int line = getDefaultRootElement().getElementIndex(offs);
+		int newLines = countLines(str);
+		insertLineStates(line + 1, newLines);
+		rehighlight(line, line + newLines);
 	}
 
 	/**
 	 * This method is called by DefaultStyledDocument when text is removed.
-	 * Since regexes are very flexible, the entire document must be re-examined.
+	 * Only the damaged lines are highlighted again.
 	 */
 	public void remove(int offs, int len) throws BadLocationException {
+		if(len == 0) {
+			super.remove(offs, len);
+			return;
+		}
+
+		int line = getDefaultRootElement().getElementIndex(offs);
+		int removedLines = countLines(getText(offs, len));
 		super.remove(offs, len);
-		rehighlight();
+		removeLineStates(line + 1, removedLines);
+		rehighlight(line, line);
+	}
+
+	private static int countLines(String str) {
+		int count = 0;
+		for(int i = 0; i < str.length(); i++) {
+			if(str.charAt(i) == '\n')
+				count++;
+		}
+		return count;
+	}
+
+	private void insertLineStates(int line, int count) {
+		if(lineCount + count > lineStates.length)
+			lineStates = Arrays.copyOf(lineStates, Math.max(lineCount + count, lineStates.length * 2));
+		System.arraycopy(lineStates, line, lineStates, line + count, lineCount - line);
+		lineCount += count;
+	}
+
+	private void removeLineStates(int line, int count) {
+		System.arraycopy(lineStates, line + count, lineStates, line, lineCount - line - count);
+		lineCount -= count;
+	}
+
+	/**
+	 * Highlights the entire document again, used when the
+	 * syntax, color scheme or font changes.
+	 */
+	private void rehighlightAll() {
+		lineCount = getDefaultRootElement().getElementCount();
+		lineStates = new int[lineCount];
+		if(syntax != null)
+			lineStates[0] = syntax.getInitialState();
+		try {
+			rehighlight(0, lineCount - 1);
+		} catch(BadLocationException e) {
+			// Cannot happen, every line is within the document
+		}
 	}
 
 	/**
-	 * Applies the regexes supplied by the Syntax to the text of this document.
-	 * The ColorScheme is applied to each keyword etc.
+	 * Highlights the lines from firstLine to lastLine, and then following
+	 * lines until one starts in the same state as it did before.
 	 */
-	private void rehighlight() throws BadLocationException {
-		// Clear all styles
-		setCharacterAttributes(0, getLength(), baseAttributeSet, true);
-
-		// If we have syntax and a color scheme...
-		if(syntax != null && colorScheme != null) {
-			// Let's highlight some syntax!
-			Map<Pattern, String> patterns = syntax.getSyntax();
-			// Get the entire text of this document as a string for the Regexes to work on
-			String text = getText(0, getLength());
-			for(Pattern pattern : patterns.keySet()) {
-				// Get the matching AttributeSet from the ColorScheme object
-				AttributeSet as = colorScheme.attributesForType(patterns.get(pattern));
+	private void rehighlight(int firstLine, int lastLine) throws BadLocationException {
+		Element root = getDefaultRootElement();
+		if(root.getElementCount() != lineCount) {
+			// Lost track of the lines, start over
+			rehighlightAll();
+			return;
+		}
+
+		int state = lineStates[firstLine];
+		for(int line = firstLine; line < lineCount; line++) {
+			Element lineElement = root.getElement(line);
+			int start = lineElement.getStartOffset();
+			int end = Math.min(lineElement.getEndOffset(), getLength());
+			getText(start, end - start, segment);
+
+			tokens.clear();
+			if(syntax != null)
+				state = syntax.tokenize(segment, state, tokens);
+			applyAttributes(start, end);
+
+			if(line + 1 < lineCount) {
+				if(line >= lastLine && lineStates[line + 1] == state)
+					break;
+				lineStates[line + 1] = state;
+			}
+		}
+	}
+
+	/**
+	 * Applies the ColorScheme to the tokens found on one line,
+	 * between start and end in the document.
+	 */
+	private void applyAttributes(int start, int end) {
+		if(end <= start)
+			return;
+
+		// Work out the style every character should have
+		AttributeSet[] styles = new AttributeSet[end - start];
+		Arrays.fill(styles, baseAttributeSet);
+		if(colorScheme != null) {
+			for(Token token : tokens) {
 				// Make sure the color scheme has a style for this syntax type
-				if(as != null) {
-					// Apply attributes to each match of the Regex
-					Matcher matcher = pattern.matcher(text);
-					while(matcher.find()) {
-						setCharacterAttributes(matcher.start(), matcher.end() - matcher.start(), as, true);
-					}
-				}
+				AttributeSet as = colorScheme.attributesForType(token.getType());
+				if(as != null)
+					Arrays.fill(styles, token.getOffset(), token.getOffset() + token.getLength(), as);
 			}
 		}
+
+		// Only touch the characters whose style has changed
+		int pos = start;
+		while(pos < end) {
+			Element element = getCharacterElement(pos);
+			AttributeSet style = styles[pos - start];
+			int runEnd = Math.min(end, element.getEndOffset());
+			int next = pos + 1;
+			while(next < runEnd && styles[next - start] == style)
+				next++;
+			if(!element.getAttributes().isEqual(style))
+				setCharacterAttributes(pos, next - pos, style, true);
+			pos = next;
+		}
 	}
 
 }
@@ -0,0 +1,30 @@
+/**
+ * A piece of text of one syntax type,
+ * as found by a Syntax.
+ */
+
+package cvosteen.sqltool.gui.syntax;
+
+public class Token {
+	private final String type;
+	private final int offset;
+	private final int length;
+
+	public Token(String type, int offset, int length) {
+		this.type = type;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getLength() {
+		return length;
+	}
+}
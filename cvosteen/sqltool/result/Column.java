@@ -0,0 +1,233 @@
+/**
+ * A single column of a ResultStore.
+ * Each subclass stores its values in whatever form is the most
+ * compact for the SQL type of the column.  Nulls are tracked
+ * separately in a bitmap so that primitive columns do not need
+ * to box their values.
+ *
+ * Columns are not thread safe on their own.  The owning
+ * ResultStore is responsible for synchronizing access.
+ */
+
+package cvosteen.sqltool.result;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.Arrays;
+
+public abstract class Column {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	protected int size = 0;
+	private long[] nulls = new long[1];
+
+	/**
+	 * Reads the value of the specified column of the current row of
+	 * the ResultSet and appends it to this column.
+	 */
+	public void append(ResultSet resultSet, int index) throws SQLException {
+		ensureCapacity(size + 1);
+		if(!read(resultSet, index, size))
+			setNull(size);
+		size++;
+	}
+
+	/**
+	 * Returns the value at the specified row, or null.
+	 */
+	public Object get(int row) {
+		if(isNull(row))
+			return null;
+		return getValue(row);
+	}
+
+	/**
+	 * Returns the value with the longest text, if it can be found
+	 * without converting every value to text, or null otherwise.
+	 */
+	public Object getWidestValue() {
+		return null;
+	}
+
+	/**
+	 * Returns wether or not the value at the specified row is null.
+	 */
+	public boolean isNull(int row) {
+		return (nulls[row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * Returns the number of values in this column.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a rough estimate of the number of bytes used by this column.
+	 */
+	public long estimateBytes() {
+		return 8L * nulls.length + estimateValueBytes();
+	}
+
+	/**
+	 * Called once no more values will be appended.
+	 * Releases any spare capacity and any data only needed for appending.
+	 */
+	public void seal() {
+		if(capacity() > size)
+			grow(size);
+		nulls = Arrays.copyOf(nulls, Math.max(1, (size + 63) >>> 6));
+	}
+
+	/**
+	 * Writes this column in a compact binary form that can be
+	 * read back with read().
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(size);
+		int words = (size + 63) >>> 6;
+		for(int i = 0; i < words; i++)
+			out.writeLong(nulls[i]);
+		writeValues(out);
+	}
+
+	/**
+	 * Replaces the contents of this column with a column written by write().
+	 */
+	public void read(ByteBuffer in) {
+		size = in.getInt();
+		nulls = new long[Math.max(1, (size + 63) >>> 6)];
+		for(int i = 0; i < (size + 63) >>> 6; i++)
+			nulls[i] = in.getLong();
+		readValues(in);
+	}
+
+	private void setNull(int row) {
+		nulls[row >>> 6] |= 1L << row;
+	}
+
+	private void ensureCapacity(int capacity) {
+		int current = capacity();
+		if(capacity > current) {
+			int newCapacity = Math.max(INITIAL_CAPACITY, current + (current >> 1));
+			grow(newCapacity);
+			if((newCapacity + 63) >>> 6 > nulls.length)
+				nulls = Arrays.copyOf(nulls, (newCapacity + 63) >>> 6);
+		}
+	}
+
+	/**
+	 * Reads the value from the ResultSet into the specified row.
+	 * Returns false if the value was SQL NULL.
+	 */
+	protected abstract boolean read(ResultSet resultSet, int index, int row) throws SQLException;
+
+	/**
+	 * Returns the boxed value at the specified row, which is never null.
+	 */
+	protected abstract Object getValue(int row);
+
+	/**
+	 * Returns the number of values that can be held without growing.
+	 */
+	protected abstract int capacity();
+
+	/**
+	 * Grows the underlying storage to the specified capacity.
+	 */
+	protected abstract void grow(int capacity);
+
+	/**
+	 * Returns a rough estimate of the bytes used by the values.
+	 */
+	protected abstract long estimateValueBytes();
+
+	/**
+	 * Writes the first size values.  Null rows may be written as anything.
+	 */
+	protected abstract void writeValues(DataOutputStream out) throws IOException;
+
+	/**
+	 * Reads size values written by writeValues().
+	 */
+	protected abstract void readValues(ByteBuffer in);
+
+	/**
+	 * Writes a String as its length followed by its chars.
+	 */
+	protected static void writeString(DataOutputStream out, String s) throws IOException {
+		out.writeInt(s.length());
+		out.writeChars(s);
+	}
+
+	/**
+	 * Reads a String written by writeString().
+	 */
+	protected static String readString(ByteBuffer in) {
+		char[] chars = new char[in.getInt()];
+		in.asCharBuffer().get(chars);
+		in.position(in.position() + 2 * chars.length);
+		return new String(chars);
+	}
+
+	/**
+	 * Returns the class of the values of the column forSqlType() creates
+	 * for the specified java.sql.Types value.  Columns of Objects hold
+	 * whatever the driver returns, so only Object can be promised.
+	 */
+	public static Class<?> getValueClass(int sqlType) {
+		switch(sqlType) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+				return Integer.class;
+			case Types.BIGINT:
+				return Long.class;
+			case Types.REAL:
+				return Float.class;
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				return Double.class;
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.NCHAR:
+			case Types.NVARCHAR:
+			case Types.LONGNVARCHAR:
+				return String.class;
+			default:
+				return Object.class;
+		}
+	}
+
+	/**
+	 * Creates the most compact column for the specified java.sql.Types value.
+	 */
+	public static Column forSqlType(int sqlType) {
+		switch(sqlType) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+				return new IntColumn();
+			case Types.BIGINT:
+				return new LongColumn();
+			case Types.REAL:
+				return new FloatColumn();
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				return new DoubleColumn();
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.NCHAR:
+			case Types.NVARCHAR:
+			case Types.LONGNVARCHAR:
+				return new StringColumn();
+			default:
+				return new ObjectColumn();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Finds the values that decide how wide each column of a ResultStore
+ * should be, without looking at every row.
+ *
+ * The store hands every appended row to the sampler on the thread
+ * reading the ResultSet.  A reservoir of RESERVOIR_SIZE rows, chosen
+ * uniformly at random from all rows so far, is kept; rows which are
+ * not chosen cost a counter decrement.  The values are kept rather than
+ * their text, so that they can be measured as the table formats them,
+ * but long strings and binary values are cut short.  The reservoir is
+ * filled with Vitter's / Li's "Algorithm L", which draws how many rows
+ * to skip rather than a random number per row.
+ *
+ * Integer columns are measured exactly as well: as each page fills up,
+ * the value of the page with the longest text is kept (see
+ * Column.getWidestValue()), so a rare very large or negative number
+ * is not missed by the sample.
+ *
+ * The sampler is not thread safe on its own.  The owning ResultStore
+ * is responsible for synchronizing access.
+ */
+
+package cvosteen.sqltool.result;
+
+import java.util.*;
+
+public class ColumnWidthSampler {
+
+	public static final int RESERVOIR_SIZE = 500;
+	// Longer text and binary values are cut off, no column needs to be
+	// wider than this
+	private static final int MAX_TEXT_LENGTH = 200;
+
+	private final Object[][] reservoir;
+	private int filled = 0;
+	private long rows = 0;
+	// The number of the next row to go in the full reservoir
+	private long nextSample = 0;
+	private double w;
+	private final Random random = new Random();
+	// The widest value seen in the full pages of integer columns
+	private final Object[] widest;
+
+	public ColumnWidthSampler(int columnCount) {
+		reservoir = new Object[RESERVOIR_SIZE][];
+		widest = new Object[columnCount];
+	}
+
+	/**
+	 * Called for each row appended to a page.
+	 */
+	public void rowAppended(ResultPage page, int row) {
+		if(filled < RESERVOIR_SIZE) {
+			reservoir[filled++] = toValues(page, row);
+			if(filled == RESERVOIR_SIZE) {
+				w = Math.exp(Math.log(random.nextDouble()) / RESERVOIR_SIZE);
+				nextSample = rows + skip() + 1;
+			}
+		} else if(rows == nextSample) {
+			reservoir[random.nextInt(RESERVOIR_SIZE)] = toValues(page, row);
+			w *= Math.exp(Math.log(random.nextDouble()) / RESERVOIR_SIZE);
+			nextSample += skip() + 1;
+		}
+		rows++;
+	}
+
+	/**
+	 * Called once a page is full, before it may be spilled to disk.
+	 */
+	public void pageSealed(ResultPage page) {
+		for(int col = 0; col < widest.length; col++)
+			widest[col] = wider(widest[col], page.getWidestValue(col));
+	}
+
+	/**
+	 * Returns the values of the column in the sample, and the widest
+	 * integers, leaving out NULLs.  The page being appended to is looked
+	 * at as well, since it has not been sealed yet.
+	 */
+	public List<Object> getSampledValues(int column, ResultPage currentPage) {
+		List<Object> values = new ArrayList<Object>(filled + 1);
+		Object longest = wider(widest[column], currentPage.getWidestValue(column));
+		if(longest != null)
+			values.add(longest);
+		for(int i = 0; i < filled; i++) {
+			if(reservoir[i][column] != null)
+				values.add(reservoir[i][column]);
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the number of rows sampled from.
+	 */
+	public long getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * Returns how many rows to pass over before the next one is kept.
+	 */
+	private long skip() {
+		return (long) Math.floor(Math.log(random.nextDouble()) / Math.log(1 - w));
+	}
+
+	private Object[] toValues(ResultPage page, int row) {
+		Object[] values = new Object[widest.length];
+		for(int col = 0; col < values.length; col++) {
+			Object value = page.getValueAt(row, col);
+			if(value instanceof String && ((String) value).length() > MAX_TEXT_LENGTH)
+				value = ((String) value).substring(0, MAX_TEXT_LENGTH);
+			else if(value instanceof byte[] && ((byte[]) value).length > MAX_TEXT_LENGTH)
+				value = Arrays.copyOf((byte[]) value, MAX_TEXT_LENGTH);
+			values[col] = value;
+		}
+		return values;
+	}
+
+	private static Object wider(Object a, Object b) {
+		if(b == null)
+			return a;
+		return a == null || b.toString().length() > a.toString().length() ? b : a;
+	}
+}
@@ -0,0 +1,55 @@
+/**
+ * A Column of double values, used for FLOAT and DOUBLE.
+ */
+
+package cvosteen.sqltool.result;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.Arrays;
+
+public class DoubleColumn extends Column {
+
+	private double[] values = new double[0];
+
+	protected boolean read(ResultSet resultSet, int index, int row) throws SQLException {
+		values[row] = resultSet.getDouble(index);
+		return !resultSet.wasNull();
+	}
+
+	protected Object getValue(int row) {
+		return Double.valueOf(values[row]);
+	}
+
+	/**
+	 * Returns the primitive value at the specified row.
+	 * Null values are returned as 0.
+	 */
+	public double getDouble(int row) {
+		return values[row];
+	}
+
+	protected int capacity() {
+		return values.length;
+	}
+
+	protected void grow(int capacity) {
+		values = Arrays.copyOf(values, capacity);
+	}
+
+	protected long estimateValueBytes() {
+		return 8L * values.length;
+	}
+
+	protected void writeValues(DataOutputStream out) throws IOException {
+		for(int row = 0; row < size; row++)
+			out.writeDouble(values[row]);
+	}
+
+	protected void readValues(ByteBuffer in) {
+		values = new double[size];
+		for(int row = 0; row < size; row++)
+			values[row] = in.getDouble();
+	}
+}
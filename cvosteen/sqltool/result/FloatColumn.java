@@ -0,0 +1,56 @@
+/**
+ * A Column of float values, used for REAL, which would show as
+ * the nearest double (0.10000000149011612 for 0.1) if widened.
+ */
+
+package cvosteen.sqltool.result;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.Arrays;
+
+public class FloatColumn extends Column {
+
+	private float[] values = new float[0];
+
+	protected boolean read(ResultSet resultSet, int index, int row) throws SQLException {
+		values[row] = resultSet.getFloat(index);
+		return !resultSet.wasNull();
+	}
+
+	protected Object getValue(int row) {
+		return Float.valueOf(values[row]);
+	}
+
+	/**
+	 * Returns the primitive value at the specified row.
+	 * Null values are returned as 0.
+	 */
+	public float getFloat(int row) {
+		return values[row];
+	}
+
+	protected int capacity() {
+		return values.length;
+	}
+
+	protected void grow(int capacity) {
+		values = Arrays.copyOf(values, capacity);
+	}
+
+	protected long estimateValueBytes() {
+		return 4L * values.length;
+	}
+
+	protected void writeValues(DataOutputStream out) throws IOException {
+		for(int row = 0; row < size; row++)
+			out.writeFloat(values[row]);
+	}
+
+	protected void readValues(ByteBuffer in) {
+		values = new float[size];
+		for(int row = 0; row < size; row++)
+			values[row] = in.getFloat();
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * A Column of int values, used for TINYINT, SMALLINT and INTEGER.
+ */
+
+package cvosteen.sqltool.result;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.Arrays;
+
+public class IntColumn extends Column {
+
+	private int[] values = new int[0];
+
+	protected boolean read(ResultSet resultSet, int index, int row) throws SQLException {
+		values[row] = resultSet.getInt(index);
+		return !resultSet.wasNull();
+	}
+
+	protected Object getValue(int row) {
+		return Integer.valueOf(values[row]);
+	}
+
+	/**
+	 * Returns the primitive value at the specified row.
+	 * Null values are returned as 0.
+	 */
+	public int getInt(int row) {
+		return values[row];
+	}
+
+	/**
+	 * Returns the smallest or the largest value, whichever is longer
+	 * as text, or null if every value is null.
+	 */
+	public Object getWidestValue() {
+		boolean found = false;
+		int min = 0;
+		int max = 0;
+		for(int row = 0; row < size; row++) {
+			if(isNull(row))
+				continue;
+			if(!found || values[row] < min)
+				min = values[row];
+			if(!found || values[row] > max)
+				max = values[row];
+			found = true;
+		}
+		if(!found)
+			return null;
+		return Integer.toString(min).length() > Integer.toString(max).length() ? Integer.valueOf(min) : Integer.valueOf(max);
+	}
+
+	protected int capacity() {
+		return values.length;
+	}
+
+	protected void grow(int capacity) {
+		values = Arrays.copyOf(values, capacity);
+	}
+
+	protected long estimateValueBytes() {
+		return 4L * values.length;
+	}
+
+	protected void writeValues(DataOutputStream out) throws IOException {
+		for(int row = 0; row < size; row++)
+			out.writeInt(values[row]);
+	}
+
+	protected void readValues(ByteBuffer in) {
+		values = new int[size];
+		for(int row = 0; row < size; row++)
+			values[row] = in.getInt();
+	}
+}
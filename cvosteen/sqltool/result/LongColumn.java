@@ -0,0 +1,77 @@
+/**
+ * A Column of long values, used for BIGINT.
+ */
+
+package cvosteen.sqltool.result;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.Arrays;
+
+public class LongColumn extends Column {
+
+	private long[] values = new long[0];
+
+	protected boolean read(ResultSet resultSet, int index, int row) throws SQLException {
+		values[row] = resultSet.getLong(index);
+		return !resultSet.wasNull();
+	}
+
+	protected Object getValue(int row) {
+		return Long.valueOf(values[row]);
+	}
+
+	/**
+	 * Returns the primitive value at the specified row.
+	 * Null values are returned as 0.
+	 */
+	public long getLong(int row) {
+		return values[row];
+	}
+
+	/**
+	 * Returns the smallest or the largest value, whichever is longer
+	 * as text, or null if every value is null.
+	 */
+	public Object getWidestValue() {
+		boolean found = false;
+		long min = 0;
+		long max = 0;
+		for(int row = 0; row < size; row++) {
+			if(isNull(row))
+				continue;
+			if(!found || values[row] < min)
+				min = values[row];
+			if(!found || values[row] > max)
+				max = values[row];
+			found = true;
+		}
+		if(!found)
+			return null;
+		return Long.toString(min).length() > Long.toString(max).length() ? Long.valueOf(min) : Long.valueOf(max);
+	}
+
+	protected int capacity() {
+		return values.length;
+	}
+
+	protected void grow(int capacity) {
+		values = Arrays.copyOf(values, capacity);
+	}
+
+	protected long estimateValueBytes() {
+		return 8L * values.length;
+	}
+
+	protected void writeValues(DataOutputStream out) throws IOException {
+		for(int row = 0; row < size; row++)
+			out.writeLong(values[row]);
+	}
+
+	protected void readValues(ByteBuffer in) {
+		values = new long[size];
+		for(int row = 0; row < size; row++)
+			values[row] = in.getLong();
+	}
+}
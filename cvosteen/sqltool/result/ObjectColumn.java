@@ -0,0 +1,182 @@
+/**
+ * A Column of arbitrary objects as returned by ResultSet.getObject.
+ * This is the fallback for any type without a specialized Column,
+ * such as DECIMAL, DATE, TIMESTAMP and binary data.
+ */
+
+package cvosteen.sqltool.result;
+
+import java.io.*;
+import java.math.*;
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.Arrays;
+
+public class ObjectColumn extends Column {
+
+	// Tags for the binary form of each value
+	private static final byte TAG_STRING = 0;
+	private static final byte TAG_BIG_DECIMAL = 1;
+	private static final byte TAG_TIMESTAMP = 2;
+	private static final byte TAG_DATE = 3;
+	private static final byte TAG_TIME = 4;
+	private static final byte TAG_BYTES = 5;
+	private static final byte TAG_BOOLEAN = 6;
+	private static final byte TAG_INTEGER = 7;
+	private static final byte TAG_LONG = 8;
+	private static final byte TAG_DOUBLE = 9;
+	private static final byte TAG_SERIALIZED = 10;
+
+	private Object[] values = new Object[0];
+
+	protected boolean read(ResultSet resultSet, int index, int row) throws SQLException {
+		values[row] = resultSet.getObject(index);
+		return values[row] != null;
+	}
+
+	protected Object getValue(int row) {
+		return values[row];
+	}
+
+	protected int capacity() {
+		return values.length;
+	}
+
+	protected void grow(int capacity) {
+		values = Arrays.copyOf(values, capacity);
+	}
+
+	protected long estimateValueBytes() {
+		// References plus a rough guess at a small boxed object each
+		return 4L * values.length + 24L * size;
+	}
+
+	/**
+	 * Each value is written as a tag byte followed by its contents.
+	 * Common JDBC types get a compact form.  Anything else is written
+	 * with Java serialization if possible, or as its String otherwise.
+	 */
+	protected void writeValues(DataOutputStream out) throws IOException {
+		for(int row = 0; row < size; row++) {
+			if(isNull(row))
+				continue;
+			Object value = values[row];
+			if(value instanceof String) {
+				out.writeByte(TAG_STRING);
+				writeString(out, (String) value);
+			} else if(value instanceof BigDecimal) {
+				BigDecimal decimal = (BigDecimal) value;
+				byte[] unscaled = decimal.unscaledValue().toByteArray();
+				out.writeByte(TAG_BIG_DECIMAL);
+				out.writeInt(decimal.scale());
+				out.writeInt(unscaled.length);
+				out.write(unscaled);
+			} else if(value instanceof Timestamp) {
+				out.writeByte(TAG_TIMESTAMP);
+				out.writeLong(((Timestamp) value).getTime());
+				out.writeInt(((Timestamp) value).getNanos());
+			} else if(value instanceof Date) {
+				out.writeByte(TAG_DATE);
+				out.writeLong(((Date) value).getTime());
+			} else if(value instanceof Time) {
+				out.writeByte(TAG_TIME);
+				out.writeLong(((Time) value).getTime());
+			} else if(value instanceof byte[]) {
+				out.writeByte(TAG_BYTES);
+				out.writeInt(((byte[]) value).length);
+				out.write((byte[]) value);
+			} else if(value instanceof Boolean) {
+				out.writeByte(TAG_BOOLEAN);
+				out.writeBoolean((Boolean) value);
+			} else if(value instanceof Integer || value instanceof Short || value instanceof Byte) {
+				out.writeByte(TAG_INTEGER);
+				out.writeInt(((Number) value).intValue());
+			} else if(value instanceof Long) {
+				out.writeByte(TAG_LONG);
+				out.writeLong((Long) value);
+			} else if(value instanceof Double || value instanceof Float) {
+				out.writeByte(TAG_DOUBLE);
+				out.writeDouble(((Number) value).doubleValue());
+			} else if(value instanceof Serializable) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+				objectOut.writeObject(value);
+				objectOut.close();
+				out.writeByte(TAG_SERIALIZED);
+				out.writeInt(bytes.size());
+				bytes.writeTo(out);
+			} else {
+				out.writeByte(TAG_STRING);
+				writeString(out, value.toString());
+			}
+		}
+	}
+
+	protected void readValues(ByteBuffer in) {
+		values = new Object[size];
+		for(int row = 0; row < size; row++) {
+			if(isNull(row))
+				continue;
+			byte tag = in.get();
+			switch(tag) {
+				case TAG_STRING:
+					values[row] = readString(in);
+					break;
+				case TAG_BIG_DECIMAL:
+					int scale = in.getInt();
+					values[row] = new BigDecimal(new BigInteger(readBytes(in)), scale);
+					break;
+				case TAG_TIMESTAMP:
+					Timestamp timestamp = new Timestamp(in.getLong());
+					timestamp.setNanos(in.getInt());
+					values[row] = timestamp;
+					break;
+				case TAG_DATE:
+					values[row] = new Date(in.getLong());
+					break;
+				case TAG_TIME:
+					values[row] = new Time(in.getLong());
+					break;
+				case TAG_BYTES:
+					values[row] = readBytes(in);
+					break;
+				case TAG_BOOLEAN:
+					values[row] = Boolean.valueOf(in.get() != 0);
+					break;
+				case TAG_INTEGER:
+					values[row] = Integer.valueOf(in.getInt());
+					break;
+				case TAG_LONG:
+					values[row] = Long.valueOf(in.getLong());
+					break;
+				case TAG_DOUBLE:
+					values[row] = Double.valueOf(in.getDouble());
+					break;
+				case TAG_SERIALIZED:
+					values[row] = deserialize(readBytes(in));
+					break;
+				default:
+					throw new IllegalStateException("Unknown value tag " + tag);
+			}
+		}
+	}
+
+	private static byte[] readBytes(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return bytes;
+	}
+
+	private static Object deserialize(byte[] bytes) {
+		try {
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			try {
+				return in.readObject();
+			} finally {
+				in.close();
+			}
+		} catch(Exception e) {
+			throw new IllegalStateException("Unable to read spilled value.", e);
+		}
+	}
+}
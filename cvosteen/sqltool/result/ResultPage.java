@@ -0,0 +1,94 @@
+/**
+ * A fixed number of consecutive rows of a ResultStore, stored column
+ * by column.  Pages are the unit that the ResultStore keeps in memory
+ * or spills to disk.
+ */
+
+package cvosteen.sqltool.result;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.sql.*;
+
+public class ResultPage {
+
+	private final Column[] columns;
+	private int rowCount = 0;
+
+	/**
+	 * Creates an empty page for columns of the specified java.sql.Types.
+	 */
+	public ResultPage(int[] columnTypes) {
+		columns = new Column[columnTypes.length];
+		for(int col = 0; col < columnTypes.length; col++)
+			columns[col] = Column.forSqlType(columnTypes[col]);
+	}
+
+	/**
+	 * Appends the current row of the ResultSet to this page.
+	 */
+	public void appendRow(ResultSet resultSet) throws SQLException {
+		for(int col = 0; col < columns.length; col++)
+			columns[col].append(resultSet, col + 1);
+		rowCount++;
+	}
+
+	/**
+	 * Called once the page is full.
+	 */
+	public void seal() {
+		for(Column column : columns)
+			column.seal();
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	Column getColumn(int column) {
+		return columns[column];
+	}
+
+	/**
+	 * Returns the value at the specified row within this page.
+	 */
+	public Object getValueAt(int row, int column) {
+		return columns[column].get(row);
+	}
+
+	/**
+	 * Returns the value of the column with the longest text, if the
+	 * column can tell without converting every value, or null.
+	 */
+	public Object getWidestValue(int column) {
+		return columns[column].getWidestValue();
+	}
+
+	public long estimateBytes() {
+		long bytes = 0;
+		for(Column column : columns)
+			bytes += column.estimateBytes();
+		return bytes;
+	}
+
+	/**
+	 * Writes this page in a compact binary form: the row count
+	 * followed by each column in turn.
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(rowCount);
+		for(Column column : columns)
+			column.write(out);
+	}
+
+	/**
+	 * Reads a page written by write() for columns of the specified types.
+	 */
+	public static ResultPage read(ByteBuffer in, int[] columnTypes) {
+		ResultPage page = new ResultPage(columnTypes);
+		page.rowCount = in.getInt();
+		for(Column column : page.columns)
+			column.read(in);
+		return page;
+	}
+}
@@ -0,0 +1,375 @@
+/**
+ * Sorts and filters the rows of a ResultStore without moving them.
+ *
+ * The result is a permutation: the store row to show at each position
+ * of the view.  Filtering keeps the rows with the filter text in any
+ * column, ignoring case.  Sorting is by a single column and stable, so
+ * rows with equal values stay in store order.  NULL sorts first.
+ *
+ * The values of the sort column are first copied out of the store a
+ * page at a time, into a primitive array for number columns, so that
+ * comparing rows never boxes or touches the store.  The rows are then
+ * sorted with a parallel merge sort: runs of the permutation are sorted
+ * on the threads of the TaskExecutor, then merged pairwise in rounds,
+ * also in parallel.
+ *
+ * sort() is meant to be run on a background thread and may be
+ * cancelled from any thread.
+ */
+
+package cvosteen.sqltool.result;
+
+import cvosteen.sqltool.task.*;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ResultSorter {
+
+	// Runs shorter than this are not worth a thread of their own
+	private static final int MIN_RUN = 8192;
+	// Runs shorter than this are insertion sorted
+	private static final int INSERTION_SORT_THRESHOLD = 32;
+
+	private final ResultStore store;
+	private final int rowCount;
+	private int sortColumn = -1;
+	private boolean ascending = true;
+	private String filter = null;
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Creates a sorter for the first rowCount rows of the store.
+	 */
+	public ResultSorter(ResultStore store, int rowCount) {
+		this.store = store;
+		this.rowCount = rowCount;
+	}
+
+	/**
+	 * Sets the column to sort by, or -1 to keep the rows in store order.
+	 */
+	public void setSortColumn(int column, boolean ascending) {
+		this.sortColumn = column;
+		this.ascending = ascending;
+	}
+
+	/**
+	 * Sets the text a row must contain to be kept, or null to keep
+	 * every row.
+	 */
+	public void setFilter(String filter) {
+		this.filter = filter == null || filter.length() == 0 ? null : filter;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Stops sort() as soon as possible.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns the store row of each row of the view, or null if the
+	 * sort was cancelled.
+	 */
+	public int[] sort() throws IOException {
+		int[] rows = filter == null ? identity() : store.findRows(filter, rowCount, this);
+		if(rows == null || cancelled)
+			return null;
+		if(sortColumn < 0)
+			return rows;
+
+		Keys keys = createKeys(store.getColumnType(sortColumn));
+		store.readKeys(sortColumn, rowCount, keys, this);
+		if(cancelled)
+			return null;
+		try {
+			return parallelSort(rows, ascending ? keys : new Descending(keys));
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	private int[] identity() {
+		int[] rows = new int[rowCount];
+		for(int i = 0; i < rowCount; i++)
+			rows[i] = i;
+		return rows;
+	}
+
+	/**
+	 * Sorts runs of the rows in parallel, then merges them in parallel
+	 * rounds until one run is left.
+	 */
+	private int[] parallelSort(int[] rows, final RowComparator keys) throws InterruptedException {
+		int runCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), rows.length / MIN_RUN));
+		final int[] bounds = new int[runCount + 1];
+		for(int i = 0; i <= runCount; i++)
+			bounds[i] = (int) ((long) rows.length * i / runCount);
+
+		final int[] a = rows;
+		final int[] b = new int[rows.length];
+		List<Callable<Object>> sorts = new ArrayList<Callable<Object>>();
+		for(int i = 0; i < runCount; i++) {
+			final int from = bounds[i];
+			final int to = bounds[i + 1];
+			sorts.add(new Callable<Object>() {
+					public Object call() {
+						System.arraycopy(a, from, b, from, to - from);
+						mergeSort(b, a, from, to, keys);
+						return null;
+					}
+				});
+		}
+		invokeAll(sorts);
+
+		// Merge pairs of neighbouring runs until there is only one
+		int[] source = a;
+		int[] target = b;
+		int[] runBounds = bounds;
+		while(runBounds.length > 2 && !cancelled) {
+			int runs = runBounds.length - 1;
+			int[] merged = new int[(runs + 1) / 2 + 1];
+			List<Callable<Object>> merges = new ArrayList<Callable<Object>>();
+			for(int i = 0; i < runs; i += 2) {
+				final int from = runBounds[i];
+				final int middle = runBounds[Math.min(i + 1, runs)];
+				final int to = runBounds[Math.min(i + 2, runs)];
+				merged[i / 2] = from;
+				final int[] src = source;
+				final int[] dst = target;
+				merges.add(new Callable<Object>() {
+						public Object call() {
+							merge(src, dst, from, middle, to, keys);
+							return null;
+						}
+					});
+			}
+			merged[merged.length - 1] = rows.length;
+			invokeAll(merges);
+			int[] swap = source;
+			source = target;
+			target = swap;
+			runBounds = merged;
+		}
+		return cancelled ? null : source;
+	}
+
+	private void invokeAll(List<Callable<Object>> tasks) throws InterruptedException {
+		if(tasks.size() == 1) {
+			try {
+				tasks.get(0).call();
+			} catch(Exception e) {
+				throw new IllegalStateException(e);
+			}
+			return;
+		}
+		for(Future<Object> future : TaskExecutor.getExecutorService().invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch(ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Sorts src[from..to) into dst[from..to).  Both must hold the same
+	 * rows on entry, src is used as scratch space.
+	 */
+	private void mergeSort(int[] src, int[] dst, int from, int to, RowComparator keys) {
+		if(to - from <= INSERTION_SORT_THRESHOLD) {
+			for(int i = from + 1; i < to; i++) {
+				int row = dst[i];
+				int j = i - 1;
+				while(j >= from && keys.compare(dst[j], row) > 0) {
+					dst[j + 1] = dst[j];
+					j--;
+				}
+				dst[j + 1] = row;
+			}
+			return;
+		}
+		if(cancelled)
+			return;
+		int middle = (from + to) >>> 1;
+		mergeSort(dst, src, from, middle, keys);
+		mergeSort(dst, src, middle, to, keys);
+		merge(src, dst, from, middle, to, keys);
+	}
+
+	/**
+	 * Merges the sorted runs src[from..middle) and src[middle..to) into
+	 * dst[from..to), taking from the first run on ties to stay stable.
+	 */
+	private static void merge(int[] src, int[] dst, int from, int middle, int to, RowComparator keys) {
+		if(middle >= to || keys.compare(src[middle - 1], src[middle]) <= 0) {
+			// Already in order
+			System.arraycopy(src, from, dst, from, to - from);
+			return;
+		}
+		int i = from;
+		int j = middle;
+		for(int k = from; k < to; k++) {
+			if(j >= to || (i < middle && keys.compare(src[i], src[j]) <= 0))
+				dst[k] = src[i++];
+			else
+				dst[k] = src[j++];
+		}
+	}
+
+	private Keys createKeys(int sqlType) {
+		Class<?> valueClass = Column.getValueClass(sqlType);
+		if(valueClass == Integer.class)
+			return new IntKeys(rowCount);
+		if(valueClass == Long.class)
+			return new LongKeys(rowCount);
+		if(valueClass == Float.class || valueClass == Double.class)
+			return new DoubleKeys(rowCount);
+		return new ObjectKeys(rowCount);
+	}
+
+	/**
+	 * Compares two rows of the store, by their number.
+	 */
+	interface RowComparator {
+		int compare(int a, int b);
+	}
+
+	/**
+	 * The values of the sort column of every row, and how to compare
+	 * two rows by them.
+	 */
+	abstract static class Keys implements RowComparator {
+		protected final boolean[] nulls;
+
+		Keys(int rowCount) {
+			nulls = new boolean[rowCount];
+		}
+
+		/**
+		 * Copies the value of a row of a page of the store.
+		 */
+		void read(Column column, int pageRow, int row) {
+			if(column.isNull(pageRow))
+				nulls[row] = true;
+			else
+				readValue(column, pageRow, row);
+		}
+
+		abstract void readValue(Column column, int pageRow, int row);
+
+		public int compare(int a, int b) {
+			if(nulls[a] || nulls[b])
+				return nulls[a] == nulls[b] ? 0 : (nulls[a] ? -1 : 1);
+			return compareValues(a, b);
+		}
+
+		abstract int compareValues(int a, int b);
+	}
+
+	private static class IntKeys extends Keys {
+		private final int[] values;
+
+		IntKeys(int rowCount) {
+			super(rowCount);
+			values = new int[rowCount];
+		}
+
+		void readValue(Column column, int pageRow, int row) {
+			values[row] = ((IntColumn) column).getInt(pageRow);
+		}
+
+		int compareValues(int a, int b) {
+			return values[a] < values[b] ? -1 : (values[a] == values[b] ? 0 : 1);
+		}
+	}
+
+	private static class LongKeys extends Keys {
+		private final long[] values;
+
+		LongKeys(int rowCount) {
+			super(rowCount);
+			values = new long[rowCount];
+		}
+
+		void readValue(Column column, int pageRow, int row) {
+			values[row] = ((LongColumn) column).getLong(pageRow);
+		}
+
+		int compareValues(int a, int b) {
+			return values[a] < values[b] ? -1 : (values[a] == values[b] ? 0 : 1);
+		}
+	}
+
+	private static class DoubleKeys extends Keys {
+		private final double[] values;
+
+		DoubleKeys(int rowCount) {
+			super(rowCount);
+			values = new double[rowCount];
+		}
+
+		void readValue(Column column, int pageRow, int row) {
+			if(column instanceof FloatColumn)
+				values[row] = ((FloatColumn) column).getFloat(pageRow);
+			else
+				values[row] = ((DoubleColumn) column).getDouble(pageRow);
+		}
+
+		int compareValues(int a, int b) {
+			return Double.compare(values[a], values[b]);
+		}
+	}
+
+	/**
+	 * Values compared with compareTo() if they are of the same class,
+	 * and by their text otherwise.
+	 */
+	private static class ObjectKeys extends Keys {
+		private final Object[] values;
+
+		ObjectKeys(int rowCount) {
+			super(rowCount);
+			values = new Object[rowCount];
+		}
+
+		void readValue(Column column, int pageRow, int row) {
+			values[row] = column.get(pageRow);
+		}
+
+		@SuppressWarnings("unchecked")
+		int compareValues(int a, int b) {
+			Object x = values[a];
+			Object y = values[b];
+			if(x instanceof Comparable && x.getClass() == y.getClass())
+				return ((Comparable<Object>) x).compareTo(y);
+			return x.toString().compareTo(y.toString());
+		}
+	}
+
+	/**
+	 * Reverses the order of other keys, NULL then sorts last.
+	 */
+	private static class Descending implements RowComparator {
+		private final RowComparator keys;
+
+		Descending(RowComparator keys) {
+			this.keys = keys;
+		}
+
+		public int compare(int a, int b) {
+			return keys.compare(b, a);
+		}
+	}
+}
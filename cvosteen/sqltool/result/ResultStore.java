@@ -0,0 +1,441 @@
+/**
+ * A columnar, append-only store for the rows of a ResultSet.
+ *
+ * Instead of holding a Vector of boxed Objects for every row, each
+ * column is stored in a Column chosen from its SQL type: primitive
+ * arrays for numbers, dictionary encoded Strings for text and plain
+ * Objects for everything else.
+ *
+ * Rows are grouped into pages of PAGE_SIZE rows.  Only a bounded
+ * window of recently used pages is kept in memory; the rest are
+ * spilled to memory-mapped temporary files (see SpillFile) and read
+ * back when they are needed again.  This lets a TableModel browse any number of rows in
+ * constant memory, since a JTable only ever asks for the rows
+ * that are visible.
+ *
+ * Rows are appended by the thread reading the ResultSet while the
+ * GUI may be reading the rows already appended.  All access is
+ * therefore synchronized on this instance.
+ *
+ * Appended rows are sampled by a ColumnWidthSampler, so the widths of
+ * the columns can be found without reading every row back.
+ *
+ * A store may be shared, e.g. between a results table and a
+ * ResultCache.  Each sharer calls retain() and then close() when done
+ * with it, and the pages are only released by the last close().
+ */
+
+package cvosteen.sqltool.result;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.*;
+
+public class ResultStore {
+
+	public static final int PAGE_SIZE = 4096;
+	private static final int DEFAULT_RESIDENT_PAGES = 64;
+
+	private final String[] columnNames;
+	private final int[] columnTypes;
+	private final int[] columnPrecisions;
+	private final int[] columnScales;
+	private int rowCount = 0;
+	private int references = 1;
+
+	// The page rows are currently being appended to
+	private ResultPage currentPage;
+
+	// Completed pages which are in memory, least recently used first
+	private final LinkedHashMap<Integer, ResultPage> residentPages =
+			new LinkedHashMap<Integer, ResultPage>(16, 0.75f, true);
+	private int residentPageLimit = DEFAULT_RESIDENT_PAGES;
+
+	// Completed pages which have been written to disk
+	private final SpillFile spillFile = new SpillFile();
+
+	private final ColumnWidthSampler widthSampler;
+
+	/**
+	 * Creates an empty store with the columns described by the metadata.
+	 */
+	public ResultStore(ResultSetMetaData metaData) throws SQLException {
+		int colCount = metaData.getColumnCount();
+		columnNames = new String[colCount];
+		columnTypes = new int[colCount];
+		columnPrecisions = new int[colCount];
+		columnScales = new int[colCount];
+		for(int col = 0; col < colCount; col++) {
+			columnNames[col] = metaData.getColumnName(col + 1);
+			columnTypes[col] = metaData.getColumnType(col + 1);
+			// Some drivers throw for columns where these mean nothing
+			try {
+				columnPrecisions[col] = metaData.getPrecision(col + 1);
+				columnScales[col] = metaData.getScale(col + 1);
+			} catch(Exception e) { }
+		}
+		currentPage = new ResultPage(columnTypes);
+		widthSampler = new ColumnWidthSampler(colCount);
+	}
+
+	private ResultStore(String[] columnNames, int[] columnTypes, int[] columnPrecisions, int[] columnScales) {
+		this.columnNames = columnNames;
+		this.columnTypes = columnTypes;
+		this.columnPrecisions = columnPrecisions;
+		this.columnScales = columnScales;
+		currentPage = new ResultPage(columnTypes);
+		widthSampler = new ColumnWidthSampler(columnNames.length);
+	}
+
+	/**
+	 * Sets the maximum number of completed pages kept in memory.
+	 */
+	public synchronized void setResidentPageLimit(int limit) throws IOException {
+		residentPageLimit = Math.max(0, limit);
+		evictPages(residentPageLimit);
+	}
+
+	public synchronized int getResidentPageLimit() {
+		return residentPageLimit;
+	}
+
+	/**
+	 * Writes every completed page to disk and keeps only the page
+	 * being appended to in memory.  Called when memory is low so that
+	 * the heap used by this store stays flat however many more rows
+	 * are appended.
+	 */
+	public void spillAll() throws IOException {
+		setResidentPageLimit(0);
+	}
+
+	/**
+	 * Appends the current row of the ResultSet to this store.
+	 */
+	public synchronized void appendRow(ResultSet resultSet) throws SQLException {
+		currentPage.appendRow(resultSet);
+		widthSampler.rowAppended(currentPage, currentPage.getRowCount() - 1);
+		rowCount++;
+		if(currentPage.getRowCount() == PAGE_SIZE) {
+			currentPage.seal();
+			widthSampler.pageSealed(currentPage);
+			residentPages.put((rowCount - 1) / PAGE_SIZE, currentPage);
+			currentPage = new ResultPage(columnTypes);
+			try {
+				evictPages(residentPageLimit);
+			} catch(IOException e) {
+				throw new SQLException("Unable to write results to disk.", e);
+			}
+		}
+	}
+
+	/**
+	 * Appends every row of another store with the same columns, e.g. one
+	 * filled on another thread.  While this store is at a page boundary,
+	 * the full pages of the other store are added as they are rather
+	 * than copied row by row.  The other store is left unchanged.
+	 */
+	public synchronized void appendRows(ResultStore source) throws SQLException {
+		synchronized(source) {
+			try {
+				for(int start = 0; start < source.rowCount; start += PAGE_SIZE) {
+					ResultPage page = source.getPage(start / PAGE_SIZE);
+					if(currentPage.getRowCount() == 0 && page.getRowCount() == PAGE_SIZE) {
+						// Full pages are sealed and never change again
+						for(int row = 0; row < PAGE_SIZE; row++)
+							widthSampler.rowAppended(page, row);
+						widthSampler.pageSealed(page);
+						rowCount += PAGE_SIZE;
+						residentPages.put((rowCount - 1) / PAGE_SIZE, page);
+						evictPages(residentPageLimit);
+						continue;
+					}
+					int[] rows = new int[page.getRowCount()];
+					for(int row = 0; row < rows.length; row++)
+						rows[row] = start + row;
+					ResultSet resultSet = StoreResultSet.open(source, rows);
+					while(resultSet.next())
+						appendRow(resultSet);
+				}
+			} catch(IOException e) {
+				throw new SQLException("Unable to write results to disk.", e);
+			}
+		}
+	}
+
+	public synchronized int getRowCount() {
+		return rowCount;
+	}
+
+	public int getColumnCount() {
+		return columnNames.length;
+	}
+
+	public String getColumnName(int column) {
+		return columnNames[column];
+	}
+
+	/**
+	 * Returns the java.sql.Types value of the specified column.
+	 */
+	public int getColumnType(int column) {
+		return columnTypes[column];
+	}
+
+	/**
+	 * Returns the precision of the specified column as the driver gave
+	 * it, or 0 if it did not.
+	 */
+	public int getColumnPrecision(int column) {
+		return columnPrecisions[column];
+	}
+
+	/**
+	 * Returns the scale of the specified column as the driver gave it,
+	 * or 0 if it did not.
+	 */
+	public int getColumnScale(int column) {
+		return columnScales[column];
+	}
+
+	/**
+	 * Returns the class of the values of the specified column.
+	 */
+	public Class<?> getColumnClass(int column) {
+		return Column.getValueClass(columnTypes[column]);
+	}
+
+	/**
+	 * Returns the value at the specified row and column, or null.
+	 * If the row has been spilled to disk, its page is read back in.
+	 */
+	public synchronized Object getValueAt(int row, int column) {
+		if(row < 0 || row >= rowCount)
+			throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+		try {
+			return getPage(row / PAGE_SIZE).getValueAt(row % PAGE_SIZE, column);
+		} catch(IOException e) {
+			throw new IllegalStateException("Unable to read results from disk.", e);
+		}
+	}
+
+	/**
+	 * Returns a sample of the values of the column, including the
+	 * widest integers, from which to size it, or null if the rows were
+	 * not sampled as they were appended, e.g. because the store was
+	 * read().
+	 */
+	public synchronized List<Object> getSampledValues(int column) {
+		if(widthSampler.getRowCount() < rowCount)
+			return null;
+		return widthSampler.getSampledValues(column, currentPage);
+	}
+
+	/**
+	 * Copies the values of a column of the first rowCount rows into the
+	 * keys of a sorter.  The lock is only held for a page at a time, so
+	 * the rows can still be shown meanwhile.
+	 */
+	void readKeys(int column, int rowCount, ResultSorter.Keys keys, ResultSorter sorter) throws IOException {
+		for(int start = 0; start < rowCount && !sorter.isCancelled(); start += PAGE_SIZE) {
+			synchronized(this) {
+				Column values = getPage(start / PAGE_SIZE).getColumn(column);
+				int end = Math.min(rowCount, start + PAGE_SIZE);
+				for(int row = start; row < end; row++)
+					keys.read(values, row - start, row);
+			}
+		}
+	}
+
+	/**
+	 * Returns the first rowCount rows which contain the text in any
+	 * column, ignoring case, or null if the sorter was cancelled.  The
+	 * lock is only held for a page at a time.
+	 */
+	int[] findRows(String text, int rowCount, ResultSorter sorter) throws IOException {
+		String lowerText = text.toLowerCase();
+		int[] rows = new int[Math.min(rowCount, PAGE_SIZE)];
+		int found = 0;
+		for(int start = 0; start < rowCount; start += PAGE_SIZE) {
+			if(sorter.isCancelled())
+				return null;
+			synchronized(this) {
+				ResultPage page = getPage(start / PAGE_SIZE);
+				int end = Math.min(rowCount, start + PAGE_SIZE);
+				for(int row = start; row < end; row++) {
+					for(int col = 0; col < columnNames.length; col++) {
+						Object value = page.getValueAt(row - start, col);
+						if(value != null && value.toString().toLowerCase().contains(lowerText)) {
+							if(found == rows.length)
+								rows = Arrays.copyOf(rows, Math.min(rowCount, 2 * found));
+							rows[found++] = row;
+							break;
+						}
+					}
+				}
+			}
+		}
+		return Arrays.copyOf(rows, found);
+	}
+
+	/**
+	 * Returns a rough estimate of the heap used by the pages in memory.
+	 */
+	public synchronized long estimateBytes() {
+		long bytes = currentPage.estimateBytes();
+		for(ResultPage page : residentPages.values())
+			bytes += page.estimateBytes();
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of pages which are only on disk, and would
+	 * have to be read back in to be used.
+	 */
+	public synchronized int getSpilledPageCount() {
+		return rowCount / PAGE_SIZE - residentPages.size();
+	}
+
+	/**
+	 * Returns a rough estimate of the heap used per row, based on the
+	 * rows of the page currently being appended to.
+	 */
+	public synchronized long estimateBytesPerRow() {
+		ResultPage page = currentPage;
+		if(page.getRowCount() == 0 && residentPages.size() > 0)
+			page = residentPages.values().iterator().next();
+		if(page.getRowCount() == 0)
+			return 0;
+		return page.estimateBytes() / page.getRowCount();
+	}
+
+	/**
+	 * Adds a reference to this store, so that it stays open until
+	 * close() has been called once more.
+	 */
+	public synchronized void retain() {
+		references++;
+	}
+
+	/**
+	 * Releases all pages and deletes the spill files, if any, once
+	 * every reference has been closed.  The store cannot be read
+	 * after it has been closed.
+	 */
+	public synchronized void close() {
+		if(--references > 0)
+			return;
+		residentPages.clear();
+		spillFile.close();
+	}
+
+	/**
+	 * Writes the columns and all rows of this store, so that it can be
+	 * read back with read().
+	 */
+	public synchronized void write(DataOutputStream out) throws IOException {
+		out.writeInt(columnNames.length);
+		for(int col = 0; col < columnNames.length; col++) {
+			out.writeUTF(columnNames[col]);
+			out.writeInt(columnTypes[col]);
+			out.writeInt(columnPrecisions[col]);
+			out.writeInt(columnScales[col]);
+		}
+		out.writeInt(rowCount);
+		int pageCount = (rowCount + PAGE_SIZE - 1) / PAGE_SIZE;
+		for(int pageNumber = 0; pageNumber < pageCount; pageNumber++) {
+			if(spillFile.contains(pageNumber)) {
+				// Already encoded, just copy it
+				ByteBuffer data = spillFile.read(pageNumber);
+				byte[] bytes = new byte[data.remaining()];
+				data.get(bytes);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			} else {
+				byte[] bytes = encodePage(getPage(pageNumber));
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}
+	}
+
+	/**
+	 * Reads a store written by write().  The full pages go straight to
+	 * the spill file without being decoded, so reading a store back
+	 * takes no more memory than its last page.
+	 */
+	public static ResultStore read(DataInputStream in) throws IOException {
+		int colCount = in.readInt();
+		String[] columnNames = new String[colCount];
+		int[] columnTypes = new int[colCount];
+		int[] columnPrecisions = new int[colCount];
+		int[] columnScales = new int[colCount];
+		for(int col = 0; col < colCount; col++) {
+			columnNames[col] = in.readUTF();
+			columnTypes[col] = in.readInt();
+			columnPrecisions[col] = in.readInt();
+			columnScales[col] = in.readInt();
+		}
+		ResultStore store = new ResultStore(columnNames, columnTypes, columnPrecisions, columnScales);
+		try {
+			int rowCount = in.readInt();
+			int pageCount = (rowCount + PAGE_SIZE - 1) / PAGE_SIZE;
+			for(int pageNumber = 0; pageNumber < pageCount; pageNumber++) {
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				if(pageNumber < rowCount / PAGE_SIZE)
+					store.spillFile.write(pageNumber, bytes);
+				else
+					store.currentPage = ResultPage.read(ByteBuffer.wrap(bytes), columnTypes);
+			}
+			store.rowCount = rowCount;
+		} catch(IOException e) {
+			store.close();
+			throw e;
+		}
+		return store;
+	}
+
+	private ResultPage getPage(int pageNumber) throws IOException {
+		if(pageNumber == rowCount / PAGE_SIZE)
+			return currentPage;
+
+		ResultPage page = residentPages.get(pageNumber);
+		if(page == null) {
+			page = ResultPage.read(spillFile.read(pageNumber), columnTypes);
+			// Keep at least this page in memory since it is likely the
+			// neighbouring rows will be asked for next.
+			residentPages.put(pageNumber, page);
+			evictPages(Math.max(1, residentPageLimit));
+		}
+		return page;
+	}
+
+	/**
+	 * Drops the least recently used pages until the window fits,
+	 * writing them to disk first if they have never been spilled.
+	 */
+	private void evictPages(int limit) throws IOException {
+		Iterator<Map.Entry<Integer, ResultPage>> iterator = residentPages.entrySet().iterator();
+		while(residentPages.size() > limit && iterator.hasNext()) {
+			Map.Entry<Integer, ResultPage> entry = iterator.next();
+			int pageNumber = entry.getKey();
+			if(!spillFile.contains(pageNumber))
+				writePage(pageNumber, entry.getValue());
+			iterator.remove();
+		}
+	}
+
+	private void writePage(int pageNumber, ResultPage page) throws IOException {
+		spillFile.write(pageNumber, encodePage(page));
+	}
+
+	private static byte[] encodePage(ResultPage page) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		page.write(out);
+		out.close();
+		return bytes.toByteArray();
+	}
+}
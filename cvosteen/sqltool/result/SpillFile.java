@@ -0,0 +1,102 @@
+/**
+ * Holds the pages a ResultStore has spilled to disk.
+ *
+ * Pages are written back to back into temporary segment files which
+ * are memory-mapped with FileChannel.map, so reading a page back does
+ * not copy it through the heap more than once.  An index of segment,
+ * offset and length for each page number gives O(1) access to any
+ * page, and therefore to any row.
+ */
+
+package cvosteen.sqltool.result;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+public class SpillFile {
+
+	private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private final List<File> files = new ArrayList<File>();
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private int segmentPosition = 0;
+
+	// The index: one entry per page number, segment -1 if not spilled
+	private int[] pageSegments = new int[0];
+	private int[] pageOffsets = new int[0];
+	private int[] pageLengths = new int[0];
+
+	/**
+	 * Returns wether or not the specified page has been written.
+	 */
+	public boolean contains(int pageNumber) {
+		return pageNumber < pageSegments.length && pageSegments[pageNumber] != -1;
+	}
+
+	/**
+	 * Writes the encoded page to the end of the current segment,
+	 * starting a new segment if it does not fit.
+	 */
+	public void write(int pageNumber, byte[] data) throws IOException {
+		if(segments.isEmpty() || segmentPosition + data.length > segments.get(segments.size() - 1).capacity())
+			addSegment(Math.max(SEGMENT_SIZE, data.length));
+
+		MappedByteBuffer segment = segments.get(segments.size() - 1);
+		segment.position(segmentPosition);
+		segment.put(data);
+
+		if(pageNumber >= pageSegments.length) {
+			int length = Math.max(pageNumber + 1, pageSegments.length * 2);
+			int oldLength = pageSegments.length;
+			pageSegments = Arrays.copyOf(pageSegments, length);
+			Arrays.fill(pageSegments, oldLength, length, -1);
+			pageOffsets = Arrays.copyOf(pageOffsets, length);
+			pageLengths = Arrays.copyOf(pageLengths, length);
+		}
+		pageSegments[pageNumber] = segments.size() - 1;
+		pageOffsets[pageNumber] = segmentPosition;
+		pageLengths[pageNumber] = data.length;
+		segmentPosition += data.length;
+	}
+
+	/**
+	 * Returns a read-only view of the bytes of the specified page.
+	 */
+	public ByteBuffer read(int pageNumber) {
+		ByteBuffer view = segments.get(pageSegments[pageNumber]).asReadOnlyBuffer();
+		view.position(pageOffsets[pageNumber]);
+		view.limit(pageOffsets[pageNumber] + pageLengths[pageNumber]);
+		return view.slice();
+	}
+
+	/**
+	 * Releases the mappings and deletes the segment files.
+	 */
+	public void close() {
+		segments.clear();
+		pageSegments = new int[0];
+		for(File file : files) {
+			// A file may not be deleted while it is still mapped on some
+			// platforms.  In that case it will be deleted on exit instead.
+			if(!file.delete())
+				file.deleteOnExit();
+		}
+		files.clear();
+	}
+
+	private void addSegment(int size) throws IOException {
+		File file = File.createTempFile("sqltool", ".seg");
+		file.deleteOnExit();
+		files.add(file);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			// The mapping remains valid after the file is closed
+			segments.add(raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+		} finally {
+			raf.close();
+		}
+		segmentPosition = 0;
+	}
+}
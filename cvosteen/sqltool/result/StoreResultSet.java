@@ -0,0 +1,206 @@
+/**
+ * A read-only, forward-only ResultSet over rows already kept in a
+ * ResultStore, so that anything which reads a ResultSet (e.g. a
+ * RowSink writing an export) can read them without the query being
+ * run again.  Only the getters by column index, next(), wasNull() and
+ * the column names, types, precisions and scales of the metadata are
+ * supported.
+ *
+ * The rows are read back through ResultStore.getValueAt in order, so
+ * each spilled page is read from disk once.
+ */
+package cvosteen.sqltool.result;
+
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.sql.*;
+
+public class StoreResultSet implements InvocationHandler {
+
+	private final ResultStore store;
+	private final int[] rows;
+	private final int rowCount;
+	private int position = -1;
+	private boolean wasNull = false;
+	private boolean closed = false;
+
+	private StoreResultSet(ResultStore store, int[] rows, int rowCount) {
+		this.store = store;
+		this.rows = rows;
+		this.rowCount = rowCount;
+	}
+
+	/**
+	 * Returns a ResultSet over the rows of the store, in the order of
+	 * the model rows given, or over the rows appended so far if rows
+	 * is null.  Closing the ResultSet does not close the store.
+	 */
+	public static ResultSet open(ResultStore store, int[] rows) {
+		StoreResultSet handler = new StoreResultSet(store, rows,
+			rows == null ? store.getRowCount() : rows.length);
+		return (ResultSet) proxy(ResultSet.class, handler);
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		if(name.equals("close")) {
+			closed = true;
+			return null;
+		}
+		if(name.equals("isClosed"))
+			return closed;
+		if(closed)
+			throw new SQLException("Result set is closed");
+		if(name.equals("next")) {
+			if(position < rowCount)
+				position++;
+			return position < rowCount;
+		}
+		if(name.equals("getRow"))
+			return position < rowCount ? position + 1 : 0;
+		if(name.equals("wasNull"))
+			return wasNull;
+		if(name.equals("getMetaData"))
+			return proxy(ResultSetMetaData.class, new MetaDataHandler());
+		if(name.startsWith("get") && args != null && args.length == 1 && args[0] instanceof Integer) {
+			if(position < 0 || position >= rowCount)
+				throw new SQLException("Not on a row");
+			int column = (Integer) args[0];
+			if(column < 1 || column > store.getColumnCount())
+				throw new SQLException("No column " + column);
+			Object value = store.getValueAt(rows == null ? position : rows[position], column - 1);
+			wasNull = value == null;
+			return convert(value, method.getReturnType());
+		}
+		if(name.equals("getType"))
+			return ResultSet.TYPE_FORWARD_ONLY;
+		if(name.equals("getConcurrency"))
+			return ResultSet.CONCUR_READ_ONLY;
+		return defaultValue(proxy, method, args);
+	}
+
+	/**
+	 * Converts a stored value to what a getter returns, as a driver would.
+	 */
+	private static Object convert(Object value, Class<?> type) throws SQLException {
+		if(type == Object.class)
+			return value;
+		if(type == String.class) {
+			if(value instanceof byte[])
+				return toHex((byte[]) value);
+			return value == null ? null : value.toString();
+		}
+		if(value == null) {
+			if(type == boolean.class)
+				return Boolean.FALSE;
+			if(type.isPrimitive())
+				return convert(Integer.valueOf(0), type);
+			return null;
+		}
+		if(type.isInstance(value))
+			return value;
+		if(value instanceof Boolean)
+			value = ((Boolean) value).booleanValue() ? Integer.valueOf(1) : Integer.valueOf(0);
+		if(value instanceof Number) {
+			Number number = (Number) value;
+			if(type == int.class)
+				return number.intValue();
+			if(type == long.class)
+				return number.longValue();
+			if(type == double.class)
+				return number.doubleValue();
+			if(type == float.class)
+				return number.floatValue();
+			if(type == short.class)
+				return number.shortValue();
+			if(type == byte.class)
+				return number.byteValue();
+			if(type == boolean.class)
+				return number.intValue() != 0;
+			if(type == BigDecimal.class)
+				return new BigDecimal(number.toString());
+		}
+		if(value instanceof java.util.Date) {
+			long time = ((java.util.Date) value).getTime();
+			if(type == Timestamp.class)
+				return new Timestamp(time);
+			if(type == Date.class)
+				return new Date(time);
+			if(type == Time.class)
+				return new Time(time);
+		}
+		throw new SQLException("Cannot convert " + value.getClass().getSimpleName() +
+			" to " + type.getSimpleName());
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(2 * bytes.length);
+		for(byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	private static Object proxy(Class<?> type, InvocationHandler handler) {
+		return Proxy.newProxyInstance(StoreResultSet.class.getClassLoader(),
+			new Class<?>[] { type }, handler);
+	}
+
+	/**
+	 * What any method not implemented returns: nothing, zero or false.
+	 */
+	private static Object defaultValue(Object proxy, Method method, Object[] args) throws SQLException {
+		String name = method.getName();
+		if(name.equals("toString"))
+			return "Stored " + method.getDeclaringClass().getSimpleName();
+		if(name.equals("hashCode"))
+			return System.identityHashCode(proxy);
+		if(name.equals("equals"))
+			return proxy == args[0];
+		if(name.equals("unwrap"))
+			throw new SQLException("Not a wrapper");
+		Class<?> type = method.getReturnType();
+		if(type == boolean.class)
+			return Boolean.FALSE;
+		if(type == int.class)
+			return 0;
+		if(type == long.class)
+			return 0L;
+		if(type == short.class)
+			return (short) 0;
+		if(type == byte.class)
+			return (byte) 0;
+		if(type == float.class)
+			return 0f;
+		if(type == double.class)
+			return 0.0;
+		return null;
+	}
+
+	private class MetaDataHandler implements InvocationHandler {
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if(name.equals("getColumnCount"))
+				return store.getColumnCount();
+			if(args != null && args.length == 1 && args[0] instanceof Integer) {
+				int column = (Integer) args[0] - 1;
+				if(column < 0 || column >= store.getColumnCount())
+					throw new SQLException("No column " + args[0]);
+				if(name.equals("getColumnName") || name.equals("getColumnLabel"))
+					return store.getColumnName(column);
+				if(name.equals("getColumnType"))
+					return store.getColumnType(column);
+				if(name.equals("getPrecision"))
+					return store.getColumnPrecision(column);
+				if(name.equals("getScale"))
+					return store.getColumnScale(column);
+				if(name.equals("getColumnClassName"))
+					return store.getColumnClass(column).getName();
+				if(name.equals("isNullable"))
+					return ResultSetMetaData.columnNullableUnknown;
+			}
+			return defaultValue(proxy, method, args);
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ * A Column of character data.
+ *
+ * Values are dictionary encoded: each distinct String is stored once
+ * and every row only holds an int code into the dictionary.  This is
+ * very compact for the low-cardinality text typical of status, type
+ * and name columns.  If the column turns out to have too many distinct
+ * values for the dictionary to pay off, it falls back to storing the
+ * Strings directly.
+ */
+
+package cvosteen.sqltool.result;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.*;
+
+public class StringColumn extends Column {
+
+	// Once this many rows have been read, the dictionary must be
+	// saving at least half of the entries to be kept.
+	private static final int SAMPLE_ROWS = 1024;
+	private static final int MAX_DICTIONARY_SIZE = 65536;
+
+	private int[] codes = new int[0];
+	private String[] dictionary = new String[16];
+	private Map<String, Integer> lookup = new HashMap<String, Integer>();
+
+	// Only used once the dictionary has been abandoned
+	private String[] values = null;
+
+	protected boolean read(ResultSet resultSet, int index, int row) throws SQLException {
+		String value = resultSet.getString(index);
+		if(value == null)
+			return false;
+
+		if(values != null) {
+			values[row] = value;
+			return true;
+		}
+
+		Integer code = lookup.get(value);
+		if(code == null) {
+			int distinct = lookup.size();
+			if(distinct >= MAX_DICTIONARY_SIZE || (row >= SAMPLE_ROWS && distinct > row / 2)) {
+				abandonDictionary();
+				values[row] = value;
+				return true;
+			}
+			if(distinct == dictionary.length)
+				dictionary = Arrays.copyOf(dictionary, distinct * 2);
+			dictionary[distinct] = value;
+			code = Integer.valueOf(distinct);
+			lookup.put(value, code);
+		}
+		codes[row] = code.intValue();
+		return true;
+	}
+
+	/**
+	 * Decodes every row into a plain String array and drops the dictionary.
+	 */
+	private void abandonDictionary() {
+		String[] decoded = new String[codes.length];
+		for(int row = 0; row < size; row++) {
+			if(!isNull(row))
+				decoded[row] = dictionary[codes[row]];
+		}
+		values = decoded;
+		codes = null;
+		dictionary = null;
+		lookup = null;
+	}
+
+	/**
+	 * The lookup table is only needed while appending.
+	 */
+	public void seal() {
+		super.seal();
+		if(values == null) {
+			dictionary = Arrays.copyOf(dictionary, lookup.size());
+			lookup = null;
+		}
+	}
+
+	/**
+	 * Returns wether or not this column is still dictionary encoded.
+	 */
+	public boolean isDictionaryEncoded() {
+		return values == null;
+	}
+
+	protected Object getValue(int row) {
+		if(values != null)
+			return values[row];
+		return dictionary[codes[row]];
+	}
+
+	protected int capacity() {
+		if(values != null)
+			return values.length;
+		return codes.length;
+	}
+
+	protected void grow(int capacity) {
+		if(values != null)
+			values = Arrays.copyOf(values, capacity);
+		else
+			codes = Arrays.copyOf(codes, capacity);
+	}
+
+	protected long estimateValueBytes() {
+		if(values != null) {
+			long bytes = 4L * values.length;
+			for(int row = 0; row < size; row++) {
+				if(values[row] != null)
+					bytes += estimateStringBytes(values[row]);
+			}
+			return bytes;
+		}
+		long bytes = 4L * codes.length + 4L * dictionary.length;
+		for(String s : dictionary) {
+			if(s != null)
+				bytes += estimateStringBytes(s);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Writes a flag for the encoding, then either the dictionary
+	 * followed by the codes, or the plain Strings.
+	 */
+	protected void writeValues(DataOutputStream out) throws IOException {
+		if(values == null) {
+			int distinct = lookup != null ? lookup.size() : dictionary.length;
+			out.writeBoolean(true);
+			out.writeInt(distinct);
+			for(int i = 0; i < distinct; i++)
+				writeString(out, dictionary[i]);
+			for(int row = 0; row < size; row++)
+				out.writeInt(codes[row]);
+		} else {
+			out.writeBoolean(false);
+			for(int row = 0; row < size; row++) {
+				if(!isNull(row))
+					writeString(out, values[row]);
+			}
+		}
+	}
+
+	protected void readValues(ByteBuffer in) {
+		lookup = null;
+		if(in.get() != 0) {
+			dictionary = new String[in.getInt()];
+			for(int i = 0; i < dictionary.length; i++)
+				dictionary[i] = readString(in);
+			codes = new int[size];
+			for(int row = 0; row < size; row++)
+				codes[row] = in.getInt();
+			values = null;
+		} else {
+			values = new String[size];
+			for(int row = 0; row < size; row++) {
+				if(!isNull(row))
+					values[row] = readString(in);
+			}
+			codes = null;
+			dictionary = null;
+		}
+	}
+
+	private static long estimateStringBytes(String s) {
+		// Object headers plus the backing char array
+		return 40L + 2L * s.length();
+	}
+}
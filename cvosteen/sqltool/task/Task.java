@@ -1,5 +1,5 @@
 /**
- * Task: Subclass of Thread.
+ * Task: A long running process run on the shared TaskExecutor.
  * Similar to a .NET class for long running threaded processes.
  * The Task can fire events for observers to catch.
  * Tasks can also be cancelled.
@@ -9,14 +9,23 @@ package cvosteen.sqltool.task;
 import java.util.ArrayList;
 import java.util.List;
 
-public abstract class Task extends Thread {
+public abstract class Task implements Runnable {
 
-	private boolean finished = false;
+	private volatile boolean finished = false;
 	private Object status = null;
 	private Object result = null;
 	private Exception error = null;
-	private boolean cancelled = false;
-	private List<TaskListener> listeners = new ArrayList<TaskListener>();
+	private volatile boolean cancelled = false;
+	private volatile long cancelTime = 0;
+	private long cancelLatency = -1;
+	private volatile List<TaskListener> listeners = new ArrayList<TaskListener>();
+
+	/**
+	 * Runs this task in the background on the shared TaskExecutor.
+	 */
+	public void start() {
+		TaskExecutor.execute(this);
+	}
 
 	/**
 	 * Adds an observer to this instance.
@@ -47,6 +56,8 @@ public abstract class Task extends Thread {
 	 * Should be called by subclasses when the task is finished.
 	 */
 	protected void reportFinished() {
+		if(cancelTime != 0)
+			cancelLatency = (System.nanoTime() - cancelTime) / 1000000;
 		finished = true;
 		for(TaskListener listener : listeners)
 			listener.taskFinished();
@@ -129,9 +140,26 @@ public abstract class Task extends Thread {
 
 	/**
 	 * Requests that the current task be cancelled.
+	 * The request is passed on to cancelRequested() right away, so
+	 * subclasses do not have to poll isCancelled() to act on it.
 	 */
 	public void cancel() {
-		cancelled = true;
+		synchronized(this) {
+			if(cancelled)
+				return;
+			cancelTime = System.nanoTime();
+			cancelled = true;
+		}
+		cancelRequested();
+	}
+
+	/**
+	 * Called on the cancelling thread when cancel() is first called.
+	 * Subclasses can override this to interrupt blocking work, such as
+	 * a running Statement.  This should not block, since it is usually
+	 * called from the GUI.
+	 */
+	protected void cancelRequested() {
 	}
 
 	/**
@@ -142,4 +170,13 @@ public abstract class Task extends Thread {
 		return cancelled;
 	}
 
+	/**
+	 * Returns the number of milliseconds between the cancel request and
+	 * the task finishing, or -1 if the task was not cancelled or has not
+	 * finished yet.
+	 */
+	public long getCancelLatency() {
+		return cancelLatency;
+	}
+
 }
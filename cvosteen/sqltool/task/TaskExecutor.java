@@ -0,0 +1,56 @@
+/**
+ * The shared pool of threads that Tasks run on.
+ *
+ * Starting a Task used to create a new Thread every time.  Instead
+ * every Task is now run by this executor, which reuses idle threads.
+ * If the JVM supports virtual threads, one virtual thread per Task is
+ * used instead, which is cheaper still.
+ *
+ * All of the threads are daemon threads, so a running Task will never
+ * keep the application from exiting.
+ */
+
+package cvosteen.sqltool.task;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TaskExecutor {
+
+	private static final ExecutorService executor = createExecutor();
+
+	private TaskExecutor() { }
+
+	/**
+	 * Runs the specified Runnable on a pooled thread.
+	 */
+	public static void execute(Runnable runnable) {
+		executor.execute(runnable);
+	}
+
+	/**
+	 * Returns the ExecutorService used to run Tasks.
+	 */
+	public static ExecutorService getExecutorService() {
+		return executor;
+	}
+
+	private static ExecutorService createExecutor() {
+		// Executors.newVirtualThreadPerTaskExecutor() only exists on
+		// newer JVMs, so it can only be looked up reflectively.
+		try {
+			return (ExecutorService) Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch(Exception e) { }
+
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "SQLTool Task " + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * Runs a query through a ResultCache.
+ *
+ * If the cache has results for the query younger than the time to
+ * live, they are reported as status just as a QueryTask would report
+ * them, without the query being run.  Otherwise the query is run on
+ * this thread by a QueryTask, and its results are put in the cache
+ * once they have all been read.
+ */
+package cvosteen.sqltool.tasks;
+import cvosteen.sqltool.database.*;
+import cvosteen.sqltool.result.*;
+import cvosteen.sqltool.task.*;
+import java.sql.*;
+import java.util.*;
+
+public class CachedQueryTask extends Task {
+
+	private final ResultCache cache;
+	private final StatementCache statementCache;
+	private final String sql;
+	private final List<?> parameters;
+	private final long ttl;
+	private FetchSizeController fetchSizeController = new FetchSizeController();
+	private boolean refresh = false;
+	private volatile Task currentTask = null;
+	private long cachedAge = -1;
+	private volatile QueryMetrics metrics = null;
+
+	/**
+	 * Creates a task for the SQL with the specified values bound to its
+	 * placeholders (which may be null if there are none).  The results
+	 * may be served from the cache if they are no older than ttl
+	 * milliseconds.
+	 */
+	public CachedQueryTask(ResultCache cache, StatementCache statementCache, String sql,
+			List<?> parameters, long ttl) {
+		this.cache = cache;
+		this.statementCache = statementCache;
+		this.sql = sql;
+		this.parameters = parameters;
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Sets the controller used to tune the fetch size of the query.
+	 * Must be called before the task is started.
+	 */
+	public void setFetchSizeController(FetchSizeController fetchSizeController) {
+		this.fetchSizeController = fetchSizeController;
+	}
+
+	/**
+	 * Runs the query even if the cache has its results, replacing them.
+	 * Must be called before the task is started.
+	 */
+	public void setRefresh(boolean refresh) {
+		this.refresh = refresh;
+	}
+
+	/**
+	 * Returns how many milliseconds old the results were when they
+	 * were served from the cache, or -1 if the query was run.
+	 */
+	public long getCachedAge() {
+		return cachedAge;
+	}
+
+	/**
+	 * Returns the timings of the query, or null if it was not run
+	 * (yet), e.g. because its results were served from the cache.
+	 */
+	public QueryMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void run() {
+		if(!refresh) {
+			ResultCache.Entry entry = cache.get(sql, parameters, ttl);
+			if(entry != null) {
+				cachedAge = entry.getAge();
+				reportStatus(entry.getStore());
+				reportFinished();
+				return;
+			}
+		}
+
+		QueryTask task;
+		try {
+			task = new QueryTask(statementCache, sql);
+		} catch(SQLException e) {
+			reportError(e);
+			reportFinished();
+			return;
+		}
+		task.setFetchSizeController(fetchSizeController);
+		task.setParameters(parameters);
+		metrics = task.getMetrics();
+		task.addTaskListener(new TaskAdapter() {
+				public void taskStatus(Object obj) {
+					reportStatus(obj);
+				}
+
+				public void taskResult(Object obj) {
+					reportResult(obj);
+				}
+
+				public void taskError(Exception e) {
+					reportError(e);
+				}
+			});
+		currentTask = task;
+		// The cancel request may have come in before currentTask was set
+		if(isCancelled())
+			task.cancel();
+		task.run();
+		currentTask = null;
+
+		// An update count is never cached
+		Object status = getStatus();
+		if(!hasError() && !hasResult() && !isCancelled() && status instanceof ResultStore)
+			cache.put(sql, parameters, (ResultStore) status);
+		reportFinished();
+	}
+
+	/**
+	 * Passes the cancellation on to the running QueryTask.
+	 */
+	protected void cancelRequested() {
+		Task t = currentTask;
+		if(t != null)
+			t.cancel();
+	}
+}
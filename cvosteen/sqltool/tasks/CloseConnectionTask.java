@@ -1,24 +1,47 @@
 /**
- * Closes a database connection.
+ * Closes a database connection, or gives it back to its ConnectionPool.
  *
  * This is set up as a separate task because the actual close operation
  * make take some time if a query is hanging up the connection.
  */
 package cvosteen.sqltool.tasks;
+import cvosteen.sqltool.database.*;
 import cvosteen.sqltool.task.*;
 import java.sql.*;
 
 public class CloseConnectionTask extends Task {
 
+	private ConnectionPool pool;
 	private Connection connection;
+	private StatementCache statementCache = null;
 
 	public CloseConnectionTask(Connection connection) {
+		this(null, connection);
+	}
+
+	/**
+	 * Gives the connection back to the specified pool instead of closing it.
+	 */
+	public CloseConnectionTask(ConnectionPool pool, Connection connection) {
+		this.pool = pool;
 		this.connection = connection;
 	}
 
+	/**
+	 * Closes the statements cached for the connection first.
+	 */
+	public void setStatementCache(StatementCache statementCache) {
+		this.statementCache = statementCache;
+	}
+
 	public void run() {
 		try {
-			connection.close();
+			if(statementCache != null)
+				statementCache.close();
+			if(pool != null)
+				pool.release(connection);
+			else
+				connection.close();
 		} catch(Exception e) {
 			reportError(e);
 		} finally {
@@ -39,6 +39,9 @@ public class ExecuteSqlTask extends Task {
 			// If no result set, check Statement.getUpdateCount:  -1 means no more results, any other number
 			// is the update count.
 			// Keep calling Statement.getMoreResults, which also returns a boolean like StatementExecute
+			if(isCancelled())
+				return;
+
 			boolean isResultSet = preparedStatement.execute();
 			int lastUpdateCount = -1;
 			int updateCount = -1;
@@ -0,0 +1,129 @@
+/**
+ * Writes the rows of a ResultStore to a file as CSV, TSV or an Arrow
+ * IPC stream (see ArrowRowSink).
+ *
+ * The rows already fetched are exported rather than the query being
+ * run again, so the file holds exactly the rows that were shown, and
+ * a statement which changed anything is never run a second time.  The
+ * rows are read back from the store in order and streamed through a
+ * RowSink, so only a page of them is in memory at a time.  The number
+ * of rows written so far (a Long) is reported as status.  If the
+ * export fails or is cancelled, the partial file is deleted.
+ *
+ * The store is closed once the export is done, so the caller must
+ * retain() it first.
+ */
+package cvosteen.sqltool.tasks;
+import cvosteen.sqltool.export.*;
+import cvosteen.sqltool.result.*;
+import cvosteen.sqltool.task.*;
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.sql.*;
+
+public class ExportTask extends Task {
+
+	// Export formats
+	public static final int CSV = 0;
+	public static final int TSV = 1;
+	public static final int ARROW = 2;
+
+	private ResultStore store;
+	private int[] rows;
+	private File file;
+	private int format;
+	private Charset charset = Charset.forName("UTF-8");
+	private int rowGroupSize = ArrowRowSink.DEFAULT_ROW_GROUP_SIZE;
+	private volatile Task readTask = null;
+
+	/**
+	 * Creates a task exporting the model rows of the store given, in
+	 * that order, or every row appended so far if rows is null.
+	 */
+	public ExportTask(ResultStore store, int[] rows, File file, int format) {
+		this.store = store;
+		this.rows = rows;
+		this.file = file;
+		this.format = format;
+	}
+
+	/**
+	 * Sets the character set of CSV and TSV files, UTF-8 by default.
+	 * Must be called before the task is started.
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Sets the number of rows per record batch of Arrow files.
+	 * Must be called before the task is started.
+	 */
+	public void setRowGroupSize(int rowGroupSize) {
+		this.rowGroupSize = rowGroupSize;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public void run() {
+		boolean exported = false;
+		try {
+			FileChannel channel = new FileOutputStream(file).getChannel();
+			try {
+				ResultSet resultSet = StoreResultSet.open(store, rows);
+				ResultSetTask read = new ResultSetTask(resultSet,
+						new FetchSizeController(), createRowSink(channel));
+				read.addTaskListener(new TaskAdapter() {
+						public void taskStatus(Object obj) {
+							reportStatus(obj);
+						}
+
+						public void taskError(Exception e) {
+							reportError(e);
+						}
+					});
+
+				// Read the rows on this thread
+				readTask = read;
+				if(isCancelled())
+					return;
+				read.run();
+				exported = !isCancelled() && !read.hasError();
+			} finally {
+				channel.close();
+			}
+		} catch(Exception e) {
+			reportError(e);
+		} finally {
+			store.close();
+			if(!exported)
+				file.delete();
+			reportFinished();
+		}
+	}
+
+	private RowSink createRowSink(FileChannel channel) {
+		switch(format) {
+			case TSV:
+				return new DelimitedRowSink(channel, charset, DelimitedRowSink.TSV);
+			case ARROW:
+				ArrowRowSink sink = new ArrowRowSink(channel);
+				sink.setRowGroupSize(rowGroupSize);
+				return sink;
+			default:
+				return new DelimitedRowSink(channel, charset, DelimitedRowSink.CSV);
+		}
+	}
+
+	/**
+	 * Passes the cancellation on to the rows being read.
+	 */
+	protected void cancelRequested() {
+		Task read = readTask;
+		if(read != null)
+			read.cancel();
+	}
+}
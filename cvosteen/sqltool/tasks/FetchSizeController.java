@@ -0,0 +1,106 @@
+/**
+ * Tunes how a ResultSetTask pulls rows from the database.
+ *
+ * The JDBC fetch size decides how many rows the driver brings over
+ * the network per round trip.  Too small and a large query spends
+ * its time waiting on round trips; too large and wide rows can use
+ * a lot of memory in the driver before SQLTool even sees them.
+ *
+ * The first few batches of rows are measured for rows per second and
+ * bytes per row.  From these the fetch size is set so that each round
+ * trip carries roughly TARGET_FETCH_BYTES, and the report batch size
+ * so that the GUI is updated about ten times a second.
+ *
+ * Either value can be fixed instead, e.g. from the settings of the
+ * Database, in which case it is never adjusted.
+ */
+package cvosteen.sqltool.tasks;
+
+public class FetchSizeController {
+
+	public static final int INITIAL_FETCH_SIZE = 100;
+	public static final int INITIAL_REPORT_BATCH_SIZE = 1000;
+
+	private static final int MIN_FETCH_SIZE = 10;
+	private static final int MAX_FETCH_SIZE = 10000;
+	private static final int MIN_REPORT_BATCH_SIZE = 100;
+	private static final int MAX_REPORT_BATCH_SIZE = 100000;
+	private static final long TARGET_FETCH_BYTES = 1024 * 1024;
+	private static final int REPORTS_PER_SECOND = 10;
+	private static final int SAMPLE_BATCHES = 3;
+
+	private final boolean fixedFetchSize;
+	private final boolean fixedReportBatchSize;
+	private int fetchSize;
+	private int reportBatchSize;
+	private int batchesMeasured = 0;
+
+	/**
+	 * Creates a controller which adjusts both sizes.
+	 */
+	public FetchSizeController() {
+		this(0, 0);
+	}
+
+	/**
+	 * Creates a controller with the specified fixed sizes.
+	 * A size of 0 means that size should be adjusted automatically.
+	 */
+	public FetchSizeController(int fetchSize, int reportBatchSize) {
+		fixedFetchSize = fetchSize != 0;
+		fixedReportBatchSize = reportBatchSize > 0;
+		this.fetchSize = fixedFetchSize ? fetchSize : INITIAL_FETCH_SIZE;
+		this.reportBatchSize = fixedReportBatchSize ? reportBatchSize : INITIAL_REPORT_BATCH_SIZE;
+	}
+
+	/**
+	 * Returns the fetch size that should be given to the Statement/ResultSet.
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Returns the number of rows that should be read between status reports.
+	 */
+	public int getReportBatchSize() {
+		return reportBatchSize;
+	}
+
+	/**
+	 * Returns wether or not the sizes are still being adjusted.
+	 */
+	public boolean isAdjusting() {
+		return batchesMeasured < SAMPLE_BATCHES && !(fixedFetchSize && fixedReportBatchSize);
+	}
+
+	/**
+	 * Called after each batch of rows has been read.
+	 * Returns true if the fetch size has changed.
+	 */
+	public boolean batchFetched(int rows, long elapsedNanos, long bytesPerRow) {
+		if(!isAdjusting() || rows == 0)
+			return false;
+		batchesMeasured++;
+
+		if(!fixedReportBatchSize && elapsedNanos > 0) {
+			long rowsPerSecond = rows * 1000000000L / elapsedNanos;
+			reportBatchSize = clamp(rowsPerSecond / REPORTS_PER_SECOND,
+					MIN_REPORT_BATCH_SIZE, MAX_REPORT_BATCH_SIZE);
+		}
+
+		if(!fixedFetchSize) {
+			int newFetchSize = clamp(TARGET_FETCH_BYTES / Math.max(1, bytesPerRow),
+					MIN_FETCH_SIZE, MAX_FETCH_SIZE);
+			if(newFetchSize != fetchSize) {
+				fetchSize = newFetchSize;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int clamp(long value, int min, int max) {
+		return (int) Math.max(min, Math.min(max, value));
+	}
+}
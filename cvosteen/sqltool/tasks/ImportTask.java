@@ -0,0 +1,592 @@
+/**
+ * Loads a CSV or TSV file into a table.
+ *
+ * The file is parsed by a DelimitedReader and each value is converted
+ * to the type of its column, which is looked up with an empty query on
+ * the table.  If the file has a header line its names are matched to
+ * the table's columns (see Database.getColumns), otherwise the fields
+ * fill the table's columns in order.
+ *
+ * Column names are quoted with the database's identifier quote, as
+ * they are the table's own.
+ *
+ * Rows are inserted through one PreparedStatement per connection,
+ * batchSize rows at a time with addBatch()/executeBatch().  With more
+ * than one writer, batches are parsed on this thread and handed to
+ * writers running on their own pooled connections.
+ *
+ * Everything is committed at the end, or every commitInterval rows if
+ * that is set.  Only one connection can commit everything at once, so
+ * without a commit interval the rows are inserted on one connection
+ * however many writers are asked for, and an error or a cancel leaves
+ * the table as it was.  With a commit interval each writer commits on
+ * its own, so rows committed before an error or a cancel stay in the
+ * table.  getCommittedRows() says which, and the error's message
+ * names them too.  The number of rows inserted so far (a Long) is
+ * reported as status.
+ */
+package cvosteen.sqltool.tasks;
+import cvosteen.sqltool.database.*;
+import cvosteen.sqltool.export.*;
+import cvosteen.sqltool.task.*;
+import java.io.*;
+import java.nio.charset.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ImportTask extends Task {
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	// Marks the end of the batches for the writers
+	private static final Batch END = new Batch(0, new Object[0][], 0);
+
+	private final ConnectionPool pool;
+	private final File file;
+	private final String table;
+	private Charset charset = Charset.forName("UTF-8");
+	private char delimiter = DelimitedReader.CSV;
+	private boolean header = true;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int commitInterval = 0;
+	private int writerCount = 1;
+
+	private final List<Writer> writers = new CopyOnWriteArrayList<Writer>();
+	private final Object reportLock = new Object();
+	private long importedRows = 0;
+	// The first and last rows of the file of each range committed,
+	// counting from 1 after any header
+	private final TreeMap<Long, Long> committedRows = new TreeMap<Long, Long>();
+	private volatile Exception failure = null;
+
+	public ImportTask(ConnectionPool pool, File file, String table) {
+		this.pool = pool;
+		this.file = file;
+		this.table = table;
+	}
+
+	/**
+	 * Sets the character set of the file, UTF-8 by default.
+	 * Must be called before the task is started.
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Sets the delimiter, DelimitedReader.CSV by default.
+	 * Must be called before the task is started.
+	 */
+	public void setDelimiter(char delimiter) {
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Sets wether the first line of the file holds column names.
+	 * Must be called before the task is started.
+	 */
+	public void setHeader(boolean header) {
+		this.header = header;
+	}
+
+	/**
+	 * Sets the number of rows sent to the server at once.
+	 * Must be called before the task is started.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Sets the number of rows between commits, or 0 to commit only
+	 * at the end.  Must be called before the task is started.
+	 */
+	public void setCommitInterval(int commitInterval) {
+		this.commitInterval = Math.max(0, commitInterval);
+	}
+
+	/**
+	 * Sets the number of connections inserting rows at once.
+	 * Must be called before the task is started.
+	 */
+	public void setWriterCount(int writerCount) {
+		this.writerCount = Math.max(1, writerCount);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * Returns the rows of the file committed to the table so far, e.g.
+	 * "1-5000, 7001-9000", counting from 1 after any header, or null
+	 * if none have been.  Only once the import has finished is this
+	 * what stays in the table.
+	 */
+	public String getCommittedRows() {
+		synchronized(reportLock) {
+			if(committedRows.isEmpty())
+				return null;
+			StringBuilder rows = new StringBuilder();
+			long first = -1;
+			long last = -1;
+			for(Map.Entry<Long, Long> range : committedRows.entrySet()) {
+				if(range.getKey() != last + 1) {
+					appendRange(rows, first, last);
+					first = range.getKey();
+				}
+				last = range.getValue();
+			}
+			appendRange(rows, first, last);
+			return rows.toString();
+		}
+	}
+
+	private static void appendRange(StringBuilder rows, long first, long last) {
+		if(first < 0)
+			return;
+		rows.append(rows.length() > 0 ? ", " : "").append(first);
+		if(last > first)
+			rows.append("-").append(last);
+	}
+
+	public void run() {
+		DelimitedReader reader = null;
+		try {
+			reader = new DelimitedReader(new InputStreamReader(new FileInputStream(file), charset), delimiter);
+			Connection connection = pool.borrow();
+			Writer first = new Writer(connection);
+			writers.add(first);
+
+			// Match the fields of the file to the table's columns
+			List<String> columns = Database.getColumns(connection, table);
+			if(columns.isEmpty())
+				throw new SQLException("There is no table named " + table + ".");
+			boolean hasRow = reader.next();
+			List<String> names = new ArrayList<String>();
+			if(header && hasRow) {
+				for(int i = 0; i < reader.getFieldCount(); i++)
+					names.add(findColumn(columns, reader.getString(i)));
+				hasRow = reader.next();
+			} else {
+				int fieldCount = hasRow ? reader.getFieldCount() : 0;
+				if(fieldCount > columns.size())
+					throw new IOException("The file has " + fieldCount + " fields but " + table + " only has " + columns.size() + " columns.");
+				names.addAll(columns.subList(0, fieldCount));
+			}
+			if(!hasRow) {
+				reportStatus(Long.valueOf(0));
+				return;
+			}
+			List<String> quotedNames = quote(connection, names);
+			int[] types = getColumnTypes(connection, quotedNames);
+			String sql = createInsert(quotedNames);
+			first.prepare(sql, types);
+
+			// With more writers, each runs on a thread and connection of
+			// its own.  Make do with fewer if the pool runs out.  Without
+			// a commit interval there is one connection, but its inserts
+			// still run alongside the parsing.
+			BlockingQueue<Batch> queue = null;
+			CountDownLatch writersDone = null;
+			if(writerCount > 1) {
+				int connections = commitInterval > 0 ? writerCount : 1;
+				for(int i = 1; i < connections; i++) {
+					Connection writerConnection;
+					try {
+						writerConnection = pool.borrow();
+					} catch(SQLException e) {
+						break;
+					}
+					Writer writer = new Writer(writerConnection);
+					writers.add(writer);
+					writer.prepare(sql, types);
+				}
+				queue = new ArrayBlockingQueue<Batch>(writers.size() * 2);
+				writersDone = new CountDownLatch(writers.size());
+				for(Writer writer : writers)
+					TaskExecutor.execute(new WriterRunner(writer, queue, writersDone));
+				first = null;
+			}
+
+			// Parse the file a batch at a time
+			try {
+				Object[][] batch = new Object[batchSize][];
+				int rows = 0;
+				long firstRow = 1;
+				do {
+					if(isCancelled() || failure != null)
+						break;
+					if(reader.getFieldCount() != names.size())
+						throw new IOException("Line " + reader.getLineNumber() + " has " + reader.getFieldCount() +
+							" fields instead of " + names.size() + ".");
+					batch[rows++] = convertRow(reader, names, types);
+					if(rows == batchSize) {
+						writeBatch(first, queue, new Batch(firstRow, batch, rows));
+						firstRow += rows;
+						batch = new Object[batchSize][];
+						rows = 0;
+					}
+				} while(reader.next());
+				if(rows > 0 && !isCancelled() && failure == null)
+					writeBatch(first, queue, new Batch(firstRow, batch, rows));
+			} finally {
+				// The writers must be done before their connections are released
+				if(queue != null) {
+					for(int i = 0; i < writers.size(); i++)
+						putBatch(queue, END);
+					writersDone.await();
+				}
+			}
+			if(failure != null)
+				throw failure;
+			if(isCancelled())
+				return;
+
+			// Every writer has finished, commit them all
+			for(Writer writer : writers)
+				writer.commit();
+			reportProgress(0);
+
+		} catch(Exception e) {
+			if(!isCancelled())
+				reportError(describeCommitted(failure != null ? failure : e));
+		} finally {
+			if(reader != null) {
+				try {
+					reader.close();
+				} catch(IOException e) { }
+			}
+			// Releasing rolls back anything not committed
+			for(Writer writer : writers)
+				writer.close();
+			reportFinished();
+		}
+	}
+
+	/**
+	 * Adds the rows already committed to the message of an error,
+	 * keeping IOExceptions apart from database errors.
+	 */
+	private Exception describeCommitted(Exception e) {
+		String rows = getCommittedRows();
+		if(rows == null)
+			return e;
+		String message = e.getMessage() + "\nRows " + rows + " of the file had already been committed and remain in " + table + ".";
+		if(e instanceof IOException)
+			return new IOException(message, e);
+		return new SQLException(message, e);
+	}
+
+	/**
+	 * Returns the column of the table with the specified name, ignoring case.
+	 */
+	private String findColumn(List<String> columns, String name) throws IOException {
+		for(String column : columns) {
+			if(column.equalsIgnoreCase(name == null ? "" : name.trim()))
+				return column;
+		}
+		throw new IOException("The file's column " + name + " is not in " + table + ".");
+	}
+
+	/**
+	 * Looks up the column types by selecting the columns from the table
+	 * without any rows, which works with every driver.
+	 */
+	private int[] getColumnTypes(Connection connection, List<String> names) throws SQLException {
+		StringBuilder sql = new StringBuilder("SELECT ");
+		for(int i = 0; i < names.size(); i++)
+			sql.append(i > 0 ? ", " : "").append(names.get(i));
+		sql.append(" FROM ").append(table).append(" WHERE 1 = 0");
+		Statement statement = connection.createStatement();
+		try {
+			ResultSetMetaData metaData = statement.executeQuery(sql.toString()).getMetaData();
+			int[] types = new int[names.size()];
+			for(int i = 0; i < types.length; i++)
+				types[i] = metaData.getColumnType(i + 1);
+			return types;
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Returns the names quoted as identifiers, unless the driver does
+	 * not support quoting.
+	 */
+	private List<String> quote(Connection connection, List<String> names) throws SQLException {
+		String quote = connection.getMetaData().getIdentifierQuoteString();
+		// A space means quoting is not supported
+		if(quote == null || quote.trim().length() == 0)
+			return names;
+		List<String> quoted = new ArrayList<String>();
+		for(String name : names)
+			quoted.add(quote + name.replace(quote, quote + quote) + quote);
+		return quoted;
+	}
+
+	private String createInsert(List<String> names) {
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+		for(int i = 0; i < names.size(); i++)
+			sql.append(i > 0 ? ", " : "").append(names.get(i));
+		sql.append(") VALUES (");
+		for(int i = 0; i < names.size(); i++)
+			sql.append(i > 0 ? ", ?" : "?");
+		return sql.append(")").toString();
+	}
+
+	/**
+	 * Converts the fields of the current record to the types of their
+	 * columns.  Numbers are read straight from the reader's buffer.
+	 */
+	private Object[] convertRow(DelimitedReader reader, List<String> names, int[] types) throws IOException {
+		Object[] values = new Object[types.length];
+		for(int i = 0; i < types.length; i++) {
+			// Only text can be empty, anything else empty is NULL
+			if(reader.isNull(i) || (reader.isEmpty(i) && !isText(types[i])))
+				continue;
+			try {
+				switch(types[i]) {
+				case Types.TINYINT:
+				case Types.SMALLINT:
+				case Types.INTEGER:
+				case Types.BIGINT:
+					values[i] = Long.valueOf(reader.getLong(i));
+					break;
+				case Types.DECIMAL:
+				case Types.NUMERIC:
+					values[i] = reader.getBigDecimal(i);
+					break;
+				case Types.REAL:
+				case Types.FLOAT:
+				case Types.DOUBLE:
+					values[i] = Double.valueOf(reader.getString(i).trim());
+					break;
+				case Types.BIT:
+				case Types.BOOLEAN:
+					String flag = reader.getString(i).trim().toLowerCase();
+					values[i] = Boolean.valueOf(flag.equals("1") || flag.equals("true") ||
+						flag.equals("t") || flag.equals("y") || flag.equals("yes"));
+					break;
+				case Types.DATE:
+					values[i] = java.sql.Date.valueOf(reader.getString(i).trim());
+					break;
+				case Types.TIME:
+					values[i] = Time.valueOf(reader.getString(i).trim());
+					break;
+				case Types.TIMESTAMP:
+					String timestamp = reader.getString(i).trim();
+					if(timestamp.length() == 10)
+						timestamp += " 00:00:00";
+					values[i] = Timestamp.valueOf(timestamp);
+					break;
+				default:
+					values[i] = reader.getString(i);
+				}
+			} catch(IllegalArgumentException e) {
+				// Includes NumberFormatException
+				throw new IOException("Line " + reader.getLineNumber() + ": \"" + reader.getString(i) +
+					"\" is not a valid value for " + names.get(i) + ".");
+			}
+		}
+		return values;
+	}
+
+	private static boolean isText(int sqlType) {
+		switch(sqlType) {
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.LONGVARCHAR:
+		case Types.NCHAR:
+		case Types.NVARCHAR:
+		case Types.LONGNVARCHAR:
+		case Types.CLOB:
+		case Types.NCLOB:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+		/**
+	 * Writes a batch on this thread, or queues it for the writers.
+	 */
+	private void writeBatch(Writer writer, BlockingQueue<Batch> queue, Batch batch) throws Exception {
+		if(writer != null)
+			writer.write(batch);
+		else
+			putBatch(queue, batch);
+	}
+
+	/**
+	 * Queues a batch, giving up if the import stops while the writers are busy.
+	 */
+	private void putBatch(BlockingQueue<Batch> queue, Batch batch) throws InterruptedException {
+		while(!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+			if(batch != END && (isCancelled() || failure != null))
+				return;
+		}
+	}
+
+	/**
+	 * Adds the rows to the count and reports it.
+	 */
+	private void reportProgress(int rows) {
+		synchronized(reportLock) {
+			importedRows += rows;
+			reportStatus(Long.valueOf(importedRows));
+		}
+	}
+
+	/**
+	 * Stops the import because of an error in a writer.
+	 * Only the first error is reported.
+	 */
+	private synchronized void fail(Exception e) {
+		if(failure == null)
+			failure = e;
+	}
+
+	/**
+	 * Cancels the running inserts.
+	 */
+	protected void cancelRequested() {
+		for(final Writer writer : writers) {
+			final PreparedStatement statement = writer.statement;
+			if(statement == null)
+				continue;
+			// Cancelling may have to talk to the server, so don't hold up the caller
+			TaskExecutor.execute(new Runnable() {
+					public void run() {
+						try {
+							statement.cancel();
+						} catch(SQLException e) { }
+					}
+				});
+		}
+	}
+
+
+	/**
+	 * Rows of the file parsed and converted, numbered from firstRow.
+	 */
+	private static class Batch {
+		private final long firstRow;
+		private final Object[][] rows;
+		private final int rowCount;
+
+		public Batch(long firstRow, Object[][] rows, int rowCount) {
+			this.firstRow = firstRow;
+			this.rows = rows;
+			this.rowCount = rowCount;
+		}
+	}
+
+	/**
+	 * Inserts rows on one connection.
+	 */
+	private class Writer {
+		private final Connection connection;
+		private volatile PreparedStatement statement = null;
+		private int[] types;
+		private long uncommittedRows = 0;
+		// The first and last rows of the batches written since the last commit
+		private final List<long[]> uncommittedBatches = new ArrayList<long[]>();
+
+		public Writer(Connection connection) {
+			this.connection = connection;
+		}
+
+		public void prepare(String sql, int[] types) throws SQLException {
+			this.types = types;
+			statement = connection.prepareStatement(sql);
+		}
+
+		public void write(Batch batch) throws SQLException {
+			int rows = batch.rowCount;
+			for(int row = 0; row < rows; row++) {
+				Object[] values = batch.rows[row];
+				for(int i = 0; i < types.length; i++) {
+					if(values[i] == null)
+						statement.setNull(i + 1, types[i]);
+					else
+						statement.setObject(i + 1, values[i]);
+				}
+				statement.addBatch();
+			}
+			statement.executeBatch();
+
+			uncommittedRows += rows;
+			uncommittedBatches.add(new long[] { batch.firstRow, batch.firstRow + rows - 1 });
+			if(commitInterval > 0 && uncommittedRows >= commitInterval)
+				commit();
+			reportProgress(rows);
+		}
+
+		/**
+		 * Commits the rows written so far, and adds them to the rows committed.
+		 */
+		public void commit() throws SQLException {
+			connection.commit();
+			synchronized(reportLock) {
+				for(long[] range : uncommittedBatches)
+					committedRows.put(range[0], range[1]);
+			}
+			uncommittedBatches.clear();
+			uncommittedRows = 0;
+		}
+
+		public void close() {
+			if(statement != null) {
+				try {
+					statement.close();
+				} catch(SQLException e) { }
+			}
+			pool.release(connection);
+		}
+	}
+
+	/**
+	 * Runs a Writer on its own thread, taking batches from the queue
+	 * until it takes the END marker.
+	 */
+	private class WriterRunner implements Runnable {
+		private final Writer writer;
+		private final BlockingQueue<Batch> queue;
+		private final CountDownLatch done;
+
+		public WriterRunner(Writer writer, BlockingQueue<Batch> queue, CountDownLatch done) {
+			this.writer = writer;
+			this.queue = queue;
+			this.done = done;
+		}
+
+		public void run() {
+			try {
+				while(true) {
+					Batch batch = queue.take();
+					if(batch == END)
+						break;
+					// Keep taking batches after a failure so the parser is never stuck
+					if(isCancelled() || failure != null)
+						continue;
+					try {
+						writer.write(batch);
+					} catch(SQLException e) {
+						if(!isCancelled())
+							fail(e);
+					}
+				}
+			} catch(InterruptedException e) {
+				fail(e);
+			} finally {
+				done.countDown();
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Reads table and column names into a MetadataCache in the background.
+ *
+ * Without a table name, this crawls the whole database: the table
+ * names first, then the columns of every table, and saves a snapshot
+ * of the cache.  With a table name, only the columns of that table
+ * are read.
+ *
+ * The connection is borrowed from the ConnectionPool so that this can
+ * run alongside a query.  Reports the MetadataCache as its result.
+ */
+package cvosteen.sqltool.tasks;
+import cvosteen.sqltool.database.*;
+import cvosteen.sqltool.task.*;
+import java.io.*;
+import java.sql.*;
+
+public class MetadataTask extends Task {
+
+	private MetadataCache cache;
+	private ConnectionPool pool;
+	private String table;
+
+	/**
+	 * Creates a task to crawl all of the metadata of the database.
+	 */
+	public MetadataTask(MetadataCache cache, ConnectionPool pool) {
+		this(cache, pool, null);
+	}
+
+	/**
+	 * Creates a task to read the columns of the specified table.
+	 */
+	public MetadataTask(MetadataCache cache, ConnectionPool pool, String table) {
+		this.cache = cache;
+		this.pool = pool;
+		this.table = table;
+	}
+
+	/**
+	 * Returns the table this task is reading, or null if it is crawling
+	 * the whole database.
+	 */
+	public String getTable() {
+		return table;
+	}
+
+	public void run() {
+		try {
+			Connection connection = pool.borrow();
+			try {
+				if(table != null) {
+					cache.loadColumns(connection, table);
+				} else {
+					cache.loadTables(connection);
+					if(isCancelled())
+						return;
+					try {
+						cache.loadAllColumns(connection);
+					} catch(SQLException e) {
+						// Some drivers can't list all columns at once.
+						// Columns will be read table by table instead.
+					}
+					try {
+						cache.saveSnapshot();
+					} catch(IOException e) { }
+				}
+			} finally {
+				pool.release(connection);
+			}
+			reportResult(cache);
+		} catch(Exception e) {
+			reportError(e);
+		} finally {
+			reportFinished();
+		}
+	}
+}
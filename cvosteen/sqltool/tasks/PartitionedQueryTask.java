@@ -0,0 +1,658 @@
+/**
+ * Runs a query as several range-bounded queries at once, each on its
+ * own connection from the ConnectionPool, and merges their rows.
+ *
+ * The rows are split on a numeric or date key column.  The smallest
+ * and largest keys are looked up first, the range between them is cut
+ * into equal parts, and the query is run once for each part as
+ *   SELECT * FROM (query) partitioned WHERE "key" >= ? AND "key" < ?
+ * with one more part for the rows whose key is NULL.  The key is
+ * quoted as the database quotes identifiers.  A trailing ORDER BY is
+ * left out, as it is not allowed in a derived table everywhere; a
+ * query which limits its rows after ordering them is rejected.  Each
+ * part is run by a QueryTask, so fetch size tuning and cancelling work
+ * just as they do for a single query.
+ *
+ * The merged rows go into one ResultStore, which is reported as status
+ * as ResultSetTask does, or to a RowSink.  The number of rows read so
+ * far (a Long) is reported as status in that case.
+ *
+ * Each part reads its rows into a ResultStore of its own, so the rows
+ * are decoded on every connection at once.  Only whole pages of rows
+ * are merged into the output, one part at a time.  By default the
+ * pages are merged as they fill up, and the last rows of each part
+ * once every part is done.  If the run is ordered, each part is sorted
+ * on the key and the parts are merged in key order: the part whose
+ * turn it is merges its pages as they fill up, and the others keep
+ * theirs (mostly spilled to disk) until the parts before them are done.
+ *
+ * No more parts run at once than the pool has connections available.
+ * If a part cannot get a connection while another can, it is simply
+ * left for the parts that are running.
+ */
+package cvosteen.sqltool.tasks;
+import cvosteen.sqltool.database.*;
+import cvosteen.sqltool.result.*;
+import cvosteen.sqltool.task.*;
+import java.io.*;
+import java.math.*;
+import java.sql.*;
+import java.util.*;
+import java.util.regex.*;
+
+public class PartitionedQueryTask extends Task {
+
+	// Pages of a part kept in memory while it waits for its turn
+	private static final int WAITING_RESIDENT_PAGES = 1;
+
+	private static final Pattern ORDER_BY = Pattern.compile("ORDER\\s+BY\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern LIMIT = Pattern.compile("\\b(LIMIT|OFFSET|FETCH|ROWS)\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern TOP = Pattern.compile("^SELECT\\s+(ALL\\s+|DISTINCT\\s+)?TOP\\b", Pattern.CASE_INSENSITIVE);
+
+	private final ConnectionPool pool;
+	private final String sql;
+	private final String keyColumn;
+	private final int partitionCount;
+	private boolean ordered = false;
+	private RowSink rowSink = null;
+	private int fetchSize = 0;
+	private int reportBatchSize = 0;
+	private volatile Statement boundsStatement = null;
+	// The key column as it goes in the SQL
+	private String key;
+
+	// Guards the state of the run below
+	private final Object lock = new Object();
+	private List<Partition> partitions = new ArrayList<Partition>();
+	private int nextPartition = 0;
+	// The first part not done yet, the only one whose rows are merged when ordered
+	private int turn = 0;
+	private int runningWorkers = 0;
+	private boolean connected = false;
+	private boolean outputStarted = false;
+	private ResultStore store = null;
+	private Exception failure = null;
+
+	// Status is reported from every worker thread, one at a time
+	private final Object reportLock = new Object();
+
+	public PartitionedQueryTask(ConnectionPool pool, String sql, String keyColumn, int partitionCount) {
+		this.pool = pool;
+		this.sql = sql;
+		this.keyColumn = keyColumn;
+		this.partitionCount = Math.max(1, partitionCount);
+	}
+
+	/**
+	 * Merges the parts in key order rather than as their rows arrive.
+	 * Must be called before the task is started.
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	/**
+	 * Streams the merged rows to a RowSink instead of a ResultStore.
+	 * Must be called before the task is started.
+	 */
+	public void setRowSink(RowSink rowSink) {
+		this.rowSink = rowSink;
+	}
+
+	/**
+	 * Sets the initial fetch size and report batch size of each part,
+	 * or 0 for the FetchSizeController defaults.  Each part tunes its
+	 * own fetch size from there.  Must be called before the task is started.
+	 */
+	public void setFetchSizes(int fetchSize, int reportBatchSize) {
+		this.fetchSize = fetchSize;
+		this.reportBatchSize = reportBatchSize;
+	}
+
+	/**
+	 * Returns the names of the numeric and date columns of the query,
+	 * which can be used as partition keys, without running it.  Returns
+	 * no names if the driver cannot describe a query before it is run.
+	 */
+	public static String[] getKeyColumns(ConnectionPool pool, String sql) throws SQLException, ClassNotFoundException {
+		String query = stripOrderBy(sql);
+		List<String> names = new ArrayList<String>();
+		Connection connection = pool.borrow();
+		try {
+			PreparedStatement statement = connection.prepareStatement(query);
+			try {
+				ResultSetMetaData metaData = statement.getMetaData();
+				for(int i = 1; metaData != null && i <= metaData.getColumnCount(); i++) {
+					switch(metaData.getColumnType(i)) {
+						case Types.TINYINT:
+						case Types.SMALLINT:
+						case Types.INTEGER:
+						case Types.BIGINT:
+						case Types.REAL:
+						case Types.FLOAT:
+						case Types.DOUBLE:
+						case Types.NUMERIC:
+						case Types.DECIMAL:
+						case Types.DATE:
+						case Types.TIMESTAMP:
+							names.add(metaData.getColumnLabel(i));
+					}
+				}
+			} finally {
+				statement.close();
+			}
+		} finally {
+			pool.release(connection);
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	public void run() {
+		try {
+			String query = stripOrderBy(sql);
+			Object[] range = findKeyRange(query);
+			if(isCancelled())
+				return;
+			createPartitions(query, range[0], range[1]);
+
+			// This thread is one of the workers.  The connections
+			// already borrowed by other tasks are not available.
+			int workers = Math.min(partitions.size(), Math.max(1, pool.getAvailableCount()));
+			synchronized(lock) {
+				runningWorkers = workers;
+			}
+			for(int i = 1; i < workers; i++)
+				TaskExecutor.execute(new Worker());
+			new Worker().run();
+			synchronized(lock) {
+				while(runningWorkers > 0)
+					lock.wait();
+			}
+
+			if(isCancelled())
+				return;
+			if(failure != null) {
+				reportError(failure);
+				return;
+			}
+			synchronized(lock) {
+				// The last rows of every part, unless ordered in which
+				// case they have been merged already
+				for(Partition partition : partitions)
+					partition.merge();
+			}
+			if(rowSink != null)
+				rowSink.finish();
+			reportRows();
+
+		} catch(Exception e) {
+			reportError(e);
+		} finally {
+			for(Partition partition : partitions)
+				partition.close();
+			reportFinished();
+		}
+	}
+
+	/**
+	 * Returns the query without any trailing semicolons or ORDER BY,
+	 * which cannot go in a derived table everywhere (e.g. SQL Server).
+	 * The order is lost when the rows are merged anyway.  A query which
+	 * limits its rows after ordering them cannot be split up.
+	 */
+	static String stripOrderBy(String sql) throws SQLException {
+		String query = sql.trim();
+		while(query.endsWith(";"))
+			query = query.substring(0, query.length() - 1).trim();
+
+		// Find the last ORDER BY outside quotes, comments and brackets
+		int orderBy = -1;
+		int depth = 0;
+		Matcher matcher = ORDER_BY.matcher(query);
+		for(int i = 0; i < query.length(); i++) {
+			char c = query.charAt(i);
+			int end = i;
+			if(c == '\'' || c == '"' || c == '`') {
+				end = query.indexOf(c, i + 1);
+			} else if(c == '[') {
+				end = query.indexOf(']', i + 1);
+			} else if(query.startsWith("--", i)) {
+				end = query.indexOf('\n', i);
+			} else if(query.startsWith("/*", i)) {
+				end = query.indexOf("*/", i + 2);
+				if(end >= 0)
+					end++;
+			} else if(c == '(') {
+				depth++;
+			} else if(c == ')') {
+				depth--;
+			} else if(depth == 0 && (i == 0 || !Character.isJavaIdentifierPart(query.charAt(i - 1)))
+					&& matcher.region(i, query.length()).lookingAt()) {
+				orderBy = i;
+			}
+			i = end < 0 ? query.length() : end;
+		}
+		if(orderBy < 0)
+			return query;
+
+		if(LIMIT.matcher(query.substring(orderBy)).find() || TOP.matcher(query).find())
+			throw new SQLException("A query which limits its rows after ordering them cannot be run partitioned.");
+		return query.substring(0, orderBy).trim();
+	}
+
+	/**
+	 * Returns the smallest and largest non-NULL keys, which are both
+	 * null if there are none.
+	 */
+	private Object[] findKeyRange(String query) throws SQLException, ClassNotFoundException {
+		Connection connection = pool.borrow();
+		try {
+			key = quoteKey(connection, query);
+			Statement statement = connection.createStatement();
+			boundsStatement = statement;
+			try {
+				if(isCancelled())
+					return new Object[2];
+				ResultSet resultSet = statement.executeQuery("SELECT MIN(" + key +
+						"), MAX(" + key + ") FROM (" + query + ") partitioned");
+				if(!resultSet.next())
+					return new Object[2];
+				return new Object[] { resultSet.getObject(1), resultSet.getObject(2) };
+			} finally {
+				boundsStatement = null;
+				statement.close();
+			}
+		} finally {
+			pool.release(connection);
+		}
+	}
+
+	/**
+	 * Returns the key column quoted as an identifier, with the case
+	 * of the query's own column if the driver can describe the query,
+	 * since a quoted name must match exactly.
+	 */
+	private String quoteKey(Connection connection, String query) throws SQLException {
+		String quote = connection.getMetaData().getIdentifierQuoteString();
+		// A space means quoting is not supported
+		if(quote == null || quote.trim().length() == 0 || keyColumn.startsWith(quote))
+			return keyColumn;
+
+		String name = keyColumn;
+		PreparedStatement statement = connection.prepareStatement(query);
+		try {
+			ResultSetMetaData metaData = statement.getMetaData();
+			for(int i = 1; metaData != null && i <= metaData.getColumnCount(); i++) {
+				if(metaData.getColumnLabel(i).equalsIgnoreCase(keyColumn))
+					name = metaData.getColumnLabel(i);
+			}
+		} catch(SQLException e) {
+			// Not supported before the query is run, keep the name as given
+		} finally {
+			statement.close();
+		}
+		return quote + name.replace(quote, quote + quote) + quote;
+	}
+
+	private void createPartitions(String query, Object min, Object max) throws SQLException {
+		String select = "SELECT * FROM (" + query + ") partitioned WHERE " + key;
+		String orderBy = ordered ? " ORDER BY " + key : "";
+		if(min != null && max != null) {
+			Object[] bounds = splitRange(min, max);
+			for(int i = 0; i + 1 < bounds.length; i++) {
+				// The last part includes the largest key
+				String upper = i + 2 == bounds.length ? " <= ?" : " < ?";
+				partitions.add(new Partition(partitions.size(),
+						select + " >= ? AND " + key + upper + orderBy,
+						new Object[] { bounds[i], bounds[i + 1] }));
+			}
+		}
+		partitions.add(new Partition(partitions.size(), select + " IS NULL", new Object[0]));
+	}
+
+	/**
+	 * Cuts the range from min to max into equal parts, returning the
+	 * bounds of the parts.  Integer keys get integer bounds, so
+	 * small ranges may have fewer parts than were asked for.
+	 */
+	private Object[] splitRange(Object min, Object max) throws SQLException {
+		List<Object> bounds = new ArrayList<Object>();
+		if(min instanceof java.util.Date && max instanceof java.util.Date) {
+			long low = ((java.util.Date) min).getTime();
+			long high = ((java.util.Date) max).getTime();
+			for(int i = 0; i <= partitionCount; i++) {
+				long bound = low + (long) ((double) (high - low) * i / partitionCount);
+				if(i == partitionCount)
+					bound = high;
+				if(bounds.isEmpty() || ((Timestamp) bounds.get(bounds.size() - 1)).getTime() != bound)
+					bounds.add(new Timestamp(bound));
+			}
+			// Keep the nanoseconds of the largest key
+			if(max instanceof Timestamp)
+				bounds.set(bounds.size() - 1, max);
+		} else if(min instanceof Number && max instanceof Number) {
+			BigDecimal low;
+			BigDecimal high;
+			try {
+				low = new BigDecimal(min.toString());
+				high = new BigDecimal(max.toString());
+			} catch(NumberFormatException e) {
+				throw new SQLException("The keys of " + keyColumn + " cannot be split into ranges.");
+			}
+			boolean integral = low.scale() <= 0 && high.scale() <= 0;
+			BigDecimal width = high.subtract(low);
+			BigDecimal count = BigDecimal.valueOf(partitionCount);
+			for(int i = 0; i <= partitionCount; i++) {
+				BigDecimal bound;
+				if(i == partitionCount) {
+					bound = high;
+				} else if(integral) {
+					bound = low.add(width.multiply(BigDecimal.valueOf(i))
+							.divide(count, 0, RoundingMode.FLOOR));
+				} else {
+					bound = low.add(width.multiply(BigDecimal.valueOf(i))
+							.divide(count, MathContext.DECIMAL64));
+				}
+				if(bounds.isEmpty() || ((BigDecimal) bounds.get(bounds.size() - 1)).compareTo(bound) != 0)
+					bounds.add(bound);
+			}
+		} else {
+			throw new SQLException("The partition key " + keyColumn + " must be a numeric or date column.");
+		}
+
+		// A single key still makes one part
+		if(bounds.size() == 1)
+			bounds.add(bounds.get(0));
+		return bounds.toArray();
+	}
+
+	/**
+	 * Runs parts until there are none left, all on one connection.
+	 */
+	private class Worker implements Runnable {
+		public void run() {
+			Connection connection;
+			try {
+				connection = pool.borrow();
+			} catch(Exception e) {
+				synchronized(lock) {
+					// Leave the parts to the other workers, unless
+					// there are none left which could run them
+					if(!connected && runningWorkers == 1)
+						fail(e);
+					runningWorkers--;
+					lock.notifyAll();
+				}
+				return;
+			}
+
+			try {
+				synchronized(lock) {
+					connected = true;
+				}
+				Partition partition;
+				while((partition = takePartition()) != null)
+					partition.run(connection);
+			} finally {
+				pool.release(connection);
+				synchronized(lock) {
+					runningWorkers--;
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	private Partition takePartition() {
+		synchronized(lock) {
+			if(isStopped() || nextPartition >= partitions.size())
+				return null;
+			return partitions.get(nextPartition++);
+		}
+	}
+
+	/**
+	 * Returns wether the run has been cancelled or a part has failed.
+	 */
+	private boolean isStopped() {
+		synchronized(lock) {
+			return isCancelled() || failure != null;
+		}
+	}
+
+	/**
+	 * Stops the run because of an error in one of the parts.
+	 * Only the first error is reported.
+	 */
+	private void fail(Exception e) {
+		synchronized(lock) {
+			if(failure == null)
+				failure = e;
+			lock.notifyAll();
+		}
+		cancelPartitions();
+	}
+
+	private void cancelPartitions() {
+		List<Partition> running;
+		synchronized(lock) {
+			running = new ArrayList<Partition>(partitions);
+		}
+		for(Partition partition : running) {
+			QueryTask task = partition.task;
+			if(task != null)
+				task.cancel();
+		}
+	}
+
+	/**
+	 * Appends rows read by a part to the merged output.
+	 * Must be called with the lock held.
+	 */
+	private void output(ResultStore rows) throws SQLException, IOException {
+		if(isStopped() || rows.getRowCount() == 0)
+			return;
+		if(store != null) {
+			store.appendRows(rows);
+		} else {
+			ResultSet resultSet = StoreResultSet.open(rows, null);
+			while(resultSet.next())
+				rowSink.writeRow(resultSet);
+		}
+	}
+
+	/**
+	 * Reports the store, or when writing to a sink, the total row count.
+	 */
+	private void reportRows() {
+		Object status;
+		synchronized(lock) {
+			if(store != null) {
+				status = store;
+			} else {
+				long rows = 0;
+				for(Partition partition : partitions)
+					rows += partition.rows;
+				status = Long.valueOf(rows);
+			}
+		}
+		synchronized(reportLock) {
+			reportStatus(status);
+		}
+	}
+
+	/**
+	 * Passes the cancellation on to the running parts, and wakes up
+	 * the task waiting for the workers.
+	 */
+	protected void cancelRequested() {
+		final Statement statement = boundsStatement;
+		if(statement != null) {
+			TaskExecutor.execute(new Runnable() {
+					public void run() {
+						try {
+							statement.cancel();
+						} catch(SQLException e) { }
+					}
+				});
+		}
+		synchronized(lock) {
+			lock.notifyAll();
+		}
+		cancelPartitions();
+	}
+
+
+	/**
+	 * One range of keys.  The QueryTask of the part writes its rows
+	 * here, into a ResultStore of the part's own, and the full pages
+	 * of it are passed on to the merged output.
+	 */
+	private class Partition implements RowSink {
+		private final int index;
+		private final String sql;
+		private final Object[] parameters;
+		private volatile QueryTask task = null;
+		private long rows = 0;
+		private boolean done = false;
+		// The rows read but not merged yet, replaced whenever they
+		// are merged.  Guarded by the lock once the part is done.
+		private ResultStore buffer = null;
+		private ResultSetMetaData metaData;
+
+		public Partition(int index, String sql, Object[] parameters) {
+			this.index = index;
+			this.sql = sql;
+			this.parameters = parameters;
+		}
+
+		public void run(Connection connection) {
+			try {
+				PreparedStatement statement = connection.prepareStatement(sql);
+				for(int i = 0; i < parameters.length; i++)
+					statement.setObject(i + 1, parameters[i]);
+
+				QueryTask query = new QueryTask(statement);
+				query.setFetchSizeController(new FetchSizeController(fetchSize, reportBatchSize));
+				query.setRowSink(this);
+				query.addTaskListener(new TaskAdapter() {
+						public void taskStatus(Object obj) {
+							synchronized(lock) {
+								rows = ((Long) obj).longValue();
+							}
+							reportRows();
+						}
+
+						public void taskError(Exception e) {
+							fail(e);
+						}
+					});
+				task = query;
+				// The run may have stopped before task was set
+				if(isStopped())
+					query.cancel();
+				query.run();
+
+				if(query.hasResult())
+					fail(new SQLException("The query did not return any rows."));
+			} catch(SQLException e) {
+				fail(e);
+			} finally {
+				synchronized(lock) {
+					done = true;
+					// When ordered, the parts done are merged in turn
+					try {
+						while(ordered && turn < partitions.size() && partitions.get(turn).done) {
+							partitions.get(turn).merge();
+							turn++;
+						}
+					} catch(Exception e) {
+						fail(e);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Called once the query of this part has been executed.
+		 * The first part to get here starts the merged output.
+		 */
+		public void start(ResultSetMetaData metaData) throws SQLException, IOException {
+			this.metaData = metaData;
+			ResultStore rows = new ResultStore(metaData);
+			synchronized(lock) {
+				buffer = rows;
+				if(ordered && index != turn)
+					buffer.setResidentPageLimit(WAITING_RESIDENT_PAGES);
+				if(isStopped() || outputStarted)
+					return;
+				if(rowSink != null)
+					rowSink.start(metaData);
+				else
+					store = new ResultStore(metaData);
+				outputStarted = true;
+			}
+		}
+
+		/**
+		 * Reads the row into this part's store, on this part's thread.
+		 * Each time a page fills up the rows are merged, unless it is
+		 * not this part's turn yet.
+		 */
+		public void writeRow(ResultSet resultSet) throws SQLException, IOException {
+			ResultStore rows;
+			synchronized(lock) {
+				rows = buffer;
+			}
+			rows.appendRow(resultSet);
+			if(rows.getRowCount() % ResultStore.PAGE_SIZE != 0)
+				return;
+			synchronized(lock) {
+				if(ordered && index != turn)
+					return;
+				// The output may not have been started if the run stopped
+				if(outputStarted)
+					output(buffer);
+				buffer.close();
+				buffer = new ResultStore(metaData);
+			}
+		}
+
+		/**
+		 * Merges the rows not merged yet.  Called with the lock held,
+		 * once the part is done.
+		 */
+		public void merge() throws SQLException, IOException {
+			if(buffer == null)
+				return;
+			if(outputStarted)
+				output(buffer);
+			buffer.close();
+			buffer = null;
+		}
+
+		/**
+		 * Throws away any rows not merged, e.g. if the run failed.
+		 */
+		public void close() {
+			synchronized(lock) {
+				if(buffer != null)
+					buffer.close();
+				buffer = null;
+			}
+		}
+
+		/**
+		 * The merged output is finished once every part is done.
+		 */
+		public void finish() { }
+
+		public long estimateBytesPerRow() {
+			ResultStore rows;
+			synchronized(lock) {
+				rows = buffer;
+			}
+			return rows == null ? 0 : rows.estimateBytesPerRow();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * Where the time went in one run of a query.
+ *
+ * A QueryTask fills in how long the statement took to execute, and its
+ * ResultSetTask how long until the first row arrived, how long all the
+ * rows took to fetch, how many there were, roughly how much memory they
+ * take and the most heap in use while they were read.  The GUI adds the
+ * time it spent showing them, from updating the tables through to
+ * painting them.  All times are in milliseconds since the query was
+ * started, or -1 if that point was never reached.
+ *
+ * Slow execution points at the server, slow fetching at the network
+ * (or the server streaming rows), and slow rendering at SQLTool itself.
+ *
+ * The fields are filled in from several threads, so all access is
+ * synchronized on this instance.
+ */
+package cvosteen.sqltool.tasks;
+
+import java.lang.management.*;
+
+public class QueryMetrics {
+
+	private final String sql;
+	private final long startTime = System.currentTimeMillis();
+	private final long startNanos = System.nanoTime();
+	private long executeMillis = -1;
+	private long firstRowMillis = -1;
+	private long fetchMillis = -1;
+	private long renderNanos = 0;
+	private long rows = 0;
+	private long bytes = 0;
+	private long peakHeap = 0;
+	private String outcome = "Running";
+
+	public QueryMetrics(String sql) {
+		this.sql = sql;
+		sampleHeap();
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	/**
+	 * Returns when the query was started, as System.currentTimeMillis().
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Called once the statement has executed.
+	 */
+	public synchronized void executed() {
+		executeMillis = elapsedMillis();
+	}
+
+	/**
+	 * Called once the first row has been read.
+	 */
+	public synchronized void firstRow() {
+		firstRowMillis = elapsedMillis();
+	}
+
+	/**
+	 * Called once all the rows have been read.
+	 */
+	public synchronized void fetched(long rows, long bytes) {
+		fetchMillis = elapsedMillis();
+		this.rows = rows;
+		this.bytes = bytes;
+		sampleHeap();
+	}
+
+	/**
+	 * Adds time the GUI spent showing the rows, including painting them.
+	 */
+	public synchronized void addRenderNanos(long nanos) {
+		renderNanos += nanos;
+	}
+
+	/**
+	 * Notes how much heap is in use, if it is the most so far.
+	 */
+	public synchronized void sampleHeap() {
+		long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		if(used > peakHeap)
+			peakHeap = used;
+	}
+
+	/**
+	 * Sets how the query ended, e.g. "OK", "Cancelled" or "Error".
+	 */
+	public synchronized void setOutcome(String outcome) {
+		this.outcome = outcome;
+	}
+
+	public synchronized long getExecuteMillis() {
+		return executeMillis;
+	}
+
+	public synchronized long getFirstRowMillis() {
+		return firstRowMillis;
+	}
+
+	/**
+	 * Returns the time from the statement executing to the last row
+	 * being read, or -1 if not all rows were read.
+	 */
+	public synchronized long getFetchMillis() {
+		if(fetchMillis < 0 || executeMillis < 0)
+			return -1;
+		return fetchMillis - executeMillis;
+	}
+
+	public synchronized long getRenderMillis() {
+		return renderNanos / 1000000;
+	}
+
+	public synchronized long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Returns a rough estimate of the memory taken by the rows.
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized long getPeakHeap() {
+		return peakHeap;
+	}
+
+	public synchronized String getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Describes the timings for the user, e.g. for a log.
+	 */
+	public synchronized String toString() {
+		return "executed in " + executeMillis + " ms, first row after " + firstRowMillis
+			+ " ms, fetched in " + getFetchMillis() + " ms, rendered in " + getRenderMillis()
+			+ " ms, " + rows + " rows, " + bytes / 1024 + " KB, peak heap "
+			+ peakHeap / (1024 * 1024) + " MB";
+	}
+
+	private long elapsedMillis() {
+		return (System.nanoTime() - startNanos) / 1000000;
+	}
+}
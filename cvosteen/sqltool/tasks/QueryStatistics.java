@@ -0,0 +1,121 @@
+/**
+ * Totals of the QueryMetrics of every query run in the GUI, and the
+ * metrics of the last one, published as a JMX MBean named
+ * cvosteen.sqltool:type=QueryStatistics on the platform MBeanServer.
+ * The memory beans LowMemoryMonitor uses live on the same server, so
+ * a JMX client shows them side by side.
+ */
+package cvosteen.sqltool.tasks;
+
+import java.lang.management.*;
+import javax.management.*;
+
+public class QueryStatistics implements QueryStatisticsMBean {
+
+	public static final String OBJECT_NAME = "cvosteen.sqltool:type=QueryStatistics";
+
+	private static QueryStatistics instance = null;
+
+	private long queryCount = 0;
+	private long totalRows = 0;
+	private long totalExecuteMillis = 0;
+	private long totalFetchMillis = 0;
+	private long totalRenderMillis = 0;
+	private long peakHeap = 0;
+	private QueryMetrics last = null;
+
+	/**
+	 * Returns the one instance, registering it as an MBean the first
+	 * time.  If it cannot be registered it still keeps the totals.
+	 */
+	public static synchronized QueryStatistics getInstance() {
+		if(instance == null) {
+			instance = new QueryStatistics();
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(instance,
+					new ObjectName(OBJECT_NAME));
+			} catch(Exception e) {
+				// JMX is only for monitoring, carry on without it
+			}
+		}
+		return instance;
+	}
+
+	private QueryStatistics() {
+	}
+
+	/**
+	 * Adds the metrics of a finished query to the totals.
+	 */
+	public synchronized void record(QueryMetrics metrics) {
+		queryCount++;
+		totalRows += metrics.getRows();
+		totalExecuteMillis += Math.max(0, metrics.getExecuteMillis());
+		totalFetchMillis += Math.max(0, metrics.getFetchMillis());
+		totalRenderMillis += metrics.getRenderMillis();
+		peakHeap = Math.max(peakHeap, metrics.getPeakHeap());
+		last = metrics;
+	}
+
+	public synchronized long getQueryCount() {
+		return queryCount;
+	}
+
+	public synchronized long getTotalRows() {
+		return totalRows;
+	}
+
+	public synchronized long getTotalExecuteMillis() {
+		return totalExecuteMillis;
+	}
+
+	public synchronized long getTotalFetchMillis() {
+		return totalFetchMillis;
+	}
+
+	public synchronized long getTotalRenderMillis() {
+		return totalRenderMillis;
+	}
+
+	public synchronized long getLastExecuteMillis() {
+		return last == null ? -1 : last.getExecuteMillis();
+	}
+
+	public synchronized long getLastFirstRowMillis() {
+		return last == null ? -1 : last.getFirstRowMillis();
+	}
+
+	public synchronized long getLastFetchMillis() {
+		return last == null ? -1 : last.getFetchMillis();
+	}
+
+	public synchronized long getLastRenderMillis() {
+		return last == null ? -1 : last.getRenderMillis();
+	}
+
+	public synchronized long getLastRows() {
+		return last == null ? 0 : last.getRows();
+	}
+
+	public synchronized long getLastBytes() {
+		return last == null ? 0 : last.getBytes();
+	}
+
+	public synchronized long getPeakHeap() {
+		return peakHeap;
+	}
+
+	public synchronized String getLastOutcome() {
+		return last == null ? null : last.getOutcome();
+	}
+
+	public synchronized void reset() {
+		queryCount = 0;
+		totalRows = 0;
+		totalExecuteMillis = 0;
+		totalFetchMillis = 0;
+		totalRenderMillis = 0;
+		peakHeap = 0;
+		last = null;
+	}
+}
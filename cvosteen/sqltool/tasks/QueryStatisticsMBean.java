@@ -0,0 +1,39 @@
+/**
+ * The management interface of QueryStatistics, as seen by JMX clients
+ * such as jconsole.
+ */
+package cvosteen.sqltool.tasks;
+
+public interface QueryStatisticsMBean {
+
+	public long getQueryCount();
+
+	public long getTotalRows();
+
+	public long getTotalExecuteMillis();
+
+	public long getTotalFetchMillis();
+
+	public long getTotalRenderMillis();
+
+	public long getLastExecuteMillis();
+
+	public long getLastFirstRowMillis();
+
+	public long getLastFetchMillis();
+
+	public long getLastRenderMillis();
+
+	public long getLastRows();
+
+	public long getLastBytes();
+
+	public long getPeakHeap();
+
+	public String getLastOutcome();
+
+	/**
+	 * Starts the totals over from zero.
+	 */
+	public void reset();
+}
@@ -2,9 +2,20 @@
  * Parent task of ExecuteSqlTask and ResultSetTask.
  * This task is needed both as a facade and also to
  * cancel the ExecuteSqlTask query from another thread.
+ *
+ * The subtasks are run one after the other on this task's thread.
+ * Cancelling this task immediately cancels the running subtask and
+ * the Statement, so nothing has to poll for cancellation.
+ *
+ * The timings of the run are recorded in a QueryMetrics.
+ *
+ * The statement may come from a StatementCache, in which case it is
+ * given back to the cache when the query is done instead of being
+ * closed, unless the query was cancelled or failed.
  */
 
 package cvosteen.sqltool.tasks;
+import cvosteen.sqltool.database.*;
 import cvosteen.sqltool.task.*;
 import java.io.*;
 import java.util.*;
@@ -13,48 +24,139 @@ import java.sql.*;
 public class QueryTask extends Task {
 
 	private PreparedStatement preparedStatement;
+	private StatementCache statementCache = null;
+	// Guards against cancelling the statement once it has been given
+	// back, when it may already be running someone else's query
+	private final Object statementLock = new Object();
+	private boolean statementClosed = false;
+	private FetchSizeController fetchSizeController = new FetchSizeController();
+	private RowSink rowSink = null;
+	private List<?> parameters = null;
+	private final QueryMetrics metrics;
+	private volatile Task currentTask = null;
 
 	public QueryTask(PreparedStatement preparedStatement) {
 		this.preparedStatement = preparedStatement;
+		this.metrics = new QueryMetrics(null);
 	}
 
 	public QueryTask(Connection connection, String sql) throws SQLException {
 		this.preparedStatement = connection.prepareStatement(sql);
+		this.metrics = new QueryMetrics(sql);
+	}
+
+	/**
+	 * Creates a task for the SQL using a statement from the cache.
+	 */
+	public QueryTask(StatementCache statementCache, String sql) throws SQLException {
+		this.preparedStatement = statementCache.prepare(sql);
+		this.statementCache = statementCache;
+		this.metrics = new QueryMetrics(sql);
+	}
+
+	/**
+	 * Returns the timings of this run of the query.
+	 */
+	public QueryMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets the controller used to tune the fetch size of the query.
+	 * Must be called before the task is started.
+	 */
+	public void setFetchSizeController(FetchSizeController fetchSizeController) {
+		this.fetchSizeController = fetchSizeController;
+	}
+
+	/**
+	 * Streams the rows of the query to a RowSink instead of a ResultStore.
+	 * Must be called before the task is started.
+	 */
+	public void setRowSink(RowSink rowSink) {
+		this.rowSink = rowSink;
+	}
+
+	/**
+	 * Sets the values bound to the ? placeholders of the statement, in
+	 * order.  See ParameterizedSql.
+	 * Must be called before the task is started.
+	 */
+	public void setParameters(List<?> parameters) {
+		this.parameters = parameters;
 	}
 
 	public void run() {
 		try {
+			if(parameters != null)
+				ParameterizedSql.bind(preparedStatement, parameters);
+
+			// Some drivers only stream rows (rather than reading the
+			// whole result up front) if the fetch size is set before
+			// the statement is executed.
+			try {
+				preparedStatement.setFetchSize(fetchSizeController.getFetchSize());
+			} catch(SQLException e) { }
+
 			ExecuteSqlTask t = new ExecuteSqlTask(preparedStatement);
 			t.addTaskListener(new ExecuteSqlTaskListener());
-			t.start();
-
-			// While this is running the user may request cancellation.
-			// Some databases support cancelling of queries from another
-			// thread.
-			while(!t.isFinished() && !t.isCancelled()) {
-				// Every 0.1 second, check for cancellation
-				sleep(100);
-				if(isCancelled()) {
-					try {
-						t.cancel();
-						preparedStatement.cancel();
-					} catch(SQLFeatureNotSupportedException e) {
-						// Don't propagate this exception and don't finish the
-						// task.  The query cannot be cancelled and the user
-						// just has to wait.
-					}
-				}
+			runSubtask(t);
+
+			// A cancelled ExecuteSqlTask reports neither a result nor an
+			// error, so make sure our observers hear that we are done.
+			if(!isFinished()) {
+				closeStatement();
+				reportFinished();
 			}
 
 		} catch(Exception e) {
 			// Only if there is an error above are we finished here.
-			// Otherwise we wait for a result or error from the subtask
+			// Otherwise the subtasks have already reported to our observers.
 			reportError(e);
 			closeStatement();
 			reportFinished();
 		}
 	}
 
+	/**
+	 * Runs a subtask on this thread, making it the task that will
+	 * be cancelled if this task is cancelled.
+	 */
+	private void runSubtask(Task t) {
+		currentTask = t;
+		// The cancel request may have come in before currentTask was set
+		if(isCancelled())
+			t.cancel();
+		t.run();
+	}
+
+	/**
+	 * Passes the cancellation on to the running subtask and the Statement.
+	 * Some databases support cancelling of queries from another thread.
+	 */
+	protected void cancelRequested() {
+		Task t = currentTask;
+		if(t != null)
+			t.cancel();
+
+		// Cancelling the Statement may have to talk to the server,
+		// so don't hold up the caller (usually the GUI) doing it.
+		TaskExecutor.execute(new Runnable() {
+				public void run() {
+					synchronized(statementLock) {
+						if(statementClosed)
+							return;
+						try {
+							preparedStatement.cancel();
+						} catch(SQLException e) {
+							// Includes SQLFeatureNotSupportedException.  The query
+							// cannot be cancelled and the user just has to wait.
+						}
+					}
+				}
+			});
+	}
+
 
 	/**
 	 * The TaskListener for the ExecuteSqlTask.
@@ -84,22 +186,12 @@ public class QueryTask extends Task {
 		 * and its results returned to our observers.
 		 */
 		public void taskResult(Object obj) {
+			metrics.executed();
 			if(obj instanceof ResultSet) {
-				Task t = new ResultSetTask((ResultSet) obj);
+				ResultSetTask t = new ResultSetTask((ResultSet) obj, fetchSizeController, rowSink);
+				t.setMetrics(metrics);
 				t.addTaskListener(new ResultSetTaskListener());
-				t.start();
-				
-				// While this is running the user may request cancellation.
-				while(!t.isFinished() && !t.isCancelled()) {
-					// Every 0.1 second, check for cancellation
-					try {
-						sleep(100);
-					} catch(InterruptedException e) { }
-
-					if(isCancelled()) {
-						t.cancel();
-					}
-				}
+				runSubtask(t);
 			} else {
 				reportResult(obj);
 				closeStatement();
@@ -161,9 +253,28 @@ public class QueryTask extends Task {
 	}
 
 	private void closeStatement() {
-		try {
-			preparedStatement.close();
-		} catch(SQLException e) { }
+		synchronized(statementLock) {
+			if(statementClosed)
+				return;
+			statementClosed = true;
+			if(isCancelled())
+				metrics.setOutcome("Cancelled");
+			else if(hasError())
+				metrics.setOutcome("Error");
+			else if(hasResult())
+				metrics.setOutcome(getResult() + " updated");
+			else
+				metrics.setOutcome("OK");
+			if(statementCache == null) {
+				try {
+					preparedStatement.close();
+				} catch(SQLException e) { }
+			} else if(isCancelled() || hasError()) {
+				statementCache.discard(preparedStatement);
+			} else {
+				statementCache.release(preparedStatement);
+			}
+		}
 	}
 }
 
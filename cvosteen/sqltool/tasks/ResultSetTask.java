@@ -1,27 +1,72 @@
+/**
+ * Reads every row of a ResultSet into a ResultStore.
+ *
+ * The ResultStore is reported as status as soon as the columns are
+ * known, and then again periodically as rows are appended to it.
+ * Observers should only ever read rows up to the row count of the
+ * store at the time of the report.
+ *
+ * If a RowSink is given, the rows are passed to it instead and the
+ * number of rows written so far (a Long) is reported as status.
+ * Nothing is kept in memory, so any number of rows can be read.
+ *
+ * The fetch size of the ResultSet and the number of rows between
+ * reports are tuned by a FetchSizeController.
+ *
+ * If a QueryMetrics is given, the time to the first row, the time to
+ * read all of them and the peak heap use are recorded in it.
+ */
 package cvosteen.sqltool.tasks;
+import java.io.*;
 import java.sql.*;
-import java.util.*;
+import cvosteen.sqltool.result.*;
 import cvosteen.sqltool.task.*;
 
 public class ResultSetTask extends Task {
 
+	// Never go longer than this between reports, however slow the rows are
+	private static final long MAX_REPORT_INTERVAL = 100;
+
 	private ResultSet resultSet;
+	private FetchSizeController fetchSizeController;
+	private RowSink rowSink;
+	private QueryMetrics metrics = null;
 
 	public ResultSetTask(ResultSet resultSet) {
+		this(resultSet, new FetchSizeController());
+	}
+
+	public ResultSetTask(ResultSet resultSet, FetchSizeController fetchSizeController) {
+		this(resultSet, fetchSizeController, null);
+	}
+
+	public ResultSetTask(ResultSet resultSet, FetchSizeController fetchSizeController, RowSink rowSink) {
 		this.resultSet = resultSet;
+		this.fetchSizeController = fetchSizeController;
+		this.rowSink = rowSink;
+	}
+
+	/**
+	 * Records the timings of reading the rows in the metrics.
+	 * Must be called before the task is started.
+	 */
+	public void setMetrics(QueryMetrics metrics) {
+		this.metrics = metrics;
 	}
 
 	public void run() {
 		try {
-			// Pull column names from ResultSet
-			ResultSetMetaData resultSetMetaData = resultSet.getMetaData();
-			int colCount = resultSetMetaData.getColumnCount();
-			Vector<String> columns = new Vector<String>();
-			for(int col = 1; col <= colCount; col++)
-				columns.add(resultSetMetaData.getColumnName(col));
+			// Build a columnar store from the ResultSet's columns,
+			// unless the rows are going to a sink
+			ResultStore store = null;
+			if(rowSink == null)
+				store = new ResultStore(resultSet.getMetaData());
+			else
+				rowSink.start(resultSet.getMetaData());
 
 			// Report that the columns have been retrieved
-			reportStatus(columns);
+			long rows = 0;
+			reportRows(store, rows);
 
 			// Check for cancellation
 			if(isCancelled())
@@ -29,30 +74,52 @@ public class ResultSetTask extends Task {
 
 
 			// Start pulling rows from ResultSet
+			setFetchSize(fetchSizeController.getFetchSize());
 			long time = System.currentTimeMillis();
-			Vector<Vector<Object>> data = new Vector<Vector<Object>>();
-			while(resultSet.next()) {
-				Vector<Object> row = new Vector<Object>();
-				for(int col = 1; col <= colCount; col++)
-					row.add(resultSet.getObject(col));
-				data.add(row);
-
-				// Once per second report all rows so far
-				if(System.currentTimeMillis() - time >= 100) {
-					// Check for cancellation
-					if(isCancelled())
-						return;
-
-					reportStatus(data);
+			long batchStart = System.nanoTime();
+			int batchRows = 0;
+			// Cancellation is checked on every row, it is only a volatile read
+			while(!isCancelled() && resultSet.next()) {
+				if(store != null)
+					store.appendRow(resultSet);
+				else
+					rowSink.writeRow(resultSet);
+				rows++;
+				batchRows++;
+				if(rows == 1 && metrics != null)
+					metrics.firstRow();
+
+				// Report the rows so far once per batch, or every 0.1 second
+				if(batchRows >= fetchSizeController.getReportBatchSize() ||
+						System.currentTimeMillis() - time >= MAX_REPORT_INTERVAL) {
+					reportRows(store, rows);
+					if(metrics != null)
+						metrics.sampleHeap();
+					long bytesPerRow = store != null ? store.estimateBytesPerRow() : rowSink.estimateBytesPerRow();
+					if(fetchSizeController.batchFetched(batchRows,
+							System.nanoTime() - batchStart, bytesPerRow))
+						setFetchSize(fetchSizeController.getFetchSize());
 					time = System.currentTimeMillis();
-					data = new Vector<Vector<Object>>();
+					batchStart = System.nanoTime();
+					batchRows = 0;
 				}
 			}
 			
-			// Send any remaining rows
-			reportStatus(data);
+			// Report any remaining rows
+			if(!isCancelled()) {
+				if(rowSink != null)
+					rowSink.finish();
+				if(metrics != null) {
+					long bytesPerRow = store != null ? store.estimateBytesPerRow() : rowSink.estimateBytesPerRow();
+					metrics.fetched(rows, bytesPerRow * rows);
+				}
+				reportRows(store, rows);
+			}
 
-		} catch(final SQLException e) {
+		} catch(SQLException e) {
+			reportError(e);
+		} catch(IOException e) {
+			// The RowSink could not write the rows
 			reportError(e);
 		} finally {
 			try {
@@ -61,4 +128,23 @@ public class ResultSetTask extends Task {
 			reportFinished();
 		}
 	}
+
+	/**
+	 * Reports the store, or when writing to a sink, the row count.
+	 */
+	private void reportRows(ResultStore store, long rows) {
+		if(store != null)
+			reportStatus(store);
+		else
+			reportStatus(Long.valueOf(rows));
+	}
+
+	/**
+	 * Drivers are free to ignore or reject the fetch size, which is fine.
+	 */
+	private void setFetchSize(int fetchSize) {
+		try {
+			resultSet.setFetchSize(fetchSize);
+		} catch(SQLException e) { }
+	}
 }
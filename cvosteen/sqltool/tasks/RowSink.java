@@ -0,0 +1,33 @@
+/**
+ * Receives the rows of a ResultSet as a ResultSetTask reads them,
+ * instead of the rows being kept in a ResultStore.  Used to stream
+ * results somewhere (e.g. a file) in constant memory.
+ */
+package cvosteen.sqltool.tasks;
+import java.io.*;
+import java.sql.*;
+
+public interface RowSink {
+
+	/**
+	 * Called once with the columns, before any rows.
+	 */
+	public void start(ResultSetMetaData metaData) throws SQLException, IOException;
+
+	/**
+	 * Called with the ResultSet positioned on each row in turn.
+	 */
+	public void writeRow(ResultSet resultSet) throws SQLException, IOException;
+
+	/**
+	 * Called after the last row has been written.
+	 * Not called if the task is cancelled or fails.
+	 */
+	public void finish() throws IOException;
+
+	/**
+	 * Returns the average size of a row so far, used to tune the
+	 * fetch size.
+	 */
+	public long estimateBytesPerRow();
+}
@@ -0,0 +1,340 @@
+/**
+ * Splits the text of a SQL script into its statements.
+ *
+ * Statements end at a semicolon, or at a line holding nothing but
+ * GO (as in SQL Server scripts) or / (as in Oracle scripts).
+ * Semicolons and GO inside quoted strings, dollar quoted strings
+ * ($$ ... $$ or $tag$ ... $tag$, as in PostgreSQL), quoted or
+ * bracketed identifiers and comments are skipped.  Statements holding
+ * nothing but comments are dropped.
+ *
+ * Procedure, function and trigger bodies contain semicolons of their
+ * own, so semicolons do not end a statement inside BEGIN ... END or
+ * CASE ... END, nor between the AS or IS of a CREATE PROCEDURE,
+ * FUNCTION, TRIGGER or PACKAGE (or a DECLARE) and the BEGIN which
+ * follows it.  BEGIN on its own or followed by TRANSACTION, WORK and
+ * the like starts a transaction rather than a block, and END IF,
+ * END LOOP, END WHILE and END REPEAT do not end one.
+ * A block followed by a / line keeps its final semicolon, which
+ * Oracle needs.
+ *
+ * This covers the usual dialects, but not every construct of every
+ * one.  Scripts which still split in the wrong place can separate
+ * their statements with GO, or change the delimiter with a line
+ * such as
+ *   DELIMITER //
+ * as in MySQL scripts, after which only // ends a statement, until
+ *   DELIMITER ;
+ */
+package cvosteen.sqltool.tasks;
+import java.util.*;
+
+public class ScriptSplitter {
+
+	private static final Set<String> TRANSACTION_WORDS = new HashSet<String>(Arrays.asList(
+			"TRANSACTION", "TRAN", "WORK", "ISOLATION", "READ", "DISTRIBUTED",
+			"DEFERRED", "IMMEDIATE", "EXCLUSIVE"));
+	private static final Set<String> ROUTINE_WORDS = new HashSet<String>(Arrays.asList(
+			"PROCEDURE", "PROC", "FUNCTION", "TRIGGER", "PACKAGE"));
+	// END followed by these ends a statement, not a block
+	private static final Set<String> LOOP_WORDS = new HashSet<String>(Arrays.asList(
+			"IF", "LOOP", "WHILE", "REPEAT"));
+	// PostgreSQL's DECLARE of a cursor is a statement, not a block
+	private static final Set<String> CURSOR_WORDS = new HashSet<String>(Arrays.asList(
+			"CURSOR", "BINARY", "INSENSITIVE", "ASENSITIVE", "NO", "SCROLL"));
+
+	private final String script;
+	private final int length;
+	private final List<String> statements = new ArrayList<String>();
+	private String delimiter = ";";
+	private int start = 0;
+	// Whether the current statement has anything besides comments
+	private boolean hasSql = false;
+	private String firstWord = null;
+	// The blocks open in the current statement
+	private int depth = 0;
+	private int parenthesisDepth = 0;
+	// A block has been opened by AS, IS or DECLARE, and its BEGIN is
+	// yet to come
+	private boolean awaitingBegin = false;
+	// A PROCEDURE etc. has been seen, and its AS or IS is yet to come
+	private boolean awaitingBody = false;
+	// Whether the current statement has opened a block
+	private boolean hasBlock = false;
+
+	private ScriptSplitter(String script) {
+		this.script = script;
+		this.length = script.length();
+	}
+
+	public static List<String> split(String script) {
+		ScriptSplitter splitter = new ScriptSplitter(script);
+		splitter.split();
+		return splitter.statements;
+	}
+
+	private void split() {
+		int i = 0;
+		while(i < length) {
+			if(isLineStart(script, i)) {
+				int lineEnd = lineEnd(script, i);
+				String line = script.substring(i, lineEnd).trim();
+				// A GO or / line ends the statement
+				if(line.equalsIgnoreCase("go") || line.equals("/")) {
+					endStatement(i);
+					start = lineEnd;
+					i = lineEnd;
+					continue;
+				}
+				// So does a DELIMITER line, which changes the delimiter
+				if(!hasSql && line.length() > 10 && line.substring(0, 10).equalsIgnoreCase("delimiter ")) {
+					delimiter = line.substring(10).trim();
+					start = lineEnd;
+					i = lineEnd;
+					continue;
+				}
+			}
+
+			char c = script.charAt(i);
+			if(c == '-' && i + 1 < length && script.charAt(i + 1) == '-') {
+				i = lineEnd(script, i);
+			} else if(c == '/' && i + 1 < length && script.charAt(i + 1) == '*') {
+				int end = script.indexOf("*/", i + 2);
+				i = end < 0 ? length : end + 2;
+			} else if(script.startsWith(delimiter, i)) {
+				// Only a semicolon can be inside a block, and Oracle
+				// blocks end with one, followed by a / line
+				if(delimiter.equals(";") && (depth > 0 || (hasBlock && isSlashNext(i + 1)))) {
+					awaitingBody = false;
+					i++;
+					continue;
+				}
+				endStatement(i);
+				i += delimiter.length();
+				start = i;
+			} else if(c == '\'' || c == '"' || c == '`' || c == '[') {
+				// Quotes are escaped by doubling them, which just
+				// looks like two quoted strings in a row
+				char close = c == '[' ? ']' : c;
+				int end = script.indexOf(close, i + 1);
+				i = end < 0 ? length : end + 1;
+				hasSql = true;
+			} else if(c == '$' && dollarTagEnd(i) > 0) {
+				String tag = script.substring(i, dollarTagEnd(i));
+				int end = script.indexOf(tag, i + tag.length());
+				i = end < 0 ? length : end + tag.length();
+				hasSql = true;
+			} else if((Character.isLetter(c) || c == '_') && (i == 0 || !isWordPart(script.charAt(i - 1)))) {
+				int end = i;
+				while(end < length && isWordPart(script.charAt(end)))
+					end++;
+				i = word(script.substring(i, end).toUpperCase(), end);
+				hasSql = true;
+			} else {
+				if(c == '(')
+					parenthesisDepth++;
+				else if(c == ')')
+					parenthesisDepth--;
+				if(!Character.isWhitespace(c))
+					hasSql = true;
+				i++;
+			}
+		}
+		endStatement(length);
+	}
+
+	/**
+	 * Keeps track of the blocks opened and closed by a word ending at
+	 * the index given, returning the index to carry on from.
+	 */
+	private int word(String word, int end) {
+		if(firstWord == null)
+			firstWord = word;
+		if(!delimiter.equals(";") || parenthesisDepth > 0)
+			return end;
+
+		String next = wordAt(script, end);
+		if(word.equals("BEGIN")) {
+			if(isTransactionStart(end, next))
+				return end;
+			if(awaitingBegin)
+				awaitingBegin = false;
+			else
+				depth++;
+			awaitingBody = false;
+			hasBlock = true;
+		} else if(word.equals("CASE")) {
+			depth++;
+		} else if(word.equals("END")) {
+			if(LOOP_WORDS.contains(next))
+				return end;
+			awaitingBegin = false;
+			if(depth > 0)
+				depth--;
+			// END CASE ends the CASE, rather than starting another
+			if(next.equals("CASE"))
+				return skipWord(end);
+		} else if(ROUTINE_WORDS.contains(word)) {
+			if(firstWord.equals("CREATE") || firstWord.equals("ALTER") || firstWord.equals("DECLARE") || depth > 0)
+				awaitingBody = true;
+		} else if((word.equals("AS") || word.equals("IS")) && awaitingBody) {
+			awaitingBody = false;
+			// A PostgreSQL body is a string, and IS NULL is not a body
+			char following = nextChar(end);
+			if(following != '$' && following != '\'' && !next.equals("NULL") && !next.equals("NOT")) {
+				depth++;
+				awaitingBegin = true;
+				hasBlock = true;
+			}
+		} else if(word.equals("DECLARE") && firstWord.equals("DECLARE") && depth == 0 && !awaitingBegin) {
+			// Not SQL Server's DECLARE @name or a cursor
+			int nameEnd = skipWord(end);
+			if(nextChar(end) != '@' && !CURSOR_WORDS.contains(wordAt(script, nameEnd))) {
+				depth++;
+				awaitingBegin = true;
+				hasBlock = true;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Returns whether BEGIN followed by the word given starts a
+	 * transaction: with nothing else before the end of the statement,
+	 * or TRANSACTION, WORK and the like.
+	 */
+	private boolean isTransactionStart(int end, String next) {
+		if(TRANSACTION_WORDS.contains(next))
+			return true;
+		char following = nextChar(end);
+		return following == 0 || following == ';';
+	}
+
+	private void endStatement(int end) {
+		if(hasSql)
+			statements.add(script.substring(start, end).trim());
+		hasSql = false;
+		firstWord = null;
+		depth = 0;
+		parenthesisDepth = 0;
+		awaitingBegin = false;
+		awaitingBody = false;
+		hasBlock = false;
+	}
+
+	/**
+	 * Returns whether the rest of the line from the index given is
+	 * blank and the next line holds nothing but /.
+	 */
+	private boolean isSlashNext(int index) {
+		int end = lineEnd(script, index);
+		if(script.substring(index, end).trim().length() > 0 || end == length)
+			return false;
+		return script.substring(end, lineEnd(script, end)).trim().equals("/");
+	}
+
+	/**
+	 * Returns the end of a dollar quote tag ($$ or $name$) starting at
+	 * the index given, or 0 if there is none, e.g. a $1 parameter.
+	 */
+	private int dollarTagEnd(int index) {
+		if(index > 0 && isWordPart(script.charAt(index - 1)))
+			return 0;
+		int i = index + 1;
+		while(i < length && (Character.isLetter(script.charAt(i)) || script.charAt(i) == '_'
+				|| (i > index + 1 && Character.isDigit(script.charAt(i)))))
+			i++;
+		return i < length && script.charAt(i) == '$' ? i + 1 : 0;
+	}
+
+	/**
+	 * Returns the index of the next character which is not whitespace
+	 * or a comment.
+	 */
+	private int skipSpace(int index) {
+		int i = index;
+		while(i < length) {
+			char c = script.charAt(i);
+			if(c == '-' && i + 1 < length && script.charAt(i + 1) == '-') {
+				i = lineEnd(script, i);
+			} else if(c == '/' && i + 1 < length && script.charAt(i + 1) == '*') {
+				int end = script.indexOf("*/", i + 2);
+				i = end < 0 ? length : end + 2;
+			} else if(Character.isWhitespace(c)) {
+				i++;
+			} else {
+				break;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the next character which is not whitespace or a comment,
+	 * or 0 at the end of the script.
+	 */
+	private char nextChar(int index) {
+		int i = skipSpace(index);
+		return i < length ? script.charAt(i) : 0;
+	}
+
+	/**
+	 * Returns the index just past the next word.
+	 */
+	private int skipWord(int index) {
+		int i = skipSpace(index);
+		while(i < length && isWordPart(script.charAt(i)))
+			i++;
+		return i;
+	}
+
+	/**
+	 * Returns the first word of a statement, skipping any comments,
+	 * in upper case.
+	 */
+	public static String getFirstWord(String sql) {
+		return wordAt(sql, 0);
+	}
+
+	/**
+	 * Returns the word starting at the index given, skipping any
+	 * whitespace and comments before it, in upper case.
+	 */
+	private static String wordAt(String sql, int index) {
+		int length = sql.length();
+		int i = index;
+		while(i < length) {
+			char c = sql.charAt(i);
+			if(c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+				i = lineEnd(sql, i);
+			} else if(c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+				int end = sql.indexOf("*/", i + 2);
+				i = end < 0 ? length : end + 2;
+			} else if(Character.isWhitespace(c)) {
+				i++;
+			} else {
+				break;
+			}
+		}
+		int start = i;
+		while(i < length && Character.isLetter(sql.charAt(i)))
+			i++;
+		return sql.substring(start, i).toUpperCase();
+	}
+
+	private static boolean isWordPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#' || c == '@';
+	}
+
+	private static boolean isLineStart(String text, int index) {
+		return index == 0 || text.charAt(index - 1) == '\n';
+	}
+
+	/**
+	 * Returns the index just past the end of the line, including the line break.
+	 */
+	private static int lineEnd(String text, int index) {
+		int end = text.indexOf('\n', index);
+		return end < 0 ? text.length() : end + 1;
+	}
+}
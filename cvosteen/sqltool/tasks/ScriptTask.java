@@ -0,0 +1,255 @@
+/**
+ * Runs the statements of a script one after the other on a Connection.
+ *
+ * Every result of every statement is kept, not just the first
+ * ResultSet as with ExecuteSqlTask.  Each ResultSet is read into a
+ * ResultStore of its own, which is reported as status as ResultSetTask
+ * does.  When each result is done, a StatementResult with its timing
+ * and update or row count is reported as status too.
+ *
+ * Optionally, consecutive INSERT, UPDATE, DELETE and MERGE statements
+ * are sent to the server together with addBatch()/executeBatch(),
+ * which saves a round trip for each of them.
+ *
+ * The script stops at the first statement which fails.  The error is
+ * reported as a StatementResult and then as the error of this task.
+ * Nothing is committed, that is up to the user.
+ */
+package cvosteen.sqltool.tasks;
+import cvosteen.sqltool.result.*;
+import cvosteen.sqltool.task.*;
+import java.sql.*;
+import java.util.*;
+
+public class ScriptTask extends Task {
+
+	private static final Set<String> BATCHABLE = new HashSet<String>(
+		Arrays.asList(new String[] { "INSERT", "UPDATE", "DELETE", "MERGE" }));
+
+	private final Connection connection;
+	private final List<String> statements;
+	private FetchSizeController fetchSizeController = new FetchSizeController();
+	private boolean batchUpdates = false;
+	private volatile Statement currentStatement = null;
+	private volatile Task currentTask = null;
+
+	public ScriptTask(Connection connection, String script) {
+		this.connection = connection;
+		this.statements = ScriptSplitter.split(script);
+	}
+
+	/**
+	 * Sets the controller used to tune the fetch size of the queries.
+	 * Must be called before the task is started.
+	 */
+	public void setFetchSizeController(FetchSizeController fetchSizeController) {
+		this.fetchSizeController = fetchSizeController;
+	}
+
+	/**
+	 * Sends consecutive updates to the server as one batch.
+	 * Must be called before the task is started.
+	 */
+	public void setBatchUpdates(boolean batchUpdates) {
+		this.batchUpdates = batchUpdates;
+	}
+
+	public int getStatementCount() {
+		return statements.size();
+	}
+
+	public void run() {
+		try {
+			int i = 0;
+			while(i < statements.size() && !isCancelled()) {
+				int end = i + 1;
+				if(batchUpdates) {
+					while(end < statements.size() && isBatchable(statements.get(i)) &&
+							isBatchable(statements.get(end)))
+						end++;
+				}
+				if(end - i > 1)
+					executeBatch(i, end);
+				else
+					execute(i);
+				i = end;
+			}
+		} catch(Exception e) {
+			// A cancelled Statement may throw, which is not an error
+			if(!isCancelled())
+				reportError(e);
+		} finally {
+			reportFinished();
+		}
+	}
+
+	private static boolean isBatchable(String sql) {
+		return BATCHABLE.contains(ScriptSplitter.getFirstWord(sql));
+	}
+
+	/**
+	 * Executes one statement, reporting each of its results.
+	 */
+	private void execute(int index) throws Exception {
+		String sql = statements.get(index);
+		long start = System.currentTimeMillis();
+		Statement statement = connection.createStatement();
+		currentStatement = statement;
+		try {
+			boolean isResultSet;
+			try {
+				isResultSet = statement.execute(sql);
+			} catch(SQLException e) {
+				throw failed(index, sql, start, 1, e);
+			}
+
+			boolean reported = false;
+			while(!isCancelled()) {
+				if(isResultSet) {
+					long rows;
+					try {
+						rows = readResultSet(statement.getResultSet());
+					} catch(Exception e) {
+						throw failed(index, sql, start, 1, e);
+					}
+					reportStatus(new StatementResult(index + 1, sql,
+						System.currentTimeMillis() - start, -1, rows, 1, null));
+				} else {
+					int updateCount = statement.getUpdateCount();
+					if(updateCount == -1)
+						break;
+					reportStatus(new StatementResult(index + 1, sql,
+						System.currentTimeMillis() - start, updateCount, -1, 1, null));
+				}
+				reported = true;
+				isResultSet = statement.getMoreResults();
+			}
+
+			// Some statements (e.g. DDL) have no results at all
+			if(!reported && !isCancelled()) {
+				reportStatus(new StatementResult(index + 1, sql,
+					System.currentTimeMillis() - start, -1, -1, 1, null));
+			}
+		} finally {
+			currentStatement = null;
+			try {
+				statement.close();
+			} catch(SQLException e) { }
+		}
+	}
+
+	/**
+	 * Executes the statements from first up to end as one batch.
+	 */
+	private void executeBatch(int first, int end) throws Exception {
+		int batchSize = end - first;
+		long start = System.currentTimeMillis();
+		Statement statement = connection.createStatement();
+		currentStatement = statement;
+		try {
+			int[] updateCounts;
+			try {
+				for(int i = first; i < end; i++)
+					statement.addBatch(statements.get(i));
+				updateCounts = statement.executeBatch();
+			} catch(BatchUpdateException e) {
+				// Drivers either stop at the failing statement or carry
+				// on and mark it EXECUTE_FAILED
+				int[] counts = e.getUpdateCounts();
+				int failedIndex = counts == null ? 0 : counts.length;
+				for(int i = 0; counts != null && i < counts.length; i++) {
+					if(counts[i] == Statement.EXECUTE_FAILED) {
+						failedIndex = i;
+						break;
+					}
+				}
+				long elapsed = System.currentTimeMillis() - start;
+				for(int i = 0; i < failedIndex && first + i < end; i++) {
+					reportStatus(new StatementResult(first + i + 1, statements.get(first + i),
+						elapsed, counts[i], -1, batchSize, null));
+				}
+				int index = Math.min(first + failedIndex, end - 1);
+				throw failed(index, statements.get(index), start, batchSize, e);
+			} catch(SQLException e) {
+				// Nothing in the batch is known to have run
+				throw failed(first, statements.get(first), start, batchSize, e);
+			}
+
+			long elapsed = System.currentTimeMillis() - start;
+			for(int i = first; i < end; i++) {
+				int updateCount = i - first < updateCounts.length ? updateCounts[i - first] : Statement.SUCCESS_NO_INFO;
+				reportStatus(new StatementResult(i + 1, statements.get(i),
+					elapsed, updateCount, -1, batchSize, null));
+			}
+		} finally {
+			currentStatement = null;
+			try {
+				statement.close();
+			} catch(SQLException e) { }
+		}
+	}
+
+	/**
+	 * Reads a ResultSet into a ResultStore on this thread, returning
+	 * the number of rows read.
+	 */
+	private long readResultSet(ResultSet resultSet) throws Exception {
+		final Exception[] error = new Exception[1];
+		ResultSetTask task = new ResultSetTask(resultSet, fetchSizeController);
+		task.addTaskListener(new TaskAdapter() {
+				public void taskStatus(Object obj) {
+					reportStatus(obj);
+				}
+
+				public void taskError(Exception e) {
+					error[0] = e;
+				}
+			});
+		currentTask = task;
+		// The cancel request may have come in before currentTask was set
+		if(isCancelled())
+			task.cancel();
+		task.run();
+		currentTask = null;
+
+		if(error[0] != null)
+			throw error[0];
+		ResultStore store = (ResultStore) task.getStatus();
+		return store == null ? 0 : store.getRowCount();
+	}
+
+	/**
+	 * Reports a failed statement, returning the exception to throw.
+	 */
+	private Exception failed(int index, String sql, long start, int batchSize, Exception e) {
+		if(!isCancelled()) {
+			reportStatus(new StatementResult(index + 1, sql,
+				System.currentTimeMillis() - start, -1, -1, batchSize, e.getMessage()));
+		}
+		return e;
+	}
+
+	/**
+	 * Passes the cancellation on to the running ResultSetTask and Statement.
+	 */
+	protected void cancelRequested() {
+		Task t = currentTask;
+		if(t != null)
+			t.cancel();
+
+		final Statement statement = currentStatement;
+		if(statement == null)
+			return;
+		// Cancelling the Statement may have to talk to the server,
+		// so don't hold up the caller (usually the GUI) doing it.
+		TaskExecutor.execute(new Runnable() {
+				public void run() {
+					try {
+						statement.cancel();
+					} catch(SQLException e) {
+						// The statement cannot be cancelled and the user just has to wait.
+					}
+				}
+			});
+	}
+}
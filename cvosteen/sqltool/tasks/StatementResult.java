@@ -0,0 +1,95 @@
+/**
+ * The outcome of one statement of a script, reported as status by
+ * ScriptTask.  A statement that returns several results reports one
+ * StatementResult for each of them.
+ */
+package cvosteen.sqltool.tasks;
+
+public class StatementResult {
+
+	private final int number;
+	private final String sql;
+	private final long elapsedMillis;
+	private final int updateCount;
+	private final long rowCount;
+	private final int batchSize;
+	private final String error;
+
+	/**
+	 * Creates a StatementResult.  The update count is -1 if the result
+	 * was a ResultSet, and the row count is -1 if it was not.
+	 */
+	public StatementResult(int number, String sql, long elapsedMillis,
+			int updateCount, long rowCount, int batchSize, String error) {
+		this.number = number;
+		this.sql = sql;
+		this.elapsedMillis = elapsedMillis;
+		this.updateCount = updateCount;
+		this.rowCount = rowCount;
+		this.batchSize = batchSize;
+		this.error = error;
+	}
+
+	/**
+	 * Returns the position of the statement in the script, starting at 1.
+	 */
+	public int getNumber() {
+		return number;
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	/**
+	 * Returns the time taken by the statement, or by the whole batch
+	 * if it was batched.
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public int getUpdateCount() {
+		return updateCount;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Returns the number of statements sent together in the batch
+	 * this statement was part of, or 1 if it was not batched.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public boolean hasError() {
+		return error != null;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * Describes the result for the user.
+	 */
+	public String toString() {
+		String text;
+		if(error != null)
+			text = "Error: " + error;
+		else if(rowCount >= 0)
+			text = rowCount == 1 ? "1 record" : rowCount + " records";
+		else if(updateCount == java.sql.Statement.SUCCESS_NO_INFO)
+			text = "Succeeded";
+		else if(updateCount >= 0)
+			text = updateCount == 1 ? "1 record updated" : updateCount + " records updated";
+		else
+			text = "Done";
+		if(batchSize > 1)
+			text += " (batch of " + batchSize + ")";
+		return text;
+	}
+}